@@ -1,17 +1,53 @@
 package eu.simuline.relana.expressions;
 
 import eu.simuline.relana.model.Deficiency;
+import eu.simuline.relana.model.DeficiencySet;
 //import eu.simuline.relana.model.CClass;
 import eu.simuline.relana.model.SInstance;
 
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Represents a formula which is either a constant, a variable 
  * or composed via an operator. 
  * In contrast to a formula declaration represented by {@link FormulaDecl}, 
  * a formula is within the context of an {@link SInstance}. 
+ * <p>
+ * Formulae are hash-consed: 
+ * they are created by {@link Const#create(Set, Type)}, 
+ * {@link Var#create(SInstance, String)} 
+ * and {@link #getFormula(Operation.Eval, Set)} only, 
+ * which return the existing formula 
+ * if there is one structurally equal to the one to be created. 
+ * Two formulae are structurally equal 
+ * if they are constants with the same value, 
+ * variables for the same effect 
+ * or compound formulae with equal operations and the same arguments. 
+ * Thus structurally equal formulae are identical, 
+ * the arguments of compound formulae are deduplicated 
+ * and formulae form a directed acyclic graph sharing subformulae. 
+ * The hash code is computed once on creation. 
+ * <p>
+ * Compound formulae are simplified when created 
+ * by the rewrites listed in {@link Rewrite}. 
+ * Since the arguments are simplified already, 
+ * this requires time linear in the size of the arguments. 
+ * As formulae are created by resolving declarations 
+ * and by substitution only, 
+ * all formulae are simplified. 
+ * The number of nodes saved by each rewrite is reported 
+ * by {@link #getRewriteCounts()}. 
  *
  *
  * Created: Fri Apr 29 10:56:37 2005
@@ -25,6 +61,58 @@ public abstract class Formula {
      * inner classes.                                                       *
      * -------------------------------------------------------------------- */
 
+    /**
+     * The rewrites applied when creating compound formulae 
+     * by {@link #getFormula(Operation.Eval, Set)}. 
+     */
+    public enum Rewrite {
+	/**
+	 * Replaces an argument of a union or intersection 
+	 * which is a union or intersection, respectively, 
+	 * by its arguments, 
+	 * and a union or intersection of a single argument by this argument. 
+	 */
+	Flattening, 
+	/**
+	 * Removes multiple occurrences of an argument 
+	 * of a union or intersection. 
+	 */
+	Idempotence, 
+	/**
+	 * Removes an argument <code>X&amp;Y</code> of a union 
+	 * with argument <code>X</code> 
+	 * and an argument <code>X|Y</code> of an intersection 
+	 * with argument <code>X</code>. 
+	 */
+	Absorption, 
+	/**
+	 * Replaces the complement of a complement by its argument. 
+	 */
+	DoubleComplement, 
+	/**
+	 * Merges the constant arguments of a union or intersection 
+	 * and replaces a formula with determined value by a constant. 
+	 */
+	ConstantFolding, 
+	/**
+	 * Removes a constant argument of a union 
+	 * which is contained in the minimal value of another argument 
+	 * and a constant argument of an intersection 
+	 * which contains the maximal value of another argument. 
+	 * This covers the empty set for unions 
+	 * and the set of all deficiencies for intersections. 
+	 */
+	NeutralElement;
+    } // enum Rewrite 
+
+    /**
+     * The unique table of hash-consing: 
+     * formulae are compared by {@link #equals(Object)}. 
+     * Formulae no longer referenced elsewhere are removed. 
+     * This must be initialized before {@link #EMPTY_EXPRESSION}. 
+     */
+    private static final Interner<Formula> UNIQUE = new Interner<Formula>();
+
     // **** This suppression does not work... why not???? 
     @edu.umd.cs.findbugs.annotations.SuppressWarnings
     (value = "IC_SUPERCLASS_USES_SUBCLASS_DURING_INITIALIZATION",
@@ -49,23 +137,39 @@ public abstract class Formula {
 	 * ---------------------------------------------------------------- */
 
 	@SuppressWarnings("checkstyle:MethodParamPad")
-	public Const(Set<Deficiency> val, Type type) {
+	private Const(Set<Deficiency> val, Type type) {
+	    super(val.hashCode());
 	    this.val  = val;
 	    this.type = type;
-	    if (this.type != null && !this.type.isValid(val)) {
-		throw new IllegalArgumentException
-		    ("invalid set " + this.val 
-		     + " for type " + this.type + ". ");
-	    }
-
 	}
 
 	/* ---------------------------------------------------------------- *
 	 * methods.                                                         *
 	 * ---------------------------------------------------------------- */
 
-	private static Const create(Set<Deficiency> val, Type type) {
-	    return new Const(val, type);
+	/**
+	 * Returns the constant formula with value <code>val</code>. 
+	 *
+	 * @param val 
+	 *    the value of the constant. 
+	 *    This is copied. 
+	 * @param type 
+	 *    the type <code>val</code> shall be valid for 
+	 *    or <code>null</code> if this is not to be checked. 
+	 * @throws IllegalArgumentException 
+	 *    if <code>val</code> is not valid for <code>type</code>. 
+	 */
+	public static Const create(Set<Deficiency> val, Type type) {
+	    if (type != null && !type.isValid(val)) {
+		throw new IllegalArgumentException
+		    ("invalid set " + val + " for type " + type + ". ");
+	    }
+	    return intern(new Const(DeficiencySet.of(val), type));
+	}
+
+	boolean equalsLocally(Formula other) {
+	    return other instanceof Const 
+		&& this.val.equals(((Const) other).val);
 	}
 
 	public Formula remove(SInstance serv, Deficiency def) {
@@ -79,9 +183,13 @@ public abstract class Formula {
 	public Formula substitute(SInstance serv, Formula form) {
 	    return this;
 	}
+
+	public Formula substitute(Map<SInstance, Formula> var2form) {
+	    return this;
+	}
 	
 	public Set<SInstance> getVars() {
-	    return new HashSet<SInstance>();
+	    return Collections.emptySet();
 	}
 	public Set<Deficiency> getConst() {
 	    return this.val;
@@ -108,20 +216,51 @@ public abstract class Formula {
 
 	private final SInstance varS;
 	private final String name;
+	private final Set<SInstance> vars;
 
 	/* ---------------------------------------------------------------- *
 	 * constructors.                                                    *
 	 * ---------------------------------------------------------------- */
 
-	public Var(SInstance varS, String name) {
+	private Var(SInstance varS, String name) {
+	    super(varS.hashCode());
 	    this.varS = varS;
 	    this.name = name;
+	    this.vars = Collections.singleton(varS);
 	}
 
 	/* ---------------------------------------------------------------- *
 	 * methods.                                                         *
 	 * ---------------------------------------------------------------- */
 
+	/**
+	 * Returns the variable for <code>varS</code>. 
+	 *
+	 * @param varS 
+	 *    the effect the variable stands for. 
+	 * @param name 
+	 *    the name of the variable used by {@link #toString()}. 
+	 *    If the variable exists already, it keeps its name. 
+	 */
+	public static Var create(SInstance varS, String name) {
+	    return intern(new Var(varS, name));
+	}
+
+	boolean equalsLocally(Formula other) {
+	    return other instanceof Var 
+		&& this.varS == ((Var) other).varS;
+	}
+
+	/**
+	 * Returns the effect this variable stands for. 
+	 *
+	 * @return 
+	 *    {@link #varS}. 
+	 */
+	public SInstance getVar() {
+	    return this.varS;
+	}
+
 	public Formula remove(SInstance serv, Deficiency def) {
 	    throw new eu.simuline.util.NotYetImplementedException();
 	    // return new Var(var);
@@ -140,10 +279,13 @@ public abstract class Formula {
 	    return (serv == this.varS) ? form : this;
 	}
 
+	public Formula substitute(Map<SInstance, Formula> var2form) {
+	    Formula res = var2form.get(this.varS);
+	    return res == null ? this : res;
+	}
+
 	public Set<SInstance> getVars() {
-	    Set<SInstance> res = new HashSet<SInstance>();
-	    res.add(this.varS);
-	    return res;
+	    return this.vars;
 	}
 
 	public Set<Deficiency> getConst() {
@@ -151,11 +293,11 @@ public abstract class Formula {
 	}
 
 	public Set<Deficiency> getMax() {
-	    return this.varS.getType().asSet();
+	    return this.varS.getType().getMask();
 	}
 
 	public Set<Deficiency> getMin() {
-	    return new HashSet<Deficiency>();
+	    return DeficiencySet.EMPTY;
 	}
 
 	public String toString() {
@@ -180,14 +322,28 @@ public abstract class Formula {
 	private final Operation.Eval oper;
 	private final Set<Formula> args;
 
+	/**
+	 * The variables of this formula computed on creation 
+	 * from those of the arguments 
+	 * so that shared subformulae are not traversed again. 
+	 */
+	private final Set<SInstance> vars;
+
 	/* ---------------------------------------------------------------- *
 	 * constructors.                                                    *
 	 * ---------------------------------------------------------------- */
 
 	private Comp(Operation.Eval oper, Set<Formula> args) {
+	    super(31 * oper.hashCode() + args.hashCode());
 	    this.oper = oper;
 	    this.args = args;
 
+	    Set<SInstance> argVars = new HashSet<SInstance>();
+	    for (Formula arg : args) {
+		argVars.addAll(arg.getVars());
+	    }
+	    this.vars = Collections.unmodifiableSet(argVars);
+
 	    Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
 	    for (Formula arg : args) {
 		param.add(arg.getMin());
@@ -213,9 +369,34 @@ public abstract class Formula {
 	 * methods.                                                         *
 	 * ---------------------------------------------------------------- */
 
-	private static Comp create(Operation.Eval oper, 
-				   Set<Formula> args) {
-	    return new Comp(oper, args);
+	boolean equalsLocally(Formula other) {
+	    if (!(other instanceof Comp)) {
+		return false;
+	    }
+	    Comp comp = (Comp) other;
+	    // the arguments are compared by identity 
+	    // since they are hash-consed themselves 
+	    return this.oper.equals(comp.oper) && this.args.equals(comp.args);
+	}
+
+	/**
+	 * Returns the evaluator of the operation of this formula. 
+	 *
+	 * @return 
+	 *    {@link #oper}. 
+	 */
+	public Operation.Eval getEval() {
+	    return this.oper;
+	}
+
+	/**
+	 * Returns the arguments of the operation of this formula. 
+	 *
+	 * @return 
+	 *    {@link #args}. 
+	 */
+	public Set<Formula> getArgs() {
+	    return this.args;
 	}
 
 	public Formula remove(SInstance serv, Deficiency def) {
@@ -235,19 +416,59 @@ public abstract class Formula {
 	}
 
 	public Formula substitute(SInstance serv, Formula form) {
-	    Set<Formula> newArgs = new HashSet<Formula>();
-	    for (Formula arg : this.args) {
-		newArgs.add(arg.substitute(serv, form));
+	    return substitute(Collections.singletonMap(serv, form));
+	}
+
+	/**
+	 * Substitutes bottom up with an explicit stack 
+	 * visiting each distinct subformula once: 
+	 * recursing over the arguments would unfold shared subformulae 
+	 * into a tree which may be exponentially larger than the formula. 
+	 */
+	public Formula substitute(Map<SInstance, Formula> var2form) {
+	    Map<Formula, Formula> done = new HashMap<Formula, Formula>();
+	    List<Formula> stack = new ArrayList<Formula>();
+	    stack.add(this);
+	    while (!stack.isEmpty()) {
+		Formula form = stack.get(stack.size() - 1);
+		if (done.containsKey(form)) {
+		    stack.remove(stack.size() - 1);
+		    continue;
+		}
+		if (!(form instanceof Comp)) {
+		    done.put(form, form.substitute(var2form));
+		    stack.remove(stack.size() - 1);
+		    continue;
+		}
+		if (!containsAny(form.getVars(), var2form.keySet())) {
+		    // unchanged subformulae are shared 
+		    done.put(form, form);
+		    stack.remove(stack.size() - 1);
+		    continue;
+		}
+		Comp comp = (Comp) form;
+		boolean argsDone = true;
+		for (Formula arg : comp.args) {
+		    if (!done.containsKey(arg)) {
+			stack.add(arg);
+			argsDone = false;
+		    }
+		}
+		if (!argsDone) {
+		    continue;
+		}
+		Set<Formula> newArgs = new HashSet<Formula>();
+		for (Formula arg : comp.args) {
+		    newArgs.add(done.get(arg));
+		}
+		done.put(comp, getFormula(comp.oper, newArgs));
+		stack.remove(stack.size() - 1);
 	    }
-	    return getFormula(this.oper, newArgs);
+	    return done.get(this);
 	}
 
 	public Set<SInstance> getVars() {
-	    Set<SInstance> res = new HashSet<SInstance>();
-	    for (Formula arg : args) {
-		res.addAll(arg.getVars());
-	    }
-	    return res;
+	    return this.vars;
 	}
 
 	public Set<Deficiency> getConst() {
@@ -277,19 +498,208 @@ public abstract class Formula {
      * fields.                                                              *
      * -------------------------------------------------------------------- */
 
+    /**
+     * The number of nodes saved by each {@link Rewrite} 
+     * indexed by the ordinal. 
+     */
+    private static final AtomicLongArray REWRITE_COUNTS = 
+	new AtomicLongArray(Rewrite.values().length);
+
+    /**
+     * The hash code of this formula computed on creation. 
+     */
+    private final int hash;
 
     /* -------------------------------------------------------------------- *
      * static creator methods.                                              *
      * -------------------------------------------------------------------- */
 
-    private Formula() {
+    private Formula(int hash) {
+	this.hash = hash;
+    }
+
+    /**
+     * Returns the formula structurally equal to <code>form</code> 
+     * created first, registering <code>form</code> if there is none. 
+     */
+    @SuppressWarnings("unchecked")
+    private static <F extends Formula> F intern(F form) {
+	// structurally equal formulae are of the same class 
+	return (F) UNIQUE.intern(form);
     }
 
+    /**
+     * Returns the formula applying <code>oper</code> to <code>args</code> 
+     * simplified by the rewrites in {@link Rewrite}. 
+     *
+     * @param oper 
+     *    the evaluator of an operation. 
+     * @param args 
+     *    the arguments which are assumed to be simplified already. 
+     */
     public static Formula getFormula(Operation.Eval oper, Set<Formula> args) {
-	Formula res = Comp.create(oper, args);
-	return (res.getMin().size() == res.getMax().size())
-	    ? Const.create(res.getMin(), null)
-	    : res;
+	Operation op = oper.getOperation();
+	if (op == Operation.BaseOps.Complement.getOperation()) {
+	    return getComplement(oper, args);
+	}
+	if (op == Operation.BaseOps.Union.getOperation()) {
+	    return getLattice(oper, args, true);
+	}
+	if (op == Operation.BaseOps.Intersection.getOperation()) {
+	    return getLattice(oper, args, false);
+	}
+	return getFolded(oper, args);
+    }
+
+    /**
+     * Returns the compound formula applying <code>oper</code> 
+     * to <code>args</code> 
+     * or a constant if its value is determined. 
+     */
+    private static Formula getFolded(Operation.Eval oper, 
+				     Set<Formula> args) {
+	// the bounds are computed on creation: 
+	// intern the formula unless it is constant 
+	Comp res = new Comp(oper, Collections.unmodifiableSet
+			    (new HashSet<Formula>(args)));
+	if (res.getMin().size() == res.getMax().size()) {
+	    count(Rewrite.ConstantFolding, 1);
+	    return Const.create(res.getMin(), null);
+	}
+	return intern(res);
+    }
+
+    private static Formula getComplement(Operation.Eval oper, 
+					 Set<Formula> args) {
+	assert args.size() == 1;
+	Formula arg = args.iterator().next();
+	if (arg instanceof Comp && ((Comp) arg).oper.equals(oper)) {
+	    // complements within types with the same deficiencies 
+	    count(Rewrite.DoubleComplement, 2);
+	    return ((Comp) arg).args.iterator().next();
+	}
+	return getFolded(oper, args);
+    }
+
+    /**
+     * Returns the union or intersection of <code>args</code>. 
+     *
+     * @param oper 
+     *    the evaluator of union or intersection. 
+     * @param args 
+     *    the arguments. 
+     * @param isUnion 
+     *    whether <code>oper</code> is the union. 
+     */
+    private static Formula getLattice(Operation.Eval oper, 
+				      Set<Formula> args, 
+				      boolean isUnion) {
+	// flatten 
+	List<Formula> flat = new ArrayList<Formula>();
+	for (Formula arg : args) {
+	    if (arg instanceof Comp && ((Comp) arg).oper == oper) {
+		count(Rewrite.Flattening, 1);
+		flat.addAll(((Comp) arg).args);
+	    } else {
+		flat.add(arg);
+	    }
+	}
+	Set<Formula> newArgs = new LinkedHashSet<Formula>(flat);
+	count(Rewrite.Idempotence, flat.size() - newArgs.size());
+
+	// absorb: arguments are flat 
+	// and so no argument absorbed may absorb another one 
+	Operation dual = (isUnion 
+			  ? Operation.BaseOps.Intersection 
+			  : Operation.BaseOps.Union).getOperation();
+	List<Formula> absorbed = new ArrayList<Formula>();
+	for (Formula arg : newArgs) {
+	    if (!(arg instanceof Comp) 
+		|| ((Comp) arg).oper.getOperation() != dual) {
+		continue;
+	    }
+	    for (Formula argArg : ((Comp) arg).args) {
+		if (newArgs.contains(argArg)) {
+		    absorbed.add(arg);
+		    break;
+		}
+	    }
+	}
+	newArgs.removeAll(absorbed);
+	count(Rewrite.Absorption, absorbed.size());
+
+	// fold constants 
+	DeficiencySet cst = null;
+	int numConsts = 0;
+	for (Iterator<Formula> iter = newArgs.iterator(); iter.hasNext();) {
+	    Set<Deficiency> val = iter.next().getConst();
+	    if (val == null) {
+		continue;
+	    }
+	    iter.remove();
+	    numConsts++;
+	    if (cst == null) {
+		cst = DeficiencySet.of(val);
+	    } else if (isUnion) {
+		cst = cst.union(DeficiencySet.of(val));
+	    } else {
+		cst = cst.intersect(DeficiencySet.of(val));
+	    }
+	}
+	if (numConsts > 1) {
+	    count(Rewrite.ConstantFolding, numConsts - 1);
+	}
+	if (cst != null && !isNeutral(cst, newArgs, isUnion)) {
+	    newArgs.add(Const.create(cst, null));
+	} else if (cst != null) {
+	    count(Rewrite.NeutralElement, 1);
+	}
+
+	assert !newArgs.isEmpty();
+	if (newArgs.size() == 1) {
+	    count(Rewrite.Flattening, 1);
+	    return newArgs.iterator().next();
+	}
+	return getFolded(oper, newArgs);
+    }
+
+    /**
+     * Returns whether the constant <code>cst</code> 
+     * does not change the union or intersection of <code>args</code>. 
+     */
+    private static boolean isNeutral(Set<Deficiency> cst, 
+				     Set<Formula> args, 
+				     boolean isUnion) {
+	for (Formula arg : args) {
+	    if (isUnion 
+		? arg.getMin().containsAll(cst) 
+		: cst.containsAll(arg.getMax())) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static void count(Rewrite rewrite, int num) {
+	REWRITE_COUNTS.addAndGet(rewrite.ordinal(), num);
+    }
+
+    /**
+     * Returns the number of nodes saved by each rewrite 
+     * since the last invocation of {@link #resetRewriteCounts()}. 
+     */
+    public static Map<Rewrite, Long> getRewriteCounts() {
+	Map<Rewrite, Long> res = new EnumMap<Rewrite, Long>(Rewrite.class);
+	for (Rewrite rewrite : Rewrite.values()) {
+	    res.put(rewrite, REWRITE_COUNTS.get(rewrite.ordinal()));
+	}
+	return res;
+    }
+
+    public static void resetRewriteCounts() {
+	for (Rewrite rewrite : Rewrite.values()) {
+	    REWRITE_COUNTS.set(rewrite.ordinal(), 0);
+	}
     }
 
     /* -------------------------------------------------------------------- *
@@ -300,8 +710,63 @@ public abstract class Formula {
     public abstract Formula        add(SInstance serv, Deficiency def);
     public abstract Formula substitute(SInstance serv, Formula form);
 
+    /**
+     * Returns the formula arising from this one 
+     * by substituting each variable in the key set of <code>var2form</code> 
+     * by the associated formula simultaneously. 
+     * Subformulae without such variables are not copied but shared. 
+     *
+     * @param var2form 
+     *    maps variables to formulae of appropriate type. 
+     * @return 
+     *    the formula described above; 
+     *    this formula if it contains no variable to be substituted. 
+     */
+    public abstract Formula substitute(Map<SInstance, Formula> var2form);
+
+    /**
+     * Returns the variables occurring in this formula. 
+     * This is computed once on creation. 
+     *
+     * @return 
+     *    an unmodifiable set of the variables of this formula. 
+     */
     public abstract Set<SInstance> getVars();
 
+    /**
+     * Returns whether <code>vars</code> and <code>keys</code> intersect, 
+     * iterating over the smaller of the two sets. 
+     */
+    static boolean containsAny(Set<SInstance> vars, Set<SInstance> keys) {
+	Set<SInstance> small = vars.size() <= keys.size() ? vars : keys;
+	Set<SInstance> large = small == vars ? keys : vars;
+	for (SInstance serv : small) {
+	    if (large.contains(serv)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the number of distinct subformulae of this formula 
+     * including this formula itself, 
+     * i.e. the number of nodes of the directed acyclic graph 
+     * it represents. 
+     */
+    public int getSize() {
+	Set<Formula> visited = new HashSet<Formula>();
+	List<Formula> stack = new ArrayList<Formula>();
+	stack.add(this);
+	while (!stack.isEmpty()) {
+	    Formula form = stack.remove(stack.size() - 1);
+	    if (visited.add(form) && form instanceof Comp) {
+		stack.addAll(((Comp) form).args);
+	    }
+	}
+	return visited.size();
+    }
+
     /**
      * Returns the constant represented by this formula, if any. 
      * If this is not a constant formula, 
@@ -321,12 +786,31 @@ public abstract class Formula {
     public abstract Set<Deficiency> getMin();
     public abstract Set<Deficiency> getMax();
 
+    /**
+     * Returns whether <code>other</code> is structurally equal to this one 
+     * assuming that the subformulae of both are hash-consed. 
+     */
+    abstract boolean equalsLocally(Formula other);
+
+    /**
+     * Returns whether <code>obj</code> is a formula 
+     * structurally equal to this one. 
+     * For formulae created by the creator methods, 
+     * this is equivalent with identity. 
+     */
     public final boolean equals(Object obj) {
-	return super.equals(obj);
+	if (this == obj) {
+	    return true;
+	}
+	if (!(obj instanceof Formula)) {
+	    return false;
+	}
+	Formula other = (Formula) obj;
+	return this.hash == other.hash && equalsLocally(other);
     }
 
     public final int hashCode() {
-	return super.hashCode();
+	return this.hash;
     }
 
     // shows that EMPTY_EXPRESSION is correctly initialized 
@@ -39,7 +39,7 @@ public abstract class FormulaDecl {
 	    return this.type;
 	}
 	public Formula resolve(CInstance cInst) {
-	    return new Formula.Const(this.val, this.type);
+	    return Formula.Const.create(this.val, this.type);
 	}
 
 	public String toString() {
@@ -70,8 +70,8 @@ public abstract class FormulaDecl {
 	    return this.decl.getSClass().getType();
 	}
 	public Formula resolve(CInstance cInst) {
-	    return new Formula.Var(cInst.getEffect(this.path),
-				   this.decl.getName());
+	    return Formula.Var.create(cInst.getEffect(this.path),
+				      this.decl.getName());
 	}
 	public String toString() {
 	    StringBuffer res = new StringBuffer();
@@ -0,0 +1,115 @@
+package eu.simuline.relana.expressions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A unique table for hash-consing immutable objects
+ * compared by {@link Object#equals(Object)}:
+ * {@link #intern(Object)} returns the object equal to the given one
+ * which was interned first.
+ * The table is concurrent so that lookups do not block each other
+ * and it refers to the objects weakly
+ * so that objects no longer referenced elsewhere are collected.
+ *
+ *
+ * Created: Mon Oct 19 11:02:17 2026
+ *
+ * @param <T>
+ *    the class of the objects interned.
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+final class Interner<T> {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * A weak reference to an object as a key of {@link #unique}:
+     * Keys are equal if their objects are equal;
+     * a key the object of which is collected equals only itself.
+     */
+    private static final class WeakKey<T> extends WeakReference<T> {
+	private final int hash;
+
+	WeakKey(T obj, ReferenceQueue<T> queue) {
+	    super(obj, queue);
+	    this.hash = obj.hashCode();
+	}
+
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof WeakKey)) {
+		return false;
+	    }
+	    T ref = get();
+	    return ref != null && ref.equals(((WeakKey<?>) obj).get());
+	}
+
+	public int hashCode() {
+	    return this.hash;
+	}
+    } // class WeakKey
+
+    /* -------------------------------------------------------------------- *
+     * fields.                                                              *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The queue the keys of {@link #unique} are enqueued in
+     * when their objects are collected.
+     */
+    private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+
+    /**
+     * Maps a weak key for each object interned to itself.
+     * The keys of collected objects are removed via {@link #collected}.
+     */
+    private final ConcurrentMap<WeakKey<T>, WeakKey<T>> unique =
+	new ConcurrentHashMap<WeakKey<T>, WeakKey<T>>();
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the object equal to <code>obj</code> interned first,
+     * registering <code>obj</code> if there is none.
+     */
+    T intern(T obj) {
+	expunge();
+	WeakKey<T> key = new WeakKey<T>(obj, this.collected);
+	while (true) {
+	    WeakKey<T> old = this.unique.putIfAbsent(key, key);
+	    if (old == null) {
+		return obj;
+	    }
+	    T res = old.get();
+	    if (res != null) {
+		return res;
+	    }
+	    // collected since found: replace the key
+	    this.unique.remove(old, old);
+	}
+    }
+
+    /**
+     * Removes the keys of collected objects from {@link #unique}.
+     */
+    private void expunge() {
+	Reference<? extends T> ref;
+	while ((ref = this.collected.poll()) != null) {
+	    // a collected key equals only itself
+	    this.unique.remove(ref, ref);
+	}
+    }
+
+} // Interner
@@ -2,13 +2,13 @@ package eu.simuline.relana.expressions;
 
 import eu.simuline.relana.model.Deficiency;
 import eu.simuline.relana.model.DeficiencyMap;
+import eu.simuline.relana.model.DeficiencySet;
 
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.Iterator;
 
 /**
@@ -135,13 +135,8 @@ public abstract class Operation {
 	}
 
 	public Set<Deficiency> eval(Set<Set<Deficiency>> param) {
-	    Iterator<Set<Deficiency>> iter = param.iterator();
-	    assert iter.hasNext();
-	    Set<Deficiency> result = new HashSet<Deficiency>(iter.next());
-	    while (iter.hasNext()) {
-		result.retainAll(iter.next());
-	    }
-	    return result;
+	    assert !param.isEmpty();
+	    return DeficiencySet.intersection(param);
 	}
 
 	public Eval getEval(Type type) {
@@ -194,11 +189,7 @@ public abstract class Operation {
 	}
 
 	public Set<Deficiency> eval(Set<Set<Deficiency>> param) {
-	    Set<Deficiency> result = new HashSet<Deficiency>();
-	    for (Set<Deficiency> set : param) {
-		result.addAll(set);
-	    }
-	    return result;
+	    return DeficiencySet.union(param);
 	}
 
 	public Eval getEval(Type type) {
@@ -240,20 +231,43 @@ public abstract class Operation {
 	}
 
 	public Eval getEval(final Type type) {
-	    return new Eval() {
-		    public Set<Deficiency> eval(Set<Set<Deficiency>> param) {
-			Set<Deficiency> result = type.asSet();
-			Iterator<Set<Deficiency>> iter = param.iterator();
-			result.removeAll(iter.next());
-			assert !iter.hasNext();
-			return result;
-		    }
-		    public Operation getOperation() {
-			return CompOp.this;
-		    }
-
-		};
-	}
+	    return new ComplEval(type);
+	}
+
+	/**
+	 * The evaluator of the complement within a given type. 
+	 * Evaluators are equal if their types have the same deficiencies, 
+	 * so that equal formulae are recognized 
+	 * as described for {@link Formula}. 
+	 */
+	final class ComplEval implements Eval {
+	    private final Type type;
+	    ComplEval(Type type) {
+		this.type = type;
+	    }
+	    public Set<Deficiency> eval(Set<Set<Deficiency>> param) {
+		assert param.size() == 1;
+		return this.type.getMask()
+		    .minus(DeficiencySet.of(param.iterator().next()));
+	    }
+	    public Operation getOperation() {
+		return CompOp.this;
+	    }
+	    public boolean equals(Object obj) {
+		if (!(obj instanceof ComplEval)) {
+		    return false;
+		}
+		ComplEval other = (ComplEval) obj;
+		return getOperation() == other.getOperation() 
+		    && this.type.getMask().equals(other.type.getMask());
+	    }
+	    public int hashCode() {
+		return this.type.getMask().hashCode();
+	    }
+	    public String toString() {
+		return CompOp.this.toString();
+	    }
+	} // class ComplEval 
 
 	boolean isIsoAntitone() {
 	    return false;
@@ -399,10 +413,25 @@ public abstract class Operation {
 	 * methods.                                                         *
 	 * ---------------------------------------------------------------- */
 
-	private DeficiencyMap getMap() {
+	public DeficiencyMap getMap() {
 	    return this.map;
 	}
 
+	public Functor getFunctor() {
+	    return this.funct;
+	}
+
+	/**
+	 * Returns the type of the argument of this operation. 
+	 *
+	 * @return 
+	 *    the source type of {@link #map} 
+	 *    with respect to the functor {@link #funct}. 
+	 */
+	public Type getSourceType() {
+	    return this.funct.source(this.map);
+	}
+
 	boolean arity1() {
 	    return true;
 	}
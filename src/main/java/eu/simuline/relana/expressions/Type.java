@@ -2,17 +2,29 @@ package eu.simuline.relana.expressions;
 
 import eu.simuline.relana.model.Deficiency;
 import eu.simuline.relana.model.DeficiencyNode;
+import eu.simuline.relana.model.DeficiencySet;
 //import eu.simuline.relana.model.VerifyException;
 
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Stack;
+import java.util.Collections;
 
 /**
  * A type maps declared {@link Deficiency}s to their nodes 
  * and defines minimum and maximum {@link Deficiency}s. 
+ * Types are immutable and interned: 
+ * they are created by {@link #create(Map)} only 
+ * and equal types are identical. 
+ * Removing a deficiency by {@link #remove(Deficiency)} 
+ * or its up-set by {@link #removeAndAbove(Deficiency)} 
+ * yields a sublattice which is a mask over this type 
+ * and which is cached. 
  *
  *
  * Created: Fri Apr 29 11:18:57 2005
@@ -22,7 +34,15 @@ import java.util.Stack;
  */
 public final class Type {
 
-    public static final Type EMPTY = new Type();
+    /**
+     * The unique table of interning: 
+     * types are compared by {@link #equals(Object)}. 
+     * This must be initialized before {@link #EMPTY}. 
+     */
+    private static final Interner<Type> UNIQUE = new Interner<Type>();
+
+    public static final Type EMPTY = 
+	create(new HashMap<Deficiency, DeficiencyNode>());
     public static final Type BOOLEAN;
 
     static {
@@ -30,7 +50,7 @@ public final class Type {
 	    new HashMap<Deficiency, DeficiencyNode>();
 	deficiency2ordering.put(Deficiency.UNDET,
 				new DeficiencyNode(Deficiency.UNDET));
-	BOOLEAN = new Type(deficiency2ordering);
+	BOOLEAN = create(deficiency2ordering);
     } // static 
 
     /* -------------------------------------------------------------------- *
@@ -38,54 +58,168 @@ public final class Type {
      * -------------------------------------------------------------------- */
 
     /**
-     * Maps declared <code>Deficiency</code>s **********
-     * (see 
-     * {@link eu.simuline.relana.model.SClass#getDeclaredDeficiency2ordering}) 
-     * to their nodes 
-     * which determine their predecessors and their successors. 
-     * It is required that this relation extends that 
-     * given by {@link eu.simuline.relana.model.SClass#superClass}. 
+     * The set of all deficiencies of this type as a mask. 
+     */
+    private final DeficiencySet mask;
+
+    /**
+     * Maps the indices of the deficiencies of this type 
+     * to the masks of their successors; 
+     * the other entries are <code>null</code>. 
+     * The length exceeds the maximal index in {@link #mask} by one. 
+     * Together with {@link #mask}, this determines the type. 
      */
-    private Map<Deficiency, DeficiencyNode> deficiency2ordering;
-    // **** valid after verification only {@link #initMMDefics} 
-    private Set<Deficiency> minDefs;
-    // **** valid after verification only {@link #initMMDefics} 
-    private Set<Deficiency> maxDefs;
+    private final DeficiencySet[] index2succs;
+
+    /**
+     * The type this one is a sublattice of 
+     * as created by {@link #remove(Deficiency)} 
+     * or by {@link #removeAndAbove(Deficiency)}, 
+     * or <code>null</code>. 
+     * Since the deficiencies removed are minimal or form an up-set, 
+     * the ordering of this type is the restriction 
+     * of the ordering of the parent. 
+     */
+    private final Type parent;
+
+    private final DeficiencySet minDefs;
+
+    private final DeficiencySet maxDefs;
 
+    private final int hash;
+
+    /**
+     * Maps the indices of the deficiencies of this type 
+     * to the masks of their cones as returned by {@link #getCone}, 
+     * i.e. the rows of the reflexive transitive closure 
+     * of the successor relation; 
+     * the other entries are <code>null</code>. 
+     * This is built lazily by {@link #getCones()}. 
+     */
+    private volatile DeficiencySet[] index2cone;
+
+    /**
+     * The nodes of this type returned by {@link #getDeficiency2ordering()} 
+     * which are built lazily. 
+     */
+    private volatile Map<Deficiency, DeficiencyNode> deficiency2ordering;
+
+    /**
+     * Caches the sublattices returned by {@link #remove(Deficiency)}. 
+     */
+    private final Map<Deficiency, Type> def2removed;
+
+    /**
+     * Caches the sublattices returned by {@link #removeAndAbove(Deficiency)}. 
+     */
+    private final Map<Deficiency, Type> def2removedAndAbove;
 
     /* -------------------------------------------------------------------- *
      * constructors.                                                        *
      * -------------------------------------------------------------------- */
 
-    public Type(Map<Deficiency, DeficiencyNode> deficiency2ordering) {
-	this.deficiency2ordering = deficiency2ordering;
-	assert consistency();
-	initMMDefics();
+    private Type(DeficiencySet mask, 
+		 DeficiencySet[] index2succs, 
+		 Type parent) {
+	this.mask = mask;
+	this.index2succs = index2succs;
+	this.parent = parent;
+
+	List<DeficiencySet> rows = new ArrayList<DeficiencySet>();
+	Set<Deficiency> mins = new HashSet<Deficiency>();
+	for (Deficiency def : mask) {
+	    DeficiencySet succs = index2succs[def.getIndex()];
+	    assert mask.containsAll(succs);
+	    if (succs.isEmpty()) {
+		mins.add(def);
+	    }
+	    rows.add(succs);
+	}
+	this.minDefs = DeficiencySet.of(mins);
+	this.maxDefs = mask.minus(DeficiencySet.union(rows));
+	this.hash = 31 * mask.hashCode() + Arrays.hashCode(index2succs);
+
+	this.def2removed = Collections
+	    .synchronizedMap(new HashMap<Deficiency, Type>());
+	this.def2removedAndAbove = Collections
+	    .synchronizedMap(new HashMap<Deficiency, Type>());
     } // Type constructor
 
-    // deep copy constructor. 
-    public Type(Type other) {
-	this(other.copy());
+    /**
+     * Returns the type with the deficiencies and the ordering 
+     * given by <code>deficiency2ordering</code>. 
+     * Only the deficiencies of the successors of the nodes are read, 
+     * the map is neither stored nor modified. 
+     *
+     * @param deficiency2ordering 
+     *    maps deficiencies to their nodes 
+     *    which determine their predecessors and their successors. 
+     *    Declared <code>Deficiency</code>s 
+     *    (see 
+     *    {@link eu.simuline.relana.model.SClass#getDeclaredDeficiency2ordering}) 
+     *    extend the relation given by 
+     *    {@link eu.simuline.relana.model.SClass#superClass}. 
+     */
+    public static Type create(Map<Deficiency, DeficiencyNode> 
+			      deficiency2ordering) {
+	assert consistency(deficiency2ordering);
+	DeficiencySet mask = DeficiencySet.of(deficiency2ordering.keySet());
+	DeficiencySet[] index2succs = new DeficiencySet[length(mask)];
+	for (DeficiencyNode node : deficiency2ordering.values()) {
+	    index2succs[node.getDeficiency().getIndex()] = 
+		DeficiencySet.of(DeficiencyNode.unwrap(node.getSuccessors()));
+	}
+	return intern(new Type(mask, index2succs, null));
+    }
+
+    /**
+     * Returns the sublattice of this type 
+     * with the deficiencies in <code>subMask</code>. 
+     * This is a view in the sense of {@link #parent}. 
+     */
+    private Type getSublattice(DeficiencySet subMask) {
+	DeficiencySet[] subIndex2succs = new DeficiencySet[length(subMask)];
+	for (Deficiency def : subMask) {
+	    subIndex2succs[def.getIndex()] = 
+		this.index2succs[def.getIndex()].intersect(subMask);
+	}
+	return intern(new Type(subMask, subIndex2succs, this));
     }
 
-    // empty type 
-    public Type() {
-	this(new HashMap<Deficiency, DeficiencyNode>());
+    /**
+     * Returns the type structurally equal to <code>type</code> 
+     * created first, registering <code>type</code> if there is none. 
+     */
+    private static Type intern(Type type) {
+	return UNIQUE.intern(type);
     }
 
-    /* -------------------------------------------------------------------- *
+    /**
+     * Returns the length of the arrays indexed by the deficiencies 
+     * in <code>mask</code>. 
+     */
+    private static int length(DeficiencySet mask) {
+	int len = 0;
+	for (Deficiency def : mask) {
+	    len = def.getIndex() + 1;
+	}
+	return len;
+    }
+
+/* -------------------------------------------------------------------- *
      * methods.                                                             *
      * -------------------------------------------------------------------- */
 
     /**
      * Returns wheter the successors or the predecessors 
-     * of an value of {@link #deficiency2ordering} are all 
-     * in the value set of {@link #deficiency2ordering}. 
+     * of an value of <code>deficiency2ordering</code> are all 
+     * in the value set of <code>deficiency2ordering</code>. 
      */
-    private boolean consistency() {
-	for (DeficiencyNode node : this.deficiency2ordering.values()) {
+    private static boolean consistency(Map<Deficiency, DeficiencyNode> 
+				       deficiency2ordering) {
+	for (DeficiencyNode node : deficiency2ordering.values()) {
 	    for (DeficiencyNode succ : node.getSuccessors()) {
-		if (this.deficiency2ordering.get(succ.getDeficiency()) 
+		if (deficiency2ordering.get(succ.getDeficiency()) 
 		    != succ) {
 //System.out.println("succ.getDeficiency(): "+succ.getDeficiency());
 //System.out.println("succ: "+ succ);
@@ -93,7 +227,7 @@ public final class Type {
 		}
 	    }
 	    for (DeficiencyNode pred : node.getPredecessors()) {
-		if (this.deficiency2ordering.get(pred.getDeficiency()) 
+		if (deficiency2ordering.get(pred.getDeficiency()) 
 		    != pred) {
 //System.out.println("pred.getDeficiency(): "+pred.getDeficiency());
 //System.out.println("pred: "+ pred);
@@ -104,90 +238,53 @@ public final class Type {
 	return true;
     }
 
+    /**
+     * Returns the nodes of this type 
+     * which must not be modified. 
+     * For a modifiable copy use {@link #copy()}. 
+     *
+     * @return 
+     *    an unmodifiable map from the deficiencies of this type 
+     *    to their nodes. 
+     */
     public Map<Deficiency, DeficiencyNode> getDeficiency2ordering() {
-	return this.deficiency2ordering;
-    }
-
-
-    // **** also initializes fields minDefs and maxDefs
-    protected void initMMDefics() {
-	this.minDefs = new HashSet<Deficiency>();
-	this.maxDefs = new HashSet<Deficiency>();
-	
-	for (DeficiencyNode node : this.deficiency2ordering.values()) {
-	    if (node.getSuccessors().isEmpty()) {
-		this.minDefs.add(node.getDeficiency());
-	    }
-	    if (node.getPredecessors().isEmpty()) {
-		this.maxDefs.add(node.getDeficiency());
-	    }
+	Map<Deficiency, DeficiencyNode> res = this.deficiency2ordering;
+	if (res == null) {
+	    res = Collections.unmodifiableMap(copy());
+	    this.deficiency2ordering = res;
 	}
+	return res;
     }
 
     public static Type getEmpty() {
-	return new Type();
+	return EMPTY;
     }
 
-    protected Map<Deficiency, DeficiencyNode> copy() {
+    /**
+     * Returns new nodes of this type which may be modified 
+     * for example to create another type by {@link #create(Map)}. 
+     *
+     * @return 
+     *    a new map from the deficiencies of this type 
+     *    to new nodes linked with one another. 
+     */
+    public Map<Deficiency, DeficiencyNode> copy() {
 	Map<Deficiency, DeficiencyNode> newDeficiency2ordering = 
 	    new HashMap<Deficiency, DeficiencyNode>();
-	for (Map.Entry<Deficiency, DeficiencyNode> entry 
-		 : this.deficiency2ordering.entrySet()) {
-	    newDeficiency2ordering.put(entry.getKey(),
-				       new DeficiencyNode(entry.getValue()));
-	    assert        newDeficiency2ordering.get(entry.getKey())
-		.equals(this.deficiency2ordering.get(entry.getKey()));
+	for (Deficiency def : this.mask) {
+	    newDeficiency2ordering.put(def, new DeficiencyNode(def));
 	}
-
-	DeficiencyNode node;
-	Set<DeficiencyNode> predSuccs, predSuccsNew;
-	for (Map.Entry<Deficiency, DeficiencyNode> entry 
-		 : newDeficiency2ordering.entrySet()) {
-	    node = entry.getValue();
-
-	    predSuccs = node.getPredecessors();
-	    predSuccsNew = new HashSet<DeficiencyNode>();
-	    for (DeficiencyNode pred : predSuccs) {
-		predSuccsNew
-		    .add(newDeficiency2ordering.get(pred.getDeficiency()));
-	    }
-	    predSuccs.clear();
-	    predSuccs.addAll(predSuccsNew);
-
-	    predSuccs = node.getSuccessors();
-	    predSuccsNew = new HashSet<DeficiencyNode>();
-	    for (DeficiencyNode succ : predSuccs) {
-		predSuccsNew
-		    .add(newDeficiency2ordering.get(succ.getDeficiency()));
+	for (DeficiencyNode node : newDeficiency2ordering.values()) {
+	    for (Deficiency succ 
+		     : this.index2succs[node.getDeficiency().getIndex()]) {
+		DeficiencyNode succNode = newDeficiency2ordering.get(succ);
+		node    .addSuccessor  (succNode);
+		succNode.addPredecessor(node);
 	    }
-	    predSuccs.clear();
-	    predSuccs.addAll(predSuccsNew);
 	}
-
-
 	return newDeficiency2ordering;
     }
 
-    protected DeficiencyNode remove(Map<Deficiency, DeficiencyNode> def2ord,
-				    Deficiency def) {
-	DeficiencyNode node = def2ord.remove(def);
-	if (node == null) {
-	    throw new IllegalArgumentException
-		("Tried to remove deficiency \"" + def + 
-		 "\" which is not present in type " + this + ". ");
-	}
-	if (!node.getSuccessors().isEmpty()) {
-	    throw new IllegalArgumentException
-		("Tried to remove deficiency which is not minimal: " + 
-		 node.getSuccessors() + " are below. ");
-	}
-	// Remove link to node in predecessors 
-	for (DeficiencyNode pred : node.getPredecessors()) {
-	    pred.getSuccessors().remove(node);
-	}
-	return node;
-    }
-
     /**
      * Returns whether the given set of deficiencies 
      * is allowed by this type. 
@@ -202,44 +299,93 @@ public final class Type {
      *    This includes <code>asSet().containsAll(set)</code>. 
      */
     public boolean isValid(Set<Deficiency> set) {
-	DeficiencyNode node;
-//	Set<DeficiencyNode> successors;
-	for (Deficiency definSet : set) {
-	    node = this.deficiency2ordering.get(definSet);
-	    if (node == null) {
+	DeficiencySet defs = DeficiencySet.of(set);
+	if (!this.mask.containsAll(defs)) {
+	    return false;
+	}
+	for (Deficiency definSet : defs) {
+	    if (!defs.containsAll(this.index2succs[definSet.getIndex()])) {
 		return false;
 	    }
-	    for (DeficiencyNode succ : node.getSuccessors()) {
-		if (!set.contains(succ.getDeficiency())) {
-		    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Returns the ideals of this type, i.e. the sets of deficiencies 
+     * which are valid in the sense of {@link #isValid(Set)}. 
+     * These are the down-sets of the ordering of the deficiencies 
+     * and form a lattice with respect to inclusion. 
+     * The ideals are listed with ascending cardinality 
+     * starting with the empty set; 
+     * each ideal but the empty one arises from an ideal listed before 
+     * by adding a single deficiency. 
+     * Note that the number of ideals may grow exponentially 
+     * with the number of deficiencies. 
+     *
+     * @return 
+     *    the list of ideals of this type without duplicates. 
+     */
+    public List<Set<Deficiency>> getIdeals() {
+	List<Set<Deficiency>> res = new ArrayList<Set<Deficiency>>();
+	Set<Set<Deficiency>> found = new HashSet<Set<Deficiency>>();
+	res.add(DeficiencySet.EMPTY);
+	found.add(res.get(0));
+	// the ideals are added breadth first 
+	for (int ind = 0; ind < res.size(); ind++) {
+	    DeficiencySet ideal = (DeficiencySet) res.get(ind);
+	    for (Deficiency def : this.mask) {
+		if (ideal.contains(def) 
+		    || !ideal.containsAll(this.index2succs[def.getIndex()])) {
+		    continue;
+		}
+		Set<Deficiency> next = ideal
+		    .union(DeficiencySet.of(Collections.singleton(def)));
+		if (found.add(next)) {
+		    res.add(next);
 		}
 	    }
 	}
-	return true;
+	return res;
     }
 
     /**
-     * Returns <em>a copy</em> to be modified without affecting the original 
-     * of the maximal set of deficiencies of this type. 
+     * Returns the set of deficiencies of this type. 
      *
      * @return
-     *    <em>a copy</em> to be modified without affecting the original 
-     *    of the maximal set of deficiencies of this type. 
+     *    the immutable set of deficiencies of this type 
+     *    which coincides with {@link #getMask()}. 
      */
     public Set<Deficiency> asSet() {
-	return this.deficiency2ordering.keySet();
+	return this.mask;
+    }
+
+    /**
+     * Returns the set of all deficiencies of this type as a mask. 
+     *
+     * @return 
+     *    a set equal to {@link #asSet()}. 
+     */
+    public DeficiencySet getMask() {
+	return this.mask;
     }
 
 
     public Type getInverse() {
 	Map<Deficiency, DeficiencyNode> invDeficiency2ordering = 
 	    new HashMap<Deficiency, DeficiencyNode>();
-	for (Map.Entry<Deficiency, DeficiencyNode> entry 
-		 : this.deficiency2ordering.entrySet()) {
-	    invDeficiency2ordering.put(entry.getKey(),
-				       entry.getValue().getInverse());
+	for (Deficiency def : this.mask) {
+	    invDeficiency2ordering.put(def, new DeficiencyNode(def));
+	}
+	for (DeficiencyNode node : invDeficiency2ordering.values()) {
+	    for (Deficiency succ 
+		     : this.index2succs[node.getDeficiency().getIndex()]) {
+		DeficiencyNode succNode = invDeficiency2ordering.get(succ);
+		node    .addPredecessor(succNode);
+		succNode.addSuccessor  (node);
+	    }
 	}
-	return new Type(invDeficiency2ordering);
+	return create(invDeficiency2ordering);
     }
 
     public Set<Deficiency> getMin() {
@@ -250,157 +396,201 @@ public final class Type {
 	return this.maxDefs;
     }
 
-    public void addAll(Map<Deficiency, DeficiencyNode> deficiency2ordering) {
-	for (Map.Entry<Deficiency, DeficiencyNode> entry 
-		 : deficiency2ordering.entrySet()) {
-	    DeficiencyNode node = 
-		this.deficiency2ordering.get(entry.getKey());
-
-	    if (node == null) {
-		node = new DeficiencyNode(entry.getKey());
-	    } else {
-		node = new DeficiencyNode(node);
-	    }
-
-	    node.addAll(entry.getValue());
-	    this.deficiency2ordering.put(entry.getKey(), node);
+    /**
+     * Returns the sublattice of this type without the given deficiency. 
+     * This is cached. 
+     *
+     * @param def 
+     *    a <code>Deficiency</code> which is minimal within this type. 
+     * @throws IllegalArgumentException 
+     *    if <code>def</code> does not occur within this type 
+     *    or is not minimal. 
+     */
+    public Type remove(Deficiency def) {
+	Type res = this.def2removed.get(def);
+	if (res == null) {
+	    checkMinimal(def);
+	    res = getSublattice(this.mask
+				.minus(DeficiencySet.of(Collections
+							.singleton(def))));
+	    this.def2removed.put(def, res);
 	}
-	initMMDefics();
+	return res;
     }
 
-    public void replace(Deficiency oldDef, 
-			Deficiency newDefMin,
-			Deficiency newDefMax,
-			Type type) {
-	DeficiencyNode nodeMin = type.getDeficiency2ordering().get(newDefMin);
-	DeficiencyNode nodeMax = type.getDeficiency2ordering().get(newDefMax);
-	
-	boolean assertn = true;
-	assertn &= nodeMin.getSuccessors  ().isEmpty();
-	assertn &= nodeMax.getPredecessors().isEmpty();
-
-	DeficiencyNode node = this.deficiency2ordering.remove(oldDef);
-	for (DeficiencyNode pred : node.getPredecessors()) {
-	    assertn &= pred.getSuccessors().remove(node);
-	    assertn &= pred.getSuccessors().add(nodeMax);
+    private void checkMinimal(Deficiency def) {
+	if (!this.mask.contains(def)) {
+	    throw new IllegalArgumentException
+		("Tried to remove deficiency \"" + def + 
+		 "\" which is not present in type " + this + ". ");
 	}
-	nodeMax.addPredecessors(node.getPredecessors());
-
-	for (DeficiencyNode pred : node.getSuccessors()) {
-	    assertn &= pred.getPredecessors().remove(node);
-	    assertn &= pred.getPredecessors().add(nodeMin);
+	if (!this.index2succs[def.getIndex()].isEmpty()) {
+	    throw new IllegalArgumentException
+		("Tried to remove deficiency which is not minimal: " + 
+		 this.index2succs[def.getIndex()] + " are below. ");
 	}
-	nodeMin.addSuccessors(node.getSuccessors());
-
-	assert assertn;
-	this.deficiency2ordering.putAll(type.getDeficiency2ordering());
-	initMMDefics();
-    }
-
-
-
-
-
-    public Type remove(Deficiency def) {
-	Map<Deficiency, DeficiencyNode> newDef2ord = copy();
-	remove(newDef2ord, def);
-	return new Type(newDef2ord);
     }
 
-
     /**
-     * Returns a copy of this type 
+     * Returns the sublattice of this type 
      * where the given Deficiency, and all Deficiencies above it 
      * are removed. 
+     * This is cached. 
      *
      * @param def 
-     *    a <code>Deficiency</code> which is assumed 
-     *    to be minimal within this type. 
+     *    a <code>Deficiency</code> which is minimal within this type. 
      * @return 
      *    a <code>Type</code> value
+     * @throws IllegalArgumentException 
+     *    if <code>def</code> does not occur within this type 
+     *    or is not minimal. 
      */
     public Type removeAndAbove(Deficiency def) {
-	
-	Map<Deficiency, DeficiencyNode> newDef2ord = copy();
-
-	Stack<Deficiency> defsToBeRemoved = new Stack<Deficiency>();
-	defsToBeRemoved.push(def);
-	while (!defsToBeRemoved.empty()) {
-	    def = defsToBeRemoved.pop();
-	    DeficiencyNode node = remove(newDef2ord, def);
-	    for (DeficiencyNode pred : node.getPredecessors()) {
-		defsToBeRemoved.push(pred.getDeficiency());
+	Type res = this.def2removedAndAbove.get(def);
+	if (res == null) {
+	    checkMinimal(def);
+	    Set<Deficiency> above = new HashSet<Deficiency>();
+	    for (Deficiency cand : this.mask) {
+		if (implies(cand, def)) {
+		    above.add(cand);
+		}
 	    }
+	    res = getSublattice(this.mask.minus(DeficiencySet.of(above)));
+	    this.def2removedAndAbove.put(def, res);
 	}
+	return res;
+    }
 
-	return new Type(newDef2ord);
+    /**
+     * Returns the cones of the deficiencies of this type 
+     * building them if this is not yet done. 
+     */
+    private DeficiencySet[] getCones() {
+	DeficiencySet[] res = this.index2cone;
+	if (res == null) {
+	    res = this.parent == null ? computeCones() : restrictCones();
+	    this.index2cone = res;
+	}
+	return res;
     }
 
-    public boolean implies(Deficiency def1, Deficiency def2) {
-	DeficiencyNode node = this.deficiency2ordering.get(def1);
-	if (node == null) {
-	    throw new IllegalArgumentException
-		("Deficiency \"" + def1 + 
-		 "\" does not occur within type " + this + ". ");
+    /**
+     * Returns the cones of the deficiencies of this type 
+     * computed bottom up in topological order, 
+     * so that the cone of a deficiency is the union 
+     * of the cones of its successors and itself. 
+     *
+     * @throws IllegalStateException 
+     *    if the ordering of this type contains a cycle. 
+     */
+    private DeficiencySet[] computeCones() {
+	DeficiencySet[] res = new DeficiencySet[this.index2succs.length];
+	int[] index2pending = new int[this.index2succs.length];
+	Stack<DeficiencyNode> ready = new Stack<DeficiencyNode>();
+	Map<Deficiency, DeficiencyNode> def2ord = getDeficiency2ordering();
+	for (DeficiencyNode node : def2ord.values()) {
+	    index2pending[node.getDeficiency().getIndex()] = 
+		node.getSuccessors().size();
+	    if (node.getSuccessors().isEmpty()) {
+		ready.push(node);
+	    }
 	}
-	Stack<DeficiencyNode> search = new Stack<DeficiencyNode>();
-	search.push(node);
-	while (!search.empty()) {
-	    node = search.pop();
-	    if (node.getDeficiency().equals(def2)) {
-		return true;
+
+	int numDone = 0;
+	List<Set<Deficiency>> parts = new ArrayList<Set<Deficiency>>();
+	while (!ready.empty()) {
+	    DeficiencyNode node = ready.pop();
+	    parts.clear();
+	    parts.add(Collections.singleton(node.getDeficiency()));
+	    for (DeficiencyNode succ : node.getSuccessors()) {
+		parts.add(res[succ.getDeficiency().getIndex()]);
 	    }
-	    search.addAll(node.getSuccessors());
+	    res[node.getDeficiency().getIndex()] = DeficiencySet.union(parts);
+	    numDone++;
+	    for (DeficiencyNode pred : node.getPredecessors()) {
+		if (--index2pending[pred.getDeficiency().getIndex()] == 0) {
+		    ready.push(pred);
+		}
+	    }
+	}
+	if (numDone != def2ord.size()) {
+	    throw new IllegalStateException
+		("Found cyclic ordering in type " + this + ". ");
+	}
+	return res;
+    }
+
+    /**
+     * Returns the cones of the deficiencies of this type 
+     * as the cones within {@link #parent} restricted to this type. 
+     */
+    private DeficiencySet[] restrictCones() {
+	DeficiencySet[] res = new DeficiencySet[this.index2succs.length];
+	for (Deficiency def : this.mask) {
+	    res[def.getIndex()] = this.parent.getCone(def).intersect(this.mask);
 	}
-	return false;
+	return res;
     }
 
-    public Set<Deficiency> getCone(Deficiency def) {
-	Set<Deficiency> result = new HashSet<Deficiency>();
-	Stack<DeficiencyNode> toBeAdded = new Stack<DeficiencyNode>();
-	toBeAdded.push(this.deficiency2ordering.get(def));
-	DeficiencyNode node;
-	while (!toBeAdded.empty()) {
-	    node = toBeAdded.pop();
+    /**
+     * Returns whether <code>def1</code> implies <code>def2</code>, 
+     * i.e. whether <code>def2</code> is in the cone of <code>def1</code>. 
+     * This is a lookup in the closure of the ordering. 
+     *
+     * @throws IllegalArgumentException 
+     *    if <code>def1</code> does not occur within this type. 
+     */
+    public boolean implies(Deficiency def1, Deficiency def2) {
+	return getCone(def1).contains(def2);
+    }
 
-	    result.add(node.getDeficiency());
-	    toBeAdded.addAll(node.getSuccessors());
+    /**
+     * Returns the cone of <code>def</code>, 
+     * i.e. <code>def</code> and the deficiencies below. 
+     * This is a lookup in the closure of the ordering. 
+     *
+     * @return 
+     *    the cone as an immutable set. 
+     * @throws IllegalArgumentException 
+     *    if <code>def</code> does not occur within this type. 
+     */
+    public DeficiencySet getCone(Deficiency def) {
+	if (!this.mask.contains(def)) {
+	    throw new IllegalArgumentException
+		("Deficiency \"" + def + 
+		 "\" does not occur within type " + this + ". ");
 	}
-	
-	return result;
+	return getCones()[def.getIndex()];
     }
 
-    // **** this works properly only if deficiency2ordering is minimal. 
+    /**
+     * Returns whether <code>obj</code> is a type 
+     * with the same deficiencies and the same successors. 
+     * Since types are interned, this is the case 
+     * if and only if <code>obj</code> is this type. 
+     */
     public boolean equals(Object obj) {
+	if (this == obj) {
+	    return true;
+	}
 	if (!(obj instanceof Type)) {
 	    return false;
 	}
 
 	Type other = (Type) obj;
-	if (!asSet().equals(other.asSet())) {
-	    return false;
-	}
-	// Here, the types coincide as types. 
-
-	for (Map.Entry<Deficiency, DeficiencyNode> entry 
-		 : this.deficiency2ordering.entrySet()) {
-	    if (!other.deficiency2ordering.get(entry.getKey())
-		.equals(entry.getValue())) {
-		return false;
-	    }
-	}
-	// Here, found no deviations 
-	return true;
+	return this.hash == other.hash 
+	    && this.mask.equals(other.mask) 
+	    && Arrays.equals(this.index2succs, other.index2succs);
     }
 
     public int hashCode() {
-	return this.deficiency2ordering.hashCode();
+	return this.hash;
     }
 
     public String toString() {
 	StringBuffer buf = new StringBuffer();
 	buf.append("\n<Type>");
-	buf.append(this.deficiency2ordering);
+	buf.append(getDeficiency2ordering());
 	buf.append("</Type>");
 	return buf.toString();
     }
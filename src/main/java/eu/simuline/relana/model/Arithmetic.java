@@ -0,0 +1,215 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Enumeration of the arithmetics available
+ * for computing probabilities of effects:
+ * exact arithmetic based on <code>BigDecimal</code>s,
+ * arithmetic based on <code>double</code>s
+ * and arithmetic based on the logarithms of probabilities
+ * given as <code>double</code>s.
+ * The latter is intended for rare events
+ * the probabilities of which would underflow as <code>double</code>s.
+ * <p>
+ * For the arithmetics based on <code>double</code>s,
+ * a probability is given by its representation,
+ * a <code>double</code> which is the probability itself
+ * or its logarithm.
+ * The methods of this class operating on representations
+ * are not applicable to {@link #Exact}.
+ * The arithmetic is selected in
+ * {@link FlatCInstance#getProb(java.util.List, ProbMemo, Arithmetic)}.
+ *
+ * Created: Sat Oct 17 16:20:41 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public enum Arithmetic {
+
+    /**
+     * Exact arithmetic based on <code>BigDecimal</code>s.
+     */
+    Exact() {
+	double represent(BigDecimal prob) {
+	    throw noRepresentation();
+	}
+	double representCompl(BigDecimal prob) {
+	    throw noRepresentation();
+	}
+	double zero() {
+	    throw noRepresentation();
+	}
+	double one() {
+	    throw noRepresentation();
+	}
+	double multiply(double rep1, double rep2) {
+	    throw noRepresentation();
+	}
+	double add(double rep1, double rep2) {
+	    throw noRepresentation();
+	}
+	double toDouble(double rep) {
+	    throw noRepresentation();
+	}
+	double toLog(double rep) {
+	    throw noRepresentation();
+	}
+	double roundOff(double rep) {
+	    return 0;
+	}
+    },
+    /**
+     * Arithmetic based on <code>double</code>s
+     * representing probabilities.
+     */
+    Primitive() {
+	double represent(BigDecimal prob) {
+	    return prob.doubleValue();
+	}
+	double representCompl(BigDecimal prob) {
+	    return BigDecimal.ONE.subtract(prob).doubleValue();
+	}
+	double zero() {
+	    return 0;
+	}
+	double one() {
+	    return 1;
+	}
+	double multiply(double rep1, double rep2) {
+	    return rep1 * rep2;
+	}
+	double add(double rep1, double rep2) {
+	    return rep1 + rep2;
+	}
+	double toDouble(double rep) {
+	    return rep;
+	}
+	double toLog(double rep) {
+	    return Math.log(rep);
+	}
+	double roundOff(double rep) {
+	    return UNIT_ROUNDOFF;
+	}
+    },
+    /**
+     * Arithmetic based on <code>double</code>s
+     * representing the natural logarithms of probabilities.
+     */
+    Logarithmic() {
+	double represent(BigDecimal prob) {
+	    return Math.log(prob.doubleValue());
+	}
+	double representCompl(BigDecimal prob) {
+	    // accurate also for small probabilities
+	    return Math.log1p(-prob.doubleValue());
+	}
+	double zero() {
+	    return Double.NEGATIVE_INFINITY;
+	}
+	double one() {
+	    return 0;
+	}
+	double multiply(double rep1, double rep2) {
+	    return rep1 + rep2;
+	}
+	double add(double rep1, double rep2) {
+	    if (rep1 == Double.NEGATIVE_INFINITY) {
+		return rep2;
+	    }
+	    if (rep2 == Double.NEGATIVE_INFINITY) {
+		return rep1;
+	    }
+	    double max = Math.max(rep1, rep2);
+	    double min = Math.min(rep1, rep2);
+	    return max + Math.log1p(Math.exp(min - max));
+	}
+	double toDouble(double rep) {
+	    return Math.exp(rep);
+	}
+	double toLog(double rep) {
+	    return rep;
+	}
+	double roundOff(double rep) {
+	    // the absolute error of the logarithm
+	    // is the relative error of the probability.
+	    // The factor accounts for exp and log1p.
+	    return UNIT_ROUNDOFF * (4 + Math.abs(rep));
+	}
+    };
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The relative error of rounding a real number to a <code>double</code>.
+     */
+    static final double UNIT_ROUNDOFF = Math.ulp(1.0) / 2;
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    private static IllegalStateException noRepresentation() {
+	return new IllegalStateException
+	    ("Exact arithmetic does not represent probabilities " +
+	     "by doubles. ");
+    }
+
+    /**
+     * Returns the representation of the given probability.
+     */
+    abstract double represent(BigDecimal prob);
+
+    /**
+     * Returns the representation of the complement
+     * <code>1-prob</code> of the given probability.
+     * This is more accurate than representing the complement
+     * computed as a <code>double</code>.
+     */
+    abstract double representCompl(BigDecimal prob);
+
+    /**
+     * Returns the representation of the probability <code>0</code>.
+     */
+    abstract double zero();
+
+    /**
+     * Returns the representation of the probability <code>1</code>.
+     */
+    abstract double one();
+
+    /**
+     * Returns the representation of the product
+     * of the probabilities with the given representations.
+     */
+    abstract double multiply(double rep1, double rep2);
+
+    /**
+     * Returns the representation of the sum
+     * of the probabilities with the given representations.
+     */
+    abstract double add(double rep1, double rep2);
+
+    /**
+     * Returns the probability with the given representation.
+     * This may underflow for {@link #Logarithmic}.
+     */
+    abstract double toDouble(double rep);
+
+    /**
+     * Returns the natural logarithm of the probability
+     * with the given representation.
+     */
+    abstract double toLog(double rep);
+
+    /**
+     * Returns a bound for the relative error
+     * of the probability represented by <code>rep</code>
+     * caused by the single operation yielding <code>rep</code>.
+     */
+    abstract double roundOff(double rep);
+
+} // Arithmetic
@@ -0,0 +1,1022 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * A manager for reduced ordered binary decision diagrams
+ * used by {@link BddEvaluator} to compute probabilities of effects.
+ * Nodes are represented by <code>int</code>s:
+ * {@link #FALSE} and {@link #TRUE} are the terminal nodes,
+ * each other node refers to a variable and to a low and a high successor.
+ * <p>
+ * For each variable there is a unique table
+ * guaranteeing that the diagram is reduced,
+ * operations are implemented by {@link #ite}
+ * with a computed cache.
+ * Nodes are reference counted:
+ * results of operations are not referenced
+ * and so callers have to {@link #ref} the nodes they keep
+ * across further operations.
+ * Unreferenced nodes are garbage collected
+ * at the beginning of top-level operations only.
+ * Optionally, the variable order is improved by sifting
+ * which modifies nodes in place
+ * so that referenced nodes remain valid.
+ *
+ *
+ * Created: Sat Oct 17 10:12:41 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class Bdd {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The terminal node representing <code>false</code>.
+     */
+    public static final int FALSE = 0;
+
+    /**
+     * The terminal node representing <code>true</code>.
+     */
+    public static final int TRUE = 1;
+
+    /**
+     * Marks the end of a chain within a unique table or the free list.
+     */
+    private static final int NIL = -1;
+
+    /**
+     * The variable of terminal nodes.
+     */
+    private static final int TERMINAL = -1;
+
+    /**
+     * The variable of nodes in the free list.
+     */
+    private static final int FREED = -2;
+
+    private static final int INIT_NODES = 1 << 10;
+    private static final int INIT_BUCKETS = 1 << 4;
+    private static final int CACHE_SIZE = 1 << 16;
+
+    /**
+     * Sifting a variable further in one direction is given up
+     * if the number of nodes exceeds the number before sifting
+     * by this factor.
+     */
+    private static final double MAX_GROWTH = 1.2;
+
+    /**
+     * The number of entries of a frame
+     * on the stack of pending expansions of {@link #iteRec}.
+     */
+    private static final int ITE_FRAME = 5;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of variables created by {@link #newVar()}.
+     */
+    private int numVars;
+
+    /**
+     * Maps a variable to its level in the current order.
+     */
+    private int[] var2level;
+
+    /**
+     * Maps a level in the current order to its variable.
+     */
+    private int[] level2var;
+
+    // attributes of the nodes
+    private int[] nodeVar;
+    private int[] lows;
+    private int[] highs;
+    private int[] refs;
+    // chains within the unique tables and the free list
+    private int[] next;
+
+    /**
+     * For each variable the heads of the chains of its unique table.
+     */
+    private int[][] buckets;
+
+    /**
+     * For each variable the number of its nodes.
+     */
+    private int[] varCount;
+
+    /**
+     * The head of the free list.
+     */
+    private int freeList;
+
+    /**
+     * The number of node slots used so far including the terminals.
+     */
+    private int numSlots;
+
+    /**
+     * The number of non-terminal nodes not in the free list.
+     */
+    private int numLive;
+
+    // the computed cache for ite
+    private final int[] cacheF;
+    private final int[] cacheG;
+    private final int[] cacheH;
+    private final int[] cacheRes;
+
+    private boolean autoReorder;
+    private int gcThreshold;
+    private int reorderThreshold;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public Bdd() {
+	this.numVars = 0;
+	this.var2level = new int[INIT_BUCKETS];
+	this.level2var = new int[INIT_BUCKETS];
+	this.buckets   = new int[INIT_BUCKETS][];
+	this.varCount  = new int[INIT_BUCKETS];
+
+	this.nodeVar = new int[INIT_NODES];
+	this.lows    = new int[INIT_NODES];
+	this.highs   = new int[INIT_NODES];
+	this.refs    = new int[INIT_NODES];
+	this.next    = new int[INIT_NODES];
+	for (int node = FALSE; node <= TRUE; node++) {
+	    this.nodeVar[node] = TERMINAL;
+	    this.lows   [node] = node;
+	    this.highs  [node] = node;
+	    this.next   [node] = NIL;
+	}
+	this.numSlots = 2;
+	this.numLive = 0;
+	this.freeList = NIL;
+
+	this.cacheF   = new int[CACHE_SIZE];
+	this.cacheG   = new int[CACHE_SIZE];
+	this.cacheH   = new int[CACHE_SIZE];
+	this.cacheRes = new int[CACHE_SIZE];
+	clearCache();
+
+	this.autoReorder = false;
+	this.gcThreshold = INIT_NODES;
+	this.reorderThreshold = INIT_NODES;
+    } // Bdd constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods: variables and nodes.                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates a new variable placed below all variables present.
+     *
+     * @return
+     *    the index of the new variable.
+     */
+    public int newVar() {
+	if (this.numVars == this.var2level.length) {
+	    int len = 2 * this.numVars;
+	    this.var2level = Arrays.copyOf(this.var2level, len);
+	    this.level2var = Arrays.copyOf(this.level2var, len);
+	    this.buckets   = Arrays.copyOf(this.buckets,   len);
+	    this.varCount  = Arrays.copyOf(this.varCount,  len);
+	}
+	int var = this.numVars++;
+	this.var2level[var] = var;
+	this.level2var[var] = var;
+	this.buckets[var] = new int[INIT_BUCKETS];
+	Arrays.fill(this.buckets[var], NIL);
+	this.varCount[var] = 0;
+	return var;
+    }
+
+    public int numVars() {
+	return this.numVars;
+    }
+
+    /**
+     * Returns the node representing the given variable.
+     *
+     * @param var
+     *    a variable created by {@link #newVar()}.
+     * @return
+     *    the node with variable <code>var</code>,
+     *    low successor {@link #FALSE} and high successor {@link #TRUE}.
+     */
+    public int getVarNode(int var) {
+	return mk(var, FALSE, TRUE);
+    }
+
+    public int getVar(int node) {
+	return this.nodeVar[node];
+    }
+
+    public int getLow(int node) {
+	return this.lows[node];
+    }
+
+    public int getHigh(int node) {
+	return this.highs[node];
+    }
+
+    /**
+     * Returns the level of the variable of the given node
+     * in the current variable order.
+     *
+     * @param node
+     *    a node.
+     * @return
+     *    the level of the variable of <code>node</code>
+     *    or {@link Integer#MAX_VALUE} for terminal nodes.
+     */
+    public int getLevel(int node) {
+	return node <= TRUE
+	    ? Integer.MAX_VALUE
+	    : this.var2level[this.nodeVar[node]];
+    }
+
+    /**
+     * Returns the level of the given variable
+     * in the current variable order.
+     *
+     * @param var
+     *    a variable created by {@link #newVar()}.
+     * @return
+     *    the level of <code>var</code>.
+     */
+    public int getVarLevel(int var) {
+	return this.var2level[var];
+    }
+
+    public int getVarAtLevel(int level) {
+	return this.level2var[level];
+    }
+
+    /**
+     * Returns the number of non-terminal nodes
+     * including unreferenced ones not yet collected.
+     *
+     * @return
+     *    {@link #numLive}.
+     */
+    public int getNodeCount() {
+	return this.numLive;
+    }
+
+    public int ref(int node) {
+	this.refs[node]++;
+	return node;
+    }
+
+    public void deref(int node) {
+	assert node <= TRUE || this.refs[node] > 0;
+	this.refs[node]--;
+    }
+
+    /**
+     * Enables or disables reordering by sifting
+     * triggered at the beginning of top-level operations
+     * whenever the number of nodes has grown considerably.
+     *
+     * @param autoReorder
+     *    whether to reorder automatically.
+     */
+    public void setAutoReorder(boolean autoReorder) {
+	this.autoReorder = autoReorder;
+    }
+
+    /**
+     * Returns the unique node with the given variable and successors.
+     * The successors are referenced by a newly created node.
+     */
+    private int mk(int var, int low, int high) {
+	if (low == high) {
+	    return low;
+	}
+	int[] tab = this.buckets[var];
+	int idx = hash(low, high) & (tab.length - 1);
+	for (int node = tab[idx]; node != NIL; node = this.next[node]) {
+	    if (this.lows[node] == low && this.highs[node] == high) {
+		return node;
+	    }
+	}
+
+	int node = allocNode();
+	this.nodeVar[node] = var;
+	this.lows   [node] = low;
+	this.highs  [node] = high;
+	this.refs   [node] = 0;
+	this.refs[low]++;
+	this.refs[high]++;
+	insert(node);
+	this.numLive++;
+	return node;
+    }
+
+    private static int hash(int low, int high) {
+	return (low * 12582917) ^ (high * 4256249) ^ (high >>> 7);
+    }
+
+    private int allocNode() {
+	if (this.freeList != NIL) {
+	    int node = this.freeList;
+	    this.freeList = this.next[node];
+	    return node;
+	}
+	if (this.numSlots == this.nodeVar.length) {
+	    int len = 2 * this.numSlots;
+	    this.nodeVar = Arrays.copyOf(this.nodeVar, len);
+	    this.lows    = Arrays.copyOf(this.lows,    len);
+	    this.highs   = Arrays.copyOf(this.highs,   len);
+	    this.refs    = Arrays.copyOf(this.refs,    len);
+	    this.next    = Arrays.copyOf(this.next,    len);
+	}
+	return this.numSlots++;
+    }
+
+    /**
+     * Inserts <code>node</code> into the unique table of its variable
+     * which is resized if necessary.
+     */
+    private void insert(int node) {
+	int var = this.nodeVar[node];
+	int[] tab = this.buckets[var];
+	if (this.varCount[var] >= 2 * tab.length) {
+	    tab = rehash(var);
+	}
+	int idx = hash(this.lows[node], this.highs[node]) & (tab.length - 1);
+	this.next[node] = tab[idx];
+	tab[idx] = node;
+	this.varCount[var]++;
+    }
+
+    private int[] rehash(int var) {
+	int[] oldTab = this.buckets[var];
+	int[] tab = new int[2 * oldTab.length];
+	Arrays.fill(tab, NIL);
+	int idx, succ;
+	for (int head : oldTab) {
+	    for (int node = head; node != NIL; node = succ) {
+		succ = this.next[node];
+		idx = hash(this.lows[node], this.highs[node])
+		    & (tab.length - 1);
+		this.next[node] = tab[idx];
+		tab[idx] = node;
+	    }
+	}
+	this.buckets[var] = tab;
+	return tab;
+    }
+
+    /**
+     * Removes <code>node</code> from the unique table of its variable.
+     */
+    private void unlink(int node) {
+	int var = this.nodeVar[node];
+	int[] tab = this.buckets[var];
+	int idx = hash(this.lows[node], this.highs[node]) & (tab.length - 1);
+	if (tab[idx] == node) {
+	    tab[idx] = this.next[node];
+	} else {
+	    int prev = tab[idx];
+	    while (this.next[prev] != node) {
+		prev = this.next[prev];
+	    }
+	    this.next[prev] = this.next[node];
+	}
+	this.varCount[var]--;
+    }
+
+    /**
+     * Frees the unreferenced node <code>node</code>
+     * and, transitively, successors becoming unreferenced thereby.
+     * The nodes to be freed are kept on an explicit stack
+     * so that the depth is not limited by the stack of the thread.
+     */
+    private void free(int node) {
+	assert this.refs[node] == 0;
+	IntStack stack = new IntStack();
+	stack.push(node);
+	while (!stack.isEmpty()) {
+	    int cand = stack.pop();
+	    unlink(cand);
+	    this.nodeVar[cand] = FREED;
+	    this.next[cand] = this.freeList;
+	    this.freeList = cand;
+	    this.numLive--;
+	    int low  = this.lows [cand];
+	    int high = this.highs[cand];
+	    this.refs[low]--;
+	    if (low > TRUE && this.refs[low] == 0) {
+		stack.push(low);
+	    }
+	    this.refs[high]--;
+	    if (high > TRUE && this.refs[high] == 0) {
+		stack.push(high);
+	    }
+	}
+    }
+
+    /**
+     * Frees all unreferenced nodes and clears the computed cache.
+     */
+    public void gc() {
+	clearCache();
+	for (int node = TRUE + 1; node < this.numSlots; node++) {
+	    if (this.nodeVar[node] != FREED && this.refs[node] == 0) {
+		free(node);
+	    }
+	}
+    }
+
+    private void clearCache() {
+	Arrays.fill(this.cacheF, NIL);
+    }
+
+    /**
+     * Invoked at the beginning of top-level operations:
+     * collects garbage and reorders if the number of nodes requires it.
+     * The operands are protected from being collected.
+     */
+    private void maintain(int opF, int opG, int opH) {
+	if (this.numLive < this.gcThreshold &&
+	    !(this.autoReorder && this.numLive >= this.reorderThreshold)) {
+	    return;
+	}
+	ref(opF);
+	ref(opG);
+	ref(opH);
+	gc();
+	if (this.autoReorder && this.numLive >= this.reorderThreshold) {
+	    reorder();
+	    this.reorderThreshold = Math.max(INIT_NODES, 2 * this.numLive);
+	}
+	this.gcThreshold = Math.max(INIT_NODES, 2 * this.numLive);
+	deref(opF);
+	deref(opG);
+	deref(opH);
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: operations.                                                 *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the node representing
+     * <code>if f then g else h</code>.
+     *
+     * @param opF
+     *    the condition.
+     * @param opG
+     *    the node representing the then-part.
+     * @param opH
+     *    the node representing the else-part.
+     * @return
+     *    the unreferenced node representing
+     *    <code>(f and g) or (not f and h)</code>.
+     */
+    public int ite(int opF, int opG, int opH) {
+	maintain(opF, opG, opH);
+	return iteRec(opF, opG, opH);
+    }
+
+    public int and(int opF, int opG) {
+	return ite(opF, opG, FALSE);
+    }
+
+    public int or(int opF, int opG) {
+	return ite(opF, TRUE, opG);
+    }
+
+    public int not(int opF) {
+	return ite(opF, FALSE, TRUE);
+    }
+
+    /**
+     * Computes <code>if f then g else h</code>
+     * by Shannon expansion at the topmost level of the operands.
+     * The pending expansions are kept on an explicit stack
+     * of frames of {@link #ITE_FRAME} entries:
+     * the operands, the level and the result for the low cofactors
+     * or {@link #NIL} if not yet known.
+     * Thus the depth, which is bounded by the number of variables,
+     * is not limited by the stack of the thread.
+     */
+    private int iteRec(int opF, int opG, int opH) {
+	IntStack stack = new IntStack();
+	int res;
+	while (true) {
+	    res = iteLookup(opF, opG, opH);
+	    if (res == NIL) {
+		// expand: the low cofactors first
+		int top = Math.min(getLevel(opF), Math.min(getLevel(opG),
+							   getLevel(opH)));
+		stack.push(opF);
+		stack.push(opG);
+		stack.push(opH);
+		stack.push(top);
+		stack.push(NIL);
+		opF = cofactor(opF, top, false);
+		opG = cofactor(opG, top, false);
+		opH = cofactor(opH, top, false);
+		continue;
+	    }
+	    // Here, res is the result of the operation evaluated last
+	    while (true) {
+		if (stack.isEmpty()) {
+		    return res;
+		}
+		int base = stack.size() - ITE_FRAME;
+		int top = stack.get(base + 3);
+		if (stack.get(base + 4) == NIL) {
+		    // continue with the high cofactors
+		    stack.set(base + 4, res);
+		    opF = cofactor(stack.get(base    ), top, true);
+		    opG = cofactor(stack.get(base + 1), top, true);
+		    opH = cofactor(stack.get(base + 2), top, true);
+		    break;
+		}
+		res = mk(this.level2var[top], stack.get(base + 4), res);
+		int slot = cacheSlot(stack.get(base    ),
+				     stack.get(base + 1),
+				     stack.get(base + 2));
+		this.cacheF  [slot] = stack.get(base    );
+		this.cacheG  [slot] = stack.get(base + 1);
+		this.cacheH  [slot] = stack.get(base + 2);
+		this.cacheRes[slot] = res;
+		stack.shrink(base);
+	    }
+	}
+    }
+
+    /**
+     * Returns <code>if f then g else h</code>
+     * if this is a terminal case or found in the computed cache;
+     * otherwise {@link #NIL}.
+     */
+    private int iteLookup(int opF, int opG, int opH) {
+	// terminal cases
+	if (opF == TRUE) {
+	    return opG;
+	}
+	if (opF == FALSE) {
+	    return opH;
+	}
+	if (opG == opH) {
+	    return opG;
+	}
+	if (opG == TRUE && opH == FALSE) {
+	    return opF;
+	}
+
+	int slot = cacheSlot(opF, opG, opH);
+	if (this.cacheF[slot] == opF &&
+	    this.cacheG[slot] == opG &&
+	    this.cacheH[slot] == opH) {
+	    return this.cacheRes[slot];
+	}
+	return NIL;
+    }
+
+    private static int cacheSlot(int opF, int opG, int opH) {
+	int slot = ((opF * 31 + opG) * 31 + opH) * 0x9E3779B1;
+	return (slot ^ (slot >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    private int cofactor(int node, int level, boolean val) {
+	if (getLevel(node) != level) {
+	    return node;
+	}
+	return val ? this.highs[node] : this.lows[node];
+    }
+
+    /**
+     * Returns the number of nodes reachable from <code>node</code>
+     * including terminals.
+     *
+     * @param node
+     *    a node.
+     * @return
+     *    the number of nodes reachable from <code>node</code>.
+     */
+    public int size(int node) {
+	return size(node, new boolean[this.numSlots]);
+    }
+
+    private int size(int node, boolean[] visited) {
+	int res = 0;
+	IntStack stack = new IntStack();
+	stack.push(node);
+	while (!stack.isEmpty()) {
+	    int cand = stack.pop();
+	    if (visited[cand]) {
+		continue;
+	    }
+	    visited[cand] = true;
+	    res++;
+	    if (cand > TRUE) {
+		stack.push(this.lows [cand]);
+		stack.push(this.highs[cand]);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability that the function represented by
+     * <code>node</code> evaluates to <code>true</code>
+     * if the variables are independent
+     * and are <code>true</code> with the given probabilities.
+     * This is a single pass over the nodes reachable from <code>node</code>.
+     *
+     * @param node
+     *    a node.
+     * @param probs
+     *    maps each variable to the probability that it is <code>true</code>.
+     * @return
+     *    the probability that <code>node</code> evaluates to true.
+     */
+    public BigDecimal getProb(int node, BigDecimal[] probs) {
+	return getProb(node, probs, new BigDecimal[this.numSlots]);
+    }
+
+    /**
+     * Returns the probabilities that the functions represented by
+     * <code>nodes</code> evaluate to <code>true</code>
+     * as {@link #getProb(int, BigDecimal[])} does for a single node.
+     * The probabilities of the nodes are kept in a single table
+     * so that nodes shared by several of the <code>nodes</code>
+     * are evaluated once.
+     * This is a single pass over the nodes reachable from any of them.
+     *
+     * @param nodes
+     *    the nodes.
+     * @param probs
+     *    maps each variable to the probability that it is <code>true</code>.
+     * @return
+     *    the probabilities indexed as <code>nodes</code>.
+     */
+    public BigDecimal[] getProbs(int[] nodes, BigDecimal[] probs) {
+	BigDecimal[] node2prob = new BigDecimal[this.numSlots];
+	BigDecimal[] res = new BigDecimal[nodes.length];
+	for (int i = 0; i < nodes.length; i++) {
+	    res[i] = getProb(nodes[i], probs, node2prob);
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability of <code>node</code>
+     * and enters the probabilities of the inner nodes reachable
+     * into <code>node2prob</code>.
+     * The nodes are evaluated bottom up on an explicit stack
+     * so that the depth is not limited by the stack of the thread.
+     */
+    private BigDecimal getProb(int node,
+			       BigDecimal[] probs,
+			       BigDecimal[] node2prob) {
+	IntStack stack = new IntStack();
+	stack.push(node);
+	while (!stack.isEmpty()) {
+	    int cand = stack.peek();
+	    if (cand <= TRUE || node2prob[cand] != null) {
+		stack.pop();
+		continue;
+	    }
+	    BigDecimal probH = getKnownProb(this.highs[cand], node2prob);
+	    BigDecimal probL = getKnownProb(this.lows [cand], node2prob);
+	    if (probH == null || probL == null) {
+		// evaluate the successors first
+		if (probH == null) {
+		    stack.push(this.highs[cand]);
+		}
+		if (probL == null) {
+		    stack.push(this.lows[cand]);
+		}
+		continue;
+	    }
+	    BigDecimal prob = probs[this.nodeVar[cand]];
+	    node2prob[cand] =    prob .multiply(probH)
+		.add(BigDecimal.ONE.subtract(prob).multiply(probL));
+	    stack.pop();
+	}
+	return getKnownProb(node, node2prob);
+    }
+
+    /**
+     * Returns the probability of <code>node</code>
+     * if it is a terminal or found in <code>node2prob</code>;
+     * otherwise <code>null</code>.
+     */
+    private static BigDecimal getKnownProb(int node, BigDecimal[] node2prob) {
+	if (node == FALSE) {
+	    return BigDecimal.ZERO;
+	}
+	if (node == TRUE) {
+	    return BigDecimal.ONE;
+	}
+	return node2prob[node];
+    }
+
+    /**
+     * Returns the partial derivatives
+     * of the probability that <code>node</code> evaluates to true
+     * with respect to the probabilities of the variables
+     * computed by reverse-mode differentiation:
+     * After computing the probabilities of the nodes bottom up,
+     * the derivatives with respect to the probabilities of the nodes
+     * are propagated top down in the order of the levels.
+     * The derivative with respect to the probability of a variable
+     * is the sum over its nodes of the derivative of the node
+     * times the difference of the probabilities of its successors.
+     * This takes about twice the effort of {@link #getProb}.
+     *
+     * @param node
+     *    a node.
+     * @param probs
+     *    maps each variable to the probability that it is <code>true</code>.
+     * @return
+     *    the partial derivatives indexed by variable.
+     *    Since the probability is affine in the probability of each variable,
+     *    this is also the difference of the probabilities
+     *    with the variable set to <code>true</code> and to <code>false</code>.
+     */
+    public BigDecimal[] getGradient(int node, BigDecimal[] probs) {
+	BigDecimal[] res = new BigDecimal[this.numVars];
+	Arrays.fill(res, BigDecimal.ZERO);
+	if (node <= TRUE) {
+	    return res;
+	}
+	BigDecimal[] node2prob = new BigDecimal[this.numSlots];
+	getProb(node, probs, node2prob);
+
+	// the inner nodes reachable ordered by level
+	List<Integer> nodes = new ArrayList<Integer>();
+	for (int cand = TRUE + 1; cand < this.numSlots; cand++) {
+	    if (node2prob[cand] != null) {
+		nodes.add(cand);
+	    }
+	}
+	Collections.sort(nodes, new Comparator<Integer>() {
+		public int compare(Integer node1, Integer node2) {
+		    return getLevel(node1) - getLevel(node2);
+		}
+	    });
+
+	BigDecimal[] adjoints = new BigDecimal[this.numSlots];
+	adjoints[node] = BigDecimal.ONE;
+	BigDecimal adj, prob;
+	for (int cand : nodes) {
+	    adj = adjoints[cand];
+	    if (adj == null) {
+		continue;
+	    }
+	    int var = this.nodeVar[cand];
+	    int low  = this.lows [cand];
+	    int high = this.highs[cand];
+	    prob = probs[var];
+	    res[var] = res[var].add(adj.multiply(getKnownProb(high, node2prob)
+						 .subtract(getKnownProb(low,
+								node2prob))));
+	    addAdjoint(adjoints, high, adj.multiply(prob));
+	    addAdjoint(adjoints, low,
+		       adj.multiply(BigDecimal.ONE.subtract(prob)));
+	}
+	return res;
+    }
+
+    private static void addAdjoint(BigDecimal[] adjoints,
+				   int node,
+				   BigDecimal adj) {
+	if (node <= TRUE) {
+	    return;
+	}
+	adjoints[node] = adjoints[node] == null
+	    ? adj
+	    : adjoints[node].add(adj);
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: reordering.                                                 *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Reorders the variables by sifting:
+     * one after the other, starting with the variables with most nodes,
+     * each variable is moved through all levels
+     * and finally placed at the level where the number of nodes is minimal.
+     * Nodes not referenced are collected before.
+     */
+    public void reorder() {
+	gc();
+	Integer[] vars = new Integer[this.numVars];
+	for (int var = 0; var < this.numVars; var++) {
+	    vars[var] = var;
+	}
+	Arrays.sort(vars, new Comparator<Integer>() {
+		public int compare(Integer var1, Integer var2) {
+		    return varCount[var2] - varCount[var1];
+		}
+	    });
+	for (int var : vars) {
+	    sift(var);
+	}
+	clearCache();
+    }
+
+    private void sift(int var) {
+	int best = this.numLive;
+	int bestLevel = this.var2level[var];
+	int limit = (int) (MAX_GROWTH * this.numLive) + 1;
+
+	// move down
+	while (this.var2level[var] < this.numVars - 1) {
+	    swap(this.var2level[var]);
+	    if (this.numLive < best) {
+		best = this.numLive;
+		bestLevel = this.var2level[var];
+	    }
+	    if (this.numLive > limit) {
+		break;
+	    }
+	}
+	// move up
+	while (this.var2level[var] > 0) {
+	    swap(this.var2level[var] - 1);
+	    if (this.numLive < best) {
+		best = this.numLive;
+		bestLevel = this.var2level[var];
+	    }
+	    if (this.numLive > limit) {
+		break;
+	    }
+	}
+	// move to the best level found
+	while (this.var2level[var] < bestLevel) {
+	    swap(this.var2level[var]);
+	}
+	while (this.var2level[var] > bestLevel) {
+	    swap(this.var2level[var] - 1);
+	}
+    }
+
+    /**
+     * Exchanges the variables at level <code>level</code>
+     * and <code>level+1</code>.
+     * The nodes of the upper variable depending on the lower one
+     * are rewritten in place so that they represent the same functions.
+     */
+    private void swap(int level) {
+	int varX = this.level2var[level];
+	int varY = this.level2var[level + 1];
+
+	// collect the nodes of varX and clear its unique table
+	int[] nodesX = new int[this.varCount[varX]];
+	int num = 0;
+	int[] tab = this.buckets[varX];
+	for (int idx = 0; idx < tab.length; idx++) {
+	    for (int node = tab[idx]; node != NIL; node = this.next[node]) {
+		nodesX[num++] = node;
+	    }
+	    tab[idx] = NIL;
+	}
+	this.varCount[varX] = 0;
+
+	// reinsert the nodes independent of varY first
+	// so that they are found by mk below
+	int numDep = 0;
+	for (int idx = 0; idx < num; idx++) {
+	    int node = nodesX[idx];
+	    if (this.nodeVar[this.lows [node]] == varY ||
+		this.nodeVar[this.highs[node]] == varY) {
+		nodesX[numDep++] = node;
+	    } else {
+		insert(node);
+	    }
+	}
+
+	// rewrite the nodes depending on varY
+	int node, succ0, succ1, succ00, succ01, succ10, succ11, low, high;
+	for (int idx = 0; idx < numDep; idx++) {
+	    node = nodesX[idx];
+	    succ0 = this.lows [node];
+	    succ1 = this.highs[node];
+	    if (this.nodeVar[succ0] == varY) {
+		succ00 = this.lows [succ0];
+		succ01 = this.highs[succ0];
+	    } else {
+		succ00 = succ0;
+		succ01 = succ0;
+	    }
+	    if (this.nodeVar[succ1] == varY) {
+		succ10 = this.lows [succ1];
+		succ11 = this.highs[succ1];
+	    } else {
+		succ10 = succ1;
+		succ11 = succ1;
+	    }
+	    low  = ref(mk(varX, succ00, succ10));
+	    high = ref(mk(varX, succ01, succ11));
+
+	    this.nodeVar[node] = varY;
+	    this.lows   [node] = low;
+	    this.highs  [node] = high;
+	    insert(node);
+
+	    this.refs[succ0]--;
+	    if (succ0 > TRUE && this.refs[succ0] == 0) {
+		free(succ0);
+	    }
+	    this.refs[succ1]--;
+	    if (succ1 > TRUE && this.refs[succ1] == 0) {
+		free(succ1);
+	    }
+	}
+
+	this.level2var[level    ] = varY;
+	this.level2var[level + 1] = varX;
+	this.var2level[varY] = level;
+	this.var2level[varX] = level + 1;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<Bdd vars=\"");
+	res.append(this.numVars);
+	res.append("\" nodes=\"");
+	res.append(this.numLive);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * A growable stack of <code>int</code>s
+     * replacing recursion over nodes.
+     */
+    private static final class IntStack {
+	private int[] elems = new int[64];
+	private int size;
+
+	boolean isEmpty() {
+	    return this.size == 0;
+	}
+
+	int size() {
+	    return this.size;
+	}
+
+	void push(int elem) {
+	    if (this.size == this.elems.length) {
+		this.elems = Arrays.copyOf(this.elems, 2 * this.size);
+	    }
+	    this.elems[this.size++] = elem;
+	}
+
+	int pop() {
+	    return this.elems[--this.size];
+	}
+
+	int peek() {
+	    return this.elems[this.size - 1];
+	}
+
+	int get(int idx) {
+	    return this.elems[idx];
+	}
+
+	void set(int idx, int elem) {
+	    this.elems[idx] = elem;
+	}
+
+	/**
+	 * Removes all but the lowest <code>size</code> entries.
+	 */
+	void shrink(int size) {
+	    this.size = size;
+	}
+    } // class IntStack
+
+} // Bdd
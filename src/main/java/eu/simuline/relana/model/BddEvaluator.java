@@ -0,0 +1,701 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+import eu.simuline.relana.expressions.Type;
+
+import java.math.BigDecimal;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Computes the probabilities of the effects of a {@link FlatCInstance}
+ * by compiling their formulae into a binary decision diagram {@link Bdd}
+ * as an alternative to {@link FlatCInstance#getProb(List)}.
+ * <p>
+ * For each effect with a probability distribution
+ * and for each of its {@link Deficiency}s <code>def</code>
+ * there is a variable which is <code>true</code>
+ * with probability {@link ProbDistr#getProb(Deficiency)}.
+ * The deficiency <code>def</code> occurs if this variable is true
+ * and all deficiencies below <code>def</code> occur.
+ * This reflects the conditioning performed by
+ * {@link FlatCInstance#add(SInstance, Deficiency)} and
+ * {@link FlatCInstance#remove(SInstance, Deficiency)}.
+ * The formula of an effect is compiled into one diagram
+ * for each deficiency of its type,
+ * describing whether this deficiency is in the value of the formula.
+ * Effects given by formulae are inlined.
+ * The probability of an effect is then computed
+ * in a single pass over the diagram.
+ *
+ *
+ * Created: Sat Oct 17 11:47:05 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class BddEvaluator {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Orders deficiencies by name.
+     */
+    static final Comparator<Deficiency> DEF_CMP =
+	new Comparator<Deficiency>() {
+	    public int compare(Deficiency def1, Deficiency def2) {
+		return def1.getName().compareTo(def2.getName());
+	    }
+	};
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The instance the effects of which are evaluated.
+     */
+    private final FlatCInstance flatCInst;
+
+    /**
+     * The diagram manager all nodes belong to.
+     */
+    private final Bdd bdd;
+
+    /**
+     * Maps each variable of {@link #bdd}
+     * to the probability that it is <code>true</code>.
+     */
+    private final List<BigDecimal> probs;
+
+    /**
+     * Maps each variable of {@link #bdd}
+     * to the effect with distribution it belongs to.
+     */
+    private final List<SInstance> var2effect;
+
+    /**
+     * Maps each variable of {@link #bdd}
+     * to the deficiency it belongs to.
+     */
+    private final List<Deficiency> var2def;
+
+    /**
+     * Maps each effect compiled already to its deficiencies
+     * which are in turn mapped to the referenced node
+     * describing whether the deficiency occurs.
+     * Deficiencies which may not occur are omitted.
+     */
+    private final Map<SInstance, Map<Deficiency, Integer>> effect2nodes;
+
+    /**
+     * Like {@link #effect2nodes} but for formulae.
+     */
+    private final Map<Formula, Map<Deficiency, Integer>> form2nodes;
+
+    /**
+     * The effects given by formulae currently being compiled:
+     * used to detect cyclic definitions.
+     */
+    private final Set<SInstance> inProgress;
+
+    /**
+     * Maps the paths of the effects evaluated so far
+     * to the referenced node describing whether the effect occurs.
+     */
+    private final Map<List<String>, Integer> path2root;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public BddEvaluator(FlatCInstance flatCInst) {
+	this(flatCInst, false);
+    }
+
+    /**
+     * Creates an evaluator for the effects of <code>flatCInst</code>.
+     * The variables are ordered
+     * according to the paths of the effects with distribution
+     * and bottom up within the types of the effects.
+     *
+     * @param flatCInst
+     *    the instance the effects of which are to be evaluated.
+     * @param autoReorder
+     *    whether the variables of the diagram
+     *    shall be reordered dynamically by sifting.
+     */
+    public BddEvaluator(FlatCInstance flatCInst, boolean autoReorder) {
+	this.flatCInst = flatCInst;
+	this.bdd = new Bdd();
+	this.bdd.setAutoReorder(autoReorder);
+	this.probs = new ArrayList<BigDecimal>();
+	this.var2effect = new ArrayList<SInstance>();
+	this.var2def    = new ArrayList<Deficiency>();
+	this.effect2nodes = new HashMap<SInstance, Map<Deficiency, Integer>>();
+	this.form2nodes   = new HashMap<Formula,   Map<Deficiency, Integer>>();
+	this.inProgress = new HashSet<SInstance>();
+	this.path2root = new TreeMap<List<String>, Integer>
+	    (FlatCInstance.PATH_CMP);
+
+	for (SInstance serv : flatCInst.getEffects().values()) {
+	    if (serv.getDistr() != null) {
+		compileEffect(serv);
+	    }
+	}
+    } // BddEvaluator constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public Bdd getBdd() {
+	return this.bdd;
+    }
+
+    /**
+     * Returns the deficiencies of <code>type</code>
+     * such that each deficiency comes after all deficiencies below it.
+     * Deficiencies not related are ordered by name.
+     *
+     * @param type
+     *    a type.
+     * @return
+     *    the deficiencies of <code>type</code> ordered bottom up.
+     */
+    static List<Deficiency> bottomUp(Type type) {
+	List<Deficiency> res = new ArrayList<Deficiency>();
+	Set<Deficiency> done = new HashSet<Deficiency>();
+	List<Deficiency> layer;
+	while (done.size() < type.asSet().size()) {
+	    layer = new ArrayList<Deficiency>();
+	    for (DeficiencyNode node
+		     : type.getDeficiency2ordering().values()) {
+		if (!done.contains(node.getDeficiency()) &&
+		    done.containsAll(DeficiencyNode
+				     .unwrap(node.getSuccessors()))) {
+		    layer.add(node.getDeficiency());
+		}
+	    }
+	    if (layer.isEmpty()) {
+		throw new IllegalArgumentException
+		    ("Found cyclic type " + type + ". ");
+	    }
+	    Collections.sort(layer, DEF_CMP);
+	    res .addAll(layer);
+	    done.addAll(layer);
+	}
+	return res;
+    }
+
+    /**
+     * Creates the variables for the effect <code>serv</code>
+     * which has a probability distribution
+     * and returns the nodes describing whether the deficiencies occur.
+     */
+    private Map<Deficiency, Integer> declare(SInstance serv) {
+	Map<Deficiency, Integer> res = new HashMap<Deficiency, Integer>();
+	for (Deficiency def : bottomUp(serv.getType())) {
+	    int var = this.bdd.newVar();
+	    this.probs.add(serv.getDistr().getProb(def));
+	    this.var2effect.add(serv);
+	    this.var2def   .add(def);
+	    int node = this.bdd.ref(this.bdd.getVarNode(var));
+	    for (DeficiencyNode succ : serv.getType().getDeficiency2ordering()
+		     .get(def).getSuccessors()) {
+		node = andRef(node, res.get(succ.getDeficiency()));
+	    }
+	    res.put(def, node);
+	}
+	return res;
+    }
+
+    /**
+     * Returns the nodes for the effect <code>serv</code>
+     * and compiles it if this was not yet done.
+     */
+    private Map<Deficiency, Integer> compileEffect(SInstance serv) {
+	Map<Deficiency, Integer> res = this.effect2nodes.get(serv);
+	if (res != null) {
+	    return res;
+	}
+
+	if (serv.getDistr() != null) {
+	    res = declare(serv);
+	} else if (serv.getFormula() != null) {
+	    if (!this.inProgress.add(serv)) {
+		throw new IllegalStateException
+		    ("Found cyclic definition of effect " + serv + ". ");
+	    }
+	    res = compile(serv.getFormula());
+	    this.inProgress.remove(serv);
+	} else {
+	    throw new IllegalArgumentException
+		("Effect " + serv + " has neither a probability distribution " +
+		 "nor a formula. ");
+	}
+	this.effect2nodes.put(serv, res);
+	return res;
+    }
+
+    /**
+     * Returns the nodes for the formula <code>form</code>
+     * and compiles it if this was not yet done.
+     */
+    private Map<Deficiency, Integer> compile(Formula form) {
+	Map<Deficiency, Integer> res = this.form2nodes.get(form);
+	if (res != null) {
+	    return res;
+	}
+
+	if (form.getConst() != null) {
+	    res = new HashMap<Deficiency, Integer>();
+	    for (Deficiency def : form.getConst()) {
+		res.put(def, Bdd.TRUE);
+	    }
+	} else if (form instanceof Formula.Var) {
+	    res = compileEffect(((Formula.Var) form).getVar());
+	} else {
+	    res = compileComp((Formula.Comp) form);
+	}
+	this.form2nodes.put(form, res);
+	return res;
+    }
+
+    private Map<Deficiency, Integer> compileComp(Formula.Comp comp) {
+	List<Map<Deficiency, Integer>> args =
+	    new ArrayList<Map<Deficiency, Integer>>();
+	for (Formula arg : comp.getArgs()) {
+	    args.add(compile(arg));
+	}
+
+	Operation.Eval eval = comp.getEval();
+	Operation oper = eval.getOperation();
+	Map<Deficiency, Integer> res = new HashMap<Deficiency, Integer>();
+	if (oper == Operation.getOperation(Operation.BaseOps.Union)) {
+	    for (Map<Deficiency, Integer> arg : args) {
+		for (Map.Entry<Deficiency, Integer> entry : arg.entrySet()) {
+		    orInto(res, entry.getKey(), entry.getValue());
+		}
+	    }
+	    return res;
+	}
+
+	if (oper == Operation.getOperation(Operation.BaseOps.Intersection)) {
+	    Set<Deficiency> defs = new HashSet<Deficiency>(args.get(0)
+							   .keySet());
+	    for (Map<Deficiency, Integer> arg : args) {
+		defs.retainAll(arg.keySet());
+	    }
+	    for (Deficiency def : defs) {
+		int node = this.bdd.ref(Bdd.TRUE);
+		for (Map<Deficiency, Integer> arg : args) {
+		    node = andRef(node, arg.get(def));
+		}
+		res.put(def, node);
+	    }
+	    return res;
+	}
+
+	if (oper == Operation.getOperation(Operation.BaseOps.Complement)) {
+	    // the complement of the empty set is the whole type
+	    Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
+	    param.add(new HashSet<Deficiency>());
+	    Map<Deficiency, Integer> arg = args.get(0);
+	    Integer node;
+	    for (Deficiency def : eval.eval(param)) {
+		node = arg.get(def);
+		res.put(def, this.bdd.ref(node == null
+					  ? Bdd.TRUE
+					  : this.bdd.not(node)));
+	    }
+	    return res;
+	}
+
+	if (oper instanceof Operation.Maps) {
+	    // maps preserve unions:
+	    // the image of a set is the union of the images of its cones
+	    Type source = ((Operation.Maps) oper).getSourceType();
+	    Set<Set<Deficiency>> param;
+	    for (Map.Entry<Deficiency, Integer> entry
+		     : args.get(0).entrySet()) {
+		param = new HashSet<Set<Deficiency>>();
+		param.add(source.getCone(entry.getKey()));
+		for (Deficiency img : eval.eval(param)) {
+		    orInto(res, img, entry.getValue());
+		}
+	    }
+	    return res;
+	}
+
+	throw new IllegalArgumentException
+	    ("Found unknown operation " + oper + ". ");
+    }
+
+    /**
+     * Replaces the referenced node <code>acc</code>
+     * by the referenced conjunction with <code>node</code>.
+     */
+    private int andRef(int acc, int node) {
+	int res = this.bdd.ref(this.bdd.and(acc, node));
+	this.bdd.deref(acc);
+	return res;
+    }
+
+    /**
+     * Replaces the referenced node associated with <code>def</code>
+     * by the referenced disjunction with <code>node</code>.
+     */
+    private void orInto(Map<Deficiency, Integer> acc,
+			Deficiency def,
+			int node) {
+	Integer old = acc.get(def);
+	if (old == null) {
+	    acc.put(def, this.bdd.ref(node));
+	    return;
+	}
+	acc.put(def, this.bdd.ref(this.bdd.or(old, node)));
+	this.bdd.deref(old);
+    }
+
+    /**
+     * Returns the node describing whether the effect
+     * specified by <code>sPath</code> is not the empty set.
+     *
+     * @param sPath
+     *    identifies an effect.
+     * @return
+     *    the referenced node describing whether
+     *    the effect specified by <code>sPath</code> is not empty.
+     */
+    public int getRoot(List<String> sPath) {
+	Integer root = this.path2root.get(sPath);
+	if (root != null) {
+	    return root;
+	}
+
+	SInstance serv = this.flatCInst.getEffect(sPath);
+	if (serv == null) {
+	    throw new IllegalArgumentException
+		("Found no effect " + sPath + ". ");
+	}
+	int node = this.bdd.ref(Bdd.FALSE);
+	for (Integer defNode : compileEffect(serv).values()) {
+	    node = orRef(node, defNode);
+	}
+	this.path2root.put(sPath, node);
+	return node;
+    }
+
+    private int orRef(int acc, int node) {
+	int res = this.bdd.ref(this.bdd.or(acc, node));
+	this.bdd.deref(acc);
+	return res;
+    }
+
+    /**
+     * Returns the probabilities of the variables of {@link #bdd}.
+     *
+     * @return
+     *    the probabilities of the variables indexed by variable.
+     */
+    BigDecimal[] getProbs() {
+	return this.probs.toArray(new BigDecimal[this.probs.size()]);
+    }
+
+    /**
+     * Returns the probabilities of the variables of {@link #bdd}
+     * with the probabilities given by <code>scenario</code>
+     * overriding those of the distributions.
+     *
+     * @param scenario
+     *    a scenario for the underlying instance.
+     * @return
+     *    the probabilities of the variables indexed by variable.
+     * @throws IllegalArgumentException
+     *    if <code>scenario</code> refers to an effect without distribution
+     *    or to a deficiency not in the type of the effect.
+     */
+    BigDecimal[] getProbs(Scenario scenario) {
+	BigDecimal[] res = getProbs();
+	for (Map.Entry<InstanceLocator, Map<String, BigDecimal>> entry
+		 : scenario.getOverrides().entrySet()) {
+	    SInstance serv = this.flatCInst.getEffect(entry.getKey());
+	    if (serv == null || serv.getDistr() == null) {
+		throw new IllegalArgumentException
+		    ("Found no effect with distribution " + entry.getKey() +
+		     " in scenario \"" + scenario.getName() + "\". ");
+	    }
+	    Map<String, BigDecimal> def2prob = entry.getValue();
+	    int found = 0;
+	    BigDecimal prob;
+	    for (int var = 0; var < this.var2effect.size(); var++) {
+		if (this.var2effect.get(var) != serv) {
+		    continue;
+		}
+		prob = def2prob.get(this.var2def.get(var).getName());
+		if (prob != null) {
+		    res[var] = prob;
+		    found++;
+		}
+	    }
+	    if (found < def2prob.size()) {
+		throw new IllegalArgumentException
+		    ("Found unknown deficiency among " + def2prob.keySet() +
+		     " of effect " + entry.getKey() +
+		     " in scenario \"" + scenario.getName() + "\". ");
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability
+     * that the effect specified by <code>sPath</code>
+     * is not the empty set.
+     * This coincides with {@link FlatCInstance#getProb(List)}.
+     *
+     * @param sPath
+     *    identifies an effect.
+     * @return
+     *    the probability described above as a <code>BigDecimal</code> value.
+     */
+    public BigDecimal getProb(List<String> sPath) {
+	return this.bdd.getProb(getRoot(sPath), getProbs());
+    }
+
+    /**
+     * Replaces the probabilities of the variables
+     * of the effect <code>serv</code> with distribution
+     * by those given by <code>distr</code>.
+     * The diagrams are not affected.
+     *
+     * @param serv
+     *    an effect with distribution of the underlying instance.
+     * @param distr
+     *    a distribution for the type of <code>serv</code>.
+     * @return
+     *    the variables the probability of which changed.
+     * @throws IllegalArgumentException
+     *    if <code>serv</code> has no variables
+     *    or if <code>distr</code> lacks one of its deficiencies.
+     *    Then no probability is changed.
+     */
+    List<Integer> setDistr(SInstance serv, ProbDistr distr) {
+	Map<Integer, BigDecimal> var2prob = new TreeMap<Integer, BigDecimal>();
+	for (int var = 0; var < this.var2effect.size(); var++) {
+	    if (this.var2effect.get(var) == serv) {
+		var2prob.put(var, distr.getProb(this.var2def.get(var)));
+	    }
+	}
+	if (var2prob.isEmpty()) {
+	    throw new IllegalArgumentException
+		("Effect " + serv + " has no probability distribution. ");
+	}
+
+	List<Integer> res = new ArrayList<Integer>();
+	for (Map.Entry<Integer, BigDecimal> entry : var2prob.entrySet()) {
+	    if (this.probs.get(entry.getKey())
+		.compareTo(entry.getValue()) != 0) {
+		this.probs.set(entry.getKey(), entry.getValue());
+		res.add(entry.getKey());
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the minimal cut sets
+     * of the effect specified by <code>sPath</code>
+     * up to order <code>maxOrder</code>
+     * with probability at least <code>cutOff</code>.
+     * The diagram describing whether the effect is not empty
+     * is converted into a zero-suppressed diagram
+     * of its minimal solutions by the algorithm of Rauzy,
+     * truncating cut sets exceeding <code>maxOrder</code>.
+     * For effects which are not coherent,
+     * e.g. given by formulae with complements,
+     * the events which must not occur are ignored
+     * and so the cut sets are those of the least coherent effect above.
+     * Cut sets with probability below <code>cutOff</code>
+     * are pruned while they are extracted.
+     *
+     * @param sPath
+     *    identifies an effect.
+     * @param maxOrder
+     *    the maximal number of events of the cut sets:
+     *    <code>Integer.MAX_VALUE</code> means no truncation by order.
+     * @param cutOff
+     *    the least probability of the cut sets retained
+     *    or <code>null</code> for no truncation by probability.
+     * @return
+     *    the minimal cut sets described above.
+     */
+    public CutSets getCutSets(List<String> sPath,
+			      int maxOrder,
+			      BigDecimal cutOff) {
+	if (maxOrder < 0) {
+	    throw new IllegalArgumentException
+		("Expected non-negative order but found " + maxOrder + ". ");
+	}
+	Zbdd zbdd = new Zbdd();
+	int family = minSol(getRoot(sPath), maxOrder,
+			    zbdd, new HashMap<Long, Integer>());
+
+	List<CutSets.CutSet> cutSets = new ArrayList<CutSets.CutSet>();
+	extract(family, zbdd, new ArrayList<CutSets.Event>(), BigDecimal.ONE,
+		cutOff, getEffect2Path(), cutSets);
+	return new CutSets(sPath, cutSets, zbdd.count(family),
+			   maxOrder, cutOff);
+    }
+
+    /**
+     * Returns a map from the effects of {@link #flatCInst}
+     * to their paths.
+     */
+    private Map<SInstance, List<String>> getEffect2Path() {
+	Map<SInstance, List<String>> res =
+	    new HashMap<SInstance, List<String>>();
+	for (Map.Entry<List<String>, SInstance> entry
+		 : this.flatCInst.getEffects().entrySet()) {
+	    res.put(entry.getValue(), entry.getKey());
+	}
+	return res;
+    }
+
+    /**
+     * Returns the node of <code>zbdd</code>
+     * representing the minimal solutions of <code>node</code>
+     * with at most <code>maxOrder</code> variables set.
+     * The variables of <code>zbdd</code> are the levels of {@link #bdd}.
+     */
+    private int minSol(int node, int maxOrder,
+		       Zbdd zbdd, Map<Long, Integer> cache) {
+	if (node == Bdd.FALSE) {
+	    return Zbdd.EMPTY;
+	}
+	if (node == Bdd.TRUE) {
+	    return Zbdd.BASE;
+	}
+	if (maxOrder == 0) {
+	    // the empty set is a solution if all variables are false
+	    int res = node;
+	    while (res != Bdd.FALSE && res != Bdd.TRUE) {
+		res = this.bdd.getLow(res);
+	    }
+	    return res == Bdd.TRUE ? Zbdd.BASE : Zbdd.EMPTY;
+	}
+	Long key = ((long) node << 32) | maxOrder;
+	Integer cached = cache.get(key);
+	if (cached != null) {
+	    return cached;
+	}
+
+	int low = minSol(this.bdd.getLow(node), maxOrder, zbdd, cache);
+	int high = minSol(this.bdd.getHigh(node), maxOrder - 1, zbdd, cache);
+	int res = zbdd.getNode(this.bdd.getLevel(node),
+			       low, zbdd.without(high, low));
+	cache.put(key, res);
+	return res;
+    }
+
+    /**
+     * Adds the sets of the family <code>node</code> of <code>zbdd</code>
+     * each extended by <code>events</code> to <code>cutSets</code>
+     * if their probability is at least <code>cutOff</code>.
+     *
+     * @param prob
+     *    the probability of <code>events</code>.
+     */
+    private void extract(int node,
+			 Zbdd zbdd,
+			 List<CutSets.Event> events,
+			 BigDecimal prob,
+			 BigDecimal cutOff,
+			 Map<SInstance, List<String>> effect2path,
+			 List<CutSets.CutSet> cutSets) {
+	if (node == Zbdd.EMPTY) {
+	    return;
+	}
+	if (node == Zbdd.BASE) {
+	    cutSets.add(new CutSets.CutSet(new ArrayList<CutSets.Event>
+					   (events), prob));
+	    return;
+	}
+	extract(zbdd.getLow(node), zbdd, events, prob, cutOff,
+		effect2path, cutSets);
+
+	int var = this.bdd.getVarAtLevel(zbdd.getVar(node));
+	BigDecimal varProb = this.probs.get(var);
+	BigDecimal highProb = prob.multiply(varProb);
+	if (cutOff != null && highProb.compareTo(cutOff) < 0) {
+	    // the probability decreases with each event added
+	    return;
+	}
+	events.add(new CutSets.Event(effect2path
+				     .get(this.var2effect.get(var)),
+				     this.var2def.get(var), varProb));
+	extract(zbdd.getHigh(node), zbdd, events, highProb, cutOff,
+		effect2path, cutSets);
+	events.remove(events.size() - 1);
+    }
+
+    /**
+     * Returns the importance measures of all basic events
+     * for the effect specified by <code>sPath</code>.
+     * The basic events are the variables of the diagram,
+     * one for each deficiency of each effect with distribution.
+     * All measures derive from the gradient of the probability
+     * of the effect with respect to the probabilities of the events
+     * which is computed in a single reverse pass
+     * by {@link Bdd#getGradient(int, BigDecimal[])}.
+     *
+     * @param sPath
+     *    identifies an effect.
+     * @return
+     *    the importance measures described above.
+     */
+    public ImportanceMeasures getImportance(List<String> sPath) {
+	int root = getRoot(sPath);
+	BigDecimal[] probs = getProbs();
+	Map<SInstance, List<String>> effect2path = getEffect2Path();
+	List<CutSets.Event> events = new ArrayList<CutSets.Event>();
+	for (int var = 0; var < probs.length; var++) {
+	    events.add(new CutSets.Event(effect2path
+					 .get(this.var2effect.get(var)),
+					 this.var2def.get(var), probs[var]));
+	}
+	return new ImportanceMeasures(sPath,
+				      this.bdd.getProb(root, probs),
+				      events,
+				      this.bdd.getGradient(root, probs));
+    }
+
+    /**
+     * Reorders the variables of the diagram by sifting.
+     */
+    public void reorder() {
+	this.bdd.reorder();
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("\n<BddEvaluator>");
+	res.append(this.bdd);
+	res.append(this.path2root);
+	res.append("\n</BddEvaluator>\n");
+	return res.toString();
+    }
+
+} // BddEvaluator
@@ -0,0 +1,520 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+
+/**
+ * A formula compiled for repeated evaluation
+ * under various values of the effects with distribution it depends on,
+ * e.g. by {@link MonteCarlo} and {@link ImportanceSampler}.
+ * <p>
+ * The effects given by formulae are inlined
+ * and the formulae are lowered to a flat array of instructions
+ * operating on registers.
+ * A register holds a set of deficiencies as a bit mask
+ * indexed by {@link Deficiency#getIndex()}
+ * like a {@link DeficiencySet}:
+ * union and intersection are wordwise or and and,
+ * the complement is the mask of the type and not,
+ * and a map by a {@link DeficiencyMap} is a table lookup.
+ * Since formulae are hash-consed,
+ * a subformula shared in the graph of the formula
+ * is computed into a single register.
+ * <p>
+ * The registers are provided by the caller
+ * via {@link #newRegisters()};
+ * the first ones hold the values of the inputs
+ * which are set by {@link #clearInput(long[], int)}
+ * and {@link #addToInput(long[], int, Deficiency)}.
+ * Then {@link #occurs(long[])} evaluates the formula without allocation.
+ * A compiled formula is immutable and may be shared by threads
+ * each using its own registers.
+ *
+ *
+ * Created: Sun Oct 18 02:58:44 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class CompiledFormula {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The table of a map by a {@link DeficiencyMap}:
+     * the value is the argument intersected with {@link #ident}
+     * united with those {@link #outs}
+     * for which the argument intersects the according {@link #ins}.
+     */
+    private static final class MapTable {
+	private final long[] ident;
+	private final long[][] ins;
+	private final long[][] outs;
+
+	MapTable(long[] ident, long[][] ins, long[][] outs) {
+	    this.ident = ident;
+	    this.ins = ins;
+	    this.outs = outs;
+	}
+    } // class MapTable
+
+    /**
+     * Collects the instructions, constants and maps
+     * while traversing the formula.
+     */
+    private static final class Compiler {
+	private final Map<SInstance, Integer> input2reg;
+	private final Map<Formula, Integer> form2reg;
+	private final Map<SInstance, Integer> derived2reg;
+	private final List<Integer> code;
+	private final List<long[]> consts;
+	private final List<Operation.Maps> maps;
+	private int numRegs;
+	private int width;
+
+	Compiler(List<SInstance> inputs) {
+	    this.input2reg = new HashMap<SInstance, Integer>();
+	    this.form2reg = new HashMap<Formula, Integer>();
+	    this.derived2reg = new HashMap<SInstance, Integer>();
+	    this.code = new ArrayList<Integer>();
+	    this.consts = new ArrayList<long[]>();
+	    this.maps = new ArrayList<Operation.Maps>();
+	    this.width = 1;
+	    for (SInstance serv : inputs) {
+		this.input2reg.put(serv, this.input2reg.size());
+		fit(serv.getType().getMask());
+	    }
+	    this.numRegs = inputs.size();
+	}
+
+	private void fit(DeficiencySet mask) {
+	    this.width = Math.max(this.width, mask.getWords().length);
+	}
+
+	private void emit(int oper, int dst, int src, int aux) {
+	    this.code.add(oper);
+	    this.code.add(dst);
+	    this.code.add(src);
+	    this.code.add(aux);
+	}
+
+	private int addConst(Set<Deficiency> val) {
+	    DeficiencySet mask = DeficiencySet.of(val);
+	    fit(mask);
+	    this.consts.add(mask.getWords());
+	    return this.consts.size() - 1;
+	}
+
+	/**
+	 * Returns the register holding the value of <code>form</code>
+	 * emitting the instructions computing it if not yet done.
+	 */
+	int compile(Formula form) {
+	    Integer res = this.form2reg.get(form);
+	    if (res == null) {
+		res = compileNew(form);
+		this.form2reg.put(form, res);
+	    }
+	    return res;
+	}
+
+	private int compileNew(Formula form) {
+	    Set<Deficiency> val = form.getConst();
+	    if (val != null) {
+		int res = this.numRegs++;
+		emit(OP_CONST, res, 0, addConst(val));
+		return res;
+	    }
+	    if (form instanceof Formula.Var) {
+		return compileVar(((Formula.Var) form).getVar());
+	    }
+
+	    Formula.Comp comp = (Formula.Comp) form;
+	    Operation.Eval eval = comp.getEval();
+	    Operation oper = eval.getOperation();
+	    List<Integer> args = new ArrayList<Integer>();
+	    for (Formula arg : comp.getArgs()) {
+		args.add(compile(arg));
+	    }
+	    int res = this.numRegs++;
+	    if (oper == Operation.getOperation(Operation.BaseOps.Union)
+		|| oper == Operation.getOperation
+		(Operation.BaseOps.Intersection)) {
+		int acc = oper == Operation.getOperation
+		    (Operation.BaseOps.Union) ? OP_OR : OP_AND;
+		emit(OP_MOV, res, args.get(0), 0);
+		for (int i = 1; i < args.size(); i++) {
+		    emit(acc, res, args.get(i), 0);
+		}
+		return res;
+	    }
+	    if (oper == Operation.getOperation(Operation.BaseOps.Complement)) {
+		// the complement of the empty set is the type
+		Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
+		param.add(DeficiencySet.EMPTY);
+		emit(OP_COMPL, res, args.get(0), addConst(eval.eval(param)));
+		return res;
+	    }
+	    if (eval instanceof Operation.Maps) {
+		Operation.Maps mapOper = (Operation.Maps) eval;
+		fitMap(mapOper.getMap());
+		this.maps.add(mapOper);
+		emit(OP_MAP, res, args.get(0), this.maps.size() - 1);
+		return res;
+	    }
+	    throw new IllegalArgumentException
+		("Cannot compile operation " + oper + ". ");
+	}
+
+	private int compileVar(SInstance serv) {
+	    Integer res = this.input2reg.get(serv);
+	    if (res != null) {
+		return res;
+	    }
+	    if (serv.getDistr() != null) {
+		throw new IllegalArgumentException
+		    ("Effect " + serv + " is no input. ");
+	    }
+	    if (serv.getFormula() == null) {
+		throw new IllegalArgumentException
+		    ("Effect " + serv + " has neither a probability " +
+		     "distribution nor a formula. ");
+	    }
+	    res = this.derived2reg.get(serv);
+	    if (res == null) {
+		res = compile(serv.getFormula());
+		this.derived2reg.put(serv, res);
+	    }
+	    return res;
+	}
+
+	private void fitMap(DeficiencyMap map) {
+	    fit(map.getDomainMask());
+	    fit(map.getSource().getType().getMask());
+	    fit(map.getTarget().getType().getMask());
+	}
+    } // class Compiler
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    // the operation codes: an instruction is
+    // operation code, destination register, source register and auxiliary.
+
+    /**
+     * Sets the destination to the constant with index auxiliary.
+     */
+    private static final int OP_CONST = 0;
+
+    /**
+     * Sets the destination to the source.
+     */
+    private static final int OP_MOV = 1;
+
+    /**
+     * Unites the source into the destination.
+     */
+    private static final int OP_OR = 2;
+
+    /**
+     * Intersects the source into the destination.
+     */
+    private static final int OP_AND = 3;
+
+    /**
+     * Sets the destination to the constant with index auxiliary
+     * without the source.
+     */
+    private static final int OP_COMPL = 4;
+
+    /**
+     * Sets the destination to the image of the source
+     * under the map table with index auxiliary.
+     */
+    private static final int OP_MAP = 5;
+
+    private static final int INSTR_LEN = 4;
+
+    private static final int LOG_BITS = 6;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The effects with distribution the formula depends on.
+     * The value of the <code>i</code>th one
+     * is held by the <code>i</code>th register.
+     */
+    private final List<SInstance> inputs;
+
+    /**
+     * The instructions, each consisting of {@link #INSTR_LEN} entries.
+     */
+    private final int[] code;
+
+    /**
+     * The constants each consisting of {@link #width} words.
+     */
+    private final long[][] consts;
+
+    private final MapTable[] maps;
+
+    /**
+     * The number of words of a register.
+     */
+    private final int width;
+
+    private final int numRegs;
+
+    /**
+     * The register holding the value of the formula.
+     */
+    private final int result;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Compiles <code>form</code>.
+     *
+     * @param form
+     *    a formula.
+     * @param inputs
+     *    the effects with distribution <code>form</code> depends on
+     *    in the order of the input registers.
+     *    Effects without distribution are given by their formulae.
+     * @throws IllegalArgumentException
+     *    if <code>form</code> depends on an effect with distribution
+     *    not in <code>inputs</code>,
+     *    on an effect with neither distribution nor formula
+     *    or on an operation which cannot be compiled.
+     */
+    public CompiledFormula(Formula form, List<SInstance> inputs) {
+	this.inputs = Collections.unmodifiableList
+	    (new ArrayList<SInstance>(inputs));
+	Compiler comp = new Compiler(this.inputs);
+	this.result = comp.compile(form);
+	this.width = comp.width;
+	this.numRegs = comp.numRegs;
+	this.code = new int[comp.code.size()];
+	for (int i = 0; i < this.code.length; i++) {
+	    this.code[i] = comp.code.get(i);
+	}
+	this.consts = new long[comp.consts.size()][];
+	for (int i = 0; i < this.consts.length; i++) {
+	    this.consts[i] = pad(comp.consts.get(i), this.width);
+	}
+	this.maps = new MapTable[comp.maps.size()];
+	for (int i = 0; i < this.maps.length; i++) {
+	    this.maps[i] = getTable(comp.maps.get(i), this.width);
+	}
+    } // CompiledFormula constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods: compilation.                                                *
+     * -------------------------------------------------------------------- */
+
+    private static long[] pad(long[] words, int width) {
+	long[] res = new long[width];
+	System.arraycopy(words, 0, res, 0, words.length);
+	return res;
+    }
+
+    private static long[] singleton(Deficiency def, int width) {
+	long[] res = new long[width];
+	res[def.getIndex() >> LOG_BITS] |= 1L << def.getIndex();
+	return res;
+    }
+
+    /**
+     * Returns the table of the map <code>mapOper</code>
+     * with masks of <code>width</code> words.
+     */
+    private static MapTable getTable(Operation.Maps mapOper, int width) {
+	DeficiencyMap map = mapOper.getMap();
+	DeficiencySet[] invImgs = map.getInvImgMasks();
+	Deficiency[] images = map.getImages();
+	long[][] ins  = new long[images.length][];
+	long[][] outs = new long[images.length][];
+	long[] ident;
+	if (mapOper.getFunctor() == Operation.Functor.Covariant) {
+	    // cf. DeficiencyMap#cov(Set)
+	    for (int j = 0; j < images.length; j++) {
+		ins [j] = pad(invImgs[j].getWords(), width);
+		outs[j] = singleton(images[j], width);
+	    }
+	    ident = pad(map.getDomainMask()
+			.intersect(map.getTarget().getType().getMask())
+			.getWords(), width);
+	} else {
+	    // cf. DeficiencyMap#cont(Set)
+	    for (int j = 0; j < images.length; j++) {
+		ins [j] = singleton(images[j], width);
+		outs[j] = pad(invImgs[j].getWords(), width);
+	    }
+	    ident = pad(map.getSource().getType().getMask().getWords(),
+			width);
+	}
+	return new MapTable(ident, ins, outs);
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: evaluation.                                                 *
+     * -------------------------------------------------------------------- */
+
+    public List<SInstance> getInputs() {
+	return this.inputs;
+    }
+
+    /**
+     * Returns new registers for evaluating this formula.
+     * These shall be used by a single thread.
+     */
+    public long[] newRegisters() {
+	return new long[this.numRegs * this.width];
+    }
+
+    /**
+     * Sets the value of the <code>input</code>th input to the empty set.
+     */
+    public void clearInput(long[] regs, int input) {
+	int off = input * this.width;
+	for (int k = 0; k < this.width; k++) {
+	    regs[off + k] = 0;
+	}
+    }
+
+    /**
+     * Adds <code>def</code> to the value of the <code>input</code>th input.
+     *
+     * @param def
+     *    a deficiency of the type of the input.
+     */
+    public void addToInput(long[] regs, int input, Deficiency def) {
+	int index = def.getIndex();
+	regs[input * this.width + (index >> LOG_BITS)] |= 1L << index;
+    }
+
+    /**
+     * Evaluates the formula for the inputs set in <code>regs</code>.
+     */
+    private void run(long[] regs) {
+	int width = this.width;
+	for (int pc = 0; pc < this.code.length; pc += INSTR_LEN) {
+	    int dst = this.code[pc + 1] * width;
+	    int src = this.code[pc + 2] * width;
+	    int aux = this.code[pc + 3];
+	    switch (this.code[pc]) {
+		case OP_CONST:
+		    System.arraycopy(this.consts[aux], 0, regs, dst, width);
+		    break;
+		case OP_MOV:
+		    System.arraycopy(regs, src, regs, dst, width);
+		    break;
+		case OP_OR:
+		    for (int k = 0; k < width; k++) {
+			regs[dst + k] |= regs[src + k];
+		    }
+		    break;
+		case OP_AND:
+		    for (int k = 0; k < width; k++) {
+			regs[dst + k] &= regs[src + k];
+		    }
+		    break;
+		case OP_COMPL:
+		    long[] type = this.consts[aux];
+		    for (int k = 0; k < width; k++) {
+			regs[dst + k] = type[k] & ~regs[src + k];
+		    }
+		    break;
+		case OP_MAP:
+		    map(this.maps[aux], regs, dst, src, width);
+		    break;
+		default:
+		    throw new IllegalStateException
+			("Found unknown operation code " + this.code[pc] + ". ");
+	    }
+	}
+    }
+
+    private static void map(MapTable table,
+			    long[] regs, int dst, int src, int width) {
+	for (int k = 0; k < width; k++) {
+	    regs[dst + k] = regs[src + k] & table.ident[k];
+	}
+	for (int j = 0; j < table.ins.length; j++) {
+	    long[] in = table.ins[j];
+	    boolean hit = false;
+	    for (int k = 0; !hit && k < width; k++) {
+		hit = (regs[src + k] & in[k]) != 0;
+	    }
+	    if (hit) {
+		long[] out = table.outs[j];
+		for (int k = 0; k < width; k++) {
+		    regs[dst + k] |= out[k];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns whether the value of the formula is non-empty
+     * for the inputs set in <code>regs</code>.
+     * This does not allocate.
+     *
+     * @param regs
+     *    registers as returned by {@link #newRegisters()}
+     *    with the inputs set.
+     */
+    public boolean occurs(long[] regs) {
+	run(regs);
+	int off = this.result * this.width;
+	for (int k = 0; k < this.width; k++) {
+	    if (regs[off + k] != 0) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the value of the formula
+     * for the inputs set in <code>regs</code>.
+     *
+     * @param regs
+     *    registers as returned by {@link #newRegisters()}
+     *    with the inputs set.
+     */
+    public Set<Deficiency> evaluate(long[] regs) {
+	run(regs);
+	return DeficiencySet.of(regs, this.result * this.width, this.width);
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<CompiledFormula inputs=\"");
+	res.append(this.inputs.size());
+	res.append("\" instructions=\"");
+	res.append(this.code.length / INSTR_LEN);
+	res.append("\" registers=\"");
+	res.append(this.numRegs);
+	res.append("\" width=\"");
+	res.append(this.width);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // CompiledFormula
@@ -0,0 +1,293 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * The minimal cut sets of an effect
+ * as computed by {@link BddEvaluator#getCutSets}
+ * together with the approximations of the probability of the effect
+ * derived from them.
+ * A cut set is a set of basic events, i.e. of variables
+ * each of which is given by an effect with a probability distribution
+ * and one of its deficiencies as described for {@link BddEvaluator}.
+ * If the events of a cut set occur and all others do not,
+ * the effect is not the empty set.
+ * The cut sets are sorted by decreasing probability
+ * so that the dominant failure combinations come first.
+ *
+ *
+ * Created: Sat Oct 17 22:58:03 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class CutSets {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * A basic event: the variable of the deficiency <code>def</code>
+     * of the effect given by <code>path</code>.
+     * Note that the deficiency occurs only if in addition
+     * all deficiencies below occur.
+     */
+    public static final class Event {
+	private final List<String> path;
+	private final Deficiency def;
+	private final BigDecimal prob;
+
+	Event(List<String> path, Deficiency def, BigDecimal prob) {
+	    this.path = path;
+	    this.def = def;
+	    this.prob = prob;
+	}
+
+	public List<String> getPath() {
+	    return this.path;
+	}
+
+	public Deficiency getDeficiency() {
+	    return this.def;
+	}
+
+	/**
+	 * Returns the probability of this event
+	 * given by {@link ProbDistr#getProb(Deficiency)}.
+	 */
+	public BigDecimal getProb() {
+	    return this.prob;
+	}
+
+	public String toString() {
+	    return this.path + "." + this.def;
+	}
+    } // class Event
+
+    /**
+     * A minimal cut set.
+     */
+    public static final class CutSet {
+	private final List<Event> events;
+	private final BigDecimal prob;
+
+	CutSet(List<Event> events, BigDecimal prob) {
+	    this.events = Collections.unmodifiableList(events);
+	    this.prob = prob;
+	}
+
+	public List<Event> getEvents() {
+	    return this.events;
+	}
+
+	/**
+	 * Returns the number of events of this cut set.
+	 */
+	public int getOrder() {
+	    return this.events.size();
+	}
+
+	/**
+	 * Returns the probability that all events of this cut set occur.
+	 *
+	 * @return
+	 *    the product of the probabilities of the events.
+	 */
+	public BigDecimal getProb() {
+	    return this.prob;
+	}
+
+	public String toString() {
+	    StringBuffer res = new StringBuffer();
+	    res.append("<CutSet prob=\"");
+	    res.append(this.prob);
+	    res.append("\">");
+	    res.append(this.events);
+	    res.append("</CutSet>");
+	    return res.toString();
+	}
+    } // class CutSet
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The precision of the product of the complementary probabilities
+     * in {@link #getMinCutUpperBound()}:
+     * rounding down keeps the result an upper bound.
+     */
+    private static final MathContext FLOOR_34 =
+	new MathContext(34, RoundingMode.FLOOR);
+
+    /**
+     * Orders cut sets by decreasing probability
+     * and those with equal probability by increasing order.
+     */
+    private static final Comparator<CutSet> PROB_CMP =
+	new Comparator<CutSet>() {
+	    public int compare(CutSet set1, CutSet set2) {
+		int res = set2.prob.compareTo(set1.prob);
+		if (res != 0) {
+		    return res;
+		}
+		return set1.getOrder() - set2.getOrder();
+	    }
+	};
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The path of the effect the cut sets belong to.
+     */
+    private final List<String> sPath;
+
+    /**
+     * The cut sets retained sorted by {@link #PROB_CMP}.
+     */
+    private final List<CutSet> cutSets;
+
+    /**
+     * The number of minimal cut sets
+     * before truncation by probability.
+     */
+    private final BigInteger numMinimal;
+
+    /**
+     * The maximal order of the cut sets computed.
+     */
+    private final int maxOrder;
+
+    /**
+     * The cut-off probability or <code>null</code>.
+     */
+    private final BigDecimal cutOff;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    CutSets(List<String> sPath,
+	    List<CutSet> cutSets,
+	    BigInteger numMinimal,
+	    int maxOrder,
+	    BigDecimal cutOff) {
+	this.sPath = sPath;
+	this.cutSets = new ArrayList<CutSet>(cutSets);
+	Collections.sort(this.cutSets, PROB_CMP);
+	this.numMinimal = numMinimal;
+	this.maxOrder = maxOrder;
+	this.cutOff = cutOff;
+    } // CutSets constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public List<String> getPath() {
+	return this.sPath;
+    }
+
+    /**
+     * Returns the cut sets retained
+     * sorted by decreasing probability.
+     *
+     * @return
+     *    an unmodifiable view of {@link #cutSets}.
+     */
+    public List<CutSet> getCutSets() {
+	return Collections.unmodifiableList(this.cutSets);
+    }
+
+    /**
+     * Returns the number of minimal cut sets up to {@link #maxOrder}
+     * including those discarded
+     * because their probability is below {@link #cutOff}.
+     *
+     * @return
+     *    {@link #numMinimal}.
+     */
+    public BigInteger getNumMinimal() {
+	return this.numMinimal;
+    }
+
+    public int getMaxOrder() {
+	return this.maxOrder;
+    }
+
+    public BigDecimal getCutOff() {
+	return this.cutOff;
+    }
+
+    /**
+     * Returns the rare-event approximation
+     * of the probability of the effect:
+     * the sum of the probabilities of the cut sets retained.
+     * Without truncation and for coherent effects,
+     * this is an upper bound which is good if the probabilities are small.
+     *
+     * @return
+     *    the sum of the probabilities of {@link #cutSets}.
+     */
+    public BigDecimal getRareEventApprox() {
+	BigDecimal res = BigDecimal.ZERO;
+	for (CutSet cutSet : this.cutSets) {
+	    res = res.add(cutSet.getProb());
+	}
+	return res;
+    }
+
+    /**
+     * Returns the min-cut upper bound
+     * of the probability of the effect:
+     * the probability that some cut set occurs
+     * if the cut sets were independent.
+     * Without truncation and for coherent effects,
+     * this is an upper bound
+     * which does not exceed the rare-event approximation.
+     *
+     * @return
+     *    one minus the product of the complementary probabilities
+     *    of {@link #cutSets}
+     *    where the product is rounded down to 34 digits.
+     */
+    public BigDecimal getMinCutUpperBound() {
+	BigDecimal compl = BigDecimal.ONE;
+	for (CutSet cutSet : this.cutSets) {
+	    compl = compl.multiply(BigDecimal.ONE.subtract(cutSet.getProb()),
+				   FLOOR_34);
+	}
+	return BigDecimal.ONE.subtract(compl);
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("\n<CutSets effect=\"");
+	res.append(this.sPath);
+	res.append("\" minimal=\"");
+	res.append(this.numMinimal);
+	res.append("\" retained=\"");
+	res.append(this.cutSets.size());
+	res.append("\" rareEvent=\"");
+	res.append(getRareEventApprox());
+	res.append("\">");
+	for (CutSet cutSet : this.cutSets) {
+	    res.append('\n');
+	    res.append(cutSet);
+	}
+	res.append("\n</CutSets>\n");
+	return res.toString();
+    }
+
+} // CutSets
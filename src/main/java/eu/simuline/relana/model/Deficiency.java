@@ -1,7 +1,15 @@
 package eu.simuline.relana.model;
 
+import java.util.Map;
+import java.util.HashMap;
+
 /**
  * Represents a Deficiency. 
+ * Each deficiency has an index which is determined by its name 
+ * and which is used by {@link DeficiencySet} 
+ * to represent sets of deficiencies as bit masks. 
+ * The indices are dense: 
+ * they are assigned consecutively to the names in order of creation. 
  *
  *
  * Created: Thu Apr 14 19:38:02 2005
@@ -11,6 +19,25 @@ package eu.simuline.relana.model;
  */
 public final class Deficiency {
 
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Maps the names of the deficiencies created so far to their indices. 
+     * This must be initialized before {@link #UNDET}. 
+     */
+    private static final Map<String, Integer> NAME2INDEX = 
+	new HashMap<String, Integer>();
+
+    /**
+     * The deficiencies created first with the names in {@link #NAME2INDEX} 
+     * at their indices. 
+     * This is replaced when growing 
+     * so that it may be read without synchronization. 
+     */
+    private static volatile Deficiency[] index2def = new Deficiency[16];
+
     public static final Deficiency UNDET = new Deficiency("UNDET");
 
     /* -------------------------------------------------------------------- *
@@ -20,22 +47,71 @@ public final class Deficiency {
     // must be final to guarantee a valid {@link #hashCode()}. 
     private final String name;
 
+    /**
+     * The index of {@link #name}. 
+     */
+    private final int index;
+
     /* -------------------------------------------------------------------- *
      * constructors.                                                        *
      * -------------------------------------------------------------------- */
 
     public Deficiency(String name) {
 	this.name = name;
+	this.index = register(this);
     }
 
     /* -------------------------------------------------------------------- *
      * methods.                                                             *
      * -------------------------------------------------------------------- */
 
+    /**
+     * Returns the index of the name of <code>def</code>, 
+     * assigning the next one if the name is new. 
+     */
+    private static int register(Deficiency def) {
+	synchronized (NAME2INDEX) {
+	    Integer res = NAME2INDEX.get(def.name);
+	    if (res != null) {
+		return res;
+	    }
+	    res = NAME2INDEX.size();
+	    NAME2INDEX.put(def.name, res);
+	    Deficiency[] defs = index2def;
+	    if (res == defs.length) {
+		Deficiency[] newDefs = new Deficiency[2 * defs.length];
+		System.arraycopy(defs, 0, newDefs, 0, defs.length);
+		defs = newDefs;
+	    }
+	    defs[res] = def;
+	    // publish 
+	    index2def = defs;
+	    return res;
+	}
+    }
+
+    /**
+     * Returns the deficiency with the given index. 
+     *
+     * @param index 
+     *    the index of a deficiency created before. 
+     */
+    static Deficiency get(int index) {
+	return index2def[index];
+    }
+
     public String getName() {
 	return this.name;
     }
 
+    /**
+     * Returns the index of this deficiency 
+     * which is shared by all deficiencies with the same name. 
+     */
+    public int getIndex() {
+	return this.index;
+    }
+
     public String toString() {
 	return this.name;
 	//return "\n<Deficiency>" + this.name + "</Deficiency>";
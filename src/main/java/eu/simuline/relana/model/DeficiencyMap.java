@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Arrays;
 
 /**
  * Describes a map between <code>Deficiency</code>'s 
@@ -21,6 +22,12 @@ public final class DeficiencyMap {
      * constants.                                                           *
      * -------------------------------------------------------------------- */
 
+    /**
+     * The binary logarithm of the number of bits 
+     * of the words of a mask of a {@link DeficiencySet}. 
+     */
+    private static final int LOG_BITS = 6;
+
     /* -------------------------------------------------------------------- *
      * attributes.                                                          *
      * -------------------------------------------------------------------- */
@@ -67,7 +74,25 @@ public final class DeficiencyMap {
      * the set represented by {@link #source} 
      * and the set represented by {@link #target}. 
      */
-    private Set<Deficiency> idDom;
+    private final Set<Deficiency> idDom;
+
+    /**
+     * The keys of {@link #setOfNew2old} as masks 
+     * indexed like their images in {@link #images}. 
+     * These are used by {@link #cov(Set)} and {@link #cont(Set)}. 
+     */
+    private final DeficiencySet[] invImgs;
+
+    /**
+     * The values of {@link #setOfNew2old} 
+     * indexed like their inverse images in {@link #invImgs}. 
+     */
+    private final Deficiency[] images;
+
+    /**
+     * {@link #domain} as a mask. 
+     */
+    private final DeficiencySet domainMask;
 
     /* -------------------------------------------------------------------- *
      * constructors.                                                        *
@@ -94,9 +119,14 @@ public final class DeficiencyMap {
 	    throw new IllegalArgumentException
 		("No subclass map extending " + result + ". ");
 	}
-	result.idDom = rangeId;
-	
-	return result;
+	// The deficiencies mapped identically must enter 
+	// domain, range and their masks which are set up on construction. 
+	// This includes those moved to idDom by checkInvImg01(). 
+	rangeId.addAll(result.idDom);
+	return new DeficiencyMap(result.setOfNew2old,
+				 source,
+				 target,
+				 rangeId);
     }
 
     public DeficiencyMap(Map<Set<Deficiency>, Deficiency> setOfNew2old,
@@ -155,6 +185,17 @@ public final class DeficiencyMap {
 		 " and identity domain " + this.idDom + 
 		 " are not pairwise disjoint. ");
 	}
+
+	this.invImgs = new DeficiencySet[this.setOfNew2old.size()];
+	this.images  = new Deficiency   [this.setOfNew2old.size()];
+	int ind = 0;
+	for (Map.Entry<Set<Deficiency>, Deficiency> entry 
+		 : this.setOfNew2old.entrySet()) {
+	    this.invImgs[ind] = DeficiencySet.of(entry.getKey());
+	    this.images [ind] = entry.getValue();
+	    ind++;
+	}
+	this.domainMask = DeficiencySet.of(this.domain);
     } // DeficiencyMap constructor
 
 
@@ -419,6 +460,23 @@ public final class DeficiencyMap {
 	return this.range;
     }
 
+    /**
+     * Returns the inverse images of the deficiencies 
+     * which are not mapped identically as masks 
+     * indexed like the images returned by {@link #getImages()}. 
+     */
+    DeficiencySet[] getInvImgMasks() {
+	return this.invImgs;
+    }
+
+    Deficiency[] getImages() {
+	return this.images;
+    }
+
+    DeficiencySet getDomainMask() {
+	return this.domainMask;
+    }
+
     /**
      * Returns the source of this map. 
      * @see #source
@@ -442,10 +500,10 @@ public final class DeficiencyMap {
      *    whether this map is isotone. 
      */
     public boolean isIsotone() {
-	Set<Deficiency> cone;
+	DeficiencySet cone;
 	for (Deficiency def1 : getDomain()) {
 	    cone = this.source.getType().getCone(def1);
-	    if (!getDomain().containsAll(cone)) {
+	    if (!this.domainMask.containsAll(cone)) {
 		return false;
 	    }
 	    for (Deficiency def2 : cone) {
@@ -464,15 +522,12 @@ public final class DeficiencyMap {
      *    whether this map is twist-isotone. 
      */
     public boolean isTwistIsotone() {
-	Set<Deficiency> cone, coneT;
+	DeficiencySet cone, coneT;
 	for (Deficiency def1 : getDomain()) {
 	    cone  = this.source.getType().getCone(    def1);
 	    coneT = this.target.getType().getCone(map(def1));
 	    for (Deficiency defT2 : coneT) {
-		Set<Deficiency> inter = 
-		    new HashSet<Deficiency>(getInverseImage(defT2));
-		inter.retainAll(cone);
-		if (inter.isEmpty()) {
+		if (!DeficiencySet.of(getInverseImage(defT2)).intersects(cone)) {
 		    return false;
 		}
 	    }
@@ -482,6 +537,8 @@ public final class DeficiencyMap {
 
     /**
      * Returns the image of <code>defs</code> under this map. 
+     * The image is collected in a single mask 
+     * like a map operation of a {@link CompiledFormula}. 
      *
      * @param defs
      *    a set of <code>Deficiency</code>s to be mapped. 
@@ -490,28 +547,42 @@ public final class DeficiencyMap {
      */
     public Set<Deficiency> cov(Set<Deficiency> defs) {
 	assert this.source.getType().isValid(defs);
-	Set<Deficiency> defsToMap = new HashSet<Deficiency>(defs);
-	defsToMap.retainAll(this.domain);
-	Set<Deficiency> result = new HashSet<Deficiency>();
-
-	Set<Deficiency> inter;
-	for (Map.Entry<Set<Deficiency>, Deficiency> entry 
-		 : this.setOfNew2old.entrySet()) {
-	    inter = new HashSet<Deficiency>(entry.getKey());
-	    inter.retainAll(defsToMap);
-	    if (!inter.isEmpty()) {
-		result.add(entry.getValue());
+	long[] in  = DeficiencySet.of(defs).getWords();
+	long[] dom = this.domainMask.getWords();
+	long[] tgt = this.target.getType().getMask().getWords();
+	// the deficiencies of defs to be mapped identically 
+	long[] res = new long[tgt.length];
+	int len = Math.min(in.length, Math.min(dom.length, tgt.length));
+	for (int k = 0; k < len; k++) {
+	    res[k] = in[k] & dom[k] & tgt[k];
+	}
+	// the images of the inverse images hit by defs 
+	len = Math.min(in.length, dom.length);
+	for (int ind = 0; ind < this.invImgs.length; ind++) {
+	    long[] inv = this.invImgs[ind].getWords();
+	    boolean hit = false;
+	    for (int k = 0; !hit && k < Math.min(len, inv.length); k++) {
+		hit = (inv[k] & in[k] & dom[k]) != 0;
+	    }
+	    if (hit) {
+		int index = this.images[ind].getIndex();
+		int wInd = index >> LOG_BITS;
+		if (wInd >= res.length) {
+		    res = Arrays.copyOf(res, wInd + 1);
+		}
+		res[wInd] |= 1L << index;
 	    }
 	}
 
-	defsToMap.retainAll(this.target.getType().asSet());
-	result.addAll(defsToMap);
+	DeficiencySet result = DeficiencySet.create(res, res.length);
 	assert this.target.getType().isValid(result);
 	return result;
     }
 
     /**
      * Returns the inverse image of <code>defs</code> under this map. 
+     * The inverse image is collected in a single mask 
+     * like the image in {@link #cov(Set)}. 
      *
      * @param defs
      *    a set of <code>Deficiency</code>s to be "reverse mapped'. 
@@ -520,23 +591,33 @@ public final class DeficiencyMap {
      */
     public Set<Deficiency> cont(Set<Deficiency> defs) {
 	assert this.target.getType().isValid(defs);
-	Set<Deficiency> result = new HashSet<Deficiency>();
-	for (Map.Entry<Set<Deficiency>, Deficiency> entry 
-		 : this.setOfNew2old.entrySet()) {
-	    if (defs.contains(entry.getValue())) {
-		result.addAll(entry.getKey());
+	DeficiencySet defsMask = DeficiencySet.of(defs);
+	long[] in  = defsMask.getWords();
+	long[] src = this.source.getType().getMask().getWords();
+	// the deficiencies of defs within the source 
+	long[] res = new long[src.length];
+	int len = Math.min(in.length, src.length);
+	for (int k = 0; k < len; k++) {
+	    res[k] = in[k] & src[k];
+	}
+	// the inverse images of the images in defs 
+	for (int ind = 0; ind < this.images.length; ind++) {
+	    if (defsMask.contains(this.images[ind])) {
+		long[] inv = this.invImgs[ind].getWords();
+		if (inv.length > res.length) {
+		    res = Arrays.copyOf(res, inv.length);
+		}
+		for (int k = 0; k < inv.length; k++) {
+		    res[k] |= inv[k];
+		}
 	    }
 	}
 
-	Set<Deficiency> defsToMap = 
-	    new HashSet<Deficiency>(this.source.getType().asSet());
-	defsToMap.retainAll(defs);
-	result.addAll(defsToMap);
+	DeficiencySet result = DeficiencySet.create(res, res.length);
 	assert this.source.getType().isValid(result);
 	return result;
     }
 
-
     public String toString() {
 	StringBuffer res = new StringBuffer();
 	res.append("<DeficiencyMap source=\"");
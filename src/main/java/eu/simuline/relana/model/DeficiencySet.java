@@ -0,0 +1,317 @@
+package eu.simuline.relana.model;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Arrays;
+
+/**
+ * An immutable set of {@link Deficiency}s represented by a bit mask
+ * indexed by {@link Deficiency#getIndex()}.
+ * Since the indices are dense, the mask consists of few words.
+ * Union, intersection and difference of such sets
+ * are computed wordwise without hashing the deficiencies,
+ * and so are {@link #contains(Object)}, {@link #containsAll(Collection)}
+ * and {@link #equals(Object)} if the other set is a mask as well.
+ * The hash code is that of a {@link java.util.Set}
+ * so that masks may be mixed with other sets
+ * for example as keys of hash maps.
+ * It is computed once on creation.
+ *
+ *
+ * Created: Sun Oct 18 02:31:17 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class DeficiencySet extends AbstractSet<Deficiency> {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    private static final int LOG_BITS = 6;
+
+    private static final long[] NO_WORDS = new long[0];
+
+    public static final DeficiencySet EMPTY = new DeficiencySet(NO_WORDS);
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The mask: bit <code>i</code> of word <code>i &gt;&gt; 6</code>
+     * is set if this set contains the deficiency with index <code>i</code>.
+     * The last word is not zero.
+     */
+    private final long[] words;
+
+    private final int size;
+
+    private final int hash;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates a set with the given mask which is not copied.
+     *
+     * @param words
+     *    a mask without trailing zero words.
+     */
+    private DeficiencySet(long[] words) {
+	assert words.length == 0 || words[words.length - 1] != 0;
+	this.words = words;
+	int num = 0;
+	int code = 0;
+	for (int ind = 0; ind < words.length; ind++) {
+	    num += Long.bitCount(words[ind]);
+	    for (long word = words[ind]; word != 0; word &= word - 1) {
+		code += Deficiency.get((ind << LOG_BITS)
+				       + Long.numberOfTrailingZeros(word))
+		    .hashCode();
+	    }
+	}
+	this.size = num;
+	this.hash = code;
+    } // DeficiencySet constructor
+
+    /**
+     * Returns the set with the mask given by the first <code>len</code>
+     * words of <code>words</code> after removing trailing zero words.
+     * If no words are removed, <code>words</code> is not copied
+     * and must not be modified afterwards.
+     */
+    static DeficiencySet create(long[] words, int len) {
+	while (len > 0 && words[len - 1] == 0) {
+	    len--;
+	}
+	if (len == 0) {
+	    return EMPTY;
+	}
+	return new DeficiencySet(len == words.length
+				 ? words : Arrays.copyOf(words, len));
+    }
+
+    /**
+     * Returns a set with the same elements as <code>defs</code>.
+     *
+     * @return
+     *    <code>defs</code> itself if it is a <code>DeficiencySet</code>.
+     */
+    public static DeficiencySet of(Collection<Deficiency> defs) {
+	if (defs instanceof DeficiencySet) {
+	    return (DeficiencySet) defs;
+	}
+	long[] res = NO_WORDS;
+	for (Deficiency def : defs) {
+	    int wInd = def.getIndex() >> LOG_BITS;
+	    if (wInd >= res.length) {
+		res = Arrays.copyOf(res, wInd + 1);
+	    }
+	    res[wInd] |= 1L << def.getIndex();
+	}
+	return create(res, res.length);
+    }
+
+    /**
+     * Returns the set with the mask given by <code>len</code> words
+     * of <code>words</code> starting at <code>off</code>.
+     * The words are copied.
+     */
+    static DeficiencySet of(long[] words, int off, int len) {
+	long[] res = new long[len];
+	System.arraycopy(words, off, res, 0, len);
+	return create(res, len);
+    }
+
+    /**
+     * Returns the words of the mask which must not be modified:
+     * bit <code>i</code> of word <code>i &gt;&gt; 6</code>
+     * is set if this set contains the deficiency with index <code>i</code>.
+     */
+    long[] getWords() {
+	return this.words;
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: operations.                                                 *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the union of <code>sets</code>
+     * computing a single mask.
+     *
+     * @param sets
+     *    sets of deficiencies which are converted
+     *    if they are no <code>DeficiencySet</code>s.
+     */
+    public static DeficiencySet union(Collection<? extends Collection<Deficiency>>
+				      sets) {
+	int len = 0;
+	for (Collection<Deficiency> set : sets) {
+	    len = Math.max(len, of(set).words.length);
+	}
+	long[] res = new long[len];
+	for (Collection<Deficiency> set : sets) {
+	    long[] words = of(set).words;
+	    for (int ind = 0; ind < words.length; ind++) {
+		res[ind] |= words[ind];
+	    }
+	}
+	return create(res, len);
+    }
+
+    /**
+     * Returns the intersection of <code>sets</code>
+     * computing a single mask.
+     *
+     * @param sets
+     *    a non-empty collection of sets of deficiencies
+     *    which are converted if they are no <code>DeficiencySet</code>s.
+     */
+    public static DeficiencySet intersection(Collection<? extends
+					     Collection<Deficiency>> sets) {
+	Iterator<? extends Collection<Deficiency>> iter = sets.iterator();
+	long[] first = of(iter.next()).words;
+	int len = first.length;
+	long[] res = null;
+	while (iter.hasNext() && len > 0) {
+	    long[] words = of(iter.next()).words;
+	    len = Math.min(len, words.length);
+	    if (res == null) {
+		res = Arrays.copyOf(first, len);
+	    }
+	    for (int ind = 0; ind < len; ind++) {
+		res[ind] &= words[ind];
+	    }
+	}
+	return res == null ? of(sets.iterator().next()) : create(res, len);
+    }
+
+    public DeficiencySet union(DeficiencySet other) {
+	long[] longer = this.words.length >= other.words.length
+	    ? this.words : other.words;
+	long[] shorter = longer == this.words ? other.words : this.words;
+	long[] res = longer.clone();
+	for (int ind = 0; ind < shorter.length; ind++) {
+	    res[ind] |= shorter[ind];
+	}
+	return create(res, res.length);
+    }
+
+    public DeficiencySet intersect(DeficiencySet other) {
+	int len = Math.min(this.words.length, other.words.length);
+	long[] res = new long[len];
+	for (int ind = 0; ind < len; ind++) {
+	    res[ind] = this.words[ind] & other.words[ind];
+	}
+	return create(res, len);
+    }
+
+    /**
+     * Returns the set of the elements of this set
+     * not contained in <code>other</code>.
+     */
+    public DeficiencySet minus(DeficiencySet other) {
+	long[] res = this.words.clone();
+	int len = Math.min(res.length, other.words.length);
+	for (int ind = 0; ind < len; ind++) {
+	    res[ind] &= ~other.words[ind];
+	}
+	return create(res, res.length);
+    }
+
+    /**
+     * Returns whether this set and <code>other</code>
+     * have an element in common.
+     */
+    public boolean intersects(DeficiencySet other) {
+	int len = Math.min(this.words.length, other.words.length);
+	for (int ind = 0; ind < len; ind++) {
+	    if ((this.words[ind] & other.words[ind]) != 0) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: set.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public int size() {
+	return this.size;
+    }
+
+    public boolean isEmpty() {
+	return this.words.length == 0;
+    }
+
+    public boolean contains(Object obj) {
+	if (!(obj instanceof Deficiency)) {
+	    return false;
+	}
+	int index = ((Deficiency) obj).getIndex();
+	int wInd = index >> LOG_BITS;
+	return wInd < this.words.length
+	    && (this.words[wInd] & (1L << index)) != 0;
+    }
+
+    public boolean containsAll(Collection<?> coll) {
+	if (!(coll instanceof DeficiencySet)) {
+	    return super.containsAll(coll);
+	}
+	long[] other = ((DeficiencySet) coll).words;
+	if (other.length > this.words.length) {
+	    return false;
+	}
+	for (int ind = 0; ind < other.length; ind++) {
+	    if ((other[ind] & ~this.words[ind]) != 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    public Iterator<Deficiency> iterator() {
+	return new Iterator<Deficiency>() {
+	    private int wInd = 0;
+	    private long word = DeficiencySet.this.words.length == 0
+		? 0 : DeficiencySet.this.words[0];
+
+	    public boolean hasNext() {
+		long[] words = DeficiencySet.this.words;
+		while (this.word == 0 && this.wInd < words.length - 1) {
+		    this.word = words[++this.wInd];
+		}
+		return this.word != 0;
+	    }
+
+	    public Deficiency next() {
+		if (!hasNext()) {
+		    throw new NoSuchElementException();
+		}
+		int index = (this.wInd << LOG_BITS)
+		    + Long.numberOfTrailingZeros(this.word);
+		this.word &= this.word - 1;
+		return Deficiency.get(index);
+	    }
+	};
+    }
+
+    public boolean equals(Object obj) {
+	if (obj instanceof DeficiencySet) {
+	    return Arrays.equals(this.words, ((DeficiencySet) obj).words);
+	}
+	return super.equals(obj);
+    }
+
+    public int hashCode() {
+	return this.hash;
+    }
+
+} // DeficiencySet
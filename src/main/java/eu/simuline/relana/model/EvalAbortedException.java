@@ -0,0 +1,42 @@
+package eu.simuline.relana.model;
+
+/**
+ * Thrown by an evaluation controlled by an {@link EvalControl}
+ * if it is cancelled or exceeds a limit.
+ * The exception provides the bounds for the probability
+ * obtained until the evaluation stopped.
+ *
+ *
+ * Created: Sun Oct 18 01:26:13 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public class EvalAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 4163578502916352840L;
+
+    /**
+     * The reason why the evaluation stopped.
+     */
+    private final EvalControl.Stop stop;
+
+    /**
+     * The bounds for the probability when the evaluation stopped.
+     */
+    private final ProbInterval bounds;
+
+    EvalAbortedException(EvalControl.Stop stop, ProbInterval bounds) {
+	super("Evaluation stopped: " + stop + "; found " + bounds + ". ");
+	this.stop = stop;
+	this.bounds = bounds;
+    }
+
+    public EvalControl.Stop getStop() {
+	return this.stop;
+    }
+
+    public ProbInterval getBounds() {
+	return this.bounds;
+    }
+} // EvalAbortedException
@@ -0,0 +1,326 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+import java.util.List;
+
+/**
+ * Controls an evaluation by
+ * {@link FlatCInstance#getProb(List, ProbMemo, EvalControl)}:
+ * limits the time, the number of sub-problems expanded
+ * and the memory used,
+ * allows to cancel the evaluation from another thread
+ * and reports the progress periodically to a {@link Listener}.
+ * <p>
+ * The progress is measured by the probability mass resolved so far:
+ * each sub-problem of the expansion is reached with the probability
+ * of the conditions leading to it;
+ * if its probability is known without further expansion,
+ * its mass is resolved.
+ * The probability of the effect is at least the sum
+ * of the resolved masses weighted with the probabilities
+ * of their sub-problems
+ * and exceeds this lower bound at most by the mass not yet resolved.
+ * Thus an evaluation which is stopped
+ * still yields bounds given by {@link #getBounds()}.
+ * <p>
+ * The limits are checked and the progress is reported
+ * whenever a sub-problem is expanded
+ * by the thread performing the evaluation.
+ * A control shall be used for a single evaluation at a time.
+ *
+ *
+ * Created: Sun Oct 18 01:24:50 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class EvalControl {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Receives reports on the progress of an evaluation.
+     */
+    public interface Listener {
+
+	/**
+	 * Notifies on the progress of the evaluation controlled by
+	 * <code>control</code>.
+	 * This is invoked by the thread performing the evaluation
+	 * at most once per period
+	 * and once when the evaluation is finished or stopped.
+	 */
+	void progress(EvalControl control);
+    } // interface Listener
+
+    /**
+     * The reasons why an evaluation is stopped.
+     */
+    public enum Stop {
+	Cancelled, TimeLimit, NodeLimit, MemoryLimit;
+    } // enum Stop
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of expansions after which the memory is checked.
+     */
+    private static final int MEMORY_CHECK_PERIOD = 1 << 10;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    // the limits: Long.MAX_VALUE if there is none
+    private long timeLimit;
+    private long nodeLimit;
+    private long memoryLimit;
+
+    private Listener listener;
+
+    /**
+     * The period in milliseconds in which {@link #listener} is notified.
+     */
+    private long period;
+
+    /**
+     * Whether the evaluation is to be stopped.
+     */
+    private volatile boolean cancelled;
+
+    // the state of the evaluation
+    private volatile long startNanos;
+    private volatile long lastReportNanos;
+    private volatile long explored;
+    private volatile BigDecimal resolved;
+    private volatile BigDecimal lower;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates a control without limits and without listener.
+     */
+    public EvalControl() {
+	this.timeLimit = Long.MAX_VALUE;
+	this.nodeLimit = Long.MAX_VALUE;
+	this.memoryLimit = Long.MAX_VALUE;
+	this.listener = null;
+	this.period = 0;
+	this.cancelled = false;
+	start();
+    } // EvalControl constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods: configuration.                                              *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Limits the wall-clock time of the evaluation.
+     *
+     * @param millis
+     *    the maximal time in milliseconds.
+     */
+    public void setTimeLimit(long millis) {
+	this.timeLimit = millis;
+    }
+
+    /**
+     * Limits the number of sub-problems expanded.
+     *
+     * @param nodes
+     *    the maximal number of sub-problems.
+     */
+    public void setNodeLimit(long nodes) {
+	this.nodeLimit = nodes;
+    }
+
+    /**
+     * Limits the memory used by the virtual machine
+     * as given by the total memory minus the free memory.
+     * Note that this includes memory which may be freed
+     * by the garbage collector.
+     *
+     * @param bytes
+     *    the maximal memory in bytes.
+     */
+    public void setMemoryLimit(long bytes) {
+	this.memoryLimit = bytes;
+    }
+
+    /**
+     * Sets the listener notified on the progress.
+     *
+     * @param listener
+     *    the listener or <code>null</code>.
+     * @param millis
+     *    the period in milliseconds in which <code>listener</code>
+     *    is notified.
+     */
+    public void setListener(Listener listener, long millis) {
+	this.listener = listener;
+	this.period = millis;
+    }
+
+    /**
+     * Requests the evaluation to stop.
+     * This may be invoked by any thread.
+     * The evaluation stops when expanding the next sub-problem.
+     */
+    public void cancel() {
+	this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+	return this.cancelled;
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: progress.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the number of sub-problems expanded so far.
+     */
+    public long getExplored() {
+	return this.explored;
+    }
+
+    /**
+     * Returns the probability mass resolved so far.
+     * This increases from <code>0</code> to <code>1</code>.
+     */
+    public BigDecimal getResolvedMass() {
+	return this.resolved;
+    }
+
+    /**
+     * Returns bounds for the probability evaluated
+     * according to the mass resolved so far.
+     */
+    public ProbInterval getBounds() {
+	BigDecimal low = this.lower;
+	BigDecimal res = this.resolved;
+	return new ProbInterval(low,
+				low.add(BigDecimal.ONE.subtract(res)),
+				this.explored);
+    }
+
+    public long getElapsedMillis() {
+	return (System.nanoTime() - this.startNanos) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns an estimate of the time the evaluation still needs,
+     * assuming that the mass is resolved at a constant rate.
+     *
+     * @return
+     *    the estimated time in milliseconds
+     *    or <code>-1</code> if no mass is resolved yet.
+     */
+    public long getEstimatedRemainingMillis() {
+	BigDecimal res = this.resolved;
+	if (res.signum() == 0) {
+	    return -1;
+	}
+	double frac = res.doubleValue();
+	return (long) (getElapsedMillis() * (1 - frac) / frac);
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: invoked by the evaluation.                                  *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Resets the state at the start of an evaluation.
+     * The cancellation is not reset.
+     */
+    void start() {
+	this.startNanos = System.nanoTime();
+	this.lastReportNanos = this.startNanos;
+	this.explored = 0;
+	this.resolved = BigDecimal.ZERO;
+	this.lower = BigDecimal.ZERO;
+    }
+
+    /**
+     * Notes that a sub-problem reached with probability <code>mass</code>
+     * is resolved with probability <code>prob</code>.
+     */
+    void resolve(BigDecimal mass, BigDecimal prob) {
+	this.resolved = this.resolved.add(mass);
+	this.lower = this.lower.add(mass.multiply(prob));
+    }
+
+    /**
+     * Notes that a sub-problem is to be expanded,
+     * checks the limits and reports the progress if due.
+     *
+     * @throws EvalAbortedException
+     *    if the evaluation is cancelled or exceeds a limit.
+     */
+    void expand() {
+	if (this.cancelled) {
+	    abort(Stop.Cancelled);
+	}
+	if (this.explored >= this.nodeLimit) {
+	    abort(Stop.NodeLimit);
+	}
+	this.explored++;
+	// compare milliseconds: limits in nanoseconds may overflow
+	long now = System.nanoTime();
+	if ((now - this.startNanos) / NANOS_PER_MILLI >= this.timeLimit) {
+	    abort(Stop.TimeLimit);
+	}
+	if (this.memoryLimit != Long.MAX_VALUE
+	    && this.explored % MEMORY_CHECK_PERIOD == 0) {
+	    Runtime runtime = Runtime.getRuntime();
+	    if (runtime.totalMemory() - runtime.freeMemory()
+		> this.memoryLimit) {
+		abort(Stop.MemoryLimit);
+	    }
+	}
+	if (this.listener != null
+	    && (now - this.lastReportNanos) / NANOS_PER_MILLI >= this.period) {
+	    this.lastReportNanos = now;
+	    this.listener.progress(this);
+	}
+    }
+
+    /**
+     * Reports the final progress when the evaluation is finished.
+     */
+    void finish() {
+	if (this.listener != null) {
+	    this.listener.progress(this);
+	}
+    }
+
+    private void abort(Stop stop) {
+	finish();
+	throw new EvalAbortedException(stop, getBounds());
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<EvalControl explored=\"");
+	res.append(this.explored);
+	res.append("\" resolved=\"");
+	res.append(this.resolved);
+	res.append("\" elapsed=\"");
+	res.append(getElapsedMillis());
+	res.append("\" remaining=\"");
+	res.append(getEstimatedRemainingMillis());
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // EvalControl
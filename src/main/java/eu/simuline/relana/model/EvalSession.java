@@ -0,0 +1,281 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An evaluation session for what-if analysis:
+ * keeps the diagrams of the output effects of a {@link FlatCInstance}
+ * compiled by a {@link BddEvaluator}
+ * together with the probabilities of their nodes,
+ * so that after changing the distribution of an effect
+ * by {@link #setDistr(List, ProbDistr)}
+ * only the nodes depending on the changed variables are recomputed.
+ * Since the variables of an effect are declared
+ * according to the path of the effect,
+ * the nodes below these variables are not even visited.
+ * The outputs not depending on the changed variables
+ * keep their probabilities.
+ * <p>
+ * The underlying {@link FlatCInstance} is not modified.
+ *
+ *
+ * Created: Sat Oct 17 23:24:39 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class EvalSession {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The instance the effects of which are evaluated.
+     */
+    private final FlatCInstance flatCInst;
+
+    /**
+     * The evaluator holding the diagrams
+     * and the current probabilities of the variables.
+     * Its variables are never reordered
+     * so that nodes keep their variables.
+     */
+    private final BddEvaluator evaluator;
+
+    /**
+     * Maps the paths of the outputs to the roots of their diagrams.
+     */
+    private final Map<List<String>, Integer> path2root;
+
+    /**
+     * The current probabilities of the variables of {@link #evaluator}.
+     */
+    private BigDecimal[] probs;
+
+    /**
+     * Maps the nodes the probability of which is known
+     * to this probability.
+     */
+    private final Map<Integer, BigDecimal> node2prob;
+
+    /**
+     * The number of node probabilities computed so far.
+     */
+    private long computed;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates a session for the effects of <code>flatCInst</code>
+     * specified by <code>sPaths</code>
+     * and computes their probabilities.
+     *
+     * @param flatCInst
+     *    the instance the effects of which are to be evaluated.
+     * @param sPaths
+     *    identifies the outputs.
+     */
+    public EvalSession(FlatCInstance flatCInst,
+		       Collection<List<String>> sPaths) {
+	this.flatCInst = flatCInst;
+	this.evaluator = new BddEvaluator(flatCInst);
+	this.path2root = new TreeMap<List<String>, Integer>
+	    (FlatCInstance.PATH_CMP);
+	for (List<String> sPath : sPaths) {
+	    this.path2root.put(sPath, this.evaluator.getRoot(sPath));
+	}
+	this.probs = this.evaluator.getProbs();
+	this.node2prob = new HashMap<Integer, BigDecimal>();
+	this.computed = 0;
+	getProbs();
+    } // EvalSession constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the probability
+     * that the effect specified by <code>sPath</code>
+     * is not the empty set
+     * under the current distributions.
+     * If the effect is no output of this session yet, it is added.
+     * Since this modifies the diagrams,
+     * all probabilities of nodes are discarded.
+     *
+     * @param sPath
+     *    identifies an effect.
+     * @return
+     *    the probability described above.
+     */
+    public BigDecimal getProb(List<String> sPath) {
+	Integer root = this.path2root.get(sPath);
+	if (root == null) {
+	    root = this.evaluator.getRoot(sPath);
+	    this.path2root.put(sPath, root);
+	    // nodes may have been collected and reused
+	    this.node2prob.clear();
+	}
+	return getProb(root);
+    }
+
+    /**
+     * Returns the probabilities of all outputs of this session.
+     *
+     * @return
+     *    a map from the paths of the outputs
+     *    to the probabilities as given by {@link #getProb(List)}.
+     */
+    public Map<List<String>, BigDecimal> getProbs() {
+	Map<List<String>, BigDecimal> res = new TreeMap<List<String>,
+	    BigDecimal>(FlatCInstance.PATH_CMP);
+	for (Map.Entry<List<String>, Integer> entry
+		 : this.path2root.entrySet()) {
+	    res.put(entry.getKey(), getProb(entry.getValue()));
+	}
+	return res;
+    }
+
+    private BigDecimal getProb(int node) {
+	if (node == Bdd.FALSE) {
+	    return BigDecimal.ZERO;
+	}
+	if (node == Bdd.TRUE) {
+	    return BigDecimal.ONE;
+	}
+	BigDecimal res = this.node2prob.get(node);
+	if (res == null) {
+	    Bdd bdd = this.evaluator.getBdd();
+	    BigDecimal prob = this.probs[bdd.getVar(node)];
+	    res =                prob .multiply(getProb(bdd.getHigh(node)))
+		.add(BigDecimal.ONE.subtract(prob)
+		     .multiply(getProb(bdd.getLow(node))));
+	    this.node2prob.put(node, res);
+	    this.computed++;
+	}
+	return res;
+    }
+
+    /**
+     * Replaces the distribution of the effect specified by
+     * <code>ePath</code> by <code>distr</code> within this session
+     * and discards the probabilities of the nodes depending on it.
+     * These are recomputed on demand.
+     *
+     * @param ePath
+     *    identifies an effect with distribution.
+     * @param distr
+     *    a distribution for the type of that effect.
+     * @return
+     *    the paths of the outputs
+     *    the probabilities of which may have changed.
+     * @throws IllegalArgumentException
+     *    if the effect has no distribution
+     *    or if <code>distr</code> does not fit its type.
+     */
+    public Set<List<String>> setDistr(List<String> ePath, ProbDistr distr) {
+	SInstance serv = this.flatCInst.getEffect(ePath);
+	if (serv == null || serv.getDistr() == null) {
+	    throw new IllegalArgumentException
+		("Found no effect with distribution " + ePath + ". ");
+	}
+	List<Integer> vars = this.evaluator.setDistr(serv, distr);
+	this.probs = this.evaluator.getProbs();
+
+	Set<List<String>> res =
+	    new TreeSet<List<String>>(FlatCInstance.PATH_CMP);
+	if (vars.isEmpty()) {
+	    return res;
+	}
+	Bdd bdd = this.evaluator.getBdd();
+	boolean[] changed = new boolean[this.probs.length];
+	int maxLevel = -1;
+	for (int var : vars) {
+	    changed[var] = true;
+	    maxLevel = Math.max(maxLevel, bdd.getVarLevel(var));
+	}
+	Map<Integer, Boolean> node2dirty = new HashMap<Integer, Boolean>();
+	for (Map.Entry<List<String>, Integer> entry
+		 : this.path2root.entrySet()) {
+	    if (invalidate(entry.getValue(), changed, maxLevel, node2dirty)) {
+		res.add(entry.getKey());
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Discards the probabilities of the nodes reachable from
+     * <code>node</code> which depend on a changed variable.
+     *
+     * @param changed
+     *    marks the changed variables.
+     * @param maxLevel
+     *    the maximal level of a changed variable:
+     *    the nodes below do not depend on a changed variable.
+     * @param node2dirty
+     *    maps the nodes visited so far
+     *    to whether they depend on a changed variable.
+     * @return
+     *    whether <code>node</code> depends on a changed variable.
+     */
+    private boolean invalidate(int node,
+			       boolean[] changed,
+			       int maxLevel,
+			       Map<Integer, Boolean> node2dirty) {
+	Bdd bdd = this.evaluator.getBdd();
+	if (bdd.getLevel(node) > maxLevel) {
+	    // includes the terminal nodes
+	    return false;
+	}
+	Boolean res = node2dirty.get(node);
+	if (res == null) {
+	    // evaluate both successors to discard their probabilities
+	    boolean low  = invalidate(bdd.getLow (node), changed,
+				      maxLevel, node2dirty);
+	    boolean high = invalidate(bdd.getHigh(node), changed,
+				      maxLevel, node2dirty);
+	    res = changed[bdd.getVar(node)] || low || high;
+	    if (res) {
+		this.node2prob.remove(node);
+	    }
+	    node2dirty.put(node, res);
+	}
+	return res;
+    }
+
+    /**
+     * Returns the number of probabilities of nodes computed so far.
+     * This shows the effort saved by incremental evaluation.
+     *
+     * @return
+     *    {@link #computed}.
+     */
+    public long getComputed() {
+	return this.computed;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<EvalSession outputs=\"");
+	res.append(this.path2root.size());
+	res.append("\" nodes=\"");
+	res.append(this.node2prob.size());
+	res.append("\" computed=\"");
+	res.append(this.computed);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // EvalSession
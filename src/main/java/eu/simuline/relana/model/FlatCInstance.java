@@ -2,20 +2,31 @@ package eu.simuline.relana.model;
 
 import eu.simuline.relana.expressions.Formula;
 import eu.simuline.relana.expressions.Operation;
+import eu.simuline.relana.expressions.Type;
 //import eu.simuline.relana.expressions.Operation;
 //import eu.simuline.relana.expressions.Type;
 
 import java.math.BigDecimal;
 
 import java.util.Set;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Map;
-//import java.util.HashMap;
+import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.Iterator;
 import java.util.List;
-//import java.util.ArrayList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Queue;
+import java.util.PriorityQueue;
+import java.util.Stack;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 /**
@@ -52,24 +63,198 @@ public final class FlatCInstance {
      * -------------------------------------------------------------------- */
 
     /**
-     * Maps the names of the effects to their instances. 
+     * Maps the names of the effects 
+     * of the <code>FlatCInstance</code> this one arises from 
+     * by conditioning to their instances. 
+     * This is shared by all instances arising by conditioning. 
      */
     private final Map<List<String>, SInstance> effects;
 
+    /**
+     * The instance this one arises from by a single conditioning step 
+     * or <code>null</code> if this one does not arise by conditioning. 
+     * The effects not in {@link #delta} are looked up 
+     * through the chain of parents and finally in {@link #effects}. 
+     */
+    private final FlatCInstance parent;
+
+    /**
+     * Maps the names of the effects rewritten 
+     * by the last conditioning step 
+     * to their instances overriding those of {@link #parent}. 
+     * These are the effects depending on the variable conditioned on 
+     * as given by {@link #origin2paths}; 
+     * the other effects are shared with the parent 
+     * so that a conditioning step does not copy 
+     * the effects rewritten before. 
+     * This is empty for an instance not arising by conditioning. 
+     */
+    private final Map<List<String>, SInstance> delta;
+
+    /**
+     * Maps each variable, identified by its {@link SInstance#getOrigin()}, 
+     * to the names of the effects the formulae of which refer to it. 
+     * Since conditioning replaces a variable by variables 
+     * with the same origin, 
+     * this index is shared by all instances arising by conditioning. 
+     */
+    private final Map<SInstance, Set<List<String>>> origin2paths;
+
+    /**
+     * The strategy choosing the variable conditioned on next 
+     * by {@link #getProb(List, ProbMemo)}. 
+     */
+    private final VarOrder varOrder;
+
+    /**
+     * Maps the effects of the <code>FlatCInstance</code> 
+     * this one arises from by conditioning 
+     * to their ranks given by {@link #varOrder}. 
+     * Variables are identified by their {@link SInstance#getOrigin()}. 
+     * This determines the variable conditioned on next 
+     * by {@link #getProb(List, ProbMemo)}. 
+     */
+    private final Map<SInstance, Integer> origin2rank;
+
+    /**
+     * Maps the effects of the <code>FlatCInstance</code> 
+     * this one arises from by conditioning 
+     * which are given by a formula and have no distribution 
+     * to their formulae inlined by {@link #compile(Collection)}. 
+     * This is shared by all instances arising by conditioning 
+     * or by {@link #reorder(VarOrder)}. 
+     */
+    private final Map<SInstance, Formula> serv2inlined;
+
     /* -------------------------------------------------------------------- *
      * constructors.                                                        *
      * -------------------------------------------------------------------- */
 
     public FlatCInstance(Map<List<String>, SInstance> effects) {
+	this(effects, VarOrder.Component);
+    } // FlatCInstance constructor
+
+    /**
+     * Creates a <code>FlatCInstance</code> with the given effects 
+     * conditioning on the variables in the order given by 
+     * <code>varOrder</code>. 
+     * The effects are not modified and may thus be shared 
+     * with another <code>FlatCInstance</code>. 
+     *
+     * @param effects 
+     *    maps the names of the effects to their instances. 
+     * @param varOrder 
+     *    the strategy choosing the variable to condition on next. 
+     */
+    public FlatCInstance(Map<List<String>, SInstance> effects, 
+			 VarOrder varOrder) {
+	this(effects, null, Collections.<List<String>, SInstance>emptyMap(), 
+	     varOrder, compile(effects.values()), index(effects));
+    } // FlatCInstance constructor
+
+    private FlatCInstance(Map<List<String>, SInstance> effects,
+			  FlatCInstance parent, 
+			  Map<List<String>, SInstance> delta, 
+			  VarOrder varOrder, 
+			  Map<SInstance, Formula> serv2inlined, 
+			  Map<SInstance, Set<List<String>>> origin2paths) {
 	this.effects = effects;
+	this.parent = parent;
+	this.delta = delta;
+	this.varOrder = varOrder;
+	this.serv2inlined = serv2inlined;
+	this.origin2paths = origin2paths;
+	List<List<String>> paths = 
+	    new ArrayList<List<String>>(effects.keySet());
+	Collections.sort(paths, PATH_CMP);
+	this.origin2rank = varOrder.getRanks(this, paths);
+    } // FlatCInstance constructor
+
+    private FlatCInstance(Map<List<String>, SInstance> effects,
+			  FlatCInstance parent, 
+			  Map<List<String>, SInstance> delta, 
+			  VarOrder varOrder, 
+			  Map<SInstance, Formula> serv2inlined, 
+			  Map<SInstance, Set<List<String>>> origin2paths, 
+			  Map<SInstance, Integer> origin2rank) {
+	this.effects = effects;
+	this.parent = parent;
+	this.delta = delta;
+	this.varOrder = varOrder;
+	this.serv2inlined = serv2inlined;
+	this.origin2paths = origin2paths;
+	this.origin2rank = origin2rank;
     } // FlatCInstance constructor
 
     /* -------------------------------------------------------------------- *
      * methods.                                                             *
      * -------------------------------------------------------------------- */
 
+    /**
+     * Returns the effects of this instance. 
+     *
+     * @return 
+     *    {@link #effects} if this instance does not arise by conditioning; 
+     *    else a new map overridden by the {@link #delta}s 
+     *    of the chain of parents. 
+     */
     Map<List<String>, SInstance> getEffects() {
-	return this.effects;
+	if (this.parent == null && this.delta.isEmpty()) {
+	    return this.effects;
+	}
+	Stack<Map<List<String>, SInstance>> deltas = 
+	    new Stack<Map<List<String>, SInstance>>();
+	for (FlatCInstance inst = this; inst != null; inst = inst.parent) {
+	    deltas.push(inst.delta);
+	}
+	Map<List<String>, SInstance> res = 
+	    new TreeMap<List<String>, SInstance>(PATH_CMP);
+	res.putAll(this.effects);
+	// later conditioning steps override earlier ones 
+	while (!deltas.empty()) {
+	    res.putAll(deltas.pop());
+	}
+	return res;
+    }
+
+    /**
+     * Returns the index {@link #origin2paths} for <code>effects</code>. 
+     */
+    private static Map<SInstance, Set<List<String>>> 
+	index(Map<List<String>, SInstance> effects) {
+	Map<SInstance, Set<List<String>>> res = 
+	    new HashMap<SInstance, Set<List<String>>>();
+	for (Map.Entry<List<String>, SInstance> entry : effects.entrySet()) {
+	    Formula form = entry.getValue().getFormula();
+	    if (form == null) {
+		continue;
+	    }
+	    for (SInstance var : form.getVars()) {
+		Set<List<String>> paths = res.get(var.getOrigin());
+		if (paths == null) {
+		    paths = new HashSet<List<String>>();
+		    res.put(var.getOrigin(), paths);
+		}
+		paths.add(entry.getKey());
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns a <code>FlatCInstance</code> with the effects of this one 
+     * conditioning on the variables in the order given by 
+     * <code>varOrder</code>. 
+     *
+     * @param varOrder 
+     *    the strategy choosing the variable to condition on next. 
+     * @return 
+     *    a <code>FlatCInstance</code> sharing the effects with this one. 
+     */
+    public FlatCInstance reorder(VarOrder varOrder) {
+	return new FlatCInstance(this.effects, this.parent, this.delta, 
+				 varOrder, 
+				 this.serv2inlined, this.origin2paths);
     }
 
     public SInstance getEffect(InstanceLocator loc) {
@@ -77,66 +262,72 @@ public final class FlatCInstance {
     }
 
     public SInstance getEffect(List<String> path) {
+	SInstance res;
+	for (FlatCInstance inst = this; inst != null; inst = inst.parent) {
+	    res = inst.delta.get(path);
+	    if (res != null) {
+		return res;
+	    }
+	}
 	return this.effects.get(path);
     }
 
 
     /**
-     * Returns the <code>FlatCInstance</code> arising from this one 
-     * by assuming that <code>def</code> does not occur 
-     * within <code>serv</code>. 
+     * Returns the formula which replaces <code>serv</code> 
+     * when assuming that <code>def</code> does not occur within it. 
      *
      * @param serv 
      *    a <code>SInstance</code> with probability distribution. 
-     *    <code>serv.distr != null</code>. 
      * @param def 
      *    a <code>Deficiency</code> 
      *    minimal within the type of <code>serv</code>. 
-     *    **** is this unique or not? **** 
      * @return 
-     *    a <code>FlatCInstance</code> arising from this one by assuming 
-     *    that <code>def</code> does not occur within <code>serv</code>. 
+     *    the empty constant if <code>def</code> is the last deficiency 
+     *    of <code>serv</code>; 
+     *    otherwise a variable with the remaining deficiencies. 
+     * @see #remove(SInstance, Deficiency)
      */
-    public FlatCInstance remove(SInstance serv, Deficiency def) {
+    static Formula removeForm(SInstance serv, Deficiency def) {
 	SInstance newServ = serv.remove(def);
 	if (newServ == null) {
 	    // remove would cause empty set. 
-	    return substitute(serv, Formula.EMPTY_EXPRESSION);
+	    return Formula.EMPTY_EXPRESSION;
 	}
 
-	Formula newVar = new Formula.Var(newServ, serv.getName());
-	return substitute(serv, newVar);
+	return Formula.Var.create(newServ, serv.getName());
     }
 
     /**
-     * Returns the <code>FlatCInstance</code> arising from this one 
-     * by assuming that <code>def</code> occurs within <code>serv</code>. 
+     * Returns the formula which replaces <code>serv</code> 
+     * when assuming that <code>def</code> occurs within it. 
      *
      * @param serv 
      *    a <code>SInstance</code> with probability distribution. 
-     *    <code>serv.distr != null</code>. 
      * @param def 
      *    a <code>Deficiency</code> 
      *    minimal within the type of <code>serv</code>. 
-     *    **** is this unique or not? **** 
      * @return 
-     *    a <code>FlatCInstance</code> arising from this one 
-     *    by assuming that <code>def</code> occurs within <code>serv</code>. 
+     *    the constant <code>{def}</code> 
+     *    if <code>def</code> is the last deficiency of <code>serv</code>; 
+     *    otherwise the union of this constant 
+     *    and a variable with the deficiencies above <code>def</code>. 
+     * @see #add(SInstance, Deficiency)
      */
-    public FlatCInstance add(SInstance serv, Deficiency def) {
+    static Formula addForm(SInstance serv, Deficiency def) {
 	
 	// create the set {def} with type serv.getType() 
 	// This works, because def is minimal within serv.getType() 
 	Set<Deficiency> defSet = 
 	    new HashSet<Deficiency>();
 	defSet.add(def);
-	Formula newConst = new Formula.Const(defSet, serv.getType());
+	Formula newConst = Formula.Const.create(defSet, serv.getType());
 	assert serv.getType().isValid(defSet);
 
 	if (serv.getType().asSet().size() == 1) {
 	    // def is the only remaining effect 
 	    // and removing it implies removing the whole effect. 
-	    return substitute(serv, newConst);
+	    return newConst;
 	}
 	// Here, serv may assume more than one non-empty set. 
 
@@ -146,15 +337,52 @@ public final class FlatCInstance {
 
 	// newServ is the effect that occurs by REMOVING def 
 	SInstance newServ = serv.add(def);
-	Formula newVar = new Formula.Var(newServ, serv.getName());
+	Formula newVar = Formula.Var.create(newServ, serv.getName());
 	Set<Formula> args = new HashSet<Formula>();
 	args.add(newConst);
 	args.add(newVar);
-	Formula newComp = Formula.
+	return Formula.
 	    getFormula(Operation.getOperation(Operation.BaseOps.Union)
 		       .getEval(null), args);
-	
-	return substitute(serv, newComp);
+    }
+
+    /**
+     * Returns the <code>FlatCInstance</code> arising from this one 
+     * by assuming that <code>def</code> does not occur 
+     * within <code>serv</code>. 
+     *
+     * @param serv 
+     *    a <code>SInstance</code> with probability distribution. 
+     *    <code>serv.distr != null</code>. 
+     * @param def 
+     *    a <code>Deficiency</code> 
+     *    minimal within the type of <code>serv</code>. 
+     *    **** is this unique or not? **** 
+     * @return 
+     *    a <code>FlatCInstance</code> arising from this one by assuming 
+     *    that <code>def</code> does not occur within <code>serv</code>. 
+     */
+    public FlatCInstance remove(SInstance serv, Deficiency def) {
+	return substitute(serv, removeForm(serv, def));
+    }
+
+    /**
+     * Returns the <code>FlatCInstance</code> arising from this one 
+     * by assuming that <code>def</code> occurs within <code>serv</code>. 
+     *
+     * @param serv 
+     *    a <code>SInstance</code> with probability distribution. 
+     *    <code>serv.distr != null</code>. 
+     * @param def 
+     *    a <code>Deficiency</code> 
+     *    minimal within the type of <code>serv</code>. 
+     *    **** is this unique or not? **** 
+     * @return 
+     *    a <code>FlatCInstance</code> arising from this one 
+     *    by assuming that <code>def</code> occurs within <code>serv</code>. 
+     */
+    public FlatCInstance add(SInstance serv, Deficiency def) {
+	return substitute(serv, addForm(serv, def));
     }
 
     /**
@@ -170,17 +398,95 @@ public final class FlatCInstance {
      *    a <code>FlatCInstance</code> arising from this one 
      *    by substituting <code>serv</code> by <code>form</code> 
      *    in all effects using {@link SInstance#substitute}. 
+     *    Only the effects referring to <code>serv</code> 
+     *    according to {@link #origin2paths} are copied 
+     *    into the {@link #delta} of the result; 
+     *    the others are shared with this instance, its parent. 
      */
     FlatCInstance substitute(SInstance serv, Formula form) {
-	Map<List<String>, SInstance> effects = 
-	    new TreeMap<List<String>, SInstance>(PATH_CMP);
-	for (Map.Entry<List<String>, SInstance> entry 
-		 : this.effects.entrySet()) {
-	    effects.put(entry.getKey(),
-			 entry.getValue().substitute(serv, form));
+	Map<List<String>, SInstance> newDelta = 
+	    new HashMap<List<String>, SInstance>();
+	Set<List<String>> paths = this.origin2paths.get(serv.getOrigin());
+	if (paths != null) {
+	    for (List<String> path : paths) {
+		SInstance eff = getEffect(path);
+		// the variables of a formula are cached: 
+		// this skips effects which refer to another variable 
+		// of the same origin only or no longer refer to it at all 
+		if (eff.getFormula().getVars().contains(serv)) {
+		    newDelta.put(path, eff.substitute(serv, form));
+		}
+	    }
 	}
-	
-	return new FlatCInstance(effects);
+	return new FlatCInstance(this.effects, this, newDelta, 
+				 this.varOrder, 
+				 this.serv2inlined, this.origin2paths, 
+				 this.origin2rank);
+    }
+
+    /**
+     * Returns the <code>FlatCInstance</code> arising from this one 
+     * by conditioning on the deficiency given by <code>instDef</code> 
+     * as {@link #add(SInstance, Deficiency)} 
+     * or {@link #remove(SInstance, Deficiency)} do, 
+     * in which the effect given by <code>sPath</code> 
+     * is in addition given by the conditioned residual formula 
+     * of <code>instDef</code>. 
+     * This avoids inlining the formula again 
+     * when evaluating the result. 
+     * Note that this instance is not modified. 
+     *
+     * @param sPath
+     *    identifies the effect <code>instDef</code> is computed for. 
+     * @param instDef 
+     *    as returned by {@link #instDefic(Formula)} 
+     *    for the effect given by <code>sPath</code>. 
+     * @param occurs 
+     *    whether <code>instDef.def</code> is assumed to occur. 
+     * @return 
+     *    the conditioned <code>FlatCInstance</code>. 
+     */
+    private FlatCInstance condition(List<String> sPath, 
+				    InstDef instDef, 
+				    boolean occurs) {
+	return condition(Collections.singletonMap(sPath, instDef.form), 
+			 instDef.serv, instDef.def, occurs);
+    }
+
+    /**
+     * Returns the <code>FlatCInstance</code> arising from this one 
+     * by conditioning on <code>def</code> within <code>serv</code> 
+     * in which the effects given by the keys of <code>path2form</code> 
+     * are given by the conditioned residual formulae. 
+     *
+     * @param path2form 
+     *    maps paths of effects to their residual formulae. 
+     * @param serv 
+     *    a <code>SInstance</code> with probability distribution. 
+     * @param def 
+     *    a <code>Deficiency</code> 
+     *    minimal within the type of <code>serv</code>. 
+     * @param occurs 
+     *    whether <code>def</code> is assumed to occur. 
+     * @return 
+     *    the conditioned <code>FlatCInstance</code>. 
+     * @see #condition(List, InstDef, boolean)
+     */
+    private FlatCInstance condition(Map<List<String>, Formula> path2form, 
+				    SInstance serv, 
+				    Deficiency def, 
+				    boolean occurs) {
+	Formula form = occurs 
+	    ? addForm   (serv, def) 
+	    : removeForm(serv, def);
+	FlatCInstance res = substitute(serv, form);
+	// the effects of res may be shared with this: replace them 
+	for (Map.Entry<List<String>, Formula> entry : path2form.entrySet()) {
+	    SInstance eff = new SInstance(res.getEffect(entry.getKey()));
+	    eff.setFormula(entry.getValue().substitute(serv, form));
+	    res.delta.put(entry.getKey(), eff);
+	}
+	return res;
     }
 
     /**
@@ -189,83 +495,240 @@ public final class FlatCInstance {
      * This is needed for probability computations: 
      * The variable of the {@link SInstance} is replaced by another one, 
      * eliminating the given {@link Deficiency}. 
+     * In addition, the residual formula the variable was chosen from 
+     * is kept. 
      */
     private static class InstDef {
 	private final SInstance serv;
 	private final Deficiency def;
-	InstDef(SInstance serv, Deficiency def) {
+	private final Formula form;
+	InstDef(SInstance serv, Deficiency def, Formula form) {
 	    this.serv = serv;
 	    this.def = def;
+	    this.form = form;
 	}
     } // class InstDef 
 
     /**
-     * Maps the given effect which is given by a formula, 
+     * Inlines the formulae of the given effects once and for all: 
+     * The effects given by a formula without distribution 
+     * are visited in topological order 
+     * and each variable without distribution within the formula 
+     * is substituted by the inlined formula of that variable. 
+     * Since unchanged subformulae are shared 
+     * by {@link Formula#substitute(Map)}, 
+     * the inlined formulae form a directed acyclic graph 
+     * over the variables with distribution. 
+     *
+     * @param effects 
+     *    the effects of a <code>FlatCInstance</code>. 
+     * @return 
+     *    a map from the effects given by a formula without distribution 
+     *    and from the variables within their formulae 
+     *    to the inlined formulae, 
+     *    all variables of which have a probability distribution. 
+     * @throws IllegalArgumentException 
+     *    if the formulae of the effects depend on each other cyclically. 
+     */
+    private static Map<SInstance, Formula> 
+	compile(Collection<SInstance> effects) {
+	Map<SInstance, Formula> res = new HashMap<SInstance, Formula>();
+	Set<SInstance> visiting = new HashSet<SInstance>();
+	for (SInstance serv : effects) {
+	    if (serv.getDistr() == null && serv.getFormula() != null) {
+		compile(serv, res, visiting);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Adds the inlined formula of <code>serv</code> to <code>res</code> 
+     * after those of the variables within its formula. 
+     *
+     * @param serv 
+     *    an effect without distribution given by a formula. 
+     * @param res 
+     *    the effects inlined so far with their inlined formulae. 
+     * @param visiting 
+     *    the effects on the current path of the depth first search. 
+     */
+    private static Formula compile(SInstance serv, 
+				   Map<SInstance, Formula> res, 
+				   Set<SInstance> visiting) {
+	Formula form = res.get(serv);
+	if (form != null) {
+	    return form;
+	}
+	if (!visiting.add(serv)) {
+	    throw new IllegalArgumentException
+		("Found cyclic dependency of effect " + serv + ". ");
+	}
+	form = serv.getFormula();
+	if (form == null) {
+	    throw new IllegalArgumentException
+		("Found effect " + serv + 
+		 " neither with distribution nor with formula. ");
+	}
+	Map<SInstance, Formula> var2form = new HashMap<SInstance, Formula>();
+	for (SInstance var : form.getVars()) {
+	    if (var.getDistr() == null) {
+		var2form.put(var, compile(var, res, visiting));
+	    }
+	}
+	form = var2form.isEmpty() ? form : form.substitute(var2form);
+	visiting.remove(serv);
+	res.put(serv, form);
+	return form;
+    }
+
+    /**
+     * Returns the formula of the given effect 
+     * in which the variables which are associated with formulae 
+     * are substituted by their inlined formulae. 
+     * For the effects of the instance this one arises from, 
+     * this is the formula given by {@link #compile(Collection)}. 
+     * For the other effects, i.e. those arising by conditioning, 
+     * the variables without distribution 
+     * are effects of the original instance 
+     * and are substituted in a single pass. 
+     * Note that neither <code>serv</code> nor any other effect is modified. 
+     *
+     * @param serv 
+     *    an <code>SInstance</code> given by a formula. 
+     * @return 
+     *    a formula all variables of which have a probability distribution. 
+     */
+    Formula inline(SInstance serv) {
+	Formula res = this.serv2inlined.get(serv);
+	if (res != null) {
+	    return res;
+	}
+	res = serv.getFormula();
+	assert res != null;
+	return res.substitute(this.serv2inlined);
+    }
+
+    /**
+     * Maps the given formula 
      * onto an {@link InstDef} 
      * consisting of a variable with probability distribution 
      * occuring in the formula and its minimal deficiency. 
-     * If no such variable exists, the variables within the formula 
-     * (which are then all associated with formulae) 
-     * are substituted within the root formula, 
-     * by their associated formulae. 
+     * The variable is chosen by {@link #chooseVar(Collection)}. 
+     * Thus the choice depends neither on hash codes 
+     * nor on the order in which the variables are found. 
      *
-     * @param serv 
-     *    an <code>SInstance</code> given by a formula. 
-     *    **** what if no formula is present? **** 
+     * @param form 
+     *    a formula as returned by {@link #inline(SInstance)}, 
+     *    i.e. all variables of which have a probability distribution. 
      * @return 
      *    an <code>InstDef</code> 
      *    consisting of a variable occuring in the formula 
-     *    and its minimal deficiency. 
+     *    and its minimal deficiency 
+     *    and of <code>form</code> itself. 
      *    If this does not exist, <code>null</code> is returned. 
      */
-    private InstDef instDefic(SInstance serv) {
-//System.out.println("+serv: "+serv);
-
-	Formula form = serv.getFormula();
-	assert form != null;
-// **** no good: impossible to handle effects with distr given directly
-	Set<SInstance> vars;
-
-	// in each loop variables with probability distributions are searched 
-	// and if none are present, another variable is substituted 
-	// by its formula. 
-	// This may yield new aspects, unless alll effects are substituted. 
-	// ***** the current algorithm which is NOT PERFORMANT **** 
-	// loops up to <code>this.effects.keySet().size()</code> times. 
-	for (int ind = 0; ind < this.effects.keySet().size(); ind++) {
-	    vars = form.getVars();
-//System.out.println("form: " + form);
-//System.out.println("vars: " + vars);
-	    // look for variables with probability distribution 
-	    // and essentially return the first found. 
-	    for (SInstance var: vars) {
-		if (var.getDistr() != null) {
-		    // Here, found variable var within formula form with distr. 
-		    //System.out.println("var: "+var);
-		    //System.out.println("var: "+var.getType());
-
-		    Set<Deficiency> minDefs = var.getType().getMin();
-		    assert !minDefs.isEmpty();
-		    Iterator<Deficiency> iter = minDefs.iterator();
-		    //System.out.println("+form: "+form);
-		    return new InstDef(var, iter.next());
+    private InstDef instDefic(Formula form) {
+	SInstance minVar = chooseVar(Collections.singleton(form));
+	if (minVar == null) {
+	    // Here, it is sure that form 
+	    // has no variables with probability distribution 
+	    // even if other variables are substituted recursively. 
+	    return null;
+	}
+	//System.out.println("+form: "+form);
+	return new InstDef(minVar, minDef(minVar), form);
+    }
+
+    /**
+     * Returns the variable among <code>vars</code> and <code>cand</code> 
+     * arising from the effect with least rank in {@link #origin2rank}. 
+     *
+     * @param vars 
+     *    variables with probability distribution. 
+     * @param cand 
+     *    a variable or <code>null</code>. 
+     * @return 
+     *    the variable described above 
+     *    or <code>null</code> if there is none. 
+     */
+    private SInstance minVar(Set<SInstance> vars, SInstance cand) {
+	SInstance res = cand;
+	int minRank = cand == null ? Integer.MAX_VALUE : rank(cand);
+	for (SInstance var: vars) {
+	    // Here, found variable var within formula form with distr. 
+	    //System.out.println("var: "+var);
+	    //System.out.println("var: "+var.getType());
+	    int rank = rank(var);
+	    if (res == null || rank < minRank) {
+		res = var;
+		minRank = rank;
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the variable among those of <code>forms</code> 
+     * conditioned on next according to {@link #varOrder}: 
+     * the one with the highest score if {@link #varOrder} is dynamic, 
+     * else or among those with equal score 
+     * the one with least rank in {@link #origin2rank}. 
+     *
+     * @param forms 
+     *    formulae all variables of which have probability distributions. 
+     * @return 
+     *    the variable described above 
+     *    or <code>null</code> if there is none. 
+     */
+    SInstance chooseVar(Collection<Formula> forms) {
+	SInstance res = null;
+	if (!this.varOrder.isDynamic()) {
+	    for (Formula form : forms) {
+		res = minVar(form.getVars(), res);
+	    }
+	    return res;
+	}
+
+	Map<SInstance, Integer> var2score = new HashMap<SInstance, Integer>();
+	for (Formula form : forms) {
+	    this.varOrder.addScores(form, var2score);
+	}
+	int maxScore = 0;
+	for (Formula form : forms) {
+	    for (SInstance var : form.getVars()) {
+		int score = VarOrder.getScore(var2score, var);
+		if (res == null || score > maxScore 
+		    || (score == maxScore && rank(var) < rank(res))) {
+		    res = var;
+		    maxScore = score;
 		}
 	    }
-	    // found no variables with probability distribution. 
+	}
+	return res;
+    }
+
+    private int rank(SInstance var) {
+	Integer res = this.origin2rank.get(var.getOrigin());
+	return res == null ? Integer.MAX_VALUE : res;
+    }
 
-	    // substitute all variables within form 
-	    // (which are all associated with a formula) with their formulae 
-	    Formula varForm;
-	    for (SInstance var: vars) {
-		varForm = var.getFormula();
-		form = form.substitute(var, varForm);
+    /**
+     * Returns the minimal deficiency of the type of <code>var</code> 
+     * with least name. 
+     */
+    static Deficiency minDef(SInstance var) {
+	Set<Deficiency> minDefs = var.getType().getMin();
+	assert !minDefs.isEmpty();
+	Iterator<Deficiency> iter = minDefs.iterator();
+	Deficiency res = iter.next();
+	while (iter.hasNext()) {
+	    Deficiency def = iter.next();
+	    if (def.getName().compareTo(res.getName()) < 0) {
+		res = def;
 	    }
-	    serv.setFormula(form);
 	}
-	// Here, it is sure that form 
-	// has no variables with probability distribution 
-	// even if other variables are substituted recursively. 
-	return null;
+	return res;
     }
 
     /**
@@ -281,44 +744,1116 @@ public final class FlatCInstance {
      *    identifies a effect. 
      * @return 
      *    the probability described above as a <code>BigDecimal</code> value. 
+     * @see #getProb(List, ProbMemo)
      */
     public BigDecimal getProb(List<String> sPath) {
+	return getProb(sPath, null);
+    }
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * like {@link #getProb(List)} but solving each sub-problem 
+     * of the expansion only once. 
+     * Sub-problems are identified by the residual formula 
+     * of the effect as described in {@link ProbMemo}. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table holding the sub-problems solved so far 
+     *    and receiving those solved by this invocation. 
+     *    If this is <code>null</code>, no memo table is used. 
+     * @return 
+     *    the probability described above as a <code>BigDecimal</code> value. 
+     */
+    public BigDecimal getProb(List<String> sPath, ProbMemo memo) {
+	return getProb(sPath, memo, 0, 0);
+    }
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * like {@link #getProb(List, ProbMemo)} 
+     * under the control of <code>control</code>: 
+     * The evaluation stops if it is cancelled or exceeds a limit; 
+     * its progress is reported to the listener of <code>control</code>. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table as for {@link #getProb(List, ProbMemo)} 
+     *    or <code>null</code>. 
+     * @param control 
+     *    the limits and the listener for this evaluation. 
+     * @return 
+     *    the probability described above as a <code>BigDecimal</code> value. 
+     * @throws EvalAbortedException 
+     *    if the evaluation is stopped. 
+     *    This provides the bounds obtained so far. 
+     */
+    public BigDecimal getProb(List<String> sPath, 
+			      ProbMemo memo, 
+			      EvalControl control) {
+	control.start();
+	BigDecimal res = getProbIter(sPath, memo, control);
+	control.finish();
+	return res;
+    }
+
+    /**
+     * Returns the probabilities 
+     * that the effects specified by <code>sPaths</code> 
+     * are not the empty set 
+     * like {@link #getProb(List, ProbMemo)} for each of them 
+     * but conditioning for all effects at once. 
+     * In each step, the variable conditioned on 
+     * is chosen among the variables of all residual formulae 
+     * and the conditioned instances are shared by all effects 
+     * the residual formulae of which contain that variable. 
+     * The other effects are evaluated within one branch only, 
+     * because they do not depend on the variable. 
+     * Thus the expansion for each single effect 
+     * is part of the common expansion. 
+     *
+     * @param sPaths
+     *    identifies effects. 
+     * @param memo 
+     *    the memo table holding the sub-problems solved so far 
+     *    and receiving those solved by this invocation 
+     *    or <code>null</code>. 
+     * @return 
+     *    a map from the paths in <code>sPaths</code> 
+     *    to the probabilities described above. 
+     */
+    public Map<List<String>, BigDecimal> getProbs(Collection<List<String>> 
+						  sPaths, 
+						  ProbMemo memo) {
+	Map<List<String>, BigDecimal> res = 
+	    new TreeMap<List<String>, BigDecimal>(PATH_CMP);
+	Map<List<String>, Formula> path2form = 
+	    new TreeMap<List<String>, Formula>(PATH_CMP);
+	for (List<String> sPath : sPaths) {
+	    path2form.put(sPath, inline(getEffect(sPath)));
+	}
+	getProbs(path2form, memo, res);
+	return res;
+    }
+
+    /**
+     * Returns for each {@link VarOrder} 
+     * the number of sub-problems expanded 
+     * to compute the probabilities of the effects 
+     * specified by <code>sPaths</code> 
+     * with {@link #getProbs(Collection, ProbMemo)} 
+     * as counted by {@link ProbMemo#getExpansions()}. 
+     * This allows to compare the strategies for a given project. 
+     * Note that each strategy requires a complete computation. 
+     *
+     * @param sPaths
+     *    identifies effects. 
+     * @return 
+     *    a map from the variable orders 
+     *    to the numbers of sub-problems expanded. 
+     */
+    public Map<VarOrder, Long> getExpansionSizes(Collection<List<String>> 
+						 sPaths) {
+	Map<VarOrder, Long> res = new EnumMap<VarOrder, Long>(VarOrder.class);
+	for (VarOrder order : VarOrder.values()) {
+	    ProbMemo memo = new ProbMemo();
+	    reorder(order).getProbs(sPaths, memo);
+	    res.put(order, memo.getExpansions());
+	}
+	return res;
+    }
+
+    /**
+     * Adds the probabilities of the effects given by the keys 
+     * of <code>path2form</code> with the given residual formulae 
+     * to <code>res</code>. 
+     */
+    private void getProbs(Map<List<String>, Formula> path2form, 
+			  ProbMemo memo, 
+			  Map<List<String>, BigDecimal> res) {
+	res.putAll(expand(new ProbsExpansion(memo), 
+			  new PathForms(this, path2form)));
+    }
+
+    /**
+     * A sub-problem of {@link #getProbs(Collection, ProbMemo)}: 
+     * a conditioned instance with the residual formulae of the effects. 
+     */
+    private static final class PathForms {
+	private final FlatCInstance cInst;
+	private final Map<List<String>, Formula> path2form;
+	PathForms(FlatCInstance cInst, Map<List<String>, Formula> path2form) {
+	    this.cInst = cInst;
+	    this.path2form = path2form;
+	}
+    } // class PathForms 
+
+    /**
+     * A frame of a {@link ProbsExpansion}: 
+     * the effects of a {@link PathForms} not known immediately 
+     * and the deficiency conditioned on. 
+     */
+    private static final class ProbsFrame {
+	// the conditioned instance 
+	private FlatCInstance cInst;
+	// the effects with open probabilities and their residual formulae 
+	private Map<List<String>, Formula> open;
+	// the keys of the formulae in open within the memo table 
+	private Map<List<String>, Integer> keys;
+	// the effects of open depending on minVar 
+	private Map<List<String>, Formula> dep;
+	// the effect and its deficiency conditioned on 
+	private SInstance minVar;
+	private Deficiency def;
+	// the probabilities known so far 
+	private Map<List<String>, BigDecimal> res;
+    } // class ProbsFrame 
+
+    /**
+     * The expansion performed by {@link #getProbs(Collection, ProbMemo)}: 
+     * All effects are conditioned on the same deficiency, 
+     * those not depending on it are evaluated 
+     * in the branch where it occurs only. 
+     */
+    private static final class ProbsExpansion 
+	extends Expansion<PathForms, Map<List<String>, BigDecimal>> {
+	private final ProbMemo memo;
+	private final List<ProbsFrame> frames = new ArrayList<ProbsFrame>();
+
+	ProbsExpansion(ProbMemo memo) {
+	    this.memo = memo;
+	}
+
+	Map<List<String>, BigDecimal> open(PathForms problem) {
+	    ProbsFrame frame = new ProbsFrame();
+	    frame.res = new TreeMap<List<String>, BigDecimal>(PATH_CMP);
+	    frame.open = new TreeMap<List<String>, Formula>(PATH_CMP);
+	    frame.keys = new HashMap<List<String>, Integer>();
+	    for (Map.Entry<List<String>, Formula> entry 
+		     : problem.path2form.entrySet()) {
+		Formula form = entry.getValue();
+		Set<Deficiency> defs = form.getConst();
+		if (defs != null) {
+		    frame.res.put(entry.getKey(), 
+				  defs.isEmpty() 
+				  ? BigDecimal.ZERO : BigDecimal.ONE);
+		    continue;
+		}
+		if (this.memo != null) {
+		    Integer key = this.memo.getKey(form);
+		    BigDecimal prob = this.memo.get(key);
+		    if (prob != null) {
+			frame.res.put(entry.getKey(), prob);
+			continue;
+		    }
+		    frame.keys.put(entry.getKey(), key);
+		}
+		frame.open.put(entry.getKey(), form);
+	    }
+	    if (frame.open.isEmpty()) {
+		return frame.res;
+	    }
+	    frame.cInst = problem.cInst;
+	    frame.minVar = problem.cInst.chooseVar(frame.open.values());
+	    // Here, minVar != null 
+	    frame.def = minDef(frame.minVar);
+	    if (this.memo != null) {
+		this.memo.countExpansion();
+	    }
+
+	    // the effects depending on minVar 
+	    frame.dep = new TreeMap<List<String>, Formula>(PATH_CMP);
+	    for (Map.Entry<List<String>, Formula> entry 
+		     : frame.open.entrySet()) {
+		if (entry.getValue().getVars().contains(frame.minVar)) {
+		    frame.dep.put(entry.getKey(), entry.getValue());
+		}
+	    }
+	    this.frames.add(frame);
+	    return null;
+	}
+
+	PathForms branch(boolean occurs) {
+	    ProbsFrame frame = this.frames.get(this.frames.size() - 1);
+	    // the others are evaluated in the branch where def occurs only 
+	    Map<List<String>, Formula> path2form = occurs 
+		? frame.open 
+		: frame.dep;
+	    return new PathForms(frame.cInst.condition(path2form, 
+						       frame.minVar, 
+						       frame.def, 
+						       occurs), 
+				 conditioned(path2form, 
+					     frame.minVar, 
+					     frame.def, 
+					     occurs));
+	}
+
+	Map<List<String>, BigDecimal> close(Map<List<String>, BigDecimal> 
+					    probsP, 
+					    Map<List<String>, BigDecimal> 
+					    probsM) {
+	    ProbsFrame frame = this.frames.remove(this.frames.size() - 1);
+	    BigDecimal cond = frame.minVar.getDistr().getProb(frame.def);
+	    for (List<String> sPath : frame.open.keySet()) {
+		BigDecimal prob = probsP.get(sPath);
+		if (frame.dep.containsKey(sPath)) {
+		    prob = cond.multiply(prob)
+			.add(BigDecimal.ONE.subtract(cond)
+			     .multiply(probsM.get(sPath)));
+		    if (this.memo != null) {
+			this.memo.put(frame.keys.get(sPath), prob);
+		    }
+		}
+		frame.res.put(sPath, prob);
+	    }
+	    return frame.res;
+	}
+    } // class ProbsExpansion 
+
+    /**
+     * Returns the residual formulae of <code>path2form</code> 
+     * conditioned like in {@link #condition(Map, SInstance, Deficiency, 
+     * boolean)}. 
+     */
+    private static Map<List<String>, Formula> 
+	conditioned(Map<List<String>, Formula> path2form, 
+		    SInstance serv, 
+		    Deficiency def, 
+		    boolean occurs) {
+	Formula form = occurs 
+	    ? addForm   (serv, def) 
+	    : removeForm(serv, def);
+	Map<List<String>, Formula> res = 
+	    new TreeMap<List<String>, Formula>(PATH_CMP);
+	for (Map.Entry<List<String>, Formula> entry : path2form.entrySet()) {
+	    res.put(entry.getKey(), entry.getValue().substitute(serv, form));
+	}
+	return res;
+    }
+
+    /**
+     * Returns the distribution of the value 
+     * of the effect specified by <code>sPath</code> 
+     * over the ideals of its type. 
+     * Whereas {@link #getProb(List, ProbMemo)} distinguishes 
+     * the empty value from the others only, 
+     * this method determines the probabilities of all ideals 
+     * within a single expansion: 
+     * Each leaf of the expansion contributes its probability 
+     * to the ideal given by its constant formula. 
+     * The memo table shares its distributions 
+     * with {@link ModularEvaluator#getDistr(List, ProbMemo)}. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table holding the distributions 
+     *    of the sub-problems solved so far 
+     *    and receiving those solved by this invocation 
+     *    or <code>null</code>. 
+     * @return 
+     *    the distribution of the value of the effect. 
+     */
+    public IdealDistr getDistr(List<String> sPath, ProbMemo memo) {
+	Type type = getEffect(sPath).getType();
+	List<Set<Deficiency>> ideals = type.getIdeals();
+	Map<Set<Deficiency>, Integer> ideal2index = 
+	    IdealDistr.getIndices(ideals);
+	return new IdealDistr(type, ideals, ideal2index, 
+			      getDistr(sPath, memo, ideal2index));
+    }
+
+    /**
+     * Returns the probabilities of the ideals of the type 
+     * of the effect specified by <code>sPath</code> 
+     * indexed as given by <code>ideal2index</code>. 
+     */
+    private BigDecimal[] getDistr(List<String> sPath, 
+				  ProbMemo memo, 
+				  Map<Set<Deficiency>, Integer> ideal2index) {
+	return expand(new DistrExpansion(sPath, memo, ideal2index), this);
+    }
+
+    /**
+     * The expansion performed by {@link #getDistr(List, ProbMemo)}: 
+     * the results are the probabilities of the ideals 
+     * indexed as given by {@link #ideal2index}. 
+     */
+    private static final class DistrExpansion 
+	extends PathExpansion<BigDecimal[]> {
+	private final Map<Set<Deficiency>, Integer> ideal2index;
+
+	DistrExpansion(List<String> sPath, 
+		       ProbMemo memo, 
+		       Map<Set<Deficiency>, Integer> ideal2index) {
+	    super(sPath, memo);
+	    this.ideal2index = ideal2index;
+	}
+
+	BigDecimal[] constant(Set<Deficiency> defs) {
+	    BigDecimal[] res = new BigDecimal[this.ideal2index.size()];
+	    Arrays.fill(res, BigDecimal.ZERO);
+	    res[index(this.ideal2index, defs)] = BigDecimal.ONE;
+	    return res;
+	}
+
+	BigDecimal[] lookup(Integer key) {
+	    Map<Set<Deficiency>, BigDecimal> distr = this.memo.getDistr(key);
+	    if (distr == null) {
+		return null;
+	    }
+	    BigDecimal[] res = new BigDecimal[this.ideal2index.size()];
+	    Arrays.fill(res, BigDecimal.ZERO);
+	    for (Map.Entry<Set<Deficiency>, BigDecimal> entry 
+		     : distr.entrySet()) {
+		res[index(this.ideal2index, entry.getKey())] = entry.getValue();
+	    }
+	    return res;
+	}
+
+	BigDecimal[] combine(InstDef instDef, 
+			     BigDecimal[] distrP, 
+			     BigDecimal[] distrM) {
+	    BigDecimal cond = instDef.serv.getDistr().getProb(instDef.def);
+	    BigDecimal condM = BigDecimal.ONE.subtract(cond);
+	    BigDecimal[] res = new BigDecimal[distrP.length];
+	    for (int ind = 0; ind < res.length; ind++) {
+		res[ind] = cond.multiply(distrP[ind])
+		    .add(condM.multiply(distrM[ind]));
+	    }
+	    return res;
+	}
+
+	void store(Integer key, BigDecimal[] res) {
+	    Map<Set<Deficiency>, BigDecimal> distr = 
+		new HashMap<Set<Deficiency>, BigDecimal>();
+	    for (Map.Entry<Set<Deficiency>, Integer> entry 
+		     : this.ideal2index.entrySet()) {
+		if (res[entry.getValue()].signum() != 0) {
+		    distr.put(entry.getKey(), res[entry.getValue()]);
+		}
+	    }
+	    this.memo.putDistr(key, distr);
+	}
+    } // class DistrExpansion 
+
+    private static int index(Map<Set<Deficiency>, Integer> ideal2index, 
+			     Set<Deficiency> defs) {
+	Integer res = ideal2index.get(defs);
+	if (res == null) {
+	    throw new IllegalStateException
+		("Found value " + defs + " which is no ideal. ");
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * like {@link #getProb(List, ProbMemo)} 
+     * but computed with the given arithmetic 
+     * together with a bound for the relative error. 
+     * For {@link Arithmetic#Exact} this is {@link #getProb(List, ProbMemo)}; 
+     * the other arithmetics avoid <code>BigDecimal</code>s 
+     * and trade accuracy for speed. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table holding the sub-problems solved so far 
+     *    or <code>null</code>. 
+     * @param arith 
+     *    the arithmetic to be used. 
+     * @return 
+     *    the probability described above 
+     *    with a bound for its relative error. 
+     */
+    public ProbEstimate getProb(List<String> sPath, 
+				ProbMemo memo, 
+				Arithmetic arith) {
+	if (arith == Arithmetic.Exact) {
+	    return new ProbEstimate(getProb(sPath, memo));
+	}
+	double[] approx = getApprox(sPath, memo, arith);
+	return new ProbEstimate(arith, approx[0], approx[1]);
+    }
+
+    /**
+     * Performs the expansion of {@link #getProb(List, ProbMemo)} 
+     * with an arithmetic based on <code>double</code>s. 
+     * Along with the computation, 
+     * the relative errors of the intermediate results 
+     * are bounded to first order 
+     * from the round-off of the individual operations. 
+     *
+     * @return 
+     *    an array with two entries: 
+     *    the representation of the probability 
+     *    and a bound for its relative error. 
+     */
+    private double[] getApprox(List<String> sPath, 
+			       ProbMemo memo, 
+			       Arithmetic arith) {
+	return expand(new ApproxExpansion(sPath, memo, arith), this);
+    }
+
+    /**
+     * The expansion performed by {@link #getApprox}: 
+     * the results are arrays holding the representation 
+     * of a probability in {@link #arith} 
+     * and a bound for its relative error. 
+     */
+    private static final class ApproxExpansion 
+	extends PathExpansion<double[]> {
+	private final Arithmetic arith;
+
+	ApproxExpansion(List<String> sPath, ProbMemo memo, Arithmetic arith) {
+	    super(sPath, memo);
+	    this.arith = arith;
+	}
+
+	double[] constant(Set<Deficiency> defs) {
+	    return new double[] {
+		defs.isEmpty() ? this.arith.zero() : this.arith.one(), 0
+	    };
+	}
+
+	double[] lookup(Integer key) {
+	    return this.memo.get(this.arith, key);
+	}
+
+	double[] combine(InstDef instDef, double[] probP, double[] probM) {
+	    Arithmetic arith = this.arith;
+	    ProbDistr distr = instDef.serv.getDistr();
+	    double condP = distr.getProb(instDef.def, arith, true);
+	    double condM = distr.getProb(instDef.def, arith, false);
+
+	    // errors of the products: 
+	    // conversion of cond, error of the branch and multiplication 
+	    double termP = arith.multiply(condP, probP[0]);
+	    double termM = arith.multiply(condM, probM[0]);
+	    double errP = termP == arith.zero() ? 0 
+		: arith.roundOff(condP) + probP[1] + arith.roundOff(termP);
+	    double errM = termM == arith.zero() ? 0 
+		: arith.roundOff(condM) + probM[1] + arith.roundOff(termM);
+
+	    // the relative error of a sum of non-negative terms 
+	    // is at most the maximal relative error of the terms 
+	    double sum = arith.add(termP, termM);
+	    return new double[] {
+		sum, 
+		sum == arith.zero() ? 0 
+		: Math.max(errP, errM) + arith.roundOff(sum)
+	    };
+	}
+
+	void store(Integer key, double[] res) {
+	    this.memo.put(this.arith, key, res);
+	}
+    } // class ApproxExpansion 
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * like {@link #getProb(List, ProbMemo)} 
+     * but evaluating the two branches of the expansion 
+     * as parallel tasks within <code>pool</code>. 
+     * A branch is forked only 
+     * up to the depth <code>forkDepth</code> of the expansion 
+     * and only if the residual formula has 
+     * at least <code>minForkVars</code> variables; 
+     * below, the branches are evaluated sequentially. 
+     * Since the expansion is the same as for the sequential computation 
+     * and the arithmetic is exact, 
+     * the result coincides with that of {@link #getProb(List, ProbMemo)}. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table shared by all tasks or <code>null</code>. 
+     * @param pool 
+     *    the pool executing the tasks. 
+     * @param forkDepth 
+     *    the depth of the expansion up to which branches may be forked. 
+     *    For <code>0</code>, this is just a sequential computation. 
+     * @param minForkVars 
+     *    the least number of variables 
+     *    of a residual formula the branches of which may be forked. 
+     * @return 
+     *    the probability described above as a <code>BigDecimal</code> value. 
+     * @throws IllegalArgumentException 
+     *    if <code>forkDepth</code> is negative. 
+     */
+    public BigDecimal getProb(List<String> sPath, 
+			      ProbMemo memo, 
+			      ForkJoinPool pool,
+			      int forkDepth,
+			      int minForkVars) {
+	if (forkDepth < 0) {
+	    throw new IllegalArgumentException
+		("Expected non-negative fork depth; found " + forkDepth + ". ");
+	}
+	return pool.invoke(new ProbTask(this, sPath, memo, 
+					forkDepth, minForkVars));
+    }
+
+    /**
+     * The task computing the probability of an effect 
+     * in parallel mode. 
+     *
+     * @see #getProb(List, ProbMemo, ForkJoinPool, int, int)
+     */
+    private static final class ProbTask extends RecursiveTask<BigDecimal> {
+	private static final long serialVersionUID = -2719473164820115739L;
+
+	private final FlatCInstance cInst;
+	private final List<String> sPath;
+	private final ProbMemo memo;
+	private final int forkDepth;
+	private final int minForkVars;
+
+	ProbTask(FlatCInstance cInst, 
+		 List<String> sPath, 
+		 ProbMemo memo, 
+		 int forkDepth, 
+		 int minForkVars) {
+	    this.cInst = cInst;
+	    this.sPath = sPath;
+	    this.memo = memo;
+	    this.forkDepth = forkDepth;
+	    this.minForkVars = minForkVars;
+	}
+
+	protected BigDecimal compute() {
+	    return this.cInst.getProb(this.sPath, this.memo, 
+				      this.forkDepth, this.minForkVars);
+	}
+    } // class ProbTask 
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set, 
+     * forking the branches of the expansion as described in 
+     * {@link #getProb(List, ProbMemo, ForkJoinPool, int, int)}. 
+     * This may be invoked with positive <code>forkDepth</code> 
+     * only from within a {@link ForkJoinPool}. 
+     */
+    private BigDecimal getProb(List<String> sPath, 
+			       ProbMemo memo, 
+			       int forkDepth,
+			       int minForkVars) {
+	if (forkDepth == 0) {
+	    return getProbIter(sPath, memo, null);
+	}
 	SInstance serv = getEffect(sPath);
 	// Fetch a effect instance inst within the formula attached with serv 
 	// such that s is associated with a probability distribution 
 	// with a certain deficiency def. 
 	// Then instDef comprises both, inst and def. 
-	InstDef instDef = instDefic(serv);
+	Formula form = inline(serv);
+	InstDef instDef = instDefic(form);
 	if (instDef == null) {
 	    // the formula attached with serv is constant 
-	    // (at least after substitution done by instDefic) 
-	    Set<Deficiency> defs = serv.getFormula().getConst();
-	    assert defs != null; // i.e. serv.getFormula() is a constant. 
+	    // (at least after substitution done by inline) 
+	    Set<Deficiency> defs = form.getConst();
+	    assert defs != null; // i.e. the formula is a constant. 
 	    return defs.isEmpty() ? BigDecimal.ZERO : BigDecimal.ONE;
 	}
 	// Here, instDef != null 
 
+	// Here, instDef.form is the residual formula 
+	Integer key = null;
+	if (memo != null) {
+	    key = memo.getKey(instDef.form);
+	    BigDecimal res = memo.get(key);
+	    if (res != null) {
+		return res;
+	    }
+	    memo.countExpansion();
+	}
+
 	// cond is the probability that instDef.def occurs. 
 	BigDecimal cond = instDef.serv.getDistr().getProb(instDef.def);
 
 	// create copies of this FlatCInstance 
 	// by assuming that def occurs within serv 
 	// and that it does not occur, respectively. 
-	FlatCInstance cInstP = add   (instDef.serv, instDef.def);
-	FlatCInstance cInstM = remove(instDef.serv, instDef.def);
+	FlatCInstance cInstP = condition(sPath, instDef, true);
+	FlatCInstance cInstM = condition(sPath, instDef, false);
 //System.out.println("cInstP: " + cInstP);
 //System.out.println("cInstM: " + cInstM);
 //System.out.println("this: " + this);
 //throw new IllegalStateException();
 
-	return                           cond .multiply(cInstP.getProb(sPath))
-	    .add(BigDecimal.ONE.subtract(cond).multiply(cInstM.getProb(sPath)));
+	BigDecimal probP;
+	BigDecimal probM;
+	if (forkDepth > 0 
+	    && instDef.form.getVars().size() >= minForkVars) {
+	    ProbTask taskP = new ProbTask(cInstP, sPath, memo, 
+					  forkDepth - 1, minForkVars);
+	    taskP.fork();
+	    probM = cInstM.getProb(sPath, memo, forkDepth - 1, minForkVars);
+	    probP = taskP.join();
+	} else {
+	    probP = cInstP.getProb(sPath, memo, 0, 0);
+	    probM = cInstM.getProb(sPath, memo, 0, 0);
+	}
+
+	BigDecimal res = 
+	    cond.multiply(probP)
+	    .add(BigDecimal.ONE.subtract(cond)
+		 .multiply(probM));
+	if (memo != null) {
+	    memo.put(key, res);
+	}
+	return res;
+    }
+
+    /**
+     * An expansion performed by {@link #expand(Expansion, Object)}: 
+     * a sub-problem of type <code>P</code> is either solved immediately 
+     * or split into two branches by conditioning on a deficiency 
+     * and its result of type <code>R</code> is combined 
+     * from the results of the branches. 
+     * The expansion keeps the frames of the sub-problems 
+     * split but not yet combined as a stack. 
+     */
+    private abstract static class Expansion<P, R> {
+
+	/**
+	 * Returns the result of <code>problem</code> 
+	 * if it is known immediately; 
+	 * otherwise pushes a frame for <code>problem</code> 
+	 * and returns <code>null</code>. 
+	 */
+	abstract R open(P problem);
+
+	/**
+	 * Returns the branch of the topmost frame 
+	 * in which its deficiency occurs or does not occur. 
+	 */
+	abstract P branch(boolean occurs);
+
+	/**
+	 * Pops the topmost frame and returns its result 
+	 * given the results of its branches. 
+	 */
+	abstract R close(R resP, R resM);
+    } // class Expansion 
+
+    /**
+     * Returns the result of <code>problem</code> 
+     * performing the expansion <code>exp</code> 
+     * on an explicit stack instead of recursively. 
+     * Thus the depth of the expansion, 
+     * i.e. the number of deficiencies conditioned on, 
+     * is not limited by the size of the stack of the thread. 
+     * The branch in which the deficiency does not occur 
+     * is opened only after the other one is evaluated. 
+     */
+    private static <P, R> R expand(Expansion<P, R> exp, P problem) {
+	// for each frame the result of the branch 
+	// in which the deficiency occurs; null if not yet known 
+	List<R> resPs = new ArrayList<R>();
+	// the sub-problem to be opened next or null 
+	P next = problem;
+	// the result of the sub-problem evaluated last 
+	R res = null;
+	while (true) {
+	    if (next != null) {
+		res = exp.open(next);
+		if (res == null) {
+		    // evaluate the branch where the deficiency occurs first 
+		    resPs.add(null);
+		    next = exp.branch(true);
+		    continue;
+		}
+		next = null;
+	    }
+	    // Here, res is the result of a sub-problem just solved 
+	    int depth = resPs.size();
+	    if (depth == 0) {
+		return res;
+	    }
+	    if (resPs.get(depth - 1) == null) {
+		resPs.set(depth - 1, res);
+		next = exp.branch(false);
+	    } else {
+		res = exp.close(resPs.remove(depth - 1), res);
+	    }
+	}
+    }
+
+    /**
+     * A frame of a {@link PathExpansion}: 
+     * a sub-problem which is conditioned on the deficiency 
+     * of {@link #instDef}. 
+     */
+    private static final class Frame {
+	// the conditioned instance 
+	private final FlatCInstance cInst;
+	// the deficiency conditioned on and the residual formula 
+	private final InstDef instDef;
+	// the key of the residual formula within the memo table or null 
+	private final Integer key;
+	Frame(FlatCInstance cInst, InstDef instDef, Integer key) {
+	    this.cInst = cInst;
+	    this.instDef = instDef;
+	    this.key = key;
+	}
+    } // class Frame 
+
+    /**
+     * The expansion of the effect specified by {@link #sPath} 
+     * the sub-problems of which are conditioned instances. 
+     * Sub-problems are looked up in and stored into {@link #memo} 
+     * by the keys of their residual formulae. 
+     * The subclasses determine the kind of the results. 
+     */
+    private abstract static class PathExpansion<R> 
+	extends Expansion<FlatCInstance, R> {
+	protected final List<String> sPath;
+	protected final ProbMemo memo;
+	private final List<Frame> frames = new ArrayList<Frame>();
+
+	PathExpansion(List<String> sPath, ProbMemo memo) {
+	    this.sPath = sPath;
+	    this.memo = memo;
+	}
+
+	R open(FlatCInstance cInst) {
+	    Formula form = cInst.inline(cInst.getEffect(this.sPath));
+	    InstDef instDef = cInst.instDefic(form);
+	    if (instDef == null) {
+		Set<Deficiency> defs = form.getConst();
+		assert defs != null; // i.e. the formula is a constant. 
+		return constant(defs);
+	    }
+	    Integer key = null;
+	    if (this.memo != null) {
+		key = this.memo.getKey(instDef.form);
+		R res = lookup(key);
+		if (res != null) {
+		    return res;
+		}
+		this.memo.countExpansion();
+	    }
+	    this.frames.add(new Frame(cInst, instDef, key));
+	    return null;
+	}
+
+	FlatCInstance branch(boolean occurs) {
+	    Frame frame = this.frames.get(this.frames.size() - 1);
+	    return frame.cInst.condition(this.sPath, frame.instDef, occurs);
+	}
+
+	R close(R resP, R resM) {
+	    Frame frame = this.frames.remove(this.frames.size() - 1);
+	    R res = combine(frame.instDef, resP, resM);
+	    if (this.memo != null) {
+		store(frame.key, res);
+	    }
+	    return res;
+	}
+
+	/**
+	 * Returns the deficiency and the residual formula 
+	 * of the topmost frame. 
+	 */
+	InstDef top() {
+	    return this.frames.get(this.frames.size() - 1).instDef;
+	}
+
+	/**
+	 * Returns the result for the constant formula 
+	 * with value <code>defs</code>. 
+	 */
+	abstract R constant(Set<Deficiency> defs);
+
+	/**
+	 * Returns the result stored in {@link #memo} 
+	 * under <code>key</code> or <code>null</code>. 
+	 */
+	abstract R lookup(Integer key);
+
+	/**
+	 * Returns the result conditioned on the deficiency of 
+	 * <code>instDef</code> given the results of the branches. 
+	 */
+	abstract R combine(InstDef instDef, R resP, R resM);
+
+	/**
+	 * Stores <code>res</code> in {@link #memo} under <code>key</code>. 
+	 */
+	abstract void store(Integer key, R res);
+    } // class PathExpansion 
+
+    /**
+     * The expansion performed by {@link #getProb(List, ProbMemo)}. 
+     * If the evaluation is controlled, 
+     * the probability masses of the sub-problems are tracked. 
+     */
+    private static final class ProbExpansion 
+	extends PathExpansion<BigDecimal> {
+	// the control of the evaluation or null 
+	private final EvalControl control;
+	// the probabilities the frames are reached with if controlled 
+	private final List<BigDecimal> masses = new ArrayList<BigDecimal>();
+	// the probability the sub-problem opened next is reached with 
+	private BigDecimal mass = BigDecimal.ONE;
+
+	ProbExpansion(List<String> sPath, 
+		      ProbMemo memo, 
+		      EvalControl control) {
+	    super(sPath, memo);
+	    this.control = control;
+	}
+
+	BigDecimal open(FlatCInstance cInst) {
+	    BigDecimal res = super.open(cInst);
+	    if (this.control != null) {
+		if (res == null) {
+		    this.control.expand();
+		    this.masses.add(this.mass);
+		} else {
+		    this.control.resolve(this.mass, res);
+		}
+	    }
+	    return res;
+	}
+
+	FlatCInstance branch(boolean occurs) {
+	    if (this.control != null) {
+		InstDef instDef = top();
+		BigDecimal cond = instDef.serv.getDistr().getProb(instDef.def);
+		this.mass = this.masses.get(this.masses.size() - 1)
+		    .multiply(occurs ? cond : BigDecimal.ONE.subtract(cond));
+	    }
+	    return super.branch(occurs);
+	}
+
+	BigDecimal close(BigDecimal probP, BigDecimal probM) {
+	    if (this.control != null) {
+		this.masses.remove(this.masses.size() - 1);
+	    }
+	    return super.close(probP, probM);
+	}
+
+	BigDecimal constant(Set<Deficiency> defs) {
+	    return defs.isEmpty() ? BigDecimal.ZERO : BigDecimal.ONE;
+	}
+
+	BigDecimal lookup(Integer key) {
+	    return this.memo.get(key);
+	}
+
+	BigDecimal combine(InstDef instDef, 
+			   BigDecimal probP, 
+			   BigDecimal probM) {
+	    BigDecimal cond = instDef.serv.getDistr().getProb(instDef.def);
+	    return cond.multiply(probP)
+		.add(BigDecimal.ONE.subtract(cond).multiply(probM));
+	}
+
+	void store(Integer key, BigDecimal res) {
+	    this.memo.put(key, res);
+	}
+    } // class ProbExpansion 
+
+    /**
+     * Returns the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * performing the expansion of {@link #getProb(List, ProbMemo)} 
+     * on an explicit stack by {@link #expand(Expansion, Object)}. 
+     *
+     * @param control 
+     *    the control of the evaluation or <code>null</code>. 
+     *    If this is not <code>null</code>, 
+     *    the probability masses of the sub-problems are tracked. 
+     * @throws EvalAbortedException 
+     *    if <code>control</code> stops the evaluation. 
+     */
+    private BigDecimal getProbIter(List<String> sPath, 
+				   ProbMemo memo, 
+				   EvalControl control) {
+	return expand(new ProbExpansion(sPath, memo, control), this);
+    }
+
+    /**
+     * An open sub-problem of {@link #getProbBounds}: 
+     * a conditioned instance, the variable to condition on next 
+     * and the probability of the conditions leading to it. 
+     */
+    private static final class Leaf {
+	private final FlatCInstance cInst;
+	private final InstDef instDef;
+	private final BigDecimal mass;
+	Leaf(FlatCInstance cInst, InstDef instDef, BigDecimal mass) {
+	    this.cInst = cInst;
+	    this.instDef = instDef;
+	    this.mass = mass;
+	}
+    } // class Leaf 
+
+    /**
+     * Orders {@link Leaf}s by decreasing mass. 
+     */
+    private static final Comparator<Leaf> MASS_CMP = new Comparator<Leaf>() {
+	    public int compare(Leaf leaf1, Leaf leaf2) {
+		return leaf2.mass.compareTo(leaf1.mass);
+	    }
+	};
+
+    /**
+     * Returns guaranteed bounds for the probability 
+     * that the effect specified by <code>sPath</code> 
+     * is not the empty set 
+     * which may be cheaper than {@link #getProb(List, ProbMemo)}. 
+     * The expansion of {@link #getProb(List, ProbMemo)} 
+     * is performed expanding the sub-problems 
+     * reached with highest probability first. 
+     * A sub-problem is closed without expansion 
+     * if {@link Formula#getMin()} of its residual formula is not empty 
+     * or if {@link Formula#getMax()} is empty, 
+     * because then the probability is <code>1</code> or <code>0</code>, 
+     * or if it is found in <code>memo</code>. 
+     * The lower bound is the probability of the sub-problems 
+     * closed so far weighted with their probabilities; 
+     * the upper bound adds the probability of the open ones. 
+     * Expansion stops if the bounds differ by at most 
+     * <code>tolerance</code>, 
+     * if they are on the same side of <code>threshold</code> 
+     * or if <code>maxExpansions</code> sub-problems are expanded. 
+     *
+     * @param sPath
+     *    identifies a effect. 
+     * @param memo 
+     *    the memo table holding the sub-problems solved so far 
+     *    or <code>null</code>. 
+     *    Since sub-problems are not solved completely, 
+     *    no entries are added. 
+     * @param tolerance 
+     *    the width of the interval which suffices. 
+     *    For <code>0</code>, the probability is computed exactly 
+     *    unless stopped by the threshold or by the expansions. 
+     * @param threshold 
+     *    a threshold the probability is to be compared with 
+     *    or <code>null</code>. 
+     * @param maxExpansions 
+     *    the maximal number of sub-problems to be expanded. 
+     * @return 
+     *    the bounds described above. 
+     */
+    public ProbInterval getProbBounds(List<String> sPath, 
+				      ProbMemo memo, 
+				      BigDecimal tolerance, 
+				      BigDecimal threshold, 
+				      long maxExpansions) {
+	Queue<Leaf> open = new PriorityQueue<Leaf>(11, MASS_CMP);
+	// lower bound and the sum of the masses of open 
+	BigDecimal[] lowerOpen = new BigDecimal[] {
+	    BigDecimal.ZERO, BigDecimal.ZERO
+	};
+	classify(sPath, memo, this, BigDecimal.ONE, open, lowerOpen);
+	long expansions = 0;
+	while (!open.isEmpty() 
+	       && lowerOpen[1].compareTo(tolerance) > 0 
+	       && !decided(lowerOpen, threshold) 
+	       && expansions < maxExpansions) {
+	    Leaf leaf = open.poll();
+	    lowerOpen[1] = lowerOpen[1].subtract(leaf.mass);
+	    BigDecimal cond = leaf.instDef.serv.getDistr()
+		.getProb(leaf.instDef.def);
+	    classify(sPath, memo, 
+		     leaf.cInst.condition(sPath, leaf.instDef, true), 
+		     leaf.mass.multiply(cond), 
+		     open, lowerOpen);
+	    classify(sPath, memo, 
+		     leaf.cInst.condition(sPath, leaf.instDef, false), 
+		     leaf.mass.multiply(BigDecimal.ONE.subtract(cond)), 
+		     open, lowerOpen);
+	    expansions++;
+	}
+	return new ProbInterval(lowerOpen[0], 
+				lowerOpen[0].add(lowerOpen[1]), 
+				expansions);
+    }
+
+    /**
+     * Returns whether the bounds given by <code>lowerOpen</code> 
+     * are on the same side of <code>threshold</code>. 
+     */
+    private static boolean decided(BigDecimal[] lowerOpen, 
+				   BigDecimal threshold) {
+	if (threshold == null) {
+	    return false;
+	}
+	return lowerOpen[0].compareTo(threshold) >= 0 
+	    || lowerOpen[0].add(lowerOpen[1]).compareTo(threshold) < 0;
+    }
+
+    /**
+     * Closes the sub-problem given by <code>cInst</code> 
+     * reached with probability <code>mass</code> 
+     * adding its probability to the lower bound 
+     * or adds it to <code>open</code>. 
+     *
+     * @param lowerOpen 
+     *    the lower bound and the sum of the masses of <code>open</code>. 
+     */
+    private static void classify(List<String> sPath, 
+				 ProbMemo memo, 
+				 FlatCInstance cInst, 
+				 BigDecimal mass, 
+				 Queue<Leaf> open, 
+				 BigDecimal[] lowerOpen) {
+	if (mass.signum() == 0) {
+	    return;
+	}
+	Formula form = cInst.inline(cInst.getEffect(sPath));
+	if (!form.getMin().isEmpty()) {
+	    // occurs for sure 
+	    lowerOpen[0] = lowerOpen[0].add(mass);
+	    return;
+	}
+	if (form.getMax().isEmpty()) {
+	    // does not occur 
+	    return;
+	}
+	InstDef instDef = cInst.instDefic(form);
+	if (instDef == null) {
+	    // constant: in fact excluded by the above 
+	    if (!form.getConst().isEmpty()) {
+		lowerOpen[0] = lowerOpen[0].add(mass);
+	    }
+	    return;
+	}
+	if (memo != null) {
+	    BigDecimal prob = memo.get(memo.getKey(instDef.form));
+	    if (prob != null) {
+		lowerOpen[0] = lowerOpen[0].add(mass.multiply(prob));
+		return;
+	    }
+	}
+	open.add(new Leaf(cInst, instDef, mass));
+	lowerOpen[1] = lowerOpen[1].add(mass);
     }
 
     public String toString() {
 	StringBuffer res = new StringBuffer();
 	res.append("\n<FlatCInstance><Effects>");
-	res.append(this.effects);
+	res.append(getEffects());
 	res.append("</Effects>\n</FlatCInstance>\n");
 
 	return res.toString();
@@ -0,0 +1,181 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Type;
+
+import java.math.BigDecimal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Collections;
+
+/**
+ * The distribution of the value of an effect
+ * as computed by {@link FlatCInstance#getDistr(List, ProbMemo)}.
+ * The value of an effect is an ideal of its {@link Type}
+ * as given by {@link Type#getIdeals()}.
+ * The probabilities are stored in a table indexed like these ideals;
+ * ideals which are not reachable have probability zero.
+ * Whereas {@link FlatCInstance#getProb(List, ProbMemo)}
+ * yields the probability that the value is not empty only,
+ * this distribution yields also the probabilities
+ * of the single deficiencies by {@link #getProb(Deficiency)}.
+ *
+ *
+ * Created: Sun Oct 18 00:58:21 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class IdealDistr {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The type of the effect.
+     */
+    private final Type type;
+
+    /**
+     * The ideals of {@link #type} indexing {@link #probs}.
+     */
+    private final List<Set<Deficiency>> ideals;
+
+    /**
+     * Maps the ideals in {@link #ideals} to their indices.
+     */
+    private final Map<Set<Deficiency>, Integer> ideal2index;
+
+    /**
+     * The probabilities of the ideals indexed like {@link #ideals}.
+     * These add up to one.
+     */
+    private final BigDecimal[] probs;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    IdealDistr(Type type,
+	       List<Set<Deficiency>> ideals,
+	       Map<Set<Deficiency>, Integer> ideal2index,
+	       BigDecimal[] probs) {
+	assert ideals.size() == probs.length;
+	this.type = type;
+	this.ideals = Collections.unmodifiableList(ideals);
+	this.ideal2index = ideal2index;
+	this.probs = probs;
+    } // IdealDistr constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns a map from <code>ideals</code> to their indices.
+     */
+    static Map<Set<Deficiency>, Integer> getIndices(List<Set<Deficiency>>
+						    ideals) {
+	Map<Set<Deficiency>, Integer> res =
+	    new HashMap<Set<Deficiency>, Integer>();
+	for (int ind = 0; ind < ideals.size(); ind++) {
+	    res.put(ideals.get(ind), ind);
+	}
+	return res;
+    }
+
+    public Type getType() {
+	return this.type;
+    }
+
+    /**
+     * Returns the ideals of the type of the effect;
+     * the probabilities are indexed like this list.
+     */
+    public List<Set<Deficiency>> getIdeals() {
+	return this.ideals;
+    }
+
+    /**
+     * Returns the index of <code>ideal</code>
+     * in {@link #getIdeals()}.
+     *
+     * @throws IllegalArgumentException
+     *    if <code>ideal</code> is no ideal of the type of the effect.
+     */
+    public int getIndex(Set<Deficiency> ideal) {
+	Integer res = this.ideal2index.get(ideal);
+	if (res == null) {
+	    throw new IllegalArgumentException
+		("Found no ideal " + ideal + " of type " + this.type + ". ");
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability that the value of the effect
+     * is the <code>ind</code>th ideal.
+     */
+    public BigDecimal getProb(int ind) {
+	return this.probs[ind];
+    }
+
+    /**
+     * Returns the probability that the value of the effect
+     * is <code>ideal</code>.
+     *
+     * @throws IllegalArgumentException
+     *    if <code>ideal</code> is no ideal of the type of the effect.
+     */
+    public BigDecimal getProb(Set<Deficiency> ideal) {
+	return this.probs[getIndex(ideal)];
+    }
+
+    /**
+     * Returns the probability that <code>def</code> occurs,
+     * i.e. that the value of the effect contains <code>def</code>.
+     */
+    public BigDecimal getProb(Deficiency def) {
+	BigDecimal res = BigDecimal.ZERO;
+	for (int ind = 0; ind < this.probs.length; ind++) {
+	    if (this.ideals.get(ind).contains(def)) {
+		res = res.add(this.probs[ind]);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probability that the value of the effect
+     * is not the empty set.
+     *
+     * @return
+     *    the probability given by
+     *    {@link FlatCInstance#getProb(List, ProbMemo)}.
+     */
+    public BigDecimal getProbNonEmpty() {
+	// the empty set is the first ideal
+	return BigDecimal.ONE.subtract(this.probs[0]);
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("\n<IdealDistr>");
+	for (int ind = 0; ind < this.probs.length; ind++) {
+	    if (this.probs[ind].signum() == 0) {
+		continue;
+	    }
+	    res.append("\n<Ideal value=\"");
+	    res.append(this.ideals.get(ind));
+	    res.append("\" prob=\"");
+	    res.append(this.probs[ind]);
+	    res.append("\"/>");
+	}
+	res.append("\n</IdealDistr>\n");
+	return res.toString();
+    }
+
+} // IdealDistr
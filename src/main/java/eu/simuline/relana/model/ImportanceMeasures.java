@@ -0,0 +1,211 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import java.util.List;
+import java.util.Collections;
+
+/**
+ * The importance measures of the basic events for an effect
+ * as computed by {@link BddEvaluator#getImportance(List)}.
+ * A basic event is a deficiency of an effect with distribution
+ * as described for {@link CutSets.Event}.
+ * Let <code>P</code> be the probability of the effect,
+ * <code>p</code> that of a basic event
+ * and <code>P1</code> and <code>P0</code>
+ * the probabilities of the effect
+ * if the event is assumed to occur and not to occur, respectively.
+ * Since <code>P</code> is affine in <code>p</code>,
+ * all measures derive from the Birnbaum importance
+ * <code>B = dP/dp = P1 - P0</code>:
+ * <ul>
+ * <li>
+ * the Fussell-Vesely importance <code>(P - P0) / P = p B / P</code>,
+ * <li>
+ * the risk achievement worth <code>P1 / P = (P + (1 - p) B) / P</code>,
+ * <li>
+ * the risk reduction worth <code>P / P0 = P / (P - p B)</code>.
+ * </ul>
+ * The quotients are computed with {@link MathContext#DECIMAL128}.
+ *
+ *
+ * Created: Sat Oct 17 23:51:12 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ImportanceMeasures {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The path of the effect the measures refer to.
+     */
+    private final List<String> sPath;
+
+    /**
+     * The probability of the effect.
+     */
+    private final BigDecimal prob;
+
+    /**
+     * The basic events.
+     */
+    private final List<CutSets.Event> events;
+
+    /**
+     * The Birnbaum importance of the basic events,
+     * i.e. the partial derivatives of {@link #prob}
+     * with respect to their probabilities,
+     * indexed like {@link #events}.
+     */
+    private final BigDecimal[] birnbaum;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    ImportanceMeasures(List<String> sPath,
+		       BigDecimal prob,
+		       List<CutSets.Event> events,
+		       BigDecimal[] birnbaum) {
+	assert events.size() == birnbaum.length;
+	this.sPath = sPath;
+	this.prob = prob;
+	this.events = Collections.unmodifiableList(events);
+	this.birnbaum = birnbaum;
+    } // ImportanceMeasures constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public List<String> getPath() {
+	return this.sPath;
+    }
+
+    /**
+     * Returns the probability of the effect.
+     *
+     * @return
+     *    {@link #prob}.
+     */
+    public BigDecimal getProb() {
+	return this.prob;
+    }
+
+    /**
+     * Returns the basic events;
+     * the measures are indexed like this list.
+     */
+    public List<CutSets.Event> getEvents() {
+	return this.events;
+    }
+
+    /**
+     * Returns the Birnbaum importance of the <code>ind</code>th event,
+     * which is the partial derivative of the probability of the effect
+     * with respect to the probability of the event.
+     */
+    public BigDecimal getBirnbaum(int ind) {
+	return this.birnbaum[ind];
+    }
+
+    /**
+     * Returns the probability of the effect
+     * if the <code>ind</code>th event is assumed to occur.
+     */
+    public BigDecimal getProbIfOccurs(int ind) {
+	return this.prob.add(BigDecimal.ONE
+			     .subtract(this.events.get(ind).getProb())
+			     .multiply(this.birnbaum[ind]));
+    }
+
+    /**
+     * Returns the probability of the effect
+     * if the <code>ind</code>th event is assumed not to occur.
+     */
+    public BigDecimal getProbIfNotOccurs(int ind) {
+	return this.prob.subtract(this.events.get(ind).getProb()
+				  .multiply(this.birnbaum[ind]));
+    }
+
+    /**
+     * Returns the Fussell-Vesely importance
+     * of the <code>ind</code>th event.
+     *
+     * @return
+     *    the relative decrease of the probability of the effect
+     *    if the event is assumed not to occur
+     *    or <code>null</code> if the probability of the effect vanishes.
+     */
+    public BigDecimal getFussellVesely(int ind) {
+	if (this.prob.signum() == 0) {
+	    return null;
+	}
+	return this.prob.subtract(getProbIfNotOccurs(ind))
+	    .divide(this.prob, MathContext.DECIMAL128);
+    }
+
+    /**
+     * Returns the risk achievement worth
+     * of the <code>ind</code>th event.
+     *
+     * @return
+     *    the factor by which the probability of the effect increases
+     *    if the event is assumed to occur
+     *    or <code>null</code> if the probability of the effect vanishes.
+     */
+    public BigDecimal getRiskAchievementWorth(int ind) {
+	if (this.prob.signum() == 0) {
+	    return null;
+	}
+	return getProbIfOccurs(ind).divide(this.prob, MathContext.DECIMAL128);
+    }
+
+    /**
+     * Returns the risk reduction worth
+     * of the <code>ind</code>th event.
+     *
+     * @return
+     *    the factor by which the probability of the effect decreases
+     *    if the event is assumed not to occur
+     *    or <code>null</code> if the effect is sure
+     *    to be empty if the event does not occur.
+     */
+    public BigDecimal getRiskReductionWorth(int ind) {
+	BigDecimal prob0 = getProbIfNotOccurs(ind);
+	if (prob0.signum() == 0) {
+	    return null;
+	}
+	return this.prob.divide(prob0, MathContext.DECIMAL128);
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("\n<ImportanceMeasures effect=\"");
+	res.append(this.sPath);
+	res.append("\" prob=\"");
+	res.append(this.prob);
+	res.append("\">");
+	for (int ind = 0; ind < this.birnbaum.length; ind++) {
+	    res.append("\n<Event name=\"");
+	    res.append(this.events.get(ind));
+	    res.append("\" birnbaum=\"");
+	    res.append(this.birnbaum[ind]);
+	    res.append("\" fussellVesely=\"");
+	    res.append(getFussellVesely(ind));
+	    res.append("\" raw=\"");
+	    res.append(getRiskAchievementWorth(ind));
+	    res.append("\" rrw=\"");
+	    res.append(getRiskReductionWorth(ind));
+	    res.append("\"/>");
+	}
+	res.append("\n</ImportanceMeasures>\n");
+	return res.toString();
+    }
+
+} // ImportanceMeasures
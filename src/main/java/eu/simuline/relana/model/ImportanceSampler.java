@@ -0,0 +1,423 @@
+package eu.simuline.relana.model;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates small probabilities of the effects of a {@link FlatCInstance}
+ * by importance sampling.
+ * Whereas {@link MonteCarlo} draws the variables of the deficiencies
+ * with their probabilities given by the {@link ProbDistr}s,
+ * here they are drawn with biased probabilities
+ * making the deficiencies more likely.
+ * Each sample in which the effect under consideration occurs
+ * is weighted by its likelihood ratio,
+ * i.e. the probability of the sample without bias
+ * divided by the probability with bias.
+ * The mean of the weights is an unbiased estimate of the probability.
+ * Only the variables of those deficiencies enter the likelihood ratio,
+ * all deficiencies below which occur,
+ * because the others do not affect the sample.
+ * <p>
+ * The biasing starts with failure biasing:
+ * each deficiency with probability less than a given one
+ * is drawn with that probability.
+ * Then it is tuned by the cross-entropy method:
+ * in each iteration, the biased probability of a deficiency
+ * is replaced by the weighted frequency of its occurrence
+ * among the samples in which the effect occurs.
+ * Finally, the probability is estimated with the tuned biasing
+ * in rounds as described for {@link MonteCarlo}.
+ *
+ *
+ * Created: Sat Oct 17 19:42:17 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ImportanceSampler {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The task drawing one batch of a replicate with biased probabilities.
+     * If {@link #num} is not <code>null</code>,
+     * the statistics for the cross-entropy method are collected.
+     */
+    private final class BatchTask extends RecursiveAction {
+	private static final long serialVersionUID = -6218034581942277315L;
+
+	private final CompiledFormula form;
+	private final List<MonteCarlo.BaseEffect> bases;
+	private final Biasing biasing;
+	private final MonteCarlo.Replicate rep;
+
+	/**
+	 * For each coordinate the sum of the weights of the samples
+	 * in which the effect occurs
+	 * and the variable is drawn and <code>true</code>.
+	 */
+	private final double[] num;
+
+	/**
+	 * For each coordinate the sum of the weights of the samples
+	 * in which the effect occurs and the variable is drawn.
+	 */
+	private final double[] den;
+
+	BatchTask(CompiledFormula form,
+		  List<MonteCarlo.BaseEffect> bases,
+		  Biasing biasing,
+		  MonteCarlo.Replicate rep,
+		  boolean tune) {
+	    this.form = form;
+	    this.bases = bases;
+	    this.biasing = biasing;
+	    this.rep = rep;
+	    this.num = tune ? new double[biasing.biased.length] : null;
+	    this.den = tune ? new double[biasing.biased.length] : null;
+	}
+
+	protected void compute() {
+	    int dim = this.biasing.biased.length;
+	    double[] point = new double[dim];
+	    boolean[] vars = new boolean[dim];
+	    boolean[] buffer = new boolean[dim];
+	    long[] regs = this.form.newRegisters();
+	    for (int i = 0; i < ImportanceSampler.this.batchSize; i++) {
+		this.rep.getSource().next(point);
+		for (int j = 0; j < dim; j++) {
+		    vars[j] = point[j] < this.biasing.biased[j];
+		}
+		if (!MonteCarlo.occurs(this.form, this.bases,
+				       vars, buffer, regs)) {
+		    this.rep.add(0);
+		    continue;
+		}
+		double weight = this.biasing.likelihoodRatio(this.bases,
+							     vars, buffer);
+		this.rep.add(weight);
+		if (this.num != null) {
+		    collect(vars, buffer, weight);
+		}
+	    }
+	}
+
+	private void collect(boolean[] vars, boolean[] buffer, double weight) {
+	    for (MonteCarlo.BaseEffect base : this.bases) {
+		for (int k = 0; k < base.size(); k++) {
+		    if (base.isDrawn(k, buffer)) {
+			int j = base.getOffset() + k;
+			this.den[j] += weight;
+			if (vars[j]) {
+			    this.num[j] += weight;
+			}
+		    }
+		}
+	    }
+	}
+    } // class BatchTask
+
+    /**
+     * The nominal and the biased probabilities of the variables
+     * together with the likelihood ratios derived from them.
+     */
+    static final class Biasing {
+	private final double[] nominal;
+	private final double[] biased;
+
+	/**
+	 * The likelihood ratios of the variables being <code>true</code>.
+	 */
+	private final double[] ratioTrue;
+
+	/**
+	 * The likelihood ratios of the variables being <code>false</code>.
+	 */
+	private final double[] ratioFalse;
+
+	Biasing(double[] nominal, double[] biased) {
+	    this.nominal = nominal;
+	    this.biased = biased;
+	    this.ratioTrue  = new double[nominal.length];
+	    this.ratioFalse = new double[nominal.length];
+	    for (int j = 0; j < nominal.length; j++) {
+		this.ratioTrue [j] = nominal[j] / biased[j];
+		this.ratioFalse[j] = (1 - nominal[j]) / (1 - biased[j]);
+	    }
+	}
+
+	double[] getBiased() {
+	    return this.biased;
+	}
+
+	/**
+	 * Returns the likelihood ratio of the given sample.
+	 *
+	 * @param bases
+	 *    the effects with distribution.
+	 * @param vars
+	 *    the variables of the sample.
+	 * @param buffer
+	 *    the deficiencies occurring in the sample.
+	 */
+	double likelihoodRatio(List<MonteCarlo.BaseEffect> bases,
+			       boolean[] vars,
+			       boolean[] buffer) {
+	    double res = 1;
+	    for (MonteCarlo.BaseEffect base : bases) {
+		for (int k = 0; k < base.size(); k++) {
+		    if (base.isDrawn(k, buffer)) {
+			int j = base.getOffset() + k;
+			res *= vars[j] ? this.ratioTrue[j] : this.ratioFalse[j];
+		    }
+		}
+	    }
+	    return res;
+	}
+    } // class Biasing
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The default probability deficiencies are drawn with
+     * by failure biasing.
+     */
+    public static final double DEFAULT_FAILURE_BIAS = 0.5;
+
+    /**
+     * The weight of the new biased probabilities
+     * in an iteration of the cross-entropy method;
+     * the old ones have the complementary weight.
+     */
+    private static final double SMOOTHING = 0.7;
+
+    /**
+     * The least distance of biased probabilities
+     * from <code>0</code> and from <code>1</code>:
+     * this keeps the likelihood ratios finite.
+     */
+    private static final double MIN_BIAS = 1e-4;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The instance the effects of which are estimated.
+     */
+    private final FlatCInstance flatCInst;
+
+    /**
+     * The pool the batches are drawn in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of replicates.
+     */
+    private final int numReplicates;
+
+    /**
+     * The number of points drawn by a replicate in each round.
+     */
+    private final int batchSize;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public ImportanceSampler(FlatCInstance flatCInst) {
+	this(flatCInst, ForkJoinPool.commonPool(),
+	     MonteCarlo.DEFAULT_REPLICATES, MonteCarlo.DEFAULT_BATCH_SIZE);
+    } // ImportanceSampler constructor
+
+    /**
+     * Creates an importance sampler for the given instance.
+     * The parameters are as for
+     * {@link MonteCarlo#MonteCarlo(FlatCInstance, ForkJoinPool, int, int)}.
+     * Each iteration of the cross-entropy method is one round.
+     *
+     * @throws IllegalArgumentException
+     *    if <code>numReplicates</code> or <code>batchSize</code>
+     *    is not positive.
+     */
+    public ImportanceSampler(FlatCInstance flatCInst,
+			     ForkJoinPool pool,
+			     int numReplicates,
+			     int batchSize) {
+	if (numReplicates <= 0 || batchSize <= 0) {
+	    throw new IllegalArgumentException
+		("Expected positive number of replicates and batch size " +
+		 "but found " + numReplicates + " and " + batchSize + ". ");
+	}
+	this.flatCInst = flatCInst;
+	this.pool = pool;
+	this.numReplicates = numReplicates;
+	this.batchSize = batchSize;
+    } // ImportanceSampler constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    private static double clamp(double prob) {
+	return Math.max(MIN_BIAS, Math.min(1 - MIN_BIAS, prob));
+    }
+
+    /**
+     * Returns the biased probabilities of failure biasing:
+     * probabilities less than <code>failureBias</code> are raised to it.
+     */
+    static double[] failureBiasing(double[] nominal, double failureBias) {
+	double[] res = new double[nominal.length];
+	for (int j = 0; j < nominal.length; j++) {
+	    res[j] = clamp(Math.max(nominal[j], failureBias));
+	}
+	return res;
+    }
+
+    private MonteCarlo.Replicate[] newReplicates(MonteCarlo.Sequence seq,
+						 int dim,
+						 SplittableRandom root) {
+	MonteCarlo.Replicate[] res = 
+	    new MonteCarlo.Replicate[this.numReplicates];
+	for (int r = 0; r < res.length; r++) {
+	    res[r] = new MonteCarlo.Replicate(seq.newSource(dim, 
+							    root.split()));
+	}
+	return res;
+    }
+
+    /**
+     * Tunes the biasing by one iteration of the cross-entropy method.
+     *
+     * @return
+     *    the tuned biasing or <code>biasing</code> itself
+     *    if the effect did not occur in any sample.
+     */
+    private Biasing tune(CompiledFormula form,
+			 List<MonteCarlo.BaseEffect> bases,
+			 Biasing biasing,
+			 MonteCarlo.Replicate[] reps) {
+	List<BatchTask> tasks = new ArrayList<BatchTask>();
+	for (MonteCarlo.Replicate rep : reps) {
+	    tasks.add(new BatchTask(form, bases, biasing, rep, true));
+	}
+	MonteCarlo.invokeRound(this.pool, tasks);
+
+	double[] biased = biasing.getBiased().clone();
+	double[] num = new double[biased.length];
+	double[] den = new double[biased.length];
+	// summation in the order of the replicates for reproducibility
+	for (BatchTask task : tasks) {
+	    for (int j = 0; j < biased.length; j++) {
+		num[j] += task.num[j];
+		den[j] += task.den[j];
+	    }
+	}
+	boolean occurred = false;
+	for (int j = 0; j < biased.length; j++) {
+	    if (den[j] > 0) {
+		occurred = true;
+		biased[j] = clamp(SMOOTHING * num[j] / den[j]
+				  + (1 - SMOOTHING) * biased[j]);
+	    }
+	}
+	return occurred ? new Biasing(biasing.nominal, biased) : biasing;
+    }
+
+    /**
+     * Returns an estimate of the probability
+     * that the effect specified by <code>sPath</code>
+     * is not the empty set by importance sampling.
+     * After <code>ceIterations</code> iterations
+     * of the cross-entropy method
+     * starting with failure biasing with <code>failureBias</code>,
+     * sampling proceeds in rounds until either the half width
+     * of the confidence interval relative to the estimate
+     * is at most <code>relError</code>
+     * or the time elapsed exceeds <code>maxMillis</code>
+     * as for {@link MonteCarlo#estimate
+     * (List, MonteCarlo.Sequence, long, double, double, long)}.
+     * The time spent on tuning counts towards the budget.
+     *
+     * @param sPath
+     *    identifies a effect.
+     * @param seq
+     *    the sequence the points are drawn from.
+     * @param failureBias
+     *    the least probability deficiencies are drawn with initially,
+     *    e.g. {@link #DEFAULT_FAILURE_BIAS}.
+     * @param ceIterations
+     *    the number of iterations of the cross-entropy method.
+     * @param seed
+     *    the seed of the replicates.
+     * @param confidence
+     *    the confidence level of the interval, e.g. <code>0.95</code>.
+     * @param relError
+     *    the target relative error.
+     *    For <code>0</code>, sampling stops by time only
+     *    unless all replicates agree on <code>0</code> or <code>1</code>.
+     * @param maxMillis
+     *    the time budget in milliseconds.
+     * @return
+     *    the estimate with its variance and confidence interval.
+     * @throws IllegalArgumentException
+     *    if <code>failureBias</code> or <code>confidence</code>
+     *    is not within <code>(0, 1)</code>
+     *    or if <code>ceIterations</code> is negative.
+     */
+    public SampleEstimate estimate(List<String> sPath,
+				   MonteCarlo.Sequence seq,
+				   double failureBias,
+				   int ceIterations,
+				   long seed,
+				   double confidence,
+				   double relError,
+				   long maxMillis) {
+	long start = System.currentTimeMillis();
+	if (!(failureBias > 0 && failureBias < 1) || ceIterations < 0) {
+	    throw new IllegalArgumentException
+		("Expected failure bias in (0, 1) " +
+		 "and non-negative number of iterations but found " +
+		 failureBias + " and " + ceIterations + ". ");
+	}
+	double quantile = SampleEstimate.normalQuantile(confidence);
+	List<MonteCarlo.BaseEffect> bases =
+	    MonteCarlo.prepare(this.flatCInst, sPath);
+	double[] nominal = MonteCarlo.getProbs(bases);
+	CompiledFormula form = MonteCarlo.compile(this.flatCInst, sPath, bases);
+
+	SplittableRandom root = new SplittableRandom(seed);
+	Biasing biasing = new Biasing(nominal,
+				      failureBiasing(nominal, failureBias));
+	MonteCarlo.Replicate[] reps = newReplicates(seq, nominal.length, root);
+	for (int it = 0; it < ceIterations; it++) {
+	    biasing = tune(form, bases, biasing, reps);
+	}
+
+	reps = newReplicates(seq, nominal.length, root);
+	List<BatchTask> tasks = new ArrayList<BatchTask>();
+	for (MonteCarlo.Replicate rep : reps) {
+	    tasks.add(new BatchTask(form, bases, biasing, rep, false));
+	}
+	SampleEstimate res;
+	do {
+	    MonteCarlo.invokeRound(this.pool, tasks);
+	    res = MonteCarlo.getEstimate(reps, seq.stdError(reps), confidence,
+					 seq.quantile(quantile, reps));
+	} while (!MonteCarlo.isAccurate(res, relError)
+		 && System.currentTimeMillis() - start < maxMillis);
+	return res;
+    }
+
+} // ImportanceSampler
@@ -0,0 +1,457 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import java.math.BigDecimal;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the probabilities of the effects of a {@link FlatCInstance}
+ * by decomposing their inlined formulae into independent modules
+ * as an alternative to {@link FlatCInstance#getProb(List, ProbMemo)}.
+ * <p>
+ * The arguments of a union or an intersection are partitioned
+ * into modules such that arguments in different modules
+ * share no variable.
+ * Since the effects with distribution are independent,
+ * so are the values of the modules:
+ * the distribution of the value of the operation
+ * is obtained from the distributions of the values of the modules
+ * by combining each pair of values with the operation.
+ * This is correct because union and intersection are associative.
+ * Likewise, the distribution of the value of an operation
+ * with a single argument like complement or a map
+ * is the image of the distribution of its argument.
+ * Only if a formula does not decompose,
+ * it is expanded by conditioning on a variable
+ * as in {@link FlatCInstance#getProb(List, ProbMemo)}
+ * and the residual formulae are decomposed again.
+ * <p>
+ * Thus, whereas {@link FlatCInstance#getProb(List, ProbMemo)}
+ * expands jointly on all variables of independent modules,
+ * here the effort is roughly the sum of the efforts for the modules.
+ * In turn, the distribution of the value of a formula
+ * is computed and not only the probability that it is not empty.
+ * The modules may be evaluated in parallel on a {@link ForkJoinPool}.
+ *
+ *
+ * Created: Sat Oct 17 21:52:16 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ModularEvaluator {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Computes the distribution of the value of a module
+     * by {@link #getDistr(Formula, ProbMemo)}.
+     */
+    private final class DistrTask
+	extends RecursiveTask<Map<Set<Deficiency>, BigDecimal>> {
+
+	private static final long serialVersionUID = -2214187904129836317L;
+
+	private final Formula form;
+	private final ProbMemo memo;
+
+	DistrTask(Formula form, ProbMemo memo) {
+	    this.form = form;
+	    this.memo = memo;
+	}
+
+	protected Map<Set<Deficiency>, BigDecimal> compute() {
+	    return getDistr(this.form, this.memo);
+	}
+    } // class DistrTask
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The instance the effects of which are evaluated.
+     * This also determines the variable to condition on next.
+     */
+    private final FlatCInstance flatCInst;
+
+    /**
+     * The pool the modules are evaluated on in parallel
+     * or <code>null</code> if evaluation is sequential.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of formulae decomposed into independent modules.
+     */
+    private final AtomicLong decompositions;
+
+    /**
+     * The number of formulae expanded by conditioning on a variable.
+     */
+    private final AtomicLong expansions;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public ModularEvaluator(FlatCInstance flatCInst) {
+	this(flatCInst, null);
+    } // ModularEvaluator constructor
+
+    /**
+     * Creates an evaluator for the effects of <code>flatCInst</code>.
+     *
+     * @param flatCInst
+     *    the instance the effects of which are to be evaluated.
+     * @param pool
+     *    the pool to evaluate independent modules in parallel
+     *    or <code>null</code> for sequential evaluation.
+     */
+    public ModularEvaluator(FlatCInstance flatCInst, ForkJoinPool pool) {
+	this.flatCInst = flatCInst;
+	this.pool = pool;
+	this.decompositions = new AtomicLong();
+	this.expansions = new AtomicLong();
+    } // ModularEvaluator constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the probability
+     * that the effect specified by <code>sPath</code>
+     * is not the empty set.
+     *
+     * @param sPath
+     *    identifies an effect given by a formula.
+     * @param memo
+     *    the memo table holding the distributions of the modules
+     *    computed so far and receiving those computed by this invocation
+     *    or <code>null</code>.
+     * @return
+     *    the probability described above
+     *    which coincides with {@link FlatCInstance#getProb(List)}.
+     */
+    public BigDecimal getProb(List<String> sPath, ProbMemo memo) {
+	BigDecimal res = BigDecimal.ZERO;
+	for (Map.Entry<Set<Deficiency>, BigDecimal> entry
+		 : getDistr(sPath, memo).entrySet()) {
+	    if (!entry.getKey().isEmpty()) {
+		res = res.add(entry.getValue());
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the distribution of the value
+     * of the effect specified by <code>sPath</code>.
+     *
+     * @param sPath
+     *    identifies an effect given by a formula.
+     * @param memo
+     *    the memo table as for {@link #getProb(List, ProbMemo)}.
+     * @return
+     *    a map from the values the effect assumes
+     *    with positive probability to these probabilities.
+     *    This map shall not be modified.
+     */
+    public Map<Set<Deficiency>, BigDecimal> getDistr(List<String> sPath,
+						     ProbMemo memo) {
+	Formula form = this.flatCInst.inline(this.flatCInst.getEffect(sPath));
+	if (this.pool == null) {
+	    return getDistr(form, memo);
+	}
+	return this.pool.invoke(new DistrTask(form, memo));
+    }
+
+    /**
+     * Returns the distribution of the value of <code>form</code>.
+     *
+     * @param form
+     *    a formula all variables of which have probability distributions.
+     * @param memo
+     *    the memo table as for {@link #getProb(List, ProbMemo)}.
+     * @return
+     *    a map from the values <code>form</code> assumes
+     *    with positive probability to these probabilities.
+     */
+    private Map<Set<Deficiency>, BigDecimal> getDistr(Formula form,
+						      ProbMemo memo) {
+	Set<Deficiency> val = form.getConst();
+	if (val != null) {
+	    return Collections.singletonMap((Set<Deficiency>)
+					    new HashSet<Deficiency>(val),
+					    BigDecimal.ONE);
+	}
+
+	Integer key = null;
+	if (memo != null) {
+	    key = memo.getKey(form);
+	    Map<Set<Deficiency>, BigDecimal> res = memo.getDistr(key);
+	    if (res != null) {
+		return res;
+	    }
+	}
+
+	Map<Set<Deficiency>, BigDecimal> res = null;
+	if (form instanceof Formula.Comp) {
+	    res = getDistrComp((Formula.Comp) form, memo);
+	}
+	if (res == null) {
+	    res = expand(form, memo);
+	}
+	if (memo != null) {
+	    memo.putDistr(key, res);
+	}
+	return res;
+    }
+
+    /**
+     * Returns the distribution of the value of <code>comp</code>
+     * if this can be obtained from the distributions of its modules.
+     *
+     * @return
+     *    the distribution as for {@link #getDistr(Formula, ProbMemo)}
+     *    or <code>null</code> if <code>comp</code> does not decompose.
+     */
+    private Map<Set<Deficiency>, BigDecimal> getDistrComp(Formula.Comp comp,
+							  ProbMemo memo) {
+	Operation.Eval eval = comp.getEval();
+	Set<Formula> args = comp.getArgs();
+	if (args.size() == 1) {
+	    // the image of the distribution of the argument
+	    Map<Set<Deficiency>, BigDecimal> res =
+		new HashMap<Set<Deficiency>, BigDecimal>();
+	    Set<Set<Deficiency>> param;
+	    for (Map.Entry<Set<Deficiency>, BigDecimal> entry
+		     : getDistr(args.iterator().next(), memo).entrySet()) {
+		param = new HashSet<Set<Deficiency>>();
+		param.add(entry.getKey());
+		addProb(res, eval.eval(param), entry.getValue());
+	    }
+	    return res;
+	}
+
+	Operation oper = eval.getOperation();
+	if (oper != Operation.getOperation(Operation.BaseOps.Union)
+	    && oper != Operation.getOperation(Operation.BaseOps.Intersection)) {
+	    return null;
+	}
+	List<Formula> modules = getModules(comp);
+	if (modules.size() == 1) {
+	    return null;
+	}
+	this.decompositions.incrementAndGet();
+
+	List<Map<Set<Deficiency>, BigDecimal>> distrs =
+	    new ArrayList<Map<Set<Deficiency>, BigDecimal>>();
+	if (this.pool == null) {
+	    for (Formula module : modules) {
+		distrs.add(getDistr(module, memo));
+	    }
+	} else {
+	    List<DistrTask> tasks = new ArrayList<DistrTask>();
+	    for (Formula module : modules) {
+		tasks.add(new DistrTask(module, memo));
+	    }
+	    for (DistrTask task : RecursiveTask.invokeAll(tasks)) {
+		distrs.add(task.join());
+	    }
+	}
+
+	// combine the modules one by one
+	Map<Set<Deficiency>, BigDecimal> res = distrs.get(0);
+	Map<Set<Deficiency>, BigDecimal> acc;
+	Set<Set<Deficiency>> param;
+	for (int i = 1; i < distrs.size(); i++) {
+	    acc = new HashMap<Set<Deficiency>, BigDecimal>();
+	    for (Map.Entry<Set<Deficiency>, BigDecimal> entry1
+		     : res.entrySet()) {
+		for (Map.Entry<Set<Deficiency>, BigDecimal> entry2
+			 : distrs.get(i).entrySet()) {
+		    param = new HashSet<Set<Deficiency>>();
+		    param.add(entry1.getKey());
+		    param.add(entry2.getKey());
+		    addProb(acc, eval.eval(param),
+			    entry1.getValue().multiply(entry2.getValue()));
+		}
+	    }
+	    res = acc;
+	}
+	return res;
+    }
+
+    /**
+     * Partitions <code>args</code> into modules
+     * such that arguments in different modules share no variable.
+     * Each module is returned as a formula:
+     * a single argument itself,
+     * several arguments combined with the operation of <code>comp</code>.
+     * Since the variables of each formula are computed on creation,
+     * this takes time linear in the sum of the numbers of variables
+     * of the arguments, not in the size of their formulae,
+     * up to the inverse Ackermann function of the union find.
+     * If no variable is shared by two arguments,
+     * which is seen from the numbers of variables,
+     * each argument is a module by itself
+     * and this takes time linear in the number of arguments.
+     *
+     * @param comp
+     *    a formula with an associative operation.
+     * @return
+     *    the modules described above.
+     */
+    private static List<Formula> getModules(Formula.Comp comp) {
+	Operation.Eval eval = comp.getEval();
+	Set<Formula> args = comp.getArgs();
+	List<Formula> argList = new ArrayList<Formula>(args);
+	int numVars = 0;
+	for (Formula arg : argList) {
+	    numVars += arg.getVars().size();
+	}
+	if (numVars == comp.getVars().size()) {
+	    // the variable sets of the arguments are disjoint
+	    return argList;
+	}
+
+	int[] parent = new int[argList.size()];
+	Map<SInstance, Integer> var2arg = new HashMap<SInstance, Integer>();
+	for (int i = 0; i < parent.length; i++) {
+	    parent[i] = i;
+	    for (SInstance var : argList.get(i).getVars()) {
+		Integer other = var2arg.put(var, i);
+		if (other != null) {
+		    parent[find(parent, other)] = find(parent, i);
+		}
+	    }
+	}
+
+	Map<Integer, Set<Formula>> root2args =
+	    new HashMap<Integer, Set<Formula>>();
+	List<Integer> roots = new ArrayList<Integer>();
+	for (int i = 0; i < parent.length; i++) {
+	    int root = find(parent, i);
+	    Set<Formula> module = root2args.get(root);
+	    if (module == null) {
+		module = new HashSet<Formula>();
+		root2args.put(root, module);
+		roots.add(root);
+	    }
+	    module.add(argList.get(i));
+	}
+
+	List<Formula> res = new ArrayList<Formula>();
+	for (Integer root : roots) {
+	    Set<Formula> module = root2args.get(root);
+	    res.add(module.size() == 1
+		    ? module.iterator().next()
+		    : Formula.getFormula(eval, module));
+	}
+	return res;
+    }
+
+    private static int find(int[] parent, int ind) {
+	int res = ind;
+	while (parent[res] != res) {
+	    parent[res] = parent[parent[res]];
+	    res = parent[res];
+	}
+	return res;
+    }
+
+    /**
+     * Returns the distribution of the value of <code>form</code>
+     * by conditioning on the variable chosen by {@link #flatCInst}
+     * and decomposing the residual formulae.
+     */
+    private Map<Set<Deficiency>, BigDecimal> expand(Formula form,
+						    ProbMemo memo) {
+	this.expansions.incrementAndGet();
+	SInstance var = this.flatCInst.chooseVar(Collections.singleton(form));
+	assert var != null;
+	Deficiency def = FlatCInstance.minDef(var);
+	BigDecimal cond = var.getDistr().getProb(def);
+
+	Map<Set<Deficiency>, BigDecimal> res =
+	    new HashMap<Set<Deficiency>, BigDecimal>();
+	for (Map.Entry<Set<Deficiency>, BigDecimal> entry
+		 : getDistr(form.substitute(var,
+					    FlatCInstance.addForm(var, def)),
+			    memo).entrySet()) {
+	    addProb(res, entry.getKey(), cond.multiply(entry.getValue()));
+	}
+	BigDecimal compl = BigDecimal.ONE.subtract(cond);
+	for (Map.Entry<Set<Deficiency>, BigDecimal> entry
+		 : getDistr(form.substitute(var,
+					    FlatCInstance.removeForm(var, def)),
+			    memo).entrySet()) {
+	    addProb(res, entry.getKey(), compl.multiply(entry.getValue()));
+	}
+	return res;
+    }
+
+    /**
+     * Adds <code>prob</code> to the probability of <code>val</code>
+     * within <code>distr</code>, omitting vanishing probabilities.
+     */
+    private static void addProb(Map<Set<Deficiency>, BigDecimal> distr,
+				Set<Deficiency> val,
+				BigDecimal prob) {
+	if (prob.signum() == 0) {
+	    return;
+	}
+	BigDecimal old = distr.get(val);
+	distr.put(val, old == null ? prob : old.add(prob));
+    }
+
+    /**
+     * Returns the number of formulae decomposed into independent modules
+     * by this evaluator so far.
+     *
+     * @return
+     *    {@link #decompositions}.
+     */
+    public long getDecompositions() {
+	return this.decompositions.get();
+    }
+
+    /**
+     * Returns the number of formulae expanded by conditioning
+     * by this evaluator so far.
+     *
+     * @return
+     *    {@link #expansions}.
+     */
+    public long getExpansions() {
+	return this.expansions.get();
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<ModularEvaluator decompositions=\"");
+	res.append(getDecompositions());
+	res.append("\" expansions=\"");
+	res.append(getExpansions());
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // ModularEvaluator
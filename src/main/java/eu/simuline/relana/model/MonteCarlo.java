@@ -0,0 +1,713 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Type;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates the probabilities of the effects of a {@link FlatCInstance}
+ * by sampling as an alternative to {@link FlatCInstance#getProb(List)}
+ * for models too large for exact evaluation.
+ * <p>
+ * A sample is a point in the unit cube
+ * with one coordinate for each deficiency of each effect
+ * with a probability distribution the effect under consideration
+ * depends on.
+ * As in {@link BddEvaluator}, a deficiency <code>def</code> occurs
+ * if its coordinate is less than
+ * {@link ProbDistr#getProb(Deficiency)}
+ * and all deficiencies below <code>def</code> occur.
+ * So the sampled values respect the ordering of the {@link Type}s.
+ * Then the formulae of the effects are evaluated
+ * and the effect under consideration is checked to be non-empty.
+ * <p>
+ * The points are drawn by a number of replicates
+ * of a {@link Sequence} which proceed in rounds:
+ * in each round, each replicate draws a batch of points
+ * as a task in a {@link ForkJoinPool}.
+ * The replicates are seeded by streams split
+ * from a single {@link SplittableRandom},
+ * so the estimate is reproducible for a given seed
+ * provided sampling stops by the relative error.
+ * A time budget stops after the round which exceeds it.
+ *
+ *
+ * Created: Sat Oct 17 17:58:40 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class MonteCarlo {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * A source of points in the unit cube.
+     */
+    interface PointSource {
+	/**
+	 * Writes the coordinates of the next point into <code>point</code>.
+	 */
+	void next(double[] point);
+    } // interface PointSource
+
+    /**
+     * Enumeration of the sequences of points samples are drawn from.
+     */
+    public enum Sequence {
+	/**
+	 * Pseudo-random points.
+	 * The standard error is estimated from the samples of all replicates.
+	 */
+	PseudoRandom() {
+	    PointSource newSource(int dim, final SplittableRandom rnd) {
+		return new PointSource() {
+		    public void next(double[] point) {
+			for (int j = 0; j < point.length; j++) {
+			    point[j] = rnd.nextDouble();
+			}
+		    }
+		};
+	    }
+	    double stdError(Replicate[] reps) {
+		double sum = 0;
+		double sumSq = 0;
+		long count = 0;
+		for (Replicate rep : reps) {
+		    sum   += rep.sum;
+		    sumSq += rep.sumSq;
+		    count += rep.count;
+		}
+		if (count < 2) {
+		    return Double.POSITIVE_INFINITY;
+		}
+		double mean = sum / count;
+		double var = Math.max(0, sumSq / count - mean * mean)
+		    * count / (count - 1);
+		return Math.sqrt(var / count);
+	    }
+	    double quantile(double normQuant, Replicate[] reps) {
+		return normQuant;
+	    }
+	},
+	/**
+	 * Quasi-random points from independently shifted
+	 * {@link SobolSequence}s.
+	 * The standard error is estimated
+	 * from the means of the replicates.
+	 */
+	Sobol() {
+	    PointSource newSource(int dim, SplittableRandom rnd) {
+		return new SobolSequence(dim, rnd);
+	    }
+	    double stdError(Replicate[] reps) {
+		if (reps.length < 2) {
+		    return Double.POSITIVE_INFINITY;
+		}
+		double sum = 0;
+		double sumSq = 0;
+		for (Replicate rep : reps) {
+		    double mean = rep.sum / rep.count;
+		    sum   += mean;
+		    sumSq += mean * mean;
+		}
+		double mean = sum / reps.length;
+		double var = Math.max(0, sumSq / reps.length - mean * mean)
+		    * reps.length / (reps.length - 1);
+		return Math.sqrt(var / reps.length);
+	    }
+	    double quantile(double normQuant, Replicate[] reps) {
+		// Cornish-Fisher expansion of the quantile 
+		// of Student's t-distribution 
+		double dof = reps.length - 1;
+		double z2 = normQuant * normQuant;
+		return normQuant 
+		    * (1 
+		       + (z2 + 1) / (4 * dof) 
+		       + ((5 * z2 + 16) * z2 + 3) / (96 * dof * dof) 
+		       + (((3 * z2 + 19) * z2 + 17) * z2 - 15) 
+		       / (384 * dof * dof * dof));
+	    }
+	};
+
+	/**
+	 * Returns a new source of points of dimension <code>dim</code>
+	 * randomized by <code>rnd</code>.
+	 */
+	abstract PointSource newSource(int dim, SplittableRandom rnd);
+
+	/**
+	 * Returns the standard error of the mean
+	 * of the samples drawn by <code>reps</code>.
+	 */
+	abstract double stdError(Replicate[] reps);
+
+	/**
+	 * Returns the factor of the standard error 
+	 * giving the half width of the confidence interval. 
+	 *
+	 * @param normQuant 
+	 *    the quantile of the standard normal distribution 
+	 *    for the confidence level. 
+	 * @param reps 
+	 *    the replicates the standard error is computed from. 
+	 */
+	abstract double quantile(double normQuant, Replicate[] reps);
+    } // enum Sequence
+
+    /**
+     * An effect with a probability distribution
+     * prepared for sampling.
+     */
+    static final class BaseEffect {
+	private final SInstance serv;
+
+	/**
+	 * The index of the first coordinate of this effect.
+	 */
+	private final int offset;
+
+	/**
+	 * The deficiencies of the type of {@link #serv} bottom up.
+	 */
+	private final Deficiency[] defs;
+
+	/**
+	 * The probabilities of {@link #defs}.
+	 */
+	private final double[] probs;
+
+	/**
+	 * For each index into {@link #defs}
+	 * the indices of the deficiencies directly below.
+	 */
+	private final int[][] succs;
+
+	BaseEffect(SInstance serv, int offset) {
+	    this.serv = serv;
+	    this.offset = offset;
+	    Type type = serv.getType();
+	    List<Deficiency> defList = BddEvaluator.bottomUp(type);
+	    this.defs = defList.toArray(new Deficiency[defList.size()]);
+	    this.probs = new double[this.defs.length];
+	    this.succs = new int[this.defs.length][];
+	    for (int i = 0; i < this.defs.length; i++) {
+		this.probs[i] = serv.getDistr()
+		    .getProb(this.defs[i], Arithmetic.Primitive, true);
+		Set<DeficiencyNode> nodes = type.getDeficiency2ordering()
+		    .get(this.defs[i]).getSuccessors();
+		this.succs[i] = new int[nodes.size()];
+		int k = 0;
+		for (DeficiencyNode node : nodes) {
+		    this.succs[i][k++] = defList.indexOf(node.getDeficiency());
+		}
+	    }
+	}
+
+	SInstance getEffect() {
+	    return this.serv;
+	}
+
+	int getOffset() {
+	    return this.offset;
+	}
+
+	int size() {
+	    return this.defs.length;
+	}
+
+	double getProb(int ind) {
+	    return this.probs[ind];
+	}
+
+	/**
+	 * Returns whether the deficiency with index <code>ind</code>
+	 * occurs if its variable is <code>true</code>,
+	 * i.e. whether all deficiencies below occur.
+	 *
+	 * @param buffer
+	 *    a buffer filled by
+	 *    {@link #setValue(boolean[], boolean[], CompiledFormula, int,
+	 *    long[])}.
+	 */
+	boolean isDrawn(int ind, boolean[] buffer) {
+	    for (int k = 0; k < this.succs[ind].length; k++) {
+		if (!buffer[this.offset + this.succs[ind][k]]) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	/**
+	 * Sets the value of this effect for the given variables 
+	 * as an input of <code>form</code>. 
+	 *
+	 * @param vars
+	 *    the variables of all effects:
+	 *    whether the coordinates are below the probabilities.
+	 * @param occurs
+	 *    a buffer receiving whether the deficiencies occur.
+	 * @param form
+	 *    a formula compiled with this effect 
+	 *    as its <code>input</code>th input. 
+	 * @param regs
+	 *    the registers of <code>form</code>. 
+	 */
+	void setValue(boolean[] vars, boolean[] occurs,
+		      CompiledFormula form, int input, long[] regs) {
+	    form.clearInput(regs, input);
+	    for (int i = 0; i < this.defs.length; i++) {
+		boolean occ = vars[this.offset + i];
+		for (int k = 0; occ && k < this.succs[i].length; k++) {
+		    occ = occurs[this.offset + this.succs[i][k]];
+		}
+		occurs[this.offset + i] = occ;
+		if (occ) {
+		    form.addToInput(regs, input, this.defs[i]);
+		}
+	    }
+	}
+    } // class BaseEffect
+
+    /**
+     * The state of a replicate: its source of points
+     * and the sums over its samples.
+     */
+    static final class Replicate {
+	private final PointSource source;
+	private double sum;
+	private double sumSq;
+	private long count;
+
+	Replicate(PointSource source) {
+	    this.source = source;
+	    this.sum = 0;
+	    this.sumSq = 0;
+	    this.count = 0;
+	}
+
+	void add(double value) {
+	    this.sum   += value;
+	    this.sumSq += value * value;
+	    this.count++;
+	}
+
+	PointSource getSource() {
+	    return this.source;
+	}
+
+	double getSum() {
+	    return this.sum;
+	}
+
+	long getCount() {
+	    return this.count;
+	}
+    } // class Replicate
+
+    /**
+     * The task drawing one batch of a replicate.
+     */
+    private final class BatchTask extends RecursiveAction {
+	private static final long serialVersionUID = 4417608721863359019L;
+
+	private final CompiledFormula form;
+	private final List<BaseEffect> bases;
+	private final double[] probs;
+	private final Replicate rep;
+
+	BatchTask(CompiledFormula form,
+		  List<BaseEffect> bases,
+		  double[] probs,
+		  Replicate rep) {
+	    this.form = form;
+	    this.bases = bases;
+	    this.probs = probs;
+	    this.rep = rep;
+	}
+
+	protected void compute() {
+	    double[] point = new double[this.probs.length];
+	    boolean[] vars = new boolean[this.probs.length];
+	    boolean[] buffer = new boolean[this.probs.length];
+	    long[] regs = this.form.newRegisters();
+	    for (int i = 0; i < MonteCarlo.this.batchSize; i++) {
+		this.rep.source.next(point);
+		for (int j = 0; j < point.length; j++) {
+		    vars[j] = point[j] < this.probs[j];
+		}
+		this.rep.add(occurs(this.form, this.bases, vars, buffer, regs)
+			     ? 1 : 0);
+	    }
+	}
+    } // class BatchTask
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The default number of replicates.
+     */
+    public static final int DEFAULT_REPLICATES = 16;
+
+    /**
+     * The default number of points drawn by a replicate in each round.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The instance the effects of which are estimated.
+     */
+    private final FlatCInstance flatCInst;
+
+    /**
+     * The pool the batches are drawn in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of replicates.
+     */
+    private final int numReplicates;
+
+    /**
+     * The number of points drawn by a replicate in each round.
+     */
+    private final int batchSize;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public MonteCarlo(FlatCInstance flatCInst) {
+	this(flatCInst, ForkJoinPool.commonPool(),
+	     DEFAULT_REPLICATES, DEFAULT_BATCH_SIZE);
+    } // MonteCarlo constructor
+
+    /**
+     * Creates a sampler for the given instance.
+     *
+     * @param flatCInst
+     *    the instance the effects of which are estimated.
+     * @param pool
+     *    the pool the batches are drawn in.
+     * @param numReplicates
+     *    the number of replicates drawing in parallel.
+     *    For {@link Sequence#Sobol},
+     *    this must be at least <code>2</code> to estimate errors.
+     * @param batchSize
+     *    the number of points drawn by a replicate in each round.
+     * @throws IllegalArgumentException
+     *    if <code>numReplicates</code> or <code>batchSize</code>
+     *    is not positive.
+     */
+    public MonteCarlo(FlatCInstance flatCInst,
+		      ForkJoinPool pool,
+		      int numReplicates,
+		      int batchSize) {
+	if (numReplicates <= 0 || batchSize <= 0) {
+	    throw new IllegalArgumentException
+		("Expected positive number of replicates and batch size " +
+		 "but found " + numReplicates + " and " + batchSize + ". ");
+	}
+	this.flatCInst = flatCInst;
+	this.pool = pool;
+	this.numReplicates = numReplicates;
+	this.batchSize = batchSize;
+    } // MonteCarlo constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the effects with probability distribution
+     * the effect given by <code>sPath</code> depends on.
+     * The effects are ordered by their paths
+     * and their coordinates are consecutive starting with <code>0</code>.
+     *
+     * @throws IllegalStateException
+     *    if the effects are defined cyclically.
+     */
+    static List<BaseEffect> prepare(FlatCInstance flatCInst,
+				    List<String> sPath) {
+	SInstance serv = flatCInst.getEffect(sPath);
+	if (serv == null) {
+	    throw new IllegalArgumentException
+		("Found no effect with path " + sPath + ". ");
+	}
+	Set<SInstance> found = new LinkedHashSet<SInstance>();
+	collect(serv, new HashSet<SInstance>(), new HashSet<SInstance>(),
+		found);
+
+	// add new effects with distribution in the order of their paths
+	List<List<String>> paths = new ArrayList<List<String>>
+	    (flatCInst.getEffects().keySet());
+	Collections.sort(paths, FlatCInstance.PATH_CMP);
+	List<SInstance> ordered = new ArrayList<SInstance>();
+	for (List<String> path : paths) {
+	    SInstance cand = flatCInst.getEffect(path);
+	    if (found.remove(cand)) {
+		ordered.add(cand);
+	    }
+	}
+	// effects not in the instance itself come last
+	ordered.addAll(found);
+
+	List<BaseEffect> res = new ArrayList<BaseEffect>();
+	int dim = 0;
+	for (SInstance base : ordered) {
+	    BaseEffect entry = new BaseEffect(base, dim);
+	    res.add(entry);
+	    dim += entry.size();
+	}
+	return res;
+    }
+
+    /**
+     * Returns the number of coordinates of the effects <code>bases</code>
+     * as returned by {@link #prepare(FlatCInstance, List)}.
+     */
+    static int getDim(List<BaseEffect> bases) {
+	int res = 0;
+	for (BaseEffect base : bases) {
+	    res += base.size();
+	}
+	return res;
+    }
+
+    /**
+     * Returns the probabilities of the deficiencies of <code>bases</code>
+     * in the order of the coordinates.
+     */
+    static double[] getProbs(List<BaseEffect> bases) {
+	double[] res = new double[getDim(bases)];
+	for (BaseEffect base : bases) {
+	    for (int i = 0; i < base.size(); i++) {
+		res[base.getOffset() + i] = base.getProb(i);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Collects the effects with distribution <code>serv</code>
+     * depends on into <code>found</code>
+     * checking for cyclic definitions.
+     */
+    private static void collect(SInstance serv,
+				Set<SInstance> inProgress,
+				Set<SInstance> visited,
+				Set<SInstance> found) {
+	if (serv.getDistr() != null) {
+	    found.add(serv);
+	    return;
+	}
+	if (serv.getFormula() == null) {
+	    throw new IllegalArgumentException
+		("Effect " + serv + " has neither a probability distribution " +
+		 "nor a formula. ");
+	}
+	if (!inProgress.add(serv)) {
+	    throw new IllegalStateException
+		("Found cyclic definition of effect " + serv + ". ");
+	}
+	if (visited.add(serv)) {
+	    for (SInstance var : serv.getFormula().getVars()) {
+		collect(var, inProgress, visited, found);
+	    }
+	}
+	inProgress.remove(serv);
+    }
+
+    /**
+     * Returns the formula of the effect specified by <code>sPath</code> 
+     * compiled with inputs <code>bases</code>. 
+     *
+     * @param bases
+     *    the effects with distribution the effect depends on
+     *    as returned by {@link #prepare(FlatCInstance, List)}.
+     */
+    static CompiledFormula compile(FlatCInstance flatCInst,
+				   List<String> sPath,
+				   List<BaseEffect> bases) {
+	List<SInstance> inputs = new ArrayList<SInstance>();
+	for (BaseEffect base : bases) {
+	    inputs.add(base.getEffect());
+	}
+	return new CompiledFormula(Formula.Var.create
+				   (flatCInst.getEffect(sPath),
+				    sPath.toString()),
+				   inputs);
+    }
+
+    /**
+     * Returns whether the value of <code>form</code>
+     * for the given variables is non-empty.
+     * This does not allocate.
+     *
+     * @param form
+     *    the compiled formula of an effect
+     *    as returned by {@link #compile(FlatCInstance, List, List)}.
+     * @param bases
+     *    the inputs of <code>form</code>.
+     * @param vars
+     *    for each coordinate whether the variable is <code>true</code>.
+     * @param buffer
+     *    a buffer of the same length as <code>vars</code>.
+     * @param regs
+     *    the registers of <code>form</code>.
+     */
+    static boolean occurs(CompiledFormula form,
+			  List<BaseEffect> bases,
+			  boolean[] vars,
+			  boolean[] buffer,
+			  long[] regs) {
+	for (int i = 0; i < bases.size(); i++) {
+	    bases.get(i).setValue(vars, buffer, form, i, regs);
+	}
+	return form.occurs(regs);
+    }
+
+    /**
+     * Returns an estimate of the probability
+     * that the effect specified by <code>sPath</code>
+     * is not the empty set.
+     * Sampling proceeds in rounds until either the half width
+     * of the confidence interval relative to the estimate
+     * is at most <code>relError</code>
+     * or the time elapsed exceeds <code>maxMillis</code>
+     * as described for {@link #isAccurate(SampleEstimate, double)}.
+     *
+     * @param sPath
+     *    identifies a effect.
+     * @param seq
+     *    the sequence the points are drawn from.
+     * @param seed
+     *    the seed of the replicates.
+     * @param confidence
+     *    the confidence level of the interval, e.g. <code>0.95</code>.
+     * @param relError
+     *    the target relative error.
+     *    For <code>0</code>, sampling stops by time only
+     *    unless all replicates agree on <code>0</code> or <code>1</code>.
+     * @param maxMillis
+     *    the time budget in milliseconds.
+     * @return
+     *    the estimate with its confidence interval.
+     * @throws IllegalArgumentException
+     *    if <code>confidence</code> is not within <code>(0, 1)</code>.
+     */
+    public SampleEstimate estimate(List<String> sPath,
+				   Sequence seq,
+				   long seed,
+				   double confidence,
+				   double relError,
+				   long maxMillis) {
+	long start = System.currentTimeMillis();
+	double quantile = SampleEstimate.normalQuantile(confidence);
+	List<BaseEffect> bases = prepare(this.flatCInst, sPath);
+	double[] probs = getProbs(bases);
+	CompiledFormula form = compile(this.flatCInst, sPath, bases);
+
+	SplittableRandom root = new SplittableRandom(seed);
+	final Replicate[] reps = new Replicate[this.numReplicates];
+	for (int r = 0; r < reps.length; r++) {
+	    reps[r] = new Replicate(seq.newSource(probs.length, root.split()));
+	}
+	List<BatchTask> tasks = new ArrayList<BatchTask>();
+	for (Replicate rep : reps) {
+	    tasks.add(new BatchTask(form, bases, probs, rep));
+	}
+
+	SampleEstimate res;
+	do {
+	    invokeRound(this.pool, tasks);
+	    res = getEstimate(reps, seq.stdError(reps), confidence, 
+			      seq.quantile(quantile, reps));
+	} while (!isAccurate(res, relError)
+		 && System.currentTimeMillis() - start < maxMillis);
+	return res;
+    }
+
+    /**
+     * Returns whether the relative error of <code>est</code>
+     * is at most <code>relError</code>.
+     * A vanishing standard error is accepted
+     * if and only if the estimate is <code>0</code> or <code>1</code>,
+     * i.e. if all samples agree.
+     * In particular, an estimate <code>0</code>
+     * the relative error of which is infinite stops sampling:
+     * an effect which did not occur in any sample
+     * is too rare to be estimated by plain sampling,
+     * cf. {@link ImportanceSampler}.
+     * For other estimates, the replicates just happen to agree,
+     * which is common for {@link Sequence#Sobol}
+     * because its points are evenly spread,
+     * and the confidence interval would degenerate to a point.
+     */
+    static boolean isAccurate(SampleEstimate est, double relError) {
+	if (est.getStdError() == 0) {
+	    return est.getValue() == 0 || est.getValue() == 1;
+	}
+	return est.getRelError() <= relError;
+    }
+
+    /**
+     * Invokes <code>tasks</code> in <code>pool</code> 
+     * and waits until all are done. 
+     * The tasks are reinitialized before, 
+     * so that the same tasks may be invoked in each round. 
+     * Exceptions thrown by the tasks are rethrown. 
+     */
+    static void invokeRound(ForkJoinPool pool,
+			    final List<? extends ForkJoinTask<?>> tasks) {
+	for (ForkJoinTask<?> task : tasks) {
+	    task.reinitialize();
+	}
+	pool.invoke(new RecursiveAction() {
+		private static final long serialVersionUID =
+		    -3361908154372874071L;
+		protected void compute() {
+		    ForkJoinTask.invokeAll(tasks);
+		}
+	    });
+    }
+
+    /**
+     * Returns the estimate given by the samples of <code>reps</code>.
+     */
+    static SampleEstimate getEstimate(Replicate[] reps,
+				      double stdError,
+				      double confidence,
+				      double quantile) {
+	double sum = 0;
+	long count = 0;
+	for (Replicate rep : reps) {
+	    sum   += rep.getSum();
+	    count += rep.getCount();
+	}
+	return new SampleEstimate(sum / count, stdError, count,
+				  confidence, quantile);
+    }
+
+} // MonteCarlo
@@ -226,6 +226,30 @@ public final class ProbDistr {
 
     private Map<Inverter, Validator> validators;
 
+    /**
+     * The deficiencies of {@link #def2prob} in a fixed order 
+     * defining the indices into the arrays of {@link #arith2reps}. 
+     * This is <code>null</code> 
+     * until an arithmetic based on <code>double</code>s is used. 
+     */
+    private Deficiency[] defs;
+
+    /**
+     * Maps the ordinal of an {@link Arithmetic} 
+     * to the representations of the probabilities of {@link #def2prob} 
+     * or to <code>null</code> if that arithmetic was not yet used. 
+     * The representation of the probability of <code>defs[i]</code> 
+     * is at index <code>2*i</code>, 
+     * that of its complement at index <code>2*i+1</code>. 
+     * Lookup avoids <code>BigDecimal</code> arithmetic 
+     * and hash computations for fast arithmetics. 
+     * This is <code>null</code> 
+     * until an arithmetic based on <code>double</code>s is used. 
+     * It is replaced as a whole when extended, 
+     * so that it may be read without synchronization. 
+     */
+    private volatile double[][] arith2reps;
+
     /* ---------------------------------------------------------------- *
      * constructors.                                                    *
      * ---------------------------------------------------------------- */
@@ -436,6 +460,61 @@ public final class ProbDistr {
 	return res;
     }
 
+    /**
+     * Returns the representation of the probability 
+     * that <code>def</code> occurs or that it does not occur 
+     * with respect to the given arithmetic. 
+     *
+     * @param def 
+     *    a <code>Deficiency</code> of this distribution. 
+     * @param arith 
+     *    an arithmetic based on <code>double</code>s. 
+     * @param occurs 
+     *    whether to return the representation 
+     *    of the probability of <code>def</code> or of its complement. 
+     * @return 
+     *    the representation 
+     *    of {@link #getProb(Deficiency)} if <code>occurs</code>; 
+     *    otherwise that of its complement. 
+     * @throws IllegalArgumentException 
+     *    if <code>def</code> is unknown. 
+     */
+    double getProb(Deficiency def, Arithmetic arith, boolean occurs) {
+	double[][] reps = this.arith2reps;
+	if (reps == null || reps[arith.ordinal()] == null) {
+	    reps = initReps(arith);
+	}
+	// Here, this.defs is initialized and visible. 
+	for (int i = 0; i < this.defs.length; i++) {
+	    if (this.defs[i].equals(def)) {
+		return reps[arith.ordinal()][occurs ? 2 * i : 2 * i + 1];
+	    }
+	}
+	throw new IllegalArgumentException
+	    ("Deficiency \"" + def + "\" is unknown. "); 
+    }
+
+    private synchronized double[][] initReps(Arithmetic arith) {
+	if (this.defs == null) {
+	    this.defs = this.def2prob.keySet()
+		.toArray(new Deficiency[this.def2prob.size()]);
+	}
+	double[][] reps = this.arith2reps == null 
+	    ? new double[Arithmetic.values().length][] 
+	    : this.arith2reps.clone();
+	if (reps[arith.ordinal()] == null) {
+	    double[] arr = new double[2 * this.defs.length];
+	    for (int i = 0; i < this.defs.length; i++) {
+		BigDecimal prob = this.def2prob.get(this.defs[i]);
+		arr[2 * i    ] = arith.represent     (prob);
+		arr[2 * i + 1] = arith.representCompl(prob);
+	    }
+	    reps[arith.ordinal()] = arr;
+	}
+	this.arith2reps = reps;
+	return reps;
+    }
+
     public void validate() {
 	this.validators = new EnumMap<Inverter, Validator>(Inverter.class);
 	validateUp(Inverter.Identity);
@@ -0,0 +1,156 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The probability of an effect computed with some {@link Arithmetic}
+ * together with a bound for its relative error
+ * compared with the result of {@link Arithmetic#Exact}.
+ * The bound is obtained by a running error analysis:
+ * it accumulates the round-off of the individual operations
+ * to first order.
+ * For {@link Arithmetic#Exact} it vanishes.
+ *
+ *
+ * Created: Sat Oct 17 16:48:12 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ProbEstimate {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The arithmetic this estimate is computed with.
+     */
+    private final Arithmetic arith;
+
+    /**
+     * The exact probability
+     * if {@link #arith} is {@link Arithmetic#Exact};
+     * otherwise <code>null</code>.
+     */
+    private final BigDecimal exact;
+
+    /**
+     * The representation of the probability with respect to {@link #arith}
+     * unless {@link #arith} is {@link Arithmetic#Exact}.
+     */
+    private final double rep;
+
+    /**
+     * A bound for the relative error of the probability.
+     */
+    private final double relError;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates an estimate computed with {@link Arithmetic#Exact}.
+     */
+    ProbEstimate(BigDecimal exact) {
+	this.arith = Arithmetic.Exact;
+	this.exact = exact;
+	this.rep = Double.NaN;
+	this.relError = 0;
+    } // ProbEstimate constructor
+
+    /**
+     * Creates an estimate computed with an arithmetic
+     * based on <code>double</code>s.
+     */
+    ProbEstimate(Arithmetic arith, double rep, double relError) {
+	if (arith == Arithmetic.Exact) {
+	    throw new IllegalArgumentException
+		("Expected arithmetic based on doubles. ");
+	}
+	this.arith = arith;
+	this.exact = null;
+	this.rep = rep;
+	this.relError = relError;
+    } // ProbEstimate constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public Arithmetic getArithmetic() {
+	return this.arith;
+    }
+
+    /**
+     * Returns the probability.
+     * For {@link Arithmetic#Logarithmic}
+     * this is <code>0</code> if the probability underflows;
+     * use {@link #getLog()} instead.
+     *
+     * @return
+     *    the probability as a <code>BigDecimal</code>.
+     */
+    public BigDecimal getValue() {
+	if (this.exact != null) {
+	    return this.exact;
+	}
+	return new BigDecimal(this.arith.toDouble(this.rep));
+    }
+
+    /**
+     * Returns the natural logarithm of the probability.
+     * For {@link Arithmetic#Logarithmic} this is accurate
+     * even if the probability itself underflows.
+     *
+     * @return
+     *    the natural logarithm of the probability.
+     */
+    public double getLog() {
+	if (this.exact != null) {
+	    return Math.log(this.exact.doubleValue());
+	}
+	return this.arith.toLog(this.rep);
+    }
+
+    /**
+     * Returns a bound for the relative error of the probability
+     * compared with the exact one.
+     *
+     * @return
+     *    {@link #relError}.
+     */
+    public double getRelError() {
+	return this.relError;
+    }
+
+    /**
+     * Returns a bound for the absolute error of the probability
+     * compared with the exact one.
+     *
+     * @return
+     *    the relative error {@link #getRelError()}
+     *    times the probability.
+     */
+    public double getAbsError() {
+	return this.relError * getValue().doubleValue();
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<ProbEstimate arithmetic=\"");
+	res.append(this.arith);
+	res.append("\" value=\"");
+	res.append(this.exact == null
+		   ? Double.toString(this.arith.toDouble(this.rep))
+		   : this.exact.toString());
+	res.append("\" log=\"");
+	res.append(getLog());
+	res.append("\" relError=\"");
+	res.append(this.relError);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // ProbEstimate
@@ -0,0 +1,118 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Guaranteed lower and upper bounds for the probability of an effect
+ * as computed by
+ * {@link FlatCInstance#getProbBounds(java.util.List, ProbMemo,
+ * BigDecimal, BigDecimal, long)}.
+ * The bounds are exact, i.e. not subject to rounding.
+ *
+ *
+ * Created: Sat Oct 17 20:37:52 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ProbInterval {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The lower bound of the probability.
+     */
+    private final BigDecimal lower;
+
+    /**
+     * The upper bound of the probability.
+     */
+    private final BigDecimal upper;
+
+    /**
+     * The number of sub-problems expanded to obtain these bounds.
+     */
+    private final long expansions;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    ProbInterval(BigDecimal lower, BigDecimal upper, long expansions) {
+	assert lower.compareTo(upper) <= 0;
+	this.lower = lower;
+	this.upper = upper;
+	this.expansions = expansions;
+    } // ProbInterval constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public BigDecimal getLower() {
+	return this.lower;
+    }
+
+    public BigDecimal getUpper() {
+	return this.upper;
+    }
+
+    /**
+     * Returns the width of this interval.
+     *
+     * @return
+     *    the upper bound minus the lower bound.
+     */
+    public BigDecimal getWidth() {
+	return this.upper.subtract(this.lower);
+    }
+
+    /**
+     * Returns whether the bounds coincide,
+     * i.e. whether the probability is known exactly.
+     */
+    public boolean isExact() {
+	return this.lower.compareTo(this.upper) == 0;
+    }
+
+    /**
+     * Returns whether the probability is proved to be less than
+     * <code>threshold</code>.
+     */
+    public boolean isBelow(BigDecimal threshold) {
+	return this.upper.compareTo(threshold) < 0;
+    }
+
+    /**
+     * Returns whether the probability is proved to be at least
+     * <code>threshold</code>.
+     */
+    public boolean isAtLeast(BigDecimal threshold) {
+	return this.lower.compareTo(threshold) >= 0;
+    }
+
+    /**
+     * Returns the number of sub-problems expanded.
+     *
+     * @return
+     *    {@link #expansions}.
+     */
+    public long getExpansions() {
+	return this.expansions;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<ProbInterval lower=\"");
+	res.append(this.lower);
+	res.append("\" upper=\"");
+	res.append(this.upper);
+	res.append("\" expansions=\"");
+	res.append(this.expansions);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // ProbInterval
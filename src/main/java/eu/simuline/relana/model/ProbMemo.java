@@ -0,0 +1,392 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+
+import java.math.BigDecimal;
+
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.WeakHashMap;
+import java.util.Collections;
+import java.util.Stack;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memo table for {@link FlatCInstance#getProb(java.util.List, ProbMemo)}
+ * mapping sub-problems of the Shannon expansion to their probabilities.
+ * A sub-problem is given by the residual formula of the effect under
+ * consideration after inlining all effects given by formulae.
+ * It is identified by a canonical identifier of that formula
+ * which does not depend on the order of the arguments of operations
+ * nor on the order in which the variables have been conditioned on.
+ * A variable is identified by the effect it arises from
+ * (see {@link SInstance#getOrigin()}) and by its remaining type.
+ * The remaining distribution need not be part of the key,
+ * because it is determined by these two.
+ * <p>
+ * A memo table may be shared by the computations for various effects
+ * of the same {@link FlatCInstance}
+ * and by the tasks of a parallel computation, 
+ * see {@link FlatCInstance#getProb(java.util.List, ProbMemo, 
+ * java.util.concurrent.ForkJoinPool, int, int)}. 
+ * Thus it is thread-safe. 
+ *
+ *
+ * Created: Sat Oct 17 14:02:18 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ProbMemo {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Maps the canonical identifiers of residual formulae
+     * to the probability that they evaluate to a non-empty set.
+     */
+    private final Map<Integer, BigDecimal> key2prob;
+
+    /**
+     * Maps each {@link Arithmetic} 
+     * to a map from the canonical identifiers of residual formulae 
+     * to the representation of the probability 
+     * that they evaluate to a non-empty set 
+     * and a bound for its relative error. 
+     */
+    private final Map<Arithmetic, Map<Integer, double[]>> key2approx;
+
+    /**
+     * Maps the canonical identifiers of residual formulae 
+     * to the distributions of their values 
+     * as computed by {@link ModularEvaluator}. 
+     */
+    private final Map<Integer, Map<Set<Deficiency>, BigDecimal>> key2distr;
+
+    /**
+     * Maps the effects variables arise from to numbers
+     * identifying them within the descriptions of nodes.
+     */
+    private final Map<SInstance, Integer> origin2id;
+
+    /**
+     * Maps the evaluators of operations to numbers
+     * identifying them within the descriptions of nodes.
+     */
+    private final Map<Object, Integer> eval2id;
+
+    /**
+     * Maps the descriptions of the nodes of formulae 
+     * as described for {@link #getKey(Formula)} 
+     * to the numbers identifying them. 
+     */
+    private final Map<String, Integer> desc2id;
+
+    /**
+     * Maps compound formulae to their canonical identifiers. 
+     * Since formulae are hash-consed, 
+     * subformulae shared by various formulae are processed once. 
+     */
+    private final Map<Formula, Integer> comp2key;
+
+    /**
+     * The number of successful lookups.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The number of lookups without result.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * The number of sub-problems expanded,
+     * i.e. split by conditioning on a variable.
+     */
+    private final AtomicLong expansions;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public ProbMemo() {
+	this.key2prob  = new ConcurrentHashMap<Integer, BigDecimal>();
+	this.key2approx = 
+	    new EnumMap<Arithmetic, Map<Integer, double[]>>(Arithmetic.class);
+	for (Arithmetic arith : Arithmetic.values()) {
+	    this.key2approx.put(arith, 
+				new ConcurrentHashMap<Integer, double[]>());
+	}
+	this.key2distr  = 
+	    new ConcurrentHashMap<Integer, Map<Set<Deficiency>, BigDecimal>>();
+	this.origin2id = new HashMap<SInstance, Integer>();
+	this.eval2id   = new HashMap<Object, Integer>();
+	this.desc2id   = new HashMap<String, Integer>();
+	this.comp2key  = Collections.synchronizedMap
+	    (new WeakHashMap<Formula, Integer>());
+	this.hits   = new AtomicLong();
+	this.expansions = new AtomicLong();
+	this.misses = new AtomicLong();
+    } // ProbMemo constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the canonical identifier of <code>form</code>.
+     * Each node of <code>form</code> is identified by a number 
+     * determined by a short description: 
+     * a constant by its value, a variable by its origin and its type 
+     * and a compound formula by its operation 
+     * and the set of identifiers of its arguments. 
+     * Since the descriptions refer to the identifiers of the arguments 
+     * rather than to their descriptions, 
+     * their lengths do not depend on the size of the arguments, 
+     * so the effort is linear in the number of distinct subformulae 
+     * even if these are shared by many paths. 
+     * The formula is traversed without recursion. 
+     *
+     * @param form
+     *    a formula all variables of which have probability distributions.
+     * @return
+     *    a number which coincides for formulae
+     *    which differ only in the order of arguments
+     *    and the identity of variables arising from the same effect
+     *    with the same type.
+     */
+    Integer getKey(Formula form) {
+	Integer res = getKnownKey(form);
+	if (res != null) {
+	    return res;
+	}
+	Stack<Formula> stack = new Stack<Formula>();
+	stack.push(form);
+	// the identifiers of the arguments of the compound formula on top 
+	SortedSet<Integer> argIds = new TreeSet<Integer>();
+	while (!stack.empty()) {
+	    Formula.Comp comp = (Formula.Comp) stack.peek();
+	    if (this.comp2key.containsKey(comp)) {
+		// shared subformula pushed more than once 
+		stack.pop();
+		continue;
+	    }
+	    argIds.clear();
+	    boolean complete = true;
+	    for (Formula arg : comp.getArgs()) {
+		Integer argId = getKnownKey(arg);
+		if (argId == null) {
+		    stack.push(arg);
+		    complete = false;
+		} else {
+		    argIds.add(argId);
+		}
+	    }
+	    if (!complete) {
+		continue;
+	    }
+	    // Note that the operations with more than one argument
+	    // are idempotent: thus equal arguments may be omitted.
+	    StringBuilder desc = new StringBuilder();
+	    desc.append('#');
+	    desc.append(getId(this.eval2id, comp.getEval()));
+	    desc.append(argIds);
+	    this.comp2key.put(comp, getId(this.desc2id, desc.toString()));
+	    stack.pop();
+	}
+	return this.comp2key.get(form);
+    }
+
+    /**
+     * Returns the canonical identifier of <code>form</code> 
+     * if it is a constant, a variable 
+     * or a compound formula processed before 
+     * and <code>null</code> otherwise. 
+     */
+    private Integer getKnownKey(Formula form) {
+	Set<Deficiency> val = form.getConst();
+	if (val != null) {
+	    return getId(this.desc2id, getDefs(val));
+	}
+	if (form instanceof Formula.Var) {
+	    SInstance serv = ((Formula.Var) form).getVar();
+	    return getId(this.desc2id, 
+			 "$" + getId(this.origin2id, serv.getOrigin()) + 
+			 getDefs(serv.getType().asSet()));
+	}
+	return this.comp2key.get(form);
+    }
+
+    private static String getDefs(Set<Deficiency> defs) {
+	SortedSet<String> names = new TreeSet<String>();
+	for (Deficiency def : defs) {
+	    names.add(def.getName());
+	}
+	return names.toString();
+    }
+
+    private static <T> int getId(Map<T, Integer> obj2id, T obj) {
+	synchronized (obj2id) {
+	    Integer res = obj2id.get(obj);
+	    if (res == null) {
+		res = obj2id.size();
+		obj2id.put(obj, res);
+	    }
+	    return res;
+	}
+    }
+
+    /**
+     * Returns the probability stored for the given key
+     * and counts hits and misses.
+     *
+     * @param key
+     *    a canonical identifier as returned by {@link #getKey(Formula)}.
+     * @return
+     *    the probability stored for <code>key</code>
+     *    or <code>null</code> if there is none.
+     */
+    BigDecimal get(Integer key) {
+	BigDecimal res = this.key2prob.get(key);
+	if (res == null) {
+	    this.misses.incrementAndGet();
+	} else {
+	    this.hits.incrementAndGet();
+	}
+	return res;
+    }
+
+    void put(Integer key, BigDecimal prob) {
+	this.key2prob.put(key, prob);
+    }
+
+    /**
+     * Returns the approximation stored for the given key 
+     * and arithmetic and counts hits and misses. 
+     *
+     * @param arith 
+     *    an arithmetic based on <code>double</code>s. 
+     * @param key
+     *    a canonical identifier as returned by {@link #getKey(Formula)}.
+     * @return
+     *    the representation of the probability 
+     *    and a bound for its relative error 
+     *    or <code>null</code> if there is none.
+     */
+    double[] get(Arithmetic arith, Integer key) {
+	double[] res = this.key2approx.get(arith).get(key);
+	if (res == null) {
+	    this.misses.incrementAndGet();
+	} else {
+	    this.hits.incrementAndGet();
+	}
+	return res;
+    }
+
+    void put(Arithmetic arith, Integer key, double[] approx) {
+	this.key2approx.get(arith).put(key, approx);
+    }
+
+    /**
+     * Returns the distribution stored for the given key 
+     * and counts hits and misses. 
+     *
+     * @param key
+     *    a canonical identifier as returned by {@link #getKey(Formula)}.
+     * @return
+     *    a map from the values of the residual formula 
+     *    to their probabilities which shall not be modified 
+     *    or <code>null</code> if there is none.
+     */
+    Map<Set<Deficiency>, BigDecimal> getDistr(Integer key) {
+	Map<Set<Deficiency>, BigDecimal> res = this.key2distr.get(key);
+	if (res == null) {
+	    this.misses.incrementAndGet();
+	} else {
+	    this.hits.incrementAndGet();
+	}
+	return res;
+    }
+
+    void putDistr(Integer key, Map<Set<Deficiency>, BigDecimal> distr) {
+	this.key2distr.put(key, distr);
+    }
+
+    /**
+     * Returns the number of sub-problems found in this table.
+     *
+     * @return
+     *    {@link #hits}.
+     */
+    public long getHits() {
+	return this.hits.get();
+    }
+
+    /**
+     * Returns the number of sub-problems not found in this table
+     * which have been solved hence.
+     *
+     * @return
+     *    {@link #misses}.
+     */
+    public long getMisses() {
+	return this.misses.get();
+    }
+
+    void countExpansion() {
+	this.expansions.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of sub-problems expanded
+     * using this table.
+     * For a single effect this coincides with the misses
+     * but for several effects evaluated at once
+     * one expansion may serve several effects.
+     *
+     * @return
+     *    {@link #expansions}.
+     */
+    public long getExpansions() {
+	return this.expansions.get();
+    }
+
+    /**
+     * Returns the number of distinct sub-problems stored.
+     *
+     * @return
+     *    the number of entries 
+     *    of {@link #key2prob}, {@link #key2approx} 
+     *    and of {@link #key2distr}.
+     */
+    public int size() {
+	int res = this.key2prob.size() + this.key2distr.size();
+	for (Map<Integer, double[]> key2app : this.key2approx.values()) {
+	    res += key2app.size();
+	}
+	return res;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<ProbMemo hits=\"");
+	res.append(getHits());
+	res.append("\" misses=\"");
+	res.append(getMisses());
+	res.append("\" expansions=\"");
+	res.append(getExpansions());
+	res.append("\" size=\"");
+	res.append(size());
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // ProbMemo
@@ -184,27 +184,27 @@ public final class SClass {
     private Type createType() {
 	if (getSuperClass() == null) {
 	    // Here, the class is the Boolean one. 
-	    return new Type(Type.BOOLEAN);
+	    return Type.BOOLEAN;
 	}
 	// For inner classes, 
 	// the superclass is Boolean but UNDET is replaced implicitly 
 	// otherwise we have to start with a copy 
 	// of the type of the superclass. 
-	Type result = isInner() 
-	    ? new Type() 
-	    : new Type(getSuperClass().getType());
+	Map<Deficiency, DeficiencyNode> result = isInner() 
+	    ? new HashMap<Deficiency, DeficiencyNode>() 
+	    : getSuperClass().getType().copy();
 	// Here, we replace the properties overwritten by inner classes. 
 	SClass innerCls;
-	Type innerType;
+	Map<Deficiency, DeficiencyNode> innerType;
 	Set<Deficiency> inter;
 	for (Map.Entry<Deficiency, SClass> entry 
 		 : getDeclaredInnerClasses().entrySet()) {
 	    innerCls = entry.getValue();
 
 	    // namespace check 
-	    innerType = new Type(innerCls.getType());
-	    inter = new HashSet<Deficiency>(result.asSet());
-	    inter.retainAll(innerType.asSet());
+	    innerType = innerCls.getType().copy();
+	    inter = new HashSet<Deficiency>(result.keySet());
+	    inter.retainAll(innerType.keySet());
 	    if (!inter.isEmpty()) {
 		throw new IllegalArgumentException
 		    ("Found duplicate property \"" + inter + 
@@ -213,15 +213,89 @@ public final class SClass {
 		// **** should be fixed by introducing separate namespaces 
 		// for each SClass. 
 	    }
-	    result.replace(entry.getKey(),
-			   innerCls.getMinDefic(),
-			   innerCls.getMaxDefic(),
-			   innerType);
+	    replace(result,
+		    entry.getKey(),
+		    innerCls.getMinDefic(),
+		    innerCls.getMaxDefic(),
+		    innerType);
 	} // for all inner classes 
 
 	// add the relations explicitly added in the relations section. 
-	result.addAll(getDeclaredDeficiency2ordering());
-	return result;
+	addAll(result, getDeclaredDeficiency2ordering());
+	return Type.create(result);
+    }
+
+    /**
+     * Replaces the node of <code>oldDef</code> in <code>def2ord</code> 
+     * by the nodes of <code>innerDef2ord</code>: 
+     * the deficiencies above <code>oldDef</code> 
+     * are above <code>newDefMax</code> 
+     * and those below <code>oldDef</code> 
+     * are below <code>newDefMin</code>. 
+     */
+    private static void replace(Map<Deficiency, DeficiencyNode> def2ord,
+				Deficiency oldDef, 
+				Deficiency newDefMin,
+				Deficiency newDefMax,
+				Map<Deficiency, DeficiencyNode> innerDef2ord) {
+	DeficiencyNode nodeMin = innerDef2ord.get(newDefMin);
+	DeficiencyNode nodeMax = innerDef2ord.get(newDefMax);
+	
+	boolean assertn = true;
+	assertn &= nodeMin.getSuccessors  ().isEmpty();
+	assertn &= nodeMax.getPredecessors().isEmpty();
+
+	DeficiencyNode node = def2ord.remove(oldDef);
+	for (DeficiencyNode pred : node.getPredecessors()) {
+	    assertn &= pred.getSuccessors().remove(node);
+	    assertn &= pred.getSuccessors().add(nodeMax);
+	}
+	nodeMax.addPredecessors(node.getPredecessors());
+
+	for (DeficiencyNode pred : node.getSuccessors()) {
+	    assertn &= pred.getPredecessors().remove(node);
+	    assertn &= pred.getPredecessors().add(nodeMin);
+	}
+	nodeMin.addSuccessors(node.getSuccessors());
+
+	assert assertn;
+	def2ord.putAll(innerDef2ord);
+    }
+
+    /**
+     * Adds the relations given by <code>added</code> 
+     * to <code>def2ord</code> linking the nodes of <code>def2ord</code>. 
+     */
+    private static void addAll(Map<Deficiency, DeficiencyNode> def2ord,
+			       Map<Deficiency, DeficiencyNode> added) {
+	for (Map.Entry<Deficiency, DeficiencyNode> entry : added.entrySet()) {
+	    DeficiencyNode node = getNode(def2ord, entry.getKey());
+	    for (DeficiencyNode succ : entry.getValue().getSuccessors()) {
+		DeficiencyNode succNode = getNode(def2ord, succ.getDeficiency());
+		node    .addSuccessor  (succNode);
+		succNode.addPredecessor(node);
+	    }
+	    for (DeficiencyNode pred : entry.getValue().getPredecessors()) {
+		DeficiencyNode predNode = getNode(def2ord, pred.getDeficiency());
+		node    .addPredecessor(predNode);
+		predNode.addSuccessor  (node);
+	    }
+	}
+    }
+
+    /**
+     * Returns the node of <code>def</code> in <code>def2ord</code> 
+     * adding a new one if there is none. 
+     */
+    private static DeficiencyNode getNode(Map<Deficiency, DeficiencyNode> 
+					  def2ord,
+					  Deficiency def) {
+	DeficiencyNode node = def2ord.get(def);
+	if (node == null) {
+	    node = new DeficiencyNode(def);
+	    def2ord.put(def, node);
+	}
+	return node;
     }
 
     // is null exactly for {@link #BOOL_S_CLASS}. 
@@ -31,6 +31,14 @@ public final class SInstance {
 
     private final String name; // for debugging 
 
+    /**
+     * The effect this one arises from by copying and by conditioning 
+     * via {@link #add} and {@link #remove}. 
+     * For an effect created by {@link #SInstance(Type, ProbDistr, String)} 
+     * this is the effect itself. 
+     */
+    private final SInstance origin;
+
     String getName() {
 	return this.name;
     }
@@ -44,10 +52,19 @@ public final class SInstance {
 	this.type = type;
 	this.distr = distr;
 	this.name = name;
+	this.origin = this;
 	assert !type.equals(Type.getEmpty());
 	
     }
 
+    private SInstance(Type type, ProbDistr distr, SInstance other) {
+	this.type = type;
+	this.distr = distr;
+	this.name = other.name;
+	this.origin = other.origin;
+	assert !type.equals(Type.getEmpty());
+    }
+
     public void setFormula(Formula form) {
 	this.form = form;
     }
@@ -57,6 +74,7 @@ public final class SInstance {
 	this.distr = other.distr;
 	this.form  = other.form;
 	this.name = other.name;
+	this.origin = other.origin;
     } // SInstance constructor
 
     /* -------------------------------------------------------------------- *
@@ -75,6 +93,16 @@ public final class SInstance {
 	return this.form;
     }
 
+    /**
+     * Returns the effect this one arises from. 
+     *
+     * @return 
+     *    {@link #origin}. 
+     */
+    SInstance getOrigin() {
+	return this.origin;
+    }
+
     public Set<Deficiency> getMin() {
 	return getType().getMin();
     }
@@ -111,7 +139,7 @@ public final class SInstance {
 	
 	return new SInstance(newType,
 			     this.distr.add(def),
-			     this.name);
+			     this);
     }
 
     /**
@@ -133,7 +161,7 @@ public final class SInstance {
 	}
 	return new SInstance(getType() .remove(def),
 			     this.distr == null ? null : this.distr.remove(def),
-			     this.name);
+			     this);
 
     }
 
@@ -0,0 +1,227 @@
+package eu.simuline.relana.model;
+
+/**
+ * An estimate of the probability of an effect obtained by sampling
+ * with {@link MonteCarlo}
+ * together with its standard error and a confidence interval
+ * based on the normal approximation
+ * or on Student's t-distribution if the standard error
+ * is estimated from few replicates.
+ *
+ * Created: Sat Oct 17 18:26:55 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class SampleEstimate {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    // coefficients of the rational approximations of Acklam
+    // of the quantile function of the standard normal distribution.
+    private static final double[] QA = {
+	-3.969683028665376e+01,  2.209460984245205e+02,
+	-2.759285104469687e+02,  1.383577518672690e+02,
+	-3.066479806614716e+01,  2.506628277459239e+00
+    };
+    private static final double[] QB = {
+	-5.447609879822406e+01,  1.615858368580409e+02,
+	-1.556989798598866e+02,  6.680131188771972e+01,
+	-1.328068155288572e+01
+    };
+    private static final double[] QC = {
+	-7.784894002430293e-03, -3.223964580411365e-01,
+	-2.400758277161838e+00, -2.549732539343734e+00,
+	 4.374664141464968e+00,  2.938163982698783e+00
+    };
+    private static final double[] QD = {
+	 7.784695709041462e-03,  3.224671290700398e-01,
+	 2.445134137142996e+00,  3.754408661907416e+00
+    };
+    private static final double Q_LOW = 0.02425;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The estimated probability.
+     */
+    private final double value;
+
+    /**
+     * The standard error of {@link #value}.
+     */
+    private final double stdError;
+
+    /**
+     * The number of samples {@link #value} is based on.
+     */
+    private final long samples;
+
+    /**
+     * The confidence level of the interval.
+     */
+    private final double confidence;
+
+    /**
+     * The factor of {@link #stdError}
+     * giving the half width of the confidence interval:
+     * a quantile corresponding with {@link #confidence}.
+     */
+    private final double quantile;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    SampleEstimate(double value,
+		   double stdError,
+		   long samples,
+		   double confidence,
+		   double quantile) {
+	this.value = value;
+	this.stdError = stdError;
+	this.samples = samples;
+	this.confidence = confidence;
+	this.quantile = quantile;
+    } // SampleEstimate constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the quantile of the standard normal distribution
+     * such that the symmetric interval around <code>0</code>
+     * has probability <code>confidence</code>.
+     * This uses the approximation of Acklam
+     * with relative error below <code>1.2e-9</code>.
+     *
+     * @param confidence
+     *    a probability in <code>(0, 1)</code>.
+     * @return
+     *    the <code>(1+confidence)/2</code>-quantile.
+     * @throws IllegalArgumentException
+     *    if <code>confidence</code> is not in <code>(0, 1)</code>.
+     */
+    static double normalQuantile(double confidence) {
+	if (!(confidence > 0 && confidence < 1)) {
+	    throw new IllegalArgumentException
+		("Expected confidence level in (0, 1) but found " +
+		 confidence + ". ");
+	}
+	double prob = (1 + confidence) / 2;
+	if (prob > 1 - Q_LOW) {
+	    // upper tail
+	    double q = Math.sqrt(-2 * Math.log(1 - prob));
+	    return -(((((QC[0] * q + QC[1]) * q + QC[2]) * q + QC[3]) * q
+		      + QC[4]) * q + QC[5])
+		/ ((((QD[0] * q + QD[1]) * q + QD[2]) * q + QD[3]) * q + 1);
+	}
+	// central region: prob is at least 1/2
+	double q = prob - 0.5;
+	double r = q * q;
+	return (((((QA[0] * r + QA[1]) * r + QA[2]) * r + QA[3]) * r
+		 + QA[4]) * r + QA[5]) * q
+	    / (((((QB[0] * r + QB[1]) * r + QB[2]) * r + QB[3]) * r
+		+ QB[4]) * r + 1);
+    }
+
+    /**
+     * Returns the estimated probability.
+     *
+     * @return
+     *    {@link #value}.
+     */
+    public double getValue() {
+	return this.value;
+    }
+
+    /**
+     * Returns the standard error of the estimate.
+     *
+     * @return
+     *    {@link #stdError}.
+     */
+    public double getStdError() {
+	return this.stdError;
+    }
+
+    /**
+     * Returns the variance of the estimate.
+     *
+     * @return
+     *    the square of {@link #stdError}.
+     */
+    public double getVariance() {
+	return this.stdError * this.stdError;
+    }
+
+    /**
+     * Returns the number of samples the estimate is based on.
+     *
+     * @return
+     *    {@link #samples}.
+     */
+    public long getSamples() {
+	return this.samples;
+    }
+
+    public double getConfidence() {
+	return this.confidence;
+    }
+
+    /**
+     * Returns the half width of the confidence interval.
+     *
+     * @return
+     *    the standard error times the quantile of the confidence level.
+     */
+    public double getHalfWidth() {
+	return this.quantile * this.stdError;
+    }
+
+    public double getLower() {
+	return Math.max(0, this.value - getHalfWidth());
+    }
+
+    public double getUpper() {
+	return Math.min(1, this.value + getHalfWidth());
+    }
+
+    /**
+     * Returns the half width of the confidence interval
+     * relative to the estimate.
+     *
+     * @return
+     *    the half width divided by the estimate;
+     *    infinity if the estimate vanishes.
+     */
+    public double getRelError() {
+	return this.value == 0
+	    ? Double.POSITIVE_INFINITY
+	    : getHalfWidth() / this.value;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<SampleEstimate value=\"");
+	res.append(this.value);
+	res.append("\" interval=\"[");
+	res.append(getLower());
+	res.append(", ");
+	res.append(getUpper());
+	res.append("]\" confidence=\"");
+	res.append(this.confidence);
+	res.append("\" stdError=\"");
+	res.append(this.stdError);
+	res.append("\" samples=\"");
+	res.append(this.samples);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // SampleEstimate
@@ -0,0 +1,132 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Collections;
+
+/**
+ * A named assignment of probabilities to deficiencies of effects
+ * overriding those given by their {@link ProbDistr}s,
+ * as specified by a <code>Scenario</code> block in a project file
+ * and evaluated by {@link ScenarioEvaluator}.
+ * The deficiencies not overridden keep their probabilities.
+ *
+ *
+ * Created: Sun Oct 18 00:17:45 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class Scenario {
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The name of this scenario.
+     */
+    private final String name;
+
+    /**
+     * Maps the locators of effects with distribution
+     * to maps from the names of their deficiencies
+     * to the probabilities overriding those of the distribution.
+     */
+    private final Map<InstanceLocator, Map<String, BigDecimal>> overrides;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public Scenario(String name) {
+	this.name = name;
+	this.overrides =
+	    new LinkedHashMap<InstanceLocator, Map<String, BigDecimal>>();
+    } // Scenario constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    public String getName() {
+	return this.name;
+    }
+
+    /**
+     * Overrides the probability of the deficiency named
+     * <code>defName</code> of the effect given by <code>loc</code>.
+     * Whether the effect and the deficiency exist
+     * is checked upon evaluation only.
+     *
+     * @param loc
+     *    locates an effect with probability distribution.
+     * @param defName
+     *    the name of a deficiency of the type of that effect.
+     * @param prob
+     *    the probability of that deficiency.
+     * @throws IllegalArgumentException
+     *    if <code>prob</code> is not in <code>(0, 1)</code>
+     *    or if this deficiency is already overridden.
+     */
+    public void addOverride(InstanceLocator loc,
+			    String defName,
+			    BigDecimal prob) {
+	if (prob.compareTo(BigDecimal.ONE ) >= 0 ||
+	    prob.compareTo(BigDecimal.ZERO) <= 0) {
+	    throw new IllegalArgumentException
+		("Expected probability in (0, 1) but found " + prob + ". ");
+	}
+	Map<String, BigDecimal> def2prob = this.overrides.get(loc);
+	if (def2prob == null) {
+	    def2prob = new LinkedHashMap<String, BigDecimal>();
+	    this.overrides.put(loc, def2prob);
+	}
+	if (def2prob.put(defName, prob) != null) {
+	    throw new IllegalArgumentException
+		("Found second probability for deficiency \"" + defName +
+		 "\" of effect " + loc + " in scenario \"" + this.name +
+		 "\". ");
+	}
+    }
+
+    /**
+     * Returns the probabilities overridden.
+     *
+     * @return
+     *    an unmodifiable view of {@link #overrides}.
+     */
+    public Map<InstanceLocator, Map<String, BigDecimal>> getOverrides() {
+	return Collections.unmodifiableMap(this.overrides);
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("\n<Scenario name=\"");
+	res.append(this.name);
+	res.append("\">");
+	for (Map.Entry<InstanceLocator, Map<String, BigDecimal>> entry
+		 : this.overrides.entrySet()) {
+	    for (Map.Entry<String, BigDecimal> defEntry
+		     : entry.getValue().entrySet()) {
+		res.append("\n<Prob effect=\"");
+		String sep = "";
+		for (String name : entry.getKey().getPath()) {
+		    res.append(sep);
+		    res.append(name);
+		    sep = ".";
+		}
+		res.append("\" deficiency=\"");
+		res.append(defEntry.getKey());
+		res.append("\" value=\"");
+		res.append(defEntry.getValue());
+		res.append("\"/>");
+	    }
+	}
+	res.append("\n</Scenario>\n");
+	return res.toString();
+    }
+
+} // Scenario
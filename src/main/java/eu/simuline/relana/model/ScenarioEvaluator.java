@@ -0,0 +1,210 @@
+package eu.simuline.relana.model;
+
+import java.math.BigDecimal;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates the output effects of a {@link FlatCInstance}
+ * under various {@link Scenario}s.
+ * The formulae of the outputs are compiled into a {@link BddEvaluator}
+ * once when creating the evaluator;
+ * a scenario only changes the probabilities of its variables
+ * and so requires a single pass over the diagram.
+ * Since this pass does not modify the diagram,
+ * scenarios may be evaluated concurrently.
+ *
+ *
+ * Created: Sun Oct 18 00:36:08 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class ScenarioEvaluator {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Receives the results of the scenarios
+     * in the order in which they are completed.
+     */
+    public interface Listener {
+
+	/**
+	 * Notifies that <code>scenario</code> has been evaluated.
+	 * This is invoked by the thread
+	 * which invoked {@link ScenarioEvaluator#evaluate(List,
+	 * ExecutorService, Listener)}.
+	 *
+	 * @param scenario
+	 *    the scenario evaluated.
+	 * @param probs
+	 *    a map from the paths of the outputs
+	 *    to their probabilities under <code>scenario</code>.
+	 */
+	void evaluated(Scenario scenario, Map<List<String>, BigDecimal> probs);
+    } // interface Listener
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The evaluator holding the diagrams of the outputs.
+     * After construction, it is not modified any more.
+     */
+    private final BddEvaluator evaluator;
+
+    /**
+     * Maps the paths of the outputs to the roots of their diagrams.
+     */
+    private final Map<List<String>, Integer> path2root;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates an evaluator for the effects of <code>flatCInst</code>
+     * specified by <code>sPaths</code>.
+     *
+     * @param flatCInst
+     *    the instance the effects of which are to be evaluated.
+     * @param sPaths
+     *    identifies the outputs.
+     */
+    public ScenarioEvaluator(FlatCInstance flatCInst,
+			     Collection<List<String>> sPaths) {
+	this.evaluator = new BddEvaluator(flatCInst);
+	this.path2root = new TreeMap<List<String>, Integer>
+	    (FlatCInstance.PATH_CMP);
+	for (List<String> sPath : sPaths) {
+	    this.path2root.put(sPath, this.evaluator.getRoot(sPath));
+	}
+    } // ScenarioEvaluator constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the probabilities of the outputs under <code>scenario</code>.
+     * This may be invoked concurrently.
+     *
+     * @param scenario
+     *    a scenario for the underlying instance.
+     * @return
+     *    a map from the paths of the outputs
+     *    to their probabilities under <code>scenario</code>.
+     * @throws IllegalArgumentException
+     *    if <code>scenario</code> does not fit the underlying instance.
+     */
+    public Map<List<String>, BigDecimal> evaluate(Scenario scenario) {
+	return evaluate(this.evaluator.getProbs(scenario));
+    }
+
+    private Map<List<String>, BigDecimal> evaluate(BigDecimal[] probs) {
+	// the outputs share one table of node probabilities
+	int[] roots = new int[this.path2root.size()];
+	int ind = 0;
+	for (Integer root : this.path2root.values()) {
+	    roots[ind++] = root;
+	}
+	BigDecimal[] rootProbs = this.evaluator.getBdd().getProbs(roots, probs);
+
+	Map<List<String>, BigDecimal> res = new TreeMap<List<String>,
+	    BigDecimal>(FlatCInstance.PATH_CMP);
+	ind = 0;
+	for (List<String> sPath : this.path2root.keySet()) {
+	    res.put(sPath, rootProbs[ind++]);
+	}
+	return res;
+    }
+
+    /**
+     * Evaluates the outputs under all <code>scenarios</code>
+     * on <code>executor</code>
+     * passing the result of each scenario to <code>listener</code>
+     * as soon as it is completed.
+     * All scenarios are checked before any is evaluated.
+     *
+     * @param scenarios
+     *    scenarios for the underlying instance.
+     * @param executor
+     *    the executor to evaluate the scenarios on.
+     * @param listener
+     *    receives the results.
+     * @throws IllegalArgumentException
+     *    if one of the <code>scenarios</code>
+     *    does not fit the underlying instance.
+     * @throws InterruptedException
+     *    if interrupted while waiting for a result.
+     *    Then the scenarios not yet evaluated are cancelled.
+     */
+    public void evaluate(List<Scenario> scenarios,
+			 ExecutorService executor,
+			 Listener listener) throws InterruptedException {
+	List<BigDecimal[]> probsList = new ArrayList<BigDecimal[]>();
+	for (Scenario scenario : scenarios) {
+	    probsList.add(this.evaluator.getProbs(scenario));
+	}
+
+	CompletionService<Map<List<String>, BigDecimal>> service =
+	    new ExecutorCompletionService<Map<List<String>, BigDecimal>>
+	    (executor);
+	Map<Future<Map<List<String>, BigDecimal>>, Scenario> future2scen =
+	    new HashMap<Future<Map<List<String>, BigDecimal>>,
+	    Scenario>();
+	for (int i = 0; i < scenarios.size(); i++) {
+	    final BigDecimal[] probs = probsList.get(i);
+	    future2scen.put(service.submit
+			    (new Callable<Map<List<String>, BigDecimal>>() {
+				public Map<List<String>, BigDecimal> call() {
+				    return evaluate(probs);
+				}
+			    }), scenarios.get(i));
+	}
+
+	try {
+	    for (int i = 0; i < scenarios.size(); i++) {
+		Future<Map<List<String>, BigDecimal>> future = service.take();
+		try {
+		    listener.evaluated(future2scen.get(future), future.get());
+		} catch (ExecutionException e) {
+		    throw new IllegalStateException// NOPMD
+			("Evaluation of scenario \"" +
+			 future2scen.get(future).getName() + "\" failed. ",
+			 e.getCause());
+		}
+	    }
+	} finally {
+	    for (Future<Map<List<String>, BigDecimal>> future
+		     : future2scen.keySet()) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<ScenarioEvaluator outputs=\"");
+	res.append(this.path2root.keySet());
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // ScenarioEvaluator
@@ -0,0 +1,216 @@
+package eu.simuline.relana.model;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * A Sobol sequence of points in the unit cube
+ * randomized by a digital shift.
+ * The direction numbers are derived from the primitive polynomials
+ * over the field with two elements, ordered by degree,
+ * with initial direction numbers chosen pseudo-randomly
+ * but fixed once and for all.
+ * Coordinates beyond {@link #MAX_DIM} are padded
+ * with pseudo-random numbers.
+ * <p>
+ * Independent shifts yield independent replicates of the sequence
+ * which allow to estimate the error of quasi-Monte Carlo integration.
+ *
+ *
+ * Created: Sat Oct 17 17:31:09 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+final class SobolSequence implements MonteCarlo.PointSource {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of bits of the coordinates.
+     */
+    private static final int BITS = 32;
+
+    /**
+     * The maximal degree of the primitive polynomials used.
+     * This bounds the effort to find them.
+     */
+    private static final int MAX_DEGREE = 13;
+
+    /**
+     * The number of coordinates given by the Sobol sequence:
+     * one plus the number of primitive polynomials
+     * of degree at most {@link #MAX_DEGREE}.
+     */
+    static final int MAX_DIM;
+
+    /**
+     * The seed determining the initial direction numbers.
+     */
+    private static final long DIRECTION_SEED = 0x50B01L;
+
+    /**
+     * The direction numbers of the dimensions up to {@link #MAX_DIM}:
+     * The <code>i</code>th number of dimension <code>j</code>
+     * is at <code>DIRECTIONS[j][i]</code>.
+     */
+    private static final int[][] DIRECTIONS;
+
+    static {
+	List<int[]> dirs = new ArrayList<int[]>();
+	int[] dir = new int[BITS];
+	// the first dimension is the van der Corput sequence
+	for (int i = 0; i < BITS; i++) {
+	    dir[i] = 1 << (BITS - 1 - i);
+	}
+	dirs.add(dir);
+
+	SplittableRandom rnd = new SplittableRandom(DIRECTION_SEED);
+	for (int deg = 1; deg <= MAX_DEGREE; deg++) {
+	    // poly has bit deg and bit 0 set; the bits between vary
+	    for (int mid = 0; mid < 1 << (deg - 1); mid++) {
+		int poly = (1 << deg) | (mid << 1) | 1;
+		if (isPrimitive(poly, deg)) {
+		    dirs.add(directions(poly, deg, rnd));
+		}
+	    }
+	}
+	DIRECTIONS = dirs.toArray(new int[dirs.size()][]);
+	MAX_DIM = DIRECTIONS.length;
+    }
+
+    /**
+     * The factor converting a coordinate into a <code>double</code>.
+     */
+    private static final double SCALE = 1.0 / (1L << BITS);
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of coordinates of the points.
+     */
+    private final int dim;
+
+    /**
+     * The digital shift: the coordinates are xored with this.
+     */
+    private final int[] shift;
+
+    /**
+     * The coordinates of the current point before shifting.
+     */
+    private final int[] coords;
+
+    /**
+     * The stream padding the coordinates beyond {@link #MAX_DIM}.
+     */
+    private final SplittableRandom rnd;
+
+    /**
+     * The index of the point returned next.
+     */
+    private long index;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Creates a Sobol sequence with the given dimension
+     * shifted by pseudo-random numbers from <code>rnd</code>.
+     * This sequence uses <code>rnd</code> also for padding.
+     */
+    SobolSequence(int dim, SplittableRandom rnd) {
+	this.dim = dim;
+	this.shift  = new int[Math.min(dim, MAX_DIM)];
+	this.coords = new int[this.shift.length];
+	for (int j = 0; j < this.shift.length; j++) {
+	    this.shift[j] = rnd.nextInt();
+	}
+	this.rnd = rnd;
+	this.index = 0;
+    } // SobolSequence constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns whether the polynomial over the field with two elements
+     * given by the bits of <code>poly</code> is primitive,
+     * i.e. whether <code>x</code> has order <code>2^deg-1</code>
+     * modulo <code>poly</code>.
+     */
+    private static boolean isPrimitive(int poly, int deg) {
+	int period = (1 << deg) - 1;
+	int pow = 1;
+	for (int k = 1; k <= period; k++) {
+	    pow <<= 1;
+	    if ((pow & (1 << deg)) != 0) {
+		pow ^= poly;
+	    }
+	    if (pow == 1) {
+		return k == period;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the direction numbers for the primitive polynomial
+     * <code>poly</code> of degree <code>deg</code>
+     * with initial direction numbers from <code>rnd</code>.
+     */
+    private static int[] directions(int poly,
+				    int deg,
+				    SplittableRandom rnd) {
+	int[] res = new int[BITS];
+	// initial numbers m_i: odd and less than 2^(i+1)
+	for (int i = 0; i < deg; i++) {
+	    int mInit = rnd.nextInt(1 << i) * 2 + 1;
+	    res[i] = mInit << (BITS - 1 - i);
+	}
+	// recurrence of Bratley and Fox
+	for (int i = deg; i < BITS; i++) {
+	    res[i] = res[i - deg] ^ (res[i - deg] >>> deg);
+	    for (int k = 1; k < deg; k++) {
+		if (((poly >>> (deg - k)) & 1) != 0) {
+		    res[i] ^= res[i - k];
+		}
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Writes the next point of this sequence into <code>point</code>
+     * and advances by the Gray code construction of Antonov and Saleev.
+     */
+    public void next(double[] point) {
+	for (int j = 0; j < this.coords.length; j++) {
+	    point[j] = ((this.coords[j] ^ this.shift[j]) & 0xFFFFFFFFL)
+		* SCALE;
+	}
+	for (int j = this.coords.length; j < this.dim; j++) {
+	    point[j] = this.rnd.nextDouble();
+	}
+
+	// index of the lowest zero bit of the current index
+	int bit = Long.numberOfTrailingZeros(~this.index);
+	if (bit >= BITS) {
+	    throw new IllegalStateException
+		("Sobol sequence exhausted after " + this.index +
+		 " points. ");
+	}
+	for (int j = 0; j < this.coords.length; j++) {
+	    this.coords[j] ^= DIRECTIONS[j][bit];
+	}
+	this.index++;
+    }
+
+} // SobolSequence
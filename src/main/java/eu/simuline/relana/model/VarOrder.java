@@ -0,0 +1,169 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Enumerates the strategies to choose the variable
+ * a {@link FlatCInstance} conditions on next
+ * when computing the probability of an effect.
+ * The probability does not depend on the strategy,
+ * but the number of sub-problems expanded does.
+ * Static strategies rank the variables once
+ * when the {@link FlatCInstance} is created,
+ * whereas dynamic strategies score the variables
+ * of the residual formula in each step
+ * and resort to the ranks only to break ties.
+ * Either way the choice is deterministic.
+ *
+ *
+ * Created: Sat Oct 17 21:14:38 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public enum VarOrder {
+
+    /**
+     * Conditions on the variable arising from the effect
+     * the path of which is least with respect to
+     * {@link FlatCInstance#PATH_CMP}.
+     * This is the depth first order of the component hierarchy
+     * and tends to keep variables of the same component together.
+     */
+    Component {
+	Map<SInstance, Integer> getRanks(FlatCInstance cInst,
+					 List<List<String>> paths) {
+	    Map<SInstance, Integer> res = new HashMap<SInstance, Integer>();
+	    for (List<String> path : paths) {
+		res.put(cInst.getEffect(path).getOrigin(), res.size());
+	    }
+	    return res;
+	}
+    },
+    /**
+     * Conditions on the variable arising from the effect
+     * most other effects depend on, directly or indirectly,
+     * i.e. with maximal fan-out in the effect dependency graph.
+     * Ties are broken as for {@link #Component}.
+     */
+    FanOut {
+	Map<SInstance, Integer> getRanks(final FlatCInstance cInst,
+					 List<List<String>> paths) {
+	    final Map<SInstance, Integer> fanOut =
+		new HashMap<SInstance, Integer>();
+	    for (List<String> path : paths) {
+		SInstance serv = cInst.getEffect(path);
+		if (serv.getFormula() == null) {
+		    continue;
+		}
+		for (SInstance var : cInst.inline(serv).getVars()) {
+		    addScore(fanOut, var.getOrigin());
+		}
+	    }
+	    final Map<SInstance, Integer> compRanks =
+		Component.getRanks(cInst, paths);
+	    List<List<String>> sorted = new ArrayList<List<String>>(paths);
+	    Collections.sort(sorted, new Comparator<List<String>>() {
+		    public int compare(List<String> path1, List<String> path2) {
+			SInstance orig1 = cInst.getEffect(path1).getOrigin();
+			SInstance orig2 = cInst.getEffect(path2).getOrigin();
+			int res = getScore(fanOut, orig2)
+			    - getScore(fanOut, orig1);
+			if (res != 0) {
+			    return res;
+			}
+			return compRanks.get(orig1) - compRanks.get(orig2);
+		    }
+		});
+	    return Component.getRanks(cInst, sorted);
+	}
+    },
+    /**
+     * Conditions on the variable
+     * occurring most often in the residual formula.
+     * Ties are broken as for {@link #Component}.
+     */
+    MostFrequent {
+	Map<SInstance, Integer> getRanks(FlatCInstance cInst,
+					 List<List<String>> paths) {
+	    return Component.getRanks(cInst, paths);
+	}
+	boolean isDynamic() {
+	    return true;
+	}
+	void addScores(Formula form, Map<SInstance, Integer> var2score) {
+	    if (form.getConst() != null) {
+		return;
+	    }
+	    if (form instanceof Formula.Var) {
+		addScore(var2score, ((Formula.Var) form).getVar());
+		return;
+	    }
+	    for (Formula arg : ((Formula.Comp) form).getArgs()) {
+		addScores(arg, var2score);
+	    }
+	}
+    };
+
+    /**
+     * Returns the ranks of the effects of <code>cInst</code>:
+     * the less the rank, the earlier the variable is conditioned on.
+     * Variables are identified by their {@link SInstance#getOrigin()}.
+     *
+     * @param cInst
+     *    a <code>FlatCInstance</code>
+     *    the effects of which are fully initialized.
+     * @param paths
+     *    the paths of the effects of <code>cInst</code>
+     *    sorted by {@link FlatCInstance#PATH_CMP}.
+     * @return
+     *    a map from the origins of the effects to their ranks
+     *    which is injective.
+     */
+    abstract Map<SInstance, Integer> getRanks(FlatCInstance cInst,
+					      List<List<String>> paths);
+
+    /**
+     * Returns whether this strategy scores the variables
+     * of the residual formula in each step
+     * via {@link #addScores(Formula, Map)}.
+     * This is <code>false</code> by default.
+     */
+    boolean isDynamic() {
+	return false;
+    }
+
+    /**
+     * Adds the scores of the variables of <code>form</code>
+     * to <code>var2score</code>
+     * if this is a dynamic strategy; else does nothing.
+     * The variable with the highest score is conditioned on next.
+     *
+     * @param form
+     *    a residual formula
+     *    all variables of which have a probability distribution.
+     * @param var2score
+     *    maps variables to their scores accumulated so far.
+     */
+    void addScores(Formula form, Map<SInstance, Integer> var2score) {
+	// is empty.
+    }
+
+    private static void addScore(Map<SInstance, Integer> var2score,
+				 SInstance var) {
+	var2score.put(var, getScore(var2score, var) + 1);
+    }
+
+    static int getScore(Map<SInstance, Integer> var2score, SInstance var) {
+	Integer res = var2score.get(var);
+	return res == null ? 0 : res;
+    }
+
+} // VarOrder
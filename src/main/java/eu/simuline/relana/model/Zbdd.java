@@ -0,0 +1,335 @@
+package eu.simuline.relana.model;
+
+import java.math.BigInteger;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * A manager for zero-suppressed binary decision diagrams
+ * representing families of sets of variables,
+ * used by {@link BddEvaluator#getCutSets} to represent minimal cut sets.
+ * Nodes are represented by <code>int</code>s:
+ * {@link #EMPTY} is the empty family,
+ * {@link #BASE} is the family containing the empty set only,
+ * each other node refers to a variable
+ * and to a low successor comprising the sets without the variable
+ * and to a high successor comprising the sets with the variable
+ * with the variable removed.
+ * Nodes with high successor {@link #EMPTY} are suppressed.
+ * <p>
+ * Variables are ordered by their indices:
+ * the less the index, the closer to the root.
+ * There is a single unique table guaranteeing that the diagram is reduced
+ * and a computed table for each operation.
+ * Since the diagrams are built once to extract cut sets,
+ * nodes are never freed.
+ *
+ *
+ * Created: Sat Oct 17 22:31:47 2026
+ *
+ * @author <a href="mailto:ernst.reissner@simuline.eu">Ernst Reissner</a>
+ * @version 1.0
+ */
+public final class Zbdd {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The terminal node representing the empty family.
+     */
+    public static final int EMPTY = 0;
+
+    /**
+     * The terminal node representing the family
+     * containing the empty set only.
+     */
+    public static final int BASE = 1;
+
+    /**
+     * Marks the end of a chain within the unique table.
+     */
+    private static final int NIL = -1;
+
+    /**
+     * The variable of terminal nodes:
+     * greater than any variable.
+     */
+    private static final int TERMINAL = Integer.MAX_VALUE;
+
+    private static final int INIT_NODES = 1 << 10;
+
+    /* -------------------------------------------------------------------- *
+     * attributes.                                                          *
+     * -------------------------------------------------------------------- */
+
+    // attributes of the nodes
+    private int[] nodeVar;
+    private int[] lows;
+    private int[] highs;
+    // chains within the unique table
+    private int[] next;
+
+    /**
+     * The heads of the chains of the unique table.
+     */
+    private int[] buckets;
+
+    /**
+     * The number of nodes including the terminals.
+     */
+    private int numNodes;
+
+    // the computed tables of the operations
+    private final Map<Long, Integer> unionCache;
+    private final Map<Long, Integer> withoutCache;
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    public Zbdd() {
+	this.nodeVar = new int[INIT_NODES];
+	this.lows    = new int[INIT_NODES];
+	this.highs   = new int[INIT_NODES];
+	this.next    = new int[INIT_NODES];
+	for (int node = EMPTY; node <= BASE; node++) {
+	    this.nodeVar[node] = TERMINAL;
+	    this.lows   [node] = node;
+	    this.highs  [node] = node;
+	    this.next   [node] = NIL;
+	}
+	this.numNodes = 2;
+	this.buckets = new int[INIT_NODES];
+	Arrays.fill(this.buckets, NIL);
+
+	this.unionCache   = new HashMap<Long, Integer>();
+	this.withoutCache = new HashMap<Long, Integer>();
+    } // Zbdd constructor
+
+    /* -------------------------------------------------------------------- *
+     * methods: nodes.                                                      *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the variable of <code>node</code>.
+     *
+     * @throws IllegalArgumentException
+     *    if <code>node</code> is terminal.
+     */
+    public int getVar(int node) {
+	if (node <= BASE) {
+	    throw new IllegalArgumentException
+		("Terminal node " + node + " has no variable. ");
+	}
+	return this.nodeVar[node];
+    }
+
+    public int getLow(int node) {
+	return this.lows[node];
+    }
+
+    public int getHigh(int node) {
+	return this.highs[node];
+    }
+
+    public int getNodeCount() {
+	return this.numNodes;
+    }
+
+    /**
+     * Returns the unique node with the given variable and successors.
+     *
+     * @param var
+     *    a variable less than the variables of <code>low</code>
+     *    and of <code>high</code>.
+     * @param low
+     *    the family of sets without <code>var</code>.
+     * @param high
+     *    the family of sets with <code>var</code>
+     *    with <code>var</code> removed.
+     * @return
+     *    the node representing the union of <code>low</code>
+     *    and of the sets of <code>high</code> with <code>var</code> added.
+     */
+    public int getNode(int var, int low, int high) {
+	assert var < this.nodeVar[low] && var < this.nodeVar[high];
+	if (high == EMPTY) {
+	    return low;
+	}
+	int idx = hash(var, low, high) & (this.buckets.length - 1);
+	for (int node = this.buckets[idx]; node != NIL;
+	     node = this.next[node]) {
+	    if (this.nodeVar[node] == var
+		&& this.lows[node] == low && this.highs[node] == high) {
+		return node;
+	    }
+	}
+
+	if (this.numNodes == this.nodeVar.length) {
+	    grow();
+	    idx = hash(var, low, high) & (this.buckets.length - 1);
+	}
+	int node = this.numNodes++;
+	this.nodeVar[node] = var;
+	this.lows   [node] = low;
+	this.highs  [node] = high;
+	this.next   [node] = this.buckets[idx];
+	this.buckets[idx] = node;
+	return node;
+    }
+
+    private static int hash(int var, int low, int high) {
+	return (var * 31) ^ (low * 12582917) ^ (high * 4256249) ^ (high >>> 7);
+    }
+
+    /**
+     * Doubles the capacity of the nodes and of the unique table.
+     */
+    private void grow() {
+	int len = 2 * this.nodeVar.length;
+	this.nodeVar = Arrays.copyOf(this.nodeVar, len);
+	this.lows    = Arrays.copyOf(this.lows,    len);
+	this.highs   = Arrays.copyOf(this.highs,   len);
+	this.next    = Arrays.copyOf(this.next,    len);
+	this.buckets = new int[len];
+	Arrays.fill(this.buckets, NIL);
+	for (int node = BASE + 1; node < this.numNodes; node++) {
+	    int idx = hash(this.nodeVar[node], this.lows[node],
+			   this.highs[node]) & (len - 1);
+	    this.next[node] = this.buckets[idx];
+	    this.buckets[idx] = node;
+	}
+    }
+
+    private static Long key(int opF, int opG) {
+	return ((long) opF << 32) | (opG & 0xFFFFFFFFL);
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods: operations.                                                 *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the union of the families <code>opF</code>
+     * and <code>opG</code>.
+     */
+    public int union(int opF, int opG) {
+	if (opF == EMPTY || opF == opG) {
+	    return opG;
+	}
+	if (opG == EMPTY) {
+	    return opF;
+	}
+	if (opF > opG) {
+	    // union is commutative
+	    return union(opG, opF);
+	}
+	Long key = key(opF, opG);
+	Integer cached = this.unionCache.get(key);
+	if (cached != null) {
+	    return cached;
+	}
+
+	int varF = this.nodeVar[opF];
+	int varG = this.nodeVar[opG];
+	int res;
+	if (varF < varG) {
+	    res = getNode(varF, union(this.lows[opF], opG), this.highs[opF]);
+	} else if (varF > varG) {
+	    res = getNode(varG, union(opF, this.lows[opG]), this.highs[opG]);
+	} else {
+	    res = getNode(varF,
+			  union(this.lows [opF], this.lows [opG]),
+			  union(this.highs[opF], this.highs[opG]));
+	}
+	this.unionCache.put(key, res);
+	return res;
+    }
+
+    /**
+     * Returns the sets of <code>opF</code>
+     * which are no superset of a set of <code>opG</code>.
+     * This is the operation <code>without</code> of Rauzy.
+     */
+    public int without(int opF, int opG) {
+	if (opG == EMPTY) {
+	    return opF;
+	}
+	if (opF == EMPTY || opF == opG || containsEmptySet(opG)) {
+	    return EMPTY;
+	}
+	if (opF == BASE) {
+	    // Here, opG does not contain the empty set
+	    return BASE;
+	}
+	Long key = key(opF, opG);
+	Integer cached = this.withoutCache.get(key);
+	if (cached != null) {
+	    return cached;
+	}
+
+	int varF = this.nodeVar[opF];
+	int varG = this.nodeVar[opG];
+	int res;
+	if (varF < varG) {
+	    res = getNode(varF,
+			  without(this.lows [opF], opG),
+			  without(this.highs[opF], opG));
+	} else if (varF > varG) {
+	    // the sets of opG with varG are no subsets of sets of opF
+	    res = without(opF, this.lows[opG]);
+	} else {
+	    res = getNode(varF,
+			  without(this.lows[opF], this.lows[opG]),
+			  without(without(this.highs[opF], this.highs[opG]),
+				  this.lows[opG]));
+	}
+	this.withoutCache.put(key, res);
+	return res;
+    }
+
+    /**
+     * Returns whether the family <code>node</code>
+     * contains the empty set.
+     */
+    public boolean containsEmptySet(int node) {
+	int res = node;
+	while (res > BASE) {
+	    res = this.lows[res];
+	}
+	return res == BASE;
+    }
+
+    /**
+     * Returns the number of sets of the family <code>node</code>.
+     */
+    public BigInteger count(int node) {
+	return count(node, new HashMap<Integer, BigInteger>());
+    }
+
+    private BigInteger count(int node, Map<Integer, BigInteger> node2count) {
+	if (node <= BASE) {
+	    return node == BASE ? BigInteger.ONE : BigInteger.ZERO;
+	}
+	BigInteger res = node2count.get(node);
+	if (res == null) {
+	    res = count(this.lows [node], node2count)
+		.add(count(this.highs[node], node2count));
+	    node2count.put(node, res);
+	}
+	return res;
+    }
+
+    public String toString() {
+	StringBuffer res = new StringBuffer();
+	res.append("<Zbdd nodes=\"");
+	res.append(this.numNodes);
+	res.append("\"/>");
+	return res.toString();
+    }
+
+} // Zbdd
@@ -2,6 +2,8 @@ package eu.simuline.relana.sys;
 
 import eu.simuline.relana.model.ClassLocator;
 import eu.simuline.relana.model.InstanceLocator;
+import eu.simuline.relana.model.VarOrder;
+import eu.simuline.relana.model.Scenario;
 
 import eu.simuline.util.sgml.ParseExceptionHandler;
 //import eu.simuline.util.sgml.AttributesImpl;
@@ -9,8 +11,12 @@ import eu.simuline.util.sgml.ParseExceptionHandler;
 import java.net.URL;
 import java.net.MalformedURLException;
 
+import java.math.BigDecimal;
+
 import java.util.Set;
 import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
@@ -40,6 +46,10 @@ public final class Project
     private URL library;
     private ClassLocator baseClass;
     private final Set<InstanceLocator> outputEffects;
+    private VarOrder varOrder;
+    private final List<Scenario> scenarios;
+    // the scenario currently read; null outside a Scenario element
+    private Scenario scenario;
 
     /* --------------------------------------------------------------------- *
      * constructors                                                          *
@@ -48,6 +58,9 @@ public final class Project
     public Project() {
 	// InstanceLocator overwrites hashCode and is immutable 
 	this.outputEffects = new HashSet<InstanceLocator>();
+	this.varOrder = VarOrder.Component;
+	this.scenarios = new ArrayList<Scenario>();
+	this.scenario = null;
     } // Project constructor
 
     /* --------------------------------------------------------------------- *
@@ -68,6 +81,14 @@ public final class Project
 	return this.outputEffects;
     }
 
+    public VarOrder getVarOrder() {
+	return this.varOrder;
+    }
+
+    public List<Scenario> getScenarios() {
+	return this.scenarios;
+    }
+
     /* --------------------------------------------------------------------- *
      * methods implementing ContentHandler                                   *
      * --------------------------------------------------------------------- */
@@ -110,20 +131,81 @@ public final class Project
 		    ("Found malformed url \"" + atts.getValue("library") + 
 		     "\". ");
 	    }
+	    String order = atts.getValue("varOrder");
+	    if (order != null) {
+		try {
+		    this.varOrder = VarOrder.valueOf(order);
+		} catch (IllegalArgumentException e) {
+		    throw new SAXException// NOPMD
+			("Found unknown variable order \"" + order + 
+			 "\". ");
+		}
+	    }
 	    return;
 	}
 	if ("Output".equals(qName)) {
 	    InstanceLocator loc = InstanceLocator
 		.getLocator(atts.getValue("effect"));
 	    this.outputEffects.add(loc);
+	    return;
 	}
+	if ("Scenario".equals(qName)) {
+	    if (this.scenario != null) {
+		throw new SAXException
+		    ("Found scenario within scenario \"" + 
+		     this.scenario.getName() + "\". ");
+	    }
+	    this.scenario = new Scenario(getRequired(qName, atts, "name"));
+	    return;
+	}
+	if ("Prob".equals(qName)) {
+	    if (this.scenario == null) {
+		throw new SAXException
+		    ("Found probability outside scenario. ");
+	    }
+	    String effect = getRequired(qName, atts, "effect");
+	    String defName = getRequired(qName, atts, "deficiency");
+	    String value = getRequired(qName, atts, "value");
+	    try {
+		this.scenario.addOverride(InstanceLocator.getLocator(effect),
+					  defName,
+					  new BigDecimal(value));
+	    } catch (NumberFormatException e) {
+		throw new SAXException// NOPMD
+		    ("Found malformed probability \"" + value + "\". ");
+	    } catch (IllegalArgumentException e) {
+		throw new SAXException(e);
+	    }
+	}
+    }
+
+    /**
+     * Returns the value of the attribute <code>attName</code> 
+     * of the element <code>qName</code>. 
+     *
+     * @throws SAXException 
+     *    if the attribute is missing. 
+     */
+    private static String getRequired(String qName, 
+				      Attributes atts, 
+				      String attName) throws SAXException {
+	String res = atts.getValue(attName);
+	if (res == null) {
+	    throw new SAXException
+		("Found element \"" + qName + 
+		 "\" without attribute \"" + attName + "\". ");
+	}
+	return res;
     }
 
     public void endElement(String namespaceURI,
 			   String localName,
 			   String qName)
 	throws SAXException {
-	// is empty. 
+	if ("Scenario".equals(qName)) {
+	    this.scenarios.add(this.scenario);
+	    this.scenario = null;
+	}
 	//this.events.add("TE</" + qName + ">");
     }
 
@@ -200,7 +282,13 @@ public final class Project
 	res.append(getLibrary().toString());
 	res.append("\" baseClass=\"");
 	res.append(getBaseClass().getPath().toString());
-	res.append("\">\n</Rml>\n");
+	res.append("\" varOrder=\"");
+	res.append(getVarOrder());
+	res.append("\">\n");
+	for (Scenario scen : getScenarios()) {
+	    res.append(scen);
+	}
+	res.append("</Rml>\n");
 	return res.toString();
     }
 } // Project
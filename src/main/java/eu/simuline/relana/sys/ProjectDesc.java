@@ -2,12 +2,15 @@ package eu.simuline.relana.sys;
 
 import eu.simuline.relana.model.ClassLocator;
 import eu.simuline.relana.model.InstanceLocator;
+import eu.simuline.relana.model.VarOrder;
+import eu.simuline.relana.model.Scenario;
 import eu.simuline.relana.model.CClass; // for javadoc only 
 import eu.simuline.relana.model.SClass; // for javadoc only 
 
 import java.net.URL;
 
 import java.util.Set;
+import java.util.List;
 
 /**
  * Represents a relana project as specified in a project file 
@@ -20,6 +23,9 @@ import java.util.Set;
  * specifying the {@link CClass}es and of files <code>*.scl</code> 
  * specifying the {@link SClass}es. 
  * The base class is always a {@link CClass}. 
+ * Optionally, the project file specifies the {@link VarOrder} 
+ * used to compute the probabilities of the output effects 
+ * and {@link Scenario}s overriding probabilities of deficiencies. 
  *
  *
  * Created: Thu Apr 28 21:52:33 2005
@@ -50,4 +56,26 @@ public interface ProjectDesc {
      * @return a <code>Set</code> value
      */
     Set<InstanceLocator> getOutputEffects();
+
+    /**
+     * Returns the strategy to choose the variables to condition on 
+     * when computing the probabilities of the output effects. 
+     *
+     * @return 
+     *    the <code>VarOrder</code> given by the attribute 
+     *    <code>varOrder</code> if present; 
+     *    else {@link VarOrder#Component}. 
+     */
+    VarOrder getVarOrder();
+
+    /**
+     * Returns the scenarios given by the <code>Scenario</code> elements 
+     * each of which overrides the probabilities of some deficiencies 
+     * of effects with distribution. 
+     *
+     * @return 
+     *    the <code>Scenario</code>s in the order of their occurrence; 
+     *    empty if there are none. 
+     */
+    List<Scenario> getScenarios();
 } // ProjectDesc
@@ -5,6 +5,10 @@ import eu.simuline.relana.model.CClass;
 import eu.simuline.relana.model.FlatCInstance;
 import eu.simuline.relana.model.SInstance;
 import eu.simuline.relana.model.InstanceLocator;
+import eu.simuline.relana.model.ProbMemo;
+import eu.simuline.relana.model.Scenario;
+import eu.simuline.relana.model.ScenarioEvaluator;
+import eu.simuline.relana.expressions.Formula;
 //import eu.simuline.relana.model.Deficiency;
 
 import eu.simuline.util.sgml.SGMLParser;
@@ -21,11 +25,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 
 //import java.util.Iterator;
+import java.math.BigDecimal;
+
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Relana's main class containing the main method only. 
@@ -57,7 +65,7 @@ public abstract class Relana { // NOPMD
 
     public static void main(String[] args) 
 	throws MalformedURLException, IOException, SAXException, 
-	       RecognitionException {
+	       RecognitionException, InterruptedException {
 	if (args.length != 1) {
 	    throw new IllegalArgumentException
 		("Expected a single argument: the project file " + 
@@ -91,8 +99,10 @@ System.out.println("cClass: " + cClass);
 	}
 
 	// instantiate and get all output-variables under observation. 
-	FlatCInstance flatCInstance = cClass.getInstance().flatten();
+	FlatCInstance flatCInstance = cClass.getInstance().flatten()
+	    .reorder(project.getVarOrder());
 System.out.println("cInstance: " + flatCInstance);
+System.out.println("rewrites: " + Formula.getRewriteCounts());
 
 	// verify whether all output effects are indeed declared as output 
 	Set<InstanceLocator> outServ = project.getOutputEffects();
@@ -116,10 +126,37 @@ System.out.println("outServ: " + outServ);
 System.out.println("observables: " + observables);
 System.out.println("\nprobabilities: ");
 
-	for (List<String> obs : observables.keySet()) {
-	    System.out.println("\nobs : " + obs + 
-			       " has prob " + flatCInstance.getProb(obs));
+	// the sub-problems of the observables may well coincide: 
+	// all observables are evaluated within a single expansion 
+	ProbMemo memo = new ProbMemo();
+	Map<List<String>, BigDecimal> obs2prob = 
+	    flatCInstance.getProbs(observables.keySet(), memo);
+	for (Map.Entry<List<String>, BigDecimal> entry : obs2prob.entrySet()) {
+	    System.out.println("\nobs : " + entry.getKey() + 
+			       " has prob " + entry.getValue());
+	}
+System.out.println("\nmemo: " + memo);
 
+	// all scenarios share the compiled formulae of the observables 
+	List<Scenario> scenarios = project.getScenarios();
+	if (scenarios.isEmpty()) {
+	    return;
+	}
+	ScenarioEvaluator scenEval = 
+	    new ScenarioEvaluator(flatCInstance, observables.keySet());
+	ExecutorService executor = Executors
+	    .newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	try {
+	    scenEval.evaluate(scenarios, executor, 
+			      new ScenarioEvaluator.Listener() {
+		    public void evaluated(Scenario scenario, 
+					  Map<List<String>, BigDecimal> probs) {
+			System.out.println("\nscenario \"" + scenario.getName() + 
+					   "\": " + probs);
+		    }
+		});
+	} finally {
+	    executor.shutdownNow();
 	}
     }
 } // Relana
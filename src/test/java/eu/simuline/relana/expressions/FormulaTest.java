@@ -0,0 +1,439 @@
+package eu.simuline.relana.expressions;
+
+import eu.simuline.relana.model.SInstance;
+import eu.simuline.relana.model.Deficiency;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Random;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * FormulaTest.java
+ *
+ * Tests the hash-consing of {@link Formula}e:
+ * formulae created concurrently by several threads are interned
+ * to the same instances.
+ * Checks that the rewrites applied when creating formulae
+ * keep their values and that they are counted.
+ *
+ *
+ * Created: Mon Oct 19 10:12:44 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({FormulaTest.TestAll.class})
+public class FormulaTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of threads creating formulae concurrently.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The number of variables the formulae are built of.
+     */
+    private static final int VARS = 12;
+
+    /**
+     * The number of variables of the random formulae to be rewritten,
+     * small enough to evaluate them for all values
+     * and to make rewrites frequent.
+     */
+    private static final int REWRITE_VARS = 3;
+
+    /**
+     * The number of random formulae to be rewritten.
+     */
+    private static final int REWRITE_FORMS = 500;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static FormulaTest TEST = new FormulaTest();
+
+    public static class TestAll {
+	@Test public void testInternConcurrent() throws Throwable {
+	    FormulaTest.TEST.testInternConcurrent();
+	}
+	@Test public void testInternCollected() {
+	    FormulaTest.TEST.testInternCollected();
+	}
+	@Test public void testRewritesKeepValue() {
+	    FormulaTest.TEST.testRewritesKeepValue();
+	}
+	@Test public void testRewriteCounts() {
+	    FormulaTest.TEST.testRewriteCounts();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the Boolean formula applying <code>op</code>
+     * to <code>args</code>.
+     */
+    static Formula apply(Operation.BaseOps op, Formula... args) {
+	Set<Formula> argSet = new HashSet<Formula>();
+	for (Formula arg : args) {
+	    argSet.add(arg);
+	}
+	return Formula.getFormula(Operation.getOperation(op)
+				  .getEval(Type.BOOLEAN), argSet);
+    }
+
+    /**
+     * Returns the variables for <code>servs</code>.
+     */
+    private static Formula[] createVars(SInstance[] servs) {
+	Formula[] res = new Formula[servs.length];
+	for (int i = 0; i < servs.length; i++) {
+	    res[i] = Formula.Var.create(servs[i], "x" + i);
+	}
+	return res;
+    }
+
+    /**
+     * Returns all unions and intersections of pairs of <code>vars</code>,
+     * their complements and the unions of intersections
+     * of neighboring pairs in a fixed order.
+     */
+    private static List<Formula> createForms(Formula[] vars) {
+	List<Formula> res = new ArrayList<Formula>();
+	for (int i = 0; i < vars.length; i++) {
+	    for (int j = i + 1; j < vars.length; j++) {
+		Formula union = apply(Operation.BaseOps.Union,
+				      vars[i], vars[j]);
+		Formula inter = apply(Operation.BaseOps.Intersection,
+				      vars[i], vars[j]);
+		res.add(union);
+		res.add(inter);
+		res.add(apply(Operation.BaseOps.Complement, union));
+		res.add(apply(Operation.BaseOps.Union, inter,
+			      apply(Operation.BaseOps.Intersection,
+				    vars[j], vars[(j + 1) % vars.length])));
+	    }
+	}
+	return res;
+    }
+
+    private static SInstance[] createServs() {
+	SInstance[] res = new SInstance[VARS];
+	for (int i = 0; i < res.length; i++) {
+	    res[i] = new SInstance(Type.BOOLEAN, null, "x" + i);
+	}
+	return res;
+    }
+
+    /**
+     * {@link #THREADS} threads started at the same time
+     * create the same formulae.
+     * Each formula is the same instance for all threads.
+     */
+    public void testInternConcurrent() throws Throwable {
+	final SInstance[] servs = createServs();
+	final CountDownLatch start = new CountDownLatch(1);
+	final List<List<Formula>> results = new ArrayList<List<Formula>>();
+	final Throwable[] failure = new Throwable[1];
+	List<Thread> threads = new ArrayList<Thread>();
+	for (int t = 0; t < THREADS; t++) {
+	    Thread thread = new Thread(new Runnable() {
+		    public void run() {
+			try {
+			    start.await();
+			    List<Formula> forms =
+				createForms(createVars(servs));
+			    synchronized (results) {
+				results.add(forms);
+			    }
+			} catch (Throwable e) {
+			    synchronized (results) {
+				failure[0] = e;
+			    }
+			}
+		    }
+		});
+	    threads.add(thread);
+	    thread.start();
+	}
+	start.countDown();
+	for (Thread thread : threads) {
+	    thread.join();
+	}
+	if (failure[0] != null) {
+	    throw failure[0];
+	}
+
+	assertEquals(THREADS, results.size());
+	List<Formula> exp = results.get(0);
+	for (List<Formula> forms : results) {
+	    assertEquals(exp.size(), forms.size());
+	    for (int i = 0; i < exp.size(); i++) {
+		assertSame(exp.get(i), forms.get(i));
+	    }
+	}
+	// also the same instance as created afterwards
+	List<Formula> forms = createForms(createVars(servs));
+	for (int i = 0; i < exp.size(); i++) {
+	    assertSame(exp.get(i), forms.get(i));
+	}
+    } // testInternConcurrent
+
+    /**
+     * Formulae created again after the previous instances
+     * could be collected are interned again.
+     */
+    public void testInternCollected() {
+	SInstance[] servs = createServs();
+	List<Formula> forms = createForms(createVars(servs));
+	List<String> exp = new ArrayList<String>();
+	for (Formula form : forms) {
+	    exp.add(form.toString());
+	}
+	forms = null;
+	for (int i = 0; i < 3; i++) {
+	    System.gc();
+	    forms = createForms(createVars(servs));
+	    List<Formula> again = createForms(createVars(servs));
+	    for (int j = 0; j < exp.size(); j++) {
+		assertEquals(exp.get(j), forms.get(j).toString());
+		assertSame(forms.get(j), again.get(j));
+	    }
+	    forms = null;
+	}
+    } // testInternCollected
+
+    /**
+     * Returns the value of <code>form</code>
+     * by applying the operations recursively
+     * where the variables have the values given by <code>values</code>.
+     */
+    private static Set<Deficiency>
+	eval(Formula form, Map<SInstance, Set<Deficiency>> values) {
+	if (form instanceof Formula.Const) {
+	    return form.getConst();
+	}
+	if (form instanceof Formula.Var) {
+	    return values.get(((Formula.Var) form).getVar());
+	}
+	Formula.Comp comp = (Formula.Comp) form;
+	Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
+	for (Formula arg : comp.getArgs()) {
+	    param.add(eval(arg, values));
+	}
+	return comp.getEval().eval(param);
+    }
+
+    /**
+     * Returns all maps from <code>servs</code> to Boolean values.
+     */
+    private static List<Map<SInstance, Set<Deficiency>>>
+	getAllValues(SInstance[] servs) {
+	List<Map<SInstance, Set<Deficiency>>> res =
+	    new ArrayList<Map<SInstance, Set<Deficiency>>>();
+	List<Set<Deficiency>> ideals = Type.BOOLEAN.getIdeals();
+	for (int code = 0; code < 1 << servs.length; code++) {
+	    Map<SInstance, Set<Deficiency>> values =
+		new HashMap<SInstance, Set<Deficiency>>();
+	    for (int i = 0; i < servs.length; i++) {
+		values.put(servs[i], ideals.get((code >> i) & 1));
+	    }
+	    res.add(values);
+	}
+	return res;
+    }
+
+    /**
+     * Returns a random Boolean formula of depth at most <code>depth</code>
+     * over <code>vars</code> and the constants
+     * applying union, intersection and complement.
+     * For each operation applied,
+     * asserts that the rewritten formula has the value
+     * of the operation applied to the values of the arguments
+     * for all <code>values</code>.
+     * So, by induction, each formula has the value
+     * of the formula it is rewritten from.
+     */
+    private static Formula createRewritten(Random rnd,
+					   int depth,
+					   Formula[] vars,
+					   List<Map<SInstance, Set<Deficiency>>>
+					   values) {
+	if (depth == 0 || rnd.nextInt(4) == 0) {
+	    if (rnd.nextInt(6) == 0) {
+		List<Set<Deficiency>> ideals = Type.BOOLEAN.getIdeals();
+		return Formula.Const.create(ideals.get(rnd.nextInt(2)),
+					    Type.BOOLEAN);
+	    }
+	    return vars[rnd.nextInt(vars.length)];
+	}
+	Operation.BaseOps op = Operation.BaseOps.values()[rnd.nextInt(3)];
+	Operation.Eval oper = Operation.getOperation(op)
+	    .getEval(Type.BOOLEAN);
+	Set<Formula> args = new HashSet<Formula>();
+	int numArgs = op == Operation.BaseOps.Complement
+	    ? 1 : 2 + rnd.nextInt(2);
+	for (int i = 0; i < numArgs; i++) {
+	    args.add(createRewritten(rnd, depth - 1, vars, values));
+	}
+
+	Formula res = Formula.getFormula(oper, args);
+	for (Map<SInstance, Set<Deficiency>> val : values) {
+	    Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
+	    for (Formula arg : args) {
+		param.add(eval(arg, val));
+	    }
+	    assertEquals(op + " " + args + " rewritten to " + res +
+			 " for " + val,
+			 oper.eval(param), eval(res, val));
+	}
+	return res;
+    }
+
+    /**
+     * For random formulae over few variables and the constants,
+     * each rewrite keeps the value for all values of the variables.
+     * All kinds of rewrites occur.
+     */
+    public void testRewritesKeepValue() {
+	SInstance[] servs = new SInstance[REWRITE_VARS];
+	for (int i = 0; i < servs.length; i++) {
+	    servs[i] = new SInstance(Type.BOOLEAN, null, "x" + i);
+	}
+	Formula[] vars = createVars(servs);
+	List<Map<SInstance, Set<Deficiency>>> values = getAllValues(servs);
+	Random rnd = new Random(0);
+	Formula.resetRewriteCounts();
+	for (int i = 0; i < REWRITE_FORMS; i++) {
+	    createRewritten(rnd, 4, vars, values);
+	}
+	for (Map.Entry<Formula.Rewrite, Long> entry
+		 : Formula.getRewriteCounts().entrySet()) {
+	    assertTrue("expected rewrite " + entry.getKey() + ". ",
+		       entry.getValue() > 0);
+	}
+    } // testRewritesKeepValue
+
+    /**
+     * Asserts that the rewrites counted since the last reset
+     * are the ones given by <code>rewrites</code>
+     * alternating with the numbers of nodes saved
+     * and resets the counts.
+     */
+    private static void assertCounts(String msg, Object... rewrites) {
+	Map<Formula.Rewrite, Long> exp =
+	    new EnumMap<Formula.Rewrite, Long>(Formula.Rewrite.class);
+	for (Formula.Rewrite rewrite : Formula.Rewrite.values()) {
+	    exp.put(rewrite, 0L);
+	}
+	for (int i = 0; i < rewrites.length; i += 2) {
+	    exp.put((Formula.Rewrite) rewrites[i],
+		    ((Integer) rewrites[i + 1]).longValue());
+	}
+	assertEquals(msg, exp, Formula.getRewriteCounts());
+	Formula.resetRewriteCounts();
+    }
+
+    /**
+     * Each kind of rewrite yields the expected formula
+     * and is counted with the number of nodes saved.
+     */
+    public void testRewriteCounts() {
+	Formula[] vars = createVars(createServs());
+	Formula x = vars[0];
+	Formula y = vars[1];
+	Formula z = vars[2];
+	Formula empty = Formula.Const.create(new HashSet<Deficiency>(),
+					     Type.BOOLEAN);
+	Formula undet = Formula.Const.create(Type.BOOLEAN.asSet(),
+					     Type.BOOLEAN);
+	Formula xOrY = apply(Operation.BaseOps.Union, x, y);
+	Formula xAndY = apply(Operation.BaseOps.Intersection, x, y);
+	Formula notX = apply(Operation.BaseOps.Complement, x);
+	Formula.resetRewriteCounts();
+	assertCounts("reset");
+
+	Formula form = apply(Operation.BaseOps.Union, xOrY, z);
+	assertEquals(3, ((Formula.Comp) form).getArgs().size());
+	assertCounts("flattening", Formula.Rewrite.Flattening, 1);
+
+	assertSame(xOrY, apply(Operation.BaseOps.Union, x, xOrY));
+	assertCounts("idempotence",
+		     Formula.Rewrite.Flattening, 1,
+		     Formula.Rewrite.Idempotence, 1);
+
+	assertSame(x, apply(Operation.BaseOps.Union, x, xAndY));
+	assertCounts("absorption",
+		     Formula.Rewrite.Absorption, 1,
+		     Formula.Rewrite.Flattening, 1);
+	assertSame(x, apply(Operation.BaseOps.Intersection, x, xOrY));
+	assertCounts("dual absorption",
+		     Formula.Rewrite.Absorption, 1,
+		     Formula.Rewrite.Flattening, 1);
+
+	assertSame(x, apply(Operation.BaseOps.Complement, notX));
+	assertCounts("double complement",
+		     Formula.Rewrite.DoubleComplement, 2);
+
+	assertSame(x, apply(Operation.BaseOps.Union, x, empty));
+	assertCounts("neutral",
+		     Formula.Rewrite.NeutralElement, 1,
+		     Formula.Rewrite.Flattening, 1);
+	assertSame(x, apply(Operation.BaseOps.Intersection, x, undet));
+	assertCounts("dual neutral",
+		     Formula.Rewrite.NeutralElement, 1,
+		     Formula.Rewrite.Flattening, 1);
+
+	assertEquals(empty, apply(Operation.BaseOps.Intersection, x, empty));
+	assertCounts("absorbing", Formula.Rewrite.ConstantFolding, 1);
+	assertEquals(undet, apply(Operation.BaseOps.Union, x, empty, undet));
+	assertCounts("constants", Formula.Rewrite.ConstantFolding, 2);
+	assertEquals(empty, apply(Operation.BaseOps.Complement, undet));
+	assertCounts("constant complement",
+		     Formula.Rewrite.ConstantFolding, 1);
+
+	// nothing to rewrite
+	apply(Operation.BaseOps.Union, notX, xAndY);
+	assertCounts("none");
+    } // testRewriteCounts
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // FormulaTest
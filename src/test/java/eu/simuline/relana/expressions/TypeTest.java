@@ -0,0 +1,513 @@
+package eu.simuline.relana.expressions;
+
+import eu.simuline.relana.model.Deficiency;
+import eu.simuline.relana.model.DeficiencyNode;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Stack;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * TypeTest.java
+ *
+ * Tests the interning of {@link Type}s, the sublattices 
+ * obtained by removing deficiencies, 
+ * the cones within these and the ideals. 
+ * The types are a chain <code>x &lt; y &lt; z</code>, 
+ * a diamond with bottom <code>d0</code>, top <code>d3</code> 
+ * and <code>d1</code>, <code>d2</code> in between 
+ * and the discrete type on <code>p</code>, <code>q</code>, <code>r</code>. 
+ * The cones of random types are compared 
+ * with those found by searching the ordering. 
+ *
+ *
+ * Created: Sun Oct 18 05:48:30 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({TypeTest.TestAll.class})
+public class TypeTest {
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static TypeTest TEST = new TypeTest();
+
+    public static class TestAll {
+	@Test public void testInterning() {
+	    TypeTest.TEST.testInterning();
+	}
+	@Test public void testInternConcurrent() throws Throwable {
+	    TypeTest.TEST.testInternConcurrent();
+	}
+	@Test public void testRemove() {
+	    TypeTest.TEST.testRemove();
+	}
+	@Test public void testCones() {
+	    TypeTest.TEST.testCones();
+	}
+	@Test public void testConesRandom() {
+	    TypeTest.TEST.testConesRandom();
+	}
+	@Test public void testConesCyclic() {
+	    TypeTest.TEST.testConesCyclic();
+	}
+	@Test public void testIdeals() {
+	    TypeTest.TEST.testIdeals();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the type with deficiencies named <code>names</code> 
+     * built from new nodes. 
+     *
+     * @param relations 
+     *    pairs of names the first of which implies the second. 
+     */
+    static Type createType(String[] names, String[][] relations) {
+	Map<Deficiency, DeficiencyNode> def2ord = 
+	    new HashMap<Deficiency, DeficiencyNode>();
+	for (String name : names) {
+	    def2ord.put(def(name), new DeficiencyNode(def(name)));
+	}
+	for (String[] rel : relations) {
+	    DeficiencyNode above = def2ord.get(def(rel[0]));
+	    DeficiencyNode below = def2ord.get(def(rel[1]));
+	    above.addSuccessor  (below);
+	    below.addPredecessor(above);
+	}
+	return Type.create(def2ord);
+    }
+
+    static Type createChain() {
+	return createType(new String[] {"x", "y", "z"}, 
+			  new String[][] {{"y", "x"}, {"z", "y"}});
+    }
+
+    static Type createDiamond() {
+	return createType(new String[] {"d0", "d1", "d2", "d3"}, 
+			  new String[][] {
+			      {"d1", "d0"}, {"d2", "d0"}, 
+			      {"d3", "d1"}, {"d3", "d2"}
+			  });
+    }
+
+    static Type createDisjoint() {
+	return createType(new String[] {"p", "q", "r"}, new String[0][]);
+    }
+
+    static Deficiency def(String name) {
+	return new Deficiency(name);
+    }
+
+    static Set<Deficiency> defs(String... names) {
+	Set<Deficiency> res = new HashSet<Deficiency>();
+	for (String name : names) {
+	    res.add(def(name));
+	}
+	return res;
+    }
+
+    private static void assertRemoveFails(Type type, 
+					  Deficiency def, 
+					  boolean andAbove) {
+	try {
+	    if (andAbove) {
+		type.removeAndAbove(def);
+	    } else {
+		type.remove(def);
+	    }
+	    fail("expected IllegalArgumentException. ");
+	} catch (IllegalArgumentException e) {
+	    // expected. 
+	}
+    }
+
+    /**
+     * Asserts that the cones of <code>type</code> 
+     * coincide with those of <code>exp</code> 
+     * and are consistent with {@link Type#implies}. 
+     */
+    private static void assertSameCones(Type exp, Type type) {
+	assertEquals(exp.asSet(), type.asSet());
+	for (Deficiency def1 : exp.asSet()) {
+	    assertEquals(exp.getCone(def1), type.getCone(def1));
+	    for (Deficiency def2 : exp.asSet()) {
+		assertEquals(exp.getCone(def1).contains(def2), 
+			     type.implies(def1, def2));
+	    }
+	}
+    }
+
+    public void testInterning() {
+	Type chain = createChain();
+	assertSame(chain, createChain());
+	assertSame(chain, Type.create(chain.copy()));
+	assertSame(chain, chain.getInverse().getInverse());
+	assertNotSame(chain, chain.getInverse());
+	assertSame(chain.getInverse(), 
+		   createType(new String[] {"x", "y", "z"}, 
+			      new String[][] {{"x", "y"}, {"y", "z"}}));
+
+	Type diamond = createDiamond();
+	assertSame(diamond, createDiamond());
+	assertNotSame(diamond, chain);
+	assertFalse(diamond.equals(chain));
+	assertSame(createDisjoint(), createDisjoint().getInverse());
+
+	// the same deficiencies differently ordered 
+	assertNotSame(createDisjoint(), 
+		      createType(new String[] {"p", "q", "r"}, 
+				 new String[][] {{"q", "p"}}));
+
+	assertSame(Type.EMPTY, Type.getEmpty());
+	assertSame(Type.EMPTY, 
+		   Type.create(new HashMap<Deficiency, DeficiencyNode>()));
+	assertSame(Type.BOOLEAN, createType(new String[] {"UNDET"}, 
+					    new String[0][]));
+
+	// the copy is detached from the type 
+	Map<Deficiency, DeficiencyNode> copy = chain.copy();
+	copy.put(def("w"), new DeficiencyNode(def("w")));
+	assertEquals(defs("x", "y", "z"), chain.asSet());
+	assertEquals(defs("x"), chain.getMin());
+	assertEquals(defs("z"), chain.getMax());
+	assertEquals(defs("d0"), diamond.getMin());
+	assertEquals(defs("d3"), diamond.getMax());
+	assertEquals(defs("p", "q", "r"), createDisjoint().getMin());
+	assertEquals(defs("p", "q", "r"), createDisjoint().getMax());
+    } // testInterning
+
+    /**
+     * Returns the types created by each thread 
+     * of {@link #testInternConcurrent()} in a fixed order. 
+     */
+    private static List<Type> createTypes() {
+	List<Type> res = new ArrayList<Type>();
+	for (int i = 0; i < 50; i++) {
+	    res.add(createChain());
+	    res.add(createDiamond());
+	    res.add(createDisjoint());
+	    res.add(createDiamond().remove(def("d0")));
+	    res.add(createChain().getInverse());
+	}
+	return res;
+    }
+
+    /**
+     * Threads started at the same time create the same types. 
+     * Each type is the same instance for all threads. 
+     */
+    public void testInternConcurrent() throws Throwable {
+	final CountDownLatch start = new CountDownLatch(1);
+	final List<List<Type>> results = new ArrayList<List<Type>>();
+	final Throwable[] failure = new Throwable[1];
+	List<Thread> threads = new ArrayList<Thread>();
+	for (int t = 0; t < 8; t++) {
+	    Thread thread = new Thread(new Runnable() {
+		    public void run() {
+			try {
+			    start.await();
+			    List<Type> types = createTypes();
+			    synchronized (results) {
+				results.add(types);
+			    }
+			} catch (Throwable e) {
+			    synchronized (results) {
+				failure[0] = e;
+			    }
+			}
+		    }
+		});
+	    threads.add(thread);
+	    thread.start();
+	}
+	start.countDown();
+	for (Thread thread : threads) {
+	    thread.join();
+	}
+	if (failure[0] != null) {
+	    throw failure[0];
+	}
+
+	assertEquals(8, results.size());
+	List<Type> exp = results.get(0);
+	for (List<Type> types : results) {
+	    for (int i = 0; i < exp.size(); i++) {
+		assertSame(exp.get(i), types.get(i));
+	    }
+	}
+    } // testInternConcurrent
+
+    public void testRemove() {
+	Type diamond = createDiamond();
+
+	Type removed = diamond.remove(def("d0"));
+	assertSame(removed, diamond.remove(def("d0")));
+	assertSame(createType(new String[] {"d1", "d2", "d3"}, 
+			      new String[][] {{"d3", "d1"}, {"d3", "d2"}}), 
+		   removed);
+	assertEquals(defs("d1", "d2"), removed.getMin());
+	assertSame(createType(new String[] {"d1", "d3"}, 
+			      new String[][] {{"d3", "d1"}}), 
+		   removed.remove(def("d2")));
+
+	Type above = diamond.removeAndAbove(def("d0"));
+	assertSame(Type.EMPTY, above);
+	above = removed.removeAndAbove(def("d1"));
+	assertSame(above, removed.removeAndAbove(def("d1")));
+	assertSame(createType(new String[] {"d2"}, new String[0][]), above);
+
+	Type chain = createChain();
+	assertSame(createType(new String[] {"y", "z"}, 
+			      new String[][] {{"z", "y"}}), 
+		   chain.remove(def("x")));
+	assertSame(Type.EMPTY, chain.removeAndAbove(def("x")));
+	assertSame(createType(new String[] {"p", "r"}, new String[0][]), 
+		   createDisjoint().removeAndAbove(def("q")));
+
+	// not minimal 
+	assertRemoveFails(diamond, def("d1"), false);
+	assertRemoveFails(diamond, def("d3"), true);
+	// not present 
+	assertRemoveFails(diamond, def("x"), false);
+	assertRemoveFails(removed, def("d0"), true);
+    } // testRemove
+
+    public void testCones() {
+	Type diamond = createDiamond();
+	assertEquals(defs("d0", "d1", "d2", "d3"), diamond.getCone(def("d3")));
+	assertEquals(defs("d0", "d1"),             diamond.getCone(def("d1")));
+	assertTrue (diamond.implies(def("d3"), def("d0")));
+	assertFalse(diamond.implies(def("d1"), def("d2")));
+	assertFalse(diamond.implies(def("d0"), def("d3")));
+
+	// on the view, the cones are restricted 
+	Type removed = diamond.remove(def("d0"));
+	assertEquals(defs("d1", "d2", "d3"), removed.getCone(def("d3")));
+	assertEquals(defs("d1"),             removed.getCone(def("d1")));
+	assertTrue (removed.implies(def("d3"), def("d2")));
+	assertFalse(removed.implies(def("d3"), def("d0")));
+	try {
+	    removed.getCone(def("d0"));
+	    fail("expected IllegalArgumentException. ");
+	} catch (IllegalArgumentException e) {
+	    // expected. 
+	}
+	try {
+	    removed.implies(def("d0"), def("d1"));
+	    fail("expected IllegalArgumentException. ");
+	} catch (IllegalArgumentException e) {
+	    // expected. 
+	}
+
+	// views and types built from scratch agree 
+	Type chain4 = createType(new String[] {"c0", "c1", "c2", "c3"}, 
+				 new String[][] {
+				     {"c1", "c0"}, {"c2", "c1"}, {"c3", "c2"}
+				 });
+	assertSameCones(createType(new String[] {"c1", "c2", "c3"}, 
+				   new String[][] {{"c2", "c1"}, {"c3", "c2"}}), 
+			chain4.remove(def("c0")));
+	assertSameCones(createType(new String[] {"c2", "c3"}, 
+				   new String[][] {{"c3", "c2"}}), 
+			chain4.remove(def("c0")).remove(def("c1")));
+	assertEquals(defs("c0", "c1", "c2", "c3"), chain4.getCone(def("c3")));
+	assertEquals(defs("c2", "c3"), 
+		     chain4.remove(def("c0")).remove(def("c1"))
+		     .getCone(def("c3")));
+
+	Type disjoint = createDisjoint();
+	for (Deficiency def : disjoint.asSet()) {
+	    assertEquals(defs(def.getName()), disjoint.getCone(def));
+	}
+    } // testCones
+
+    /**
+     * Returns the cone of <code>node</code> 
+     * found by a depth first search of the ordering 
+     * as {@link Type#getCone} did before the closure was indexed. 
+     */
+    private static Set<Deficiency> searchCone(DeficiencyNode node) {
+	Set<Deficiency> result = new HashSet<Deficiency>();
+	Stack<DeficiencyNode> toBeAdded = new Stack<DeficiencyNode>();
+	toBeAdded.push(node);
+	while (!toBeAdded.empty()) {
+	    node = toBeAdded.pop();
+	    result.add(node.getDeficiency());
+	    toBeAdded.addAll(node.getSuccessors());
+	}
+	return result;
+    }
+
+    /**
+     * Asserts that the cones of the deficiencies of <code>type</code> 
+     * are those in <code>def2cone</code> 
+     * restricted to the deficiencies of <code>type</code> 
+     * and are consistent with {@link Type#implies}. 
+     */
+    private static void assertCones(String msg, 
+				    Map<Deficiency, Set<Deficiency>> def2cone, 
+				    Type type) {
+	for (Deficiency def1 : type.asSet()) {
+	    Set<Deficiency> exp = new HashSet<Deficiency>(def2cone.get(def1));
+	    exp.retainAll(type.asSet());
+	    assertEquals(msg + " " + def1, exp, type.getCone(def1));
+	    for (Deficiency def2 : type.asSet()) {
+		assertEquals(msg + " " + def1 + " " + def2, 
+			     exp.contains(def2), type.implies(def1, def2));
+	    }
+	}
+    }
+
+    /**
+     * For random orderings of up to twelve deficiencies, 
+     * the cones and implications are those found by searching, 
+     * also on the views removing a minimal deficiency 
+     * and removing it and the deficiencies above. 
+     */
+    public void testConesRandom() {
+	for (long seed = 0; seed < 20; seed++) {
+	    Random rnd = new Random(seed);
+	    int num = 1 + rnd.nextInt(12);
+	    Map<Deficiency, DeficiencyNode> def2ord = 
+		new HashMap<Deficiency, DeficiencyNode>();
+	    DeficiencyNode[] nodes = new DeficiencyNode[num];
+	    for (int i = 0; i < num; i++) {
+		Deficiency def = def("s" + seed + "r" + i);
+		nodes[i] = new DeficiencyNode(def);
+		def2ord.put(def, nodes[i]);
+	    }
+	    // acyclic: each deficiency implies some with lower index 
+	    for (int i = 0; i < num; i++) {
+		for (int j = 0; j < i; j++) {
+		    if (rnd.nextInt(3) == 0) {
+			nodes[i].addSuccessor  (nodes[j]);
+			nodes[j].addPredecessor(nodes[i]);
+		    }
+		}
+	    }
+	    Map<Deficiency, Set<Deficiency>> def2cone = 
+		new HashMap<Deficiency, Set<Deficiency>>();
+	    for (DeficiencyNode node : nodes) {
+		def2cone.put(node.getDeficiency(), searchCone(node));
+	    }
+
+	    Type type = Type.create(def2ord);
+	    String msg = "seed " + seed;
+	    assertCones(msg, def2cone, type);
+	    for (Deficiency min : type.getMin()) {
+		assertCones(msg + " without " + min, 
+			    def2cone, type.remove(min));
+		assertCones(msg + " without above " + min, 
+			    def2cone, type.removeAndAbove(min));
+	    }
+	}
+    } // testConesRandom
+
+    /**
+     * A cyclic ordering is rejected when building the cones. 
+     */
+    public void testConesCyclic() {
+	Type cyclic = createType(new String[] {"u", "v", "w"}, 
+				 new String[][] {
+				     {"u", "v"}, {"v", "w"}, {"w", "v"}
+				 });
+	try {
+	    cyclic.implies(def("u"), def("w"));
+	    fail("expected IllegalStateException. ");
+	} catch (IllegalStateException e) {
+	    // expected. 
+	}
+    } // testConesCyclic
+
+    /**
+     * Asserts that {@link Type#getIdeals()} lists exactly the subsets 
+     * of <code>type</code> valid for it, 
+     * each once and with ascending cardinality. 
+     */
+    private static void assertIdeals(Type type, int numIdeals) {
+	List<Set<Deficiency>> ideals = type.getIdeals();
+	assertEquals(numIdeals, ideals.size());
+	assertEquals(numIdeals, new HashSet<Set<Deficiency>>(ideals).size());
+	assertTrue(ideals.get(0).isEmpty());
+	for (int i = 1; i < ideals.size(); i++) {
+	    assertTrue(ideals.get(i - 1).size() <= ideals.get(i).size());
+	}
+
+	List<Deficiency> defs = new ArrayList<Deficiency>(type.asSet());
+	int numValid = 0;
+	for (int bits = 0; bits < 1 << defs.size(); bits++) {
+	    Set<Deficiency> subset = new HashSet<Deficiency>();
+	    for (int i = 0; i < defs.size(); i++) {
+		if ((bits & 1 << i) != 0) {
+		    subset.add(defs.get(i));
+		}
+	    }
+	    if (type.isValid(subset)) {
+		numValid++;
+		assertTrue(ideals.contains(subset));
+	    }
+	}
+	assertEquals(numIdeals, numValid);
+    }
+
+    public void testIdeals() {
+	Type chain = createChain();
+	assertIdeals(chain, 4);
+	assertTrue(chain.getIdeals().contains(defs("x", "y")));
+	assertFalse(chain.isValid(defs("y")));
+
+	Type diamond = createDiamond();
+	assertIdeals(diamond, 6);
+	assertTrue(diamond.getIdeals().contains(defs("d0", "d2")));
+	assertFalse(diamond.isValid(defs("d0", "d1", "d3")));
+	assertIdeals(diamond.remove(def("d0")), 5);
+
+	assertIdeals(createDisjoint(), 8);
+	assertIdeals(Type.EMPTY, 1);
+	assertIdeals(Type.BOOLEAN, 2);
+    } // testIdeals
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // TypeTest
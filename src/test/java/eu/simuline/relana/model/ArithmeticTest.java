@@ -0,0 +1,237 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Type;
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ArithmeticTest.java
+ *
+ * Checks that the probabilities computed
+ * with the arithmetics based on <code>double</code>s
+ * are within the error bounds of {@link ProbEstimate}
+ * from the exact probabilities,
+ * also for a rare effect the probability of which underflows
+ * as a <code>double</code>.
+ *
+ *
+ * Created: Mon Oct 19 16:40:27 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ArithmeticTest.TestAll.class})
+public class ArithmeticTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The arithmetics based on <code>double</code>s.
+     */
+    private static final Arithmetic[] APPROX = {
+	Arithmetic.Primitive, Arithmetic.Logarithmic
+    };
+
+    /**
+     * The number of effects intersected to the rare effect.
+     */
+    private static final int RARE_VARS = 200;
+
+    /**
+     * The probability of the effects intersected to the rare effect.
+     */
+    private static final BigDecimal RARE_PROB = new BigDecimal("0.01");
+
+    /**
+     * The factor by which the first order bounds may be exceeded
+     * due to terms of higher order.
+     */
+    private static final double SLACK = 1 + 1e-6;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static ArithmeticTest TEST = new ArithmeticTest();
+
+    public static class TestAll {
+	@Test public void testExact() {
+	    ArithmeticTest.TEST.testExact();
+	}
+	@Test public void testBounds() {
+	    ArithmeticTest.TEST.testBounds();
+	}
+	@Test public void testRare() {
+	    ArithmeticTest.TEST.testRare();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the natural logarithm of the positive <code>val</code>
+     * accurate also if <code>val</code> underflows as a <code>double</code>.
+     */
+    private static double log(BigDecimal val) {
+	// val = mant * 10^exp with 1 <= mant < 10
+	int exp = val.precision() - val.scale() - 1;
+	double mant = val.movePointLeft(exp).doubleValue();
+	return Math.log(mant) + exp * Math.log(10);
+    }
+
+    /**
+     * Asserts that <code>est</code> is within its error bound
+     * from the exact probability <code>exp</code>.
+     * Besides the error bounded,
+     * the conversion of the representation
+     * by {@link ProbEstimate#getValue()}
+     * is accurate up to the unit round-off.
+     */
+    private static void assertWithinBound(String msg,
+					  BigDecimal exp,
+					  ProbEstimate est) {
+	if (exp.signum() == 0) {
+	    assertEquals(msg, 0, est.getValue().signum());
+	    return;
+	}
+	double relError = est.getValue().subtract(exp)
+	    .divide(exp, MathContext.DECIMAL64).abs().doubleValue();
+	assertTrue(msg + ": expected relative error at most " +
+		   est.getRelError() + " but found " + relError + ". ",
+		   relError <= est.getRelError() * SLACK
+		   + 2 * Arithmetic.UNIT_ROUNDOFF);
+    }
+
+    /**
+     * Returns a model with a rare effect <code>d</code>
+     * given by the intersection of {@link #RARE_VARS} effects
+     * with probability {@link #RARE_PROB}.
+     */
+    private static FlatCInstance createRare() {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Formula[] vars = new Formula[RARE_VARS];
+	for (int i = 0; i < vars.length; i++) {
+	    vars[i] = TestModels.createVar(effects, "x" + i, RARE_PROB);
+	}
+	SInstance serv = new SInstance(Type.BOOLEAN, null, "d");
+	serv.setFormula(TestModels.apply(Operation.BaseOps.Intersection,
+					 vars));
+	effects.put(Arrays.asList("d"), serv);
+	return new FlatCInstance(effects);
+    }
+
+    /**
+     * For the exact arithmetic,
+     * the estimate is the exact probability without error.
+     */
+    public void testExact() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+		ProbEstimate est =
+		    flatCInst.getProb(sPath, null, Arithmetic.Exact);
+		String msg = "seed " + seed + " " + sPath;
+		assertEquals(msg, Arithmetic.Exact, est.getArithmetic());
+		TestModels.assertProbEquals(msg, flatCInst.getProb(sPath),
+					    est.getValue());
+		assertEquals(msg, 0, est.getRelError(), 0);
+	    }
+	}
+    } // testExact
+
+    /**
+     * For the random models and the arithmetics based on doubles,
+     * with and without memo table,
+     * the probabilities are within the error bounds
+     * which are positive but small.
+     */
+    public void testBounds() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    for (Arithmetic arith : APPROX) {
+		ProbMemo memo = new ProbMemo();
+		for (List<String> sPath
+			 : TestModels.getFormulaPaths(flatCInst)) {
+		    BigDecimal exp = flatCInst.getProb(sPath);
+		    String msg = "seed " + seed + " " + sPath + " " + arith;
+		    ProbEstimate est = flatCInst.getProb(sPath, null, arith);
+		    assertEquals(msg, arith, est.getArithmetic());
+		    assertWithinBound(msg, exp, est);
+		    assertWithinBound(msg + " memo", exp,
+				      flatCInst.getProb(sPath, memo, arith));
+		    assertTrue(msg + ": expected small bound but found " +
+			       est.getRelError() + ". ",
+			       est.getRelError() < 1e-12);
+		}
+	    }
+	}
+    } // testBounds
+
+    /**
+     * The probability of the rare effect underflows
+     * for {@link Arithmetic#Primitive},
+     * whereas for {@link Arithmetic#Logarithmic}
+     * its logarithm is within the error bound.
+     */
+    public void testRare() {
+	FlatCInstance flatCInst = createRare();
+	List<String> sPath = Arrays.asList("d");
+	BigDecimal exp = flatCInst.getProb(sPath);
+	TestModels.assertProbEquals("exact", RARE_PROB.pow(RARE_VARS), exp);
+
+	ProbEstimate est = flatCInst.getProb(sPath, null,
+					     Arithmetic.Primitive);
+	assertEquals("primitive underflows", 0, est.getValue().signum());
+
+	est = flatCInst.getProb(sPath, null, Arithmetic.Logarithmic);
+	assertEquals("value underflows", 0, est.getValue().signum());
+	double expLog = log(exp);
+	// the absolute error of the logarithm
+	// is the relative error of the probability
+	double error = Math.abs(est.getLog() - expLog);
+	assertTrue("expected error at most " + est.getRelError() +
+		   " but found " + error + ". ",
+		   error <= est.getRelError() * SLACK
+		   + 2 * Arithmetic.UNIT_ROUNDOFF * Math.abs(expLog));
+	assertTrue("expected small bound but found " + est.getRelError(),
+		   est.getRelError() < 1e-9);
+    } // testRare
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // ArithmeticTest
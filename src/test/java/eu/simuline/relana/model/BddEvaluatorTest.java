@@ -0,0 +1,425 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import eu.simuline.relana.expressions.Formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * BddEvaluatorTest.java
+ *
+ * Compares the probabilities obtained from the diagrams
+ * with those of the Shannon expansion of {@link FlatCInstance}
+ * for the static variable order, after reordering
+ * and with dynamic reordering.
+ * The minimal cut sets are compared with those found
+ * by enumerating all values of the basic events
+ * and the Birnbaum importance with the difference quotients
+ * of the probabilities of models with a changed probability of an event.
+ *
+ *
+ * Created: Sun Oct 18 03:58:21 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({BddEvaluatorTest.TestAll.class})
+public class BddEvaluatorTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The maximal orders the cut sets are truncated to.
+     */
+    private static final int[] MAX_ORDERS = {0, 1, 2, Integer.MAX_VALUE};
+
+    /**
+     * The cut-off probabilities the cut sets are truncated to.
+     */
+    private static final BigDecimal[] CUT_OFFS = {
+	null, new BigDecimal("0.05"), new BigDecimal("0.3")
+    };
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static BddEvaluatorTest TEST = new BddEvaluatorTest();
+
+    public static class TestAll {
+	@Test public void testStaticOrder() throws Exception {
+	    BddEvaluatorTest.TEST.testStaticOrder();
+	}
+	@Test public void testReorder() throws Exception {
+	    BddEvaluatorTest.TEST.testReorder();
+	}
+	@Test public void testAutoReorder() throws Exception {
+	    BddEvaluatorTest.TEST.testAutoReorder();
+	}
+	@Test public void testRandom() throws Exception {
+	    BddEvaluatorTest.TEST.testRandom();
+	}
+	@Test public void testCutSets() {
+	    BddEvaluatorTest.TEST.testCutSets();
+	}
+	@Test public void testImportance() {
+	    BddEvaluatorTest.TEST.testImportance();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Compares the probabilities of all effects given by formulae
+     * of <code>flatCInst</code> obtained from a {@link BddEvaluator}
+     * with those obtained from <code>flatCInst</code> itself.
+     *
+     * @param reorder
+     *    whether to reorder the diagram
+     *    after creating the roots of all effects.
+     * @param autoReorder
+     *    whether to reorder dynamically.
+     */
+    private static void checkProbs(String name,
+				   FlatCInstance flatCInst,
+				   boolean reorder,
+				   boolean autoReorder) {
+	BddEvaluator eval = new BddEvaluator(flatCInst, autoReorder);
+	List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	for (List<String> sPath : sPaths) {
+	    eval.getRoot(sPath);
+	}
+	if (reorder) {
+	    eval.reorder();
+	}
+	for (List<String> sPath : sPaths) {
+	    TestModels.assertProbEquals(name + " " + sPath,
+					flatCInst.getProb(sPath),
+					eval.getProb(sPath));
+	}
+    }
+
+    /**
+     * Returns whether the effect <code>serv</code> given by a formula
+     * occurs if exactly the events in <code>set</code> occur.
+     * The events are the variables described for {@link BddEvaluator},
+     * the <code>i</code>th of which is the deficiency
+     * <code>var2def.get(i)</code>
+     * of the <code>var2input.get(i)</code>th input of <code>form</code>.
+     * The events of an input come after those below.
+     *
+     * @param form
+     *    the compiled formula of the effect.
+     */
+    private static boolean occurs(CompiledFormula form,
+				  long[] regs,
+				  int set,
+				  List<Integer> var2input,
+				  List<Deficiency> var2def) {
+	List<Set<Deficiency>> values = new ArrayList<Set<Deficiency>>();
+	for (int input = 0; input < form.getInputs().size(); input++) {
+	    form.clearInput(regs, input);
+	    values.add(new HashSet<Deficiency>());
+	}
+	for (int var = 0; var < var2def.size(); var++) {
+	    if ((set & (1 << var)) == 0) {
+		continue;
+	    }
+	    int input = var2input.get(var);
+	    Deficiency def = var2def.get(var);
+	    Set<Deficiency> below = DeficiencyNode
+		.unwrap(form.getInputs().get(input).getType()
+			.getDeficiency2ordering().get(def).getSuccessors());
+	    if (values.get(input).containsAll(below)) {
+		values.get(input).add(def);
+		form.addToInput(regs, input, def);
+	    }
+	}
+	return form.occurs(regs);
+    }
+
+    /**
+     * Returns the minimal cut sets of the effect <code>sPath</code>
+     * of a model {@link TestModels#createRandom(long)}
+     * by enumerating all values of the events
+     * of the effects with distribution of the same type,
+     * on which alone the effect depends.
+     * These are the minimal sets of events
+     * such that the effect occurs if exactly these events occur.
+     *
+     * @return
+     *    a map from the cut sets given by the names of their events
+     *    as returned by {@link CutSets.Event#toString()}
+     *    to their probabilities.
+     */
+    private static Map<Set<String>, BigDecimal>
+	getMinCutSets(FlatCInstance flatCInst, List<String> sPath) {
+
+	SInstance serv = flatCInst.getEffect(sPath);
+	List<SInstance> inputs = new ArrayList<SInstance>();
+	List<Integer> var2input = new ArrayList<Integer>();
+	List<Deficiency> var2def = new ArrayList<Deficiency>();
+	List<String> var2name = new ArrayList<String>();
+	List<BigDecimal> var2prob = new ArrayList<BigDecimal>();
+	for (Map.Entry<List<String>, SInstance> entry
+		 : flatCInst.getEffects().entrySet()) {
+	    SInstance base = entry.getValue();
+	    if (base.getDistr() == null ||
+		!base.getType().equals(serv.getType())) {
+		continue;
+	    }
+	    for (Deficiency def : BddEvaluator.bottomUp(base.getType())) {
+		var2input.add(inputs.size());
+		var2def  .add(def);
+		var2name .add(entry.getKey() + "." + def);
+		var2prob .add(base.getDistr().getProb(def));
+	    }
+	    inputs.add(base);
+	}
+	CompiledFormula form = new CompiledFormula
+	    (Formula.Var.create(serv, sPath.toString()), inputs);
+	long[] regs = form.newRegisters();
+
+	// by increasing order: supersets of cut sets found are not minimal
+	List<Integer> minimal = new ArrayList<Integer>();
+	int numVars = var2def.size();
+	for (int order = 0; order <= numVars; order++) {
+	    sets:
+	    for (int set = 0; set < 1 << numVars; set++) {
+		if (Integer.bitCount(set) != order) {
+		    continue;
+		}
+		for (int cut : minimal) {
+		    if ((set & cut) == cut) {
+			continue sets;
+		    }
+		}
+		if (occurs(form, regs, set, var2input, var2def)) {
+		    minimal.add(set);
+		}
+	    }
+	}
+
+	Map<Set<String>, BigDecimal> res =
+	    new HashMap<Set<String>, BigDecimal>();
+	for (int cut : minimal) {
+	    Set<String> names = new HashSet<String>();
+	    BigDecimal prob = BigDecimal.ONE;
+	    for (int var = 0; var < numVars; var++) {
+		if ((cut & (1 << var)) != 0) {
+		    names.add(var2name.get(var));
+		    prob = prob.multiply(var2prob.get(var));
+		}
+	    }
+	    res.put(names, prob);
+	}
+	return res;
+    }
+
+    /**
+     * Asserts that <code>act</code> are the cut sets of <code>exp</code>
+     * up to order <code>maxOrder</code>
+     * with probability at least <code>cutOff</code>
+     * sorted by decreasing probability.
+     *
+     * @param exp
+     *    all minimal cut sets
+     *    as returned by {@link #getMinCutSets(FlatCInstance, List)}.
+     */
+    private static void checkCutSets(String msg,
+				     Map<Set<String>, BigDecimal> exp,
+				     CutSets act,
+				     int maxOrder,
+				     BigDecimal cutOff) {
+	int numMinimal = 0;
+	Map<Set<String>, BigDecimal> retained =
+	    new HashMap<Set<String>, BigDecimal>();
+	for (Map.Entry<Set<String>, BigDecimal> entry : exp.entrySet()) {
+	    if (entry.getKey().size() > maxOrder) {
+		continue;
+	    }
+	    numMinimal++;
+	    if (cutOff == null || entry.getValue().compareTo(cutOff) >= 0) {
+		retained.put(entry.getKey(), entry.getValue());
+	    }
+	}
+	assertEquals(msg, numMinimal, act.getNumMinimal().intValue());
+
+	Set<Set<String>> found = new HashSet<Set<String>>();
+	BigDecimal last = BigDecimal.ONE;
+	for (CutSets.CutSet cutSet : act.getCutSets()) {
+	    Set<String> names = new HashSet<String>();
+	    for (CutSets.Event event : cutSet.getEvents()) {
+		names.add(event.toString());
+	    }
+	    assertEquals(msg, cutSet.getOrder(), names.size());
+	    assertTrue(msg + ": unexpected cut set " + cutSet + ". ",
+		       retained.containsKey(names));
+	    TestModels.assertProbEquals(msg + " " + names,
+					retained.get(names),
+					cutSet.getProb());
+	    assertTrue(msg + ": expected decreasing probabilities. ",
+		       cutSet.getProb().compareTo(last) <= 0);
+	    last = cutSet.getProb();
+	    found.add(names);
+	}
+	assertEquals(msg, retained.keySet(), found);
+    }
+
+    /**
+     * Returns the distribution of the effect <code>serv</code>
+     * except that the deficiency <code>def</code>
+     * has probability <code>prob</code>.
+     */
+    private static ProbDistr replaceProb(SInstance serv,
+					 Deficiency def,
+					 BigDecimal prob) {
+	Map<Deficiency, BigDecimal> def2prob =
+	    new HashMap<Deficiency, BigDecimal>();
+	for (Deficiency other : serv.getType().asSet()) {
+	    def2prob.put(other, serv.getDistr().getProb(other));
+	}
+	def2prob.put(def, prob);
+	return new ProbDistr(serv.getType(), def2prob);
+    }
+
+    public void testStaticOrder() throws Exception {
+	for (String project : TestModels.PROJECTS) {
+	    checkProbs(project, TestModels.load(project), false, false);
+	}
+    } // testStaticOrder
+
+    public void testReorder() throws Exception {
+	for (String project : TestModels.PROJECTS) {
+	    checkProbs(project, TestModels.load(project), true,  false);
+	}
+    } // testReorder
+
+    public void testAutoReorder() throws Exception {
+	for (String project : TestModels.PROJECTS) {
+	    checkProbs(project, TestModels.load(project), false, true);
+	}
+    } // testAutoReorder
+
+    public void testRandom() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    String name = "seed " + seed;
+	    checkProbs(name, flatCInst, false, false);
+	    checkProbs(name, flatCInst, true,  false);
+	    checkProbs(name, flatCInst, false, true);
+	}
+    } // testRandom
+
+    /**
+     * For each effect given by a formula of the random models,
+     * the minimal cut sets coincide with those found by enumeration
+     * for all combinations of maximal orders and cut-off probabilities,
+     * for the static variable order and after reordering.
+     */
+    public void testCutSets() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	    BddEvaluator eval = new BddEvaluator(flatCInst);
+	    BddEvaluator reordered = new BddEvaluator(flatCInst);
+	    for (List<String> sPath : sPaths) {
+		reordered.getRoot(sPath);
+	    }
+	    reordered.reorder();
+
+	    for (List<String> sPath : sPaths) {
+		Map<Set<String>, BigDecimal> exp =
+		    getMinCutSets(flatCInst, sPath);
+		for (int maxOrder : MAX_ORDERS) {
+		    for (BigDecimal cutOff : CUT_OFFS) {
+			String msg = "seed " + seed + " " + sPath +
+			    " order " + maxOrder + " cut-off " + cutOff;
+			checkCutSets(msg, exp,
+				     eval.getCutSets(sPath, maxOrder, cutOff),
+				     maxOrder, cutOff);
+			checkCutSets(msg + " reordered", exp,
+				     reordered.getCutSets(sPath,
+							  maxOrder, cutOff),
+				     maxOrder, cutOff);
+		    }
+		}
+	    }
+	}
+    } // testCutSets
+
+    /**
+     * For each effect given by a formula of the random models
+     * and for each basic event,
+     * the Birnbaum importance coincides with the difference quotient
+     * of the probabilities of the effect
+     * in the model and in a model with changed probability of the event,
+     * which is exact because the probability is affine
+     * in the probability of each event.
+     */
+    public void testImportance() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    BddEvaluator eval = new BddEvaluator(flatCInst);
+	    for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+		ImportanceMeasures imp = eval.getImportance(sPath);
+		String msg = "seed " + seed + " " + sPath;
+		TestModels.assertProbEquals(msg, flatCInst.getProb(sPath),
+					    imp.getProb());
+		for (int ind = 0; ind < imp.getEvents().size(); ind++) {
+		    CutSets.Event event = imp.getEvents().get(ind);
+		    BigDecimal prob = event.getProb();
+		    BigDecimal changed = prob.compareTo(new BigDecimal("0.5"))
+			== 0 ? new BigDecimal("0.25") : new BigDecimal("0.5");
+		    String name = event.getPath()
+			.get(event.getPath().size() - 1);
+		    FlatCInstance other = TestModels.createRandom
+			(seed, Collections.singletonMap
+			 (name, replaceProb(flatCInst.getEffect
+					    (event.getPath()),
+					    event.getDeficiency(), changed)));
+		    TestModels.assertProbEquals
+			(msg + " " + event,
+			 other.getProb(sPath).subtract(imp.getProb()),
+			 imp.getBirnbaum(ind).multiply(changed.subtract(prob)));
+		}
+	    }
+	}
+    } // testImportance
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // BddEvaluatorTest
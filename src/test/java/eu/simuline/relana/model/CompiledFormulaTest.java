@@ -0,0 +1,329 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Type;
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * CompiledFormulaTest.java
+ *
+ * Compares the values of {@link CompiledFormula}e
+ * with those obtained by applying the operations of the formulae
+ * recursively, for random values of the inputs.
+ * The formulae are those of the random models
+ * and random formulae with maps by {@link DeficiencyMap}s
+ * between types with several deficiencies.
+ *
+ *
+ * Created: Mon Oct 19 15:22:36 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({CompiledFormulaTest.TestAll.class})
+public class CompiledFormulaTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The number of random values of the inputs per formula.
+     */
+    private static final int VALUES = 200;
+
+    /**
+     * The number of random formulae per type and seed
+     * with maps.
+     */
+    private static final int FORMULAE = 10;
+
+    /**
+     * The number of effects with distribution per type
+     * of the models with maps.
+     */
+    private static final int INPUTS = 2;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static CompiledFormulaTest TEST = new CompiledFormulaTest();
+
+    public static class TestAll {
+	@Test public void testRandom() {
+	    CompiledFormulaTest.TEST.testRandom();
+	}
+	@Test public void testMaps() {
+	    CompiledFormulaTest.TEST.testMaps();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the value of <code>form</code>
+     * by applying the operations recursively
+     * where the effects with distribution
+     * have the values given by <code>values</code>
+     * and effects without distribution are given by their formulae.
+     */
+    static Set<Deficiency>
+	eval(Formula form, Map<SInstance, Set<Deficiency>> values) {
+
+	if (form instanceof Formula.Const) {
+	    return form.getConst();
+	}
+	if (form instanceof Formula.Var) {
+	    SInstance serv = ((Formula.Var) form).getVar();
+	    Set<Deficiency> res = values.get(serv);
+	    return res == null ? eval(serv.getFormula(), values) : res;
+	}
+	Formula.Comp comp = (Formula.Comp) form;
+	Set<Set<Deficiency>> param = new HashSet<Set<Deficiency>>();
+	for (Formula arg : comp.getArgs()) {
+	    param.add(eval(arg, values));
+	}
+	return comp.getEval().eval(param);
+    }
+
+    /**
+     * Asserts that the compiled formula of <code>serv</code>
+     * with inputs <code>inputs</code>
+     * coincides with {@link #eval(Formula, Map)}
+     * for {@link #VALUES} random ideals as values of the inputs.
+     */
+    private static void checkCompiled(String msg,
+				      SInstance serv,
+				      List<SInstance> inputs,
+				      Random rnd) {
+	Formula form = Formula.Var.create(serv, serv.getName());
+	CompiledFormula compiled = new CompiledFormula(form, inputs);
+	assertEquals(msg, inputs, compiled.getInputs());
+	long[] regs = compiled.newRegisters();
+	Map<SInstance, Set<Deficiency>> values =
+	    new HashMap<SInstance, Set<Deficiency>>();
+	for (int i = 0; i < VALUES; i++) {
+	    for (int input = 0; input < inputs.size(); input++) {
+		List<Set<Deficiency>> ideals =
+		    inputs.get(input).getType().getIdeals();
+		Set<Deficiency> value = ideals.get(rnd.nextInt(ideals.size()));
+		values.put(inputs.get(input), value);
+		compiled.clearInput(regs, input);
+		for (Deficiency def : value) {
+		    compiled.addToInput(regs, input, def);
+		}
+	    }
+	    Set<Deficiency> exp = eval(form, values);
+	    String vMsg = msg + " " + values;
+	    assertEquals(vMsg, exp, compiled.evaluate(regs));
+	    assertEquals(vMsg, !exp.isEmpty(), compiled.occurs(regs));
+	}
+    }
+
+    /**
+     * Returns the effects with distribution of <code>flatCInst</code>.
+     */
+    private static List<SInstance> getInputs(FlatCInstance flatCInst) {
+	List<SInstance> res = new ArrayList<SInstance>();
+	for (SInstance serv : flatCInst.getEffects().values()) {
+	    if (serv.getDistr() != null) {
+		res.add(serv);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the type of the values of <code>map</code>.
+     */
+    private static Type getTargetType(Operation.Maps map) {
+	return map.getFunctor() == Operation.Functor.Covariant
+	    ? map.getMap().getTarget().getType()
+	    : map.getMap().getSource().getType();
+    }
+
+    /**
+     * Returns a random formula of type <code>type</code>
+     * of depth at most <code>depth</code>
+     * over the variables in <code>type2vars</code>
+     * applying union, intersection,
+     * complement for Boolean formulae
+     * and the maps in <code>maps</code> with target <code>type</code>.
+     * So the values of the formulae are ideals
+     * as the maps require for their arguments.
+     */
+    private static Formula createFormula(Random rnd,
+					 int depth,
+					 Type type,
+					 Map<Type, List<Formula>> type2vars,
+					 List<Operation.Maps> maps) {
+	List<Formula> vars = type2vars.get(type);
+	if (depth == 0 || rnd.nextInt(4) == 0) {
+	    return vars.get(rnd.nextInt(vars.size()));
+	}
+	List<Operation.Maps> into = new ArrayList<Operation.Maps>();
+	for (Operation.Maps map : maps) {
+	    if (getTargetType(map).equals(type)) {
+		into.add(map);
+	    }
+	}
+	Set<Formula> args = new HashSet<Formula>();
+	Operation.Eval eval;
+	switch (rnd.nextInt(4)) {
+	case 0:
+	    if (!type.equals(Type.BOOLEAN)) {
+		// the complement of an ideal need not be an ideal
+		return vars.get(rnd.nextInt(vars.size()));
+	    }
+	    eval = Operation.getOperation(Operation.BaseOps.Complement)
+		.getEval(type);
+	    args.add(createFormula(rnd, depth - 1, type, type2vars, maps));
+	    break;
+	case 1:
+	    eval = Operation.getOperation(Operation.BaseOps.Intersection)
+		.getEval(type);
+	    args.add(createFormula(rnd, depth - 1, type, type2vars, maps));
+	    args.add(createFormula(rnd, depth - 1, type, type2vars, maps));
+	    break;
+	case 2:
+	    eval = Operation.getOperation(Operation.BaseOps.Union)
+		.getEval(type);
+	    args.add(createFormula(rnd, depth - 1, type, type2vars, maps));
+	    args.add(createFormula(rnd, depth - 1, type, type2vars, maps));
+	    break;
+	default:
+	    if (into.isEmpty()) {
+		return vars.get(rnd.nextInt(vars.size()));
+	    }
+	    Operation.Maps map = into.get(rnd.nextInt(into.size()));
+	    eval = map;
+	    args.add(createFormula(rnd, depth - 1, map.getSourceType(),
+				   type2vars, maps));
+	    break;
+	}
+	return Formula.getFormula(eval, args);
+    }
+
+    /**
+     * For the effects given by formulae of the random models,
+     * the compiled formulae coincide with the recursive evaluation.
+     */
+    public void testRandom() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    List<SInstance> inputs = getInputs(flatCInst);
+	    Random rnd = new Random(seed);
+	    for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+		checkCompiled("seed " + seed + " " + sPath,
+			      flatCInst.getEffect(sPath), inputs, rnd);
+	    }
+	}
+    } // testRandom
+
+    /**
+     * For random formulae with maps by the {@link DeficiencyMap}s
+     * of a chain, a diamond and a subclass of the chain
+     * replacing one of its deficiencies by the diamond,
+     * covariant and contravariant,
+     * the compiled formulae coincide with the recursive evaluation.
+     * The formulae are given by effects
+     * defined by the formulae of other effects.
+     */
+    public void testMaps() {
+	SClass chain = DeficiencyMapTest.getChain();
+	SClass[] sClasses = {
+	    SClass.BOOLEAN,
+	    chain,
+	    DeficiencyMapTest.getDiamond(),
+	    DeficiencyMapTest.getSubChain(chain)
+	};
+	List<Operation.Maps> maps = new ArrayList<Operation.Maps>();
+	for (SClass sClass : sClasses) {
+	    DeficiencyMap map = sClass.getDeficiencyMap();
+	    if (map == null) {
+		continue;
+	    }
+	    for (Operation.Functor funct : Operation.Functor.values()) {
+		if (funct.isAllowed(map)) {
+		    maps.add(new Operation.Maps(sClass.getName(),
+						false, map, funct));
+		}
+	    }
+	}
+	assertEquals(2 * (sClasses.length - 1), maps.size());
+
+	for (long seed : TestModels.SEEDS) {
+	    Random rnd = new Random(seed);
+	    Map<Type, List<Formula>> type2vars =
+		new HashMap<Type, List<Formula>>();
+	    List<SInstance> inputs = new ArrayList<SInstance>();
+	    for (SClass sClass : sClasses) {
+		Type type = sClass.getType();
+		List<Formula> vars = new ArrayList<Formula>();
+		for (int i = 0; i < INPUTS; i++) {
+		    String name = sClass.getName() + i;
+		    SInstance serv = new SInstance
+			(type, TestModels.createDistr(rnd, type), name);
+		    inputs.add(serv);
+		    vars.add(Formula.Var.create(serv, name));
+		}
+		type2vars.put(type, vars);
+	    }
+
+	    List<SInstance> derived = new ArrayList<SInstance>();
+	    for (int i = 0; i < FORMULAE; i++) {
+		for (SClass sClass : sClasses) {
+		    Type type = sClass.getType();
+		    String name = sClass.getName() + "f" + i;
+		    SInstance serv = new SInstance(type, null, name);
+		    serv.setFormula(createFormula(rnd, 4, type,
+						  type2vars, maps));
+		    derived.add(serv);
+		    // later formulae may refer to this effect
+		    type2vars.get(type).add(Formula.Var.create(serv, name));
+		}
+	    }
+
+	    for (SInstance serv : derived) {
+		checkCompiled("seed " + seed + " " + serv.getName() +
+			      " = " + serv.getFormula(),
+			      serv, inputs, rnd);
+	    }
+	}
+    } // testMaps
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // CompiledFormulaTest
@@ -5,8 +5,9 @@ import eu.simuline.testhelpers.Actions;
 // import eu.simuline.testhelpers.Accessor;
 // import eu.simuline.testhelpers.Assert;
 
-// import static org.junit.Assert.assertEquals;
-// import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
 // import static org.junit.Assert.assertNull;
 // import static org.junit.Assert.fail;
 
@@ -18,6 +19,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * DeficiencyMapTest.java
@@ -51,6 +57,18 @@ public class DeficiencyMapTest {
 	@Test public void testCompose() {
 	    DeficiencyMapTest.TEST.testCompose();
 	} // testCompose
+
+	@Test public void testCov() {
+	    DeficiencyMapTest.TEST.testCov();
+	} // testCov
+
+	@Test public void testCont() {
+	    DeficiencyMapTest.TEST.testCont();
+	} // testCont
+
+	@Test public void testIsIsotone() {
+	    DeficiencyMapTest.TEST.testIsIsotone();
+	} // testIsIsotone
     } // class TestAll
 
 
@@ -60,13 +78,194 @@ public class DeficiencyMapTest {
 
 
 
+    private static final Package PKG = 
+	Package.getPackage(Arrays.asList("DeficiencyMapTest"));
+
+    /**
+     * Returns the nodes of deficiencies named <code>names</code> 
+     * where each pair in <code>relations</code> 
+     * consists of a deficiency and one it implies. 
+     */
+    private static Map<Deficiency, DeficiencyNode> 
+	getNodes(String[] names, String[][] relations) {
+	Map<Deficiency, DeficiencyNode> def2ord = 
+	    new HashMap<Deficiency, DeficiencyNode>();
+	for (String name : names) {
+	    def2ord.put(new Deficiency(name), 
+			new DeficiencyNode(new Deficiency(name)));
+	}
+	for (String[] rel : relations) {
+	    DeficiencyNode above = def2ord.get(new Deficiency(rel[0]));
+	    DeficiencyNode below = def2ord.get(new Deficiency(rel[1]));
+	    above.addSuccessor  (below);
+	    below.addPredecessor(above);
+	}
+	return def2ord;
+    }
+
+    private static Set<Deficiency> defs(String... names) {
+	Set<Deficiency> res = new HashSet<Deficiency>();
+	for (String name : names) {
+	    res.add(new Deficiency(name));
+	}
+	return res;
+    }
+
+    /**
+     * Returns the chain <code>x &lt; y &lt; z</code> as an inner class. 
+     */
+    static SClass getChain() {
+	return SClass.getSClass("Chain", PKG, SClass.BOOLEAN, 
+				new HashMap<Deficiency, SClass>(), 
+				getNodes(new String[] {"x", "y", "z"}, 
+					 new String[][] {
+					     {"y", "x"}, {"z", "y"}
+					 }));
+    }
+
+    /**
+     * Returns the diamond with bottom <code>d0</code>, 
+     * top <code>d3</code> and <code>d1</code>, <code>d2</code> in between 
+     * as an inner class. 
+     */
+    static SClass getDiamond() {
+	return SClass.getSClass("Diamond", PKG, SClass.BOOLEAN, 
+				new HashMap<Deficiency, SClass>(), 
+				getNodes(new String[] {"d0", "d1", "d2", "d3"}, 
+					 new String[][] {
+					     {"d1", "d0"}, {"d2", "d0"}, 
+					     {"d3", "d1"}, {"d3", "d2"}
+					 }));
+    }
+
+    /**
+     * Returns the subclass of <code>chain</code> 
+     * replacing <code>y</code> by the diamond, 
+     * so that its map to <code>chain</code> maps the diamond to <code>y</code> 
+     * and <code>x</code> and <code>z</code> identically. 
+     */
+    static SClass getSubChain(SClass chain) {
+	Map<Deficiency, SClass> oldDef2innerClasses = 
+	    new HashMap<Deficiency, SClass>();
+	oldDef2innerClasses.put(new Deficiency("y"), getDiamond());
+	return SClass.getSClass("SubChain", PKG, chain, 
+				oldDef2innerClasses, 
+				new HashMap<Deficiency, DeficiencyNode>());
+    }
+
+    /**
+     * Returns the image of <code>defs</code> under <code>map</code> 
+     * computed deficiency by deficiency. 
+     */
+    private static Set<Deficiency> getImage(DeficiencyMap map, 
+					    Set<Deficiency> defs) {
+	Set<Deficiency> res = new HashSet<Deficiency>();
+	for (Deficiency def : defs) {
+	    Deficiency img = map.map(def);
+	    if (img != null) {
+		res.add(img);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the inverse image of <code>defs</code> under <code>map</code> 
+     * computed deficiency by deficiency. 
+     */
+    private static Set<Deficiency> getInvImage(DeficiencyMap map, 
+					       Set<Deficiency> defs) {
+	Set<Deficiency> res = new HashSet<Deficiency>();
+	for (Deficiency def : map.getSource().getType().asSet()) {
+	    if (defs.contains(map.map(def))) {
+		res.add(def);
+	    }
+	}
+	return res;
+    }
+
     public void testConstructor() {
 
     } // testConstructor
 
     public void testCompose() {
+	SClass chain = getChain();
+	SClass sub = getSubChain(chain);
+	DeficiencyMap map = sub.getDeficiencyMap()
+	    .compose(chain.getDeficiencyMap());
+	assertTrue(map.getSource() == sub);
+	assertTrue(map.getTarget() == SClass.BOOLEAN);
+	for (Deficiency def : sub.getType().asSet()) {
+	    assertEquals(Deficiency.UNDET, map.map(def));
+	}
     } // testCompose
 
+    public void testCov() {
+	SClass chain = getChain();
+	DeficiencyMap map = getSubChain(chain).getDeficiencyMap();
+	assertEquals(defs(),         map.cov(defs()));
+	assertEquals(defs("x"),      map.cov(defs("x")));
+	assertEquals(defs("x", "y"), map.cov(defs("x", "d0")));
+	assertEquals(defs("x", "y"), map.cov(defs("x", "d0", "d1", "d2")));
+	assertEquals(defs("x", "y", "z"), map.cov(map.getSource().getType()
+						  .asSet()));
+
+	SClass[] sClasses = {getDiamond(), chain, getSubChain(chain)};
+	for (SClass sClass : sClasses) {
+	    map = sClass.getDeficiencyMap();
+	    for (Set<Deficiency> ideal : sClass.getType().getIdeals()) {
+		assertEquals(getImage(map, ideal), map.cov(ideal));
+	    }
+	}
+    } // testCov
+
+    public void testCont() {
+	SClass chain = getChain();
+	DeficiencyMap map = getSubChain(chain).getDeficiencyMap();
+	assertEquals(defs(),         map.cont(defs()));
+	assertEquals(defs("x"),      map.cont(defs("x")));
+	assertEquals(defs("x", "d0", "d1", "d2", "d3"), 
+		     map.cont(defs("x", "y")));
+
+	SClass[] sClasses = {getDiamond(), chain, getSubChain(chain)};
+	for (SClass sClass : sClasses) {
+	    map = sClass.getDeficiencyMap();
+	    for (Set<Deficiency> ideal : map.getTarget().getType().getIdeals()) {
+		assertEquals(getInvImage(map, ideal), map.cont(ideal));
+	    }
+	}
+    } // testCont
+
+    public void testIsIsotone() {
+	SClass chain = getChain();
+	assertTrue(getDiamond()     .getDeficiencyMap().isIsotone());
+	assertTrue(chain            .getDeficiencyMap().isIsotone());
+	assertTrue(getSubChain(chain).getDeficiencyMap().isIsotone());
+
+	// the identity 
+	DeficiencyMap map = 
+	    new DeficiencyMap(new HashMap<Set<Deficiency>, Deficiency>(), 
+			      chain, 
+			      chain, 
+			      defs("x", "y", "z"));
+	assertTrue(map.isIsotone());
+
+	// exchanging x and z reverses the order 
+	Map<Set<Deficiency>, Deficiency> setOfNew2old = 
+	    new HashMap<Set<Deficiency>, Deficiency>();
+	setOfNew2old.put(defs("x"), new Deficiency("z"));
+	setOfNew2old.put(defs("z"), new Deficiency("x"));
+	map = new DeficiencyMap(setOfNew2old, chain, chain, defs("y"));
+	assertFalse(map.isIsotone());
+
+	// the cone of y is not within the domain 
+	map = new DeficiencyMap(new HashMap<Set<Deficiency>, Deficiency>(), 
+				chain, 
+				chain, 
+				defs("y", "z"));
+	assertFalse(map.isIsotone());
+    } // testIsIsotone
+
     /* -------------------------------------------------------------------- *
      * framework.                                                           *
      * -------------------------------------------------------------------- */
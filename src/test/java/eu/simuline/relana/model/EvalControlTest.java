@@ -0,0 +1,369 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EvalControlTest.java
+ *
+ * Tests evaluations controlled by an {@link EvalControl}:
+ * the node and time limits, cancellation also from another thread
+ * and the progress reported to the listener.
+ * Evaluations which are stopped yield bounds
+ * enclosing the exact probability.
+ *
+ *
+ * Created: Mon Oct 19 14:07:52 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({EvalControlTest.TestAll.class})
+public class EvalControlTest {
+
+    /* -------------------------------------------------------------------- *
+     * inner classes.                                                       *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Records the progress reported.
+     */
+    static class Recorder implements EvalControl.Listener {
+	final List<BigDecimal> resolved = new ArrayList<BigDecimal>();
+	final List<ProbInterval> bounds = new ArrayList<ProbInterval>();
+
+	public void progress(EvalControl control) {
+	    this.resolved.add(control.getResolvedMass());
+	    this.bounds  .add(control.getBounds());
+	}
+    } // class Recorder
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The path of the effect evaluated.
+     */
+    private static final List<String> PATH = Arrays.asList("d");
+
+    /**
+     * The number of rungs of {@link TestModels#createLadder(int)}.
+     */
+    private static final int RUNGS = 12;
+
+    /**
+     * The time limits in milliseconds
+     * not reached by the evaluation,
+     * the larger of which overflow if converted to nanoseconds.
+     */
+    private static final long[] LARGE_LIMITS = {
+	60000, Long.MAX_VALUE / 1000, Long.MAX_VALUE - 1, Long.MAX_VALUE
+    };
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static EvalControlTest TEST = new EvalControlTest();
+
+    public static class TestAll {
+	@Test public void testUnlimited() {
+	    EvalControlTest.TEST.testUnlimited();
+	}
+	@Test public void testNodeLimit() {
+	    EvalControlTest.TEST.testNodeLimit();
+	}
+	@Test public void testTimeLimit() {
+	    EvalControlTest.TEST.testTimeLimit();
+	}
+	@Test public void testCancel() throws InterruptedException {
+	    EvalControlTest.TEST.testCancel();
+	}
+	@Test public void testListener() {
+	    EvalControlTest.TEST.testListener();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Evaluates {@link #PATH} of <code>flatCInst</code>
+     * under the control of <code>control</code>
+     * expecting that the evaluation is stopped for reason <code>stop</code>
+     * and returns the bounds obtained.
+     * These enclose the exact probability <code>exp</code>
+     * and coincide with those of <code>control</code>.
+     */
+    private static ProbInterval checkAborted(String msg,
+					     FlatCInstance flatCInst,
+					     EvalControl control,
+					     EvalControl.Stop stop,
+					     BigDecimal exp) {
+	try {
+	    flatCInst.getProb(PATH, null, control);
+	    fail(msg + ": expected EvalAbortedException. ");
+	} catch (EvalAbortedException e) {
+	    assertEquals(msg, stop, e.getStop());
+	    TestModels.assertEncloses(msg, exp, e.getBounds());
+	    assertEquals(msg, control.getExplored(),
+			 e.getBounds().getExpansions());
+	    TestModels.assertProbEquals(msg, control.getBounds().getLower(),
+					e.getBounds().getLower());
+	    TestModels.assertProbEquals(msg, control.getBounds().getUpper(),
+					e.getBounds().getUpper());
+	    return e.getBounds();
+	}
+	throw new IllegalStateException("Not reached. ");
+    }
+
+    /**
+     * Returns the number of sub-problems expanded
+     * to evaluate {@link #PATH} of <code>flatCInst</code>.
+     */
+    private static long getExplored(FlatCInstance flatCInst) {
+	EvalControl control = new EvalControl();
+	flatCInst.getProb(PATH, null, control);
+	return control.getExplored();
+    }
+
+    /**
+     * Without limits, and with time limits not reached
+     * even if they overflow in nanoseconds,
+     * the evaluation yields the exact probability,
+     * resolves all mass and the bounds are exact.
+     */
+    public void testUnlimited() {
+	FlatCInstance flatCInst = TestModels.createLadder(RUNGS);
+	BigDecimal exp = flatCInst.getProb(PATH, null);
+	long explored = getExplored(flatCInst);
+	assertTrue("expected expansions. ", explored > 1);
+
+	for (long limit : LARGE_LIMITS) {
+	    String msg = "time limit " + limit;
+	    EvalControl control = new EvalControl();
+	    control.setTimeLimit(limit);
+	    TestModels.assertProbEquals(msg, exp,
+					flatCInst.getProb(PATH, null, control));
+	    assertEquals(msg, explored, control.getExplored());
+	    TestModels.assertProbEquals(msg, BigDecimal.ONE,
+					control.getResolvedMass());
+	    ProbInterval bounds = control.getBounds();
+	    assertTrue(msg + ": expected exact bounds but found " + bounds,
+		       bounds.isExact());
+	    TestModels.assertProbEquals(msg, exp, bounds.getLower());
+	    assertEquals(msg, 0, control.getEstimatedRemainingMillis());
+	}
+    } // testUnlimited
+
+    /**
+     * With a node limit below the number of sub-problems needed,
+     * the evaluation stops after expanding exactly that many;
+     * the bounds get narrower with the limit.
+     * With the number needed as limit, the evaluation completes.
+     */
+    public void testNodeLimit() {
+	FlatCInstance flatCInst = TestModels.createLadder(RUNGS);
+	BigDecimal exp = flatCInst.getProb(PATH, null);
+	long explored = getExplored(flatCInst);
+
+	BigDecimal width = BigDecimal.ONE;
+	long[] limits = {0, 1, explored / 2, explored - 1};
+	for (long limit : limits) {
+	    String msg = "node limit " + limit;
+	    EvalControl control = new EvalControl();
+	    control.setNodeLimit(limit);
+	    ProbInterval bounds = checkAborted(msg, flatCInst, control,
+					       EvalControl.Stop.NodeLimit,
+					       exp);
+	    assertEquals(msg, limit, control.getExplored());
+	    assertTrue(msg + ": expected narrower bounds than " + width +
+		       " but found " + bounds + ". ",
+		       bounds.getWidth().compareTo(width) <= 0);
+	    width = bounds.getWidth();
+	}
+
+	EvalControl control = new EvalControl();
+	control.setNodeLimit(explored);
+	TestModels.assertProbEquals("node limit " + explored, exp,
+				    flatCInst.getProb(PATH, null, control));
+    } // testNodeLimit
+
+    /**
+     * With time limit <code>0</code>, the evaluation stops
+     * at the first expansion.
+     * If the listener delays the evaluation beyond the time limit,
+     * it stops at the next expansion.
+     */
+    public void testTimeLimit() {
+	FlatCInstance flatCInst = TestModels.createLadder(RUNGS);
+	BigDecimal exp = flatCInst.getProb(PATH, null);
+
+	EvalControl control = new EvalControl();
+	control.setTimeLimit(0);
+	checkAborted("time limit 0", flatCInst, control,
+		     EvalControl.Stop.TimeLimit, exp);
+	assertEquals(1, control.getExplored());
+
+	final long delay = 20;
+	control = new EvalControl();
+	control.setTimeLimit(delay / 2);
+	control.setListener(new EvalControl.Listener() {
+		public void progress(EvalControl control) {
+		    if (control.getExplored() == 3) {
+			try {
+			    Thread.sleep(delay);
+			} catch (InterruptedException e) {
+			    throw new IllegalStateException(e);
+			}
+		    }
+		}
+	    }, 0);
+	checkAborted("delayed", flatCInst, control,
+		     EvalControl.Stop.TimeLimit, exp);
+	assertTrue("expected at most 4 expansions but found " +
+		   control.getExplored() + ". ", control.getExplored() <= 4);
+	assertTrue("expected at least " + delay + "ms but found " +
+		   control.getElapsedMillis() + "ms. ",
+		   control.getElapsedMillis() >= delay);
+    } // testTimeLimit
+
+    /**
+     * A control cancelled before the evaluation stops it
+     * before the first expansion, also when reused.
+     * A cancellation by the listener or by another thread
+     * stops the evaluation at the next expansion.
+     */
+    public void testCancel() throws InterruptedException {
+	FlatCInstance flatCInst = TestModels.createLadder(RUNGS);
+	BigDecimal exp = flatCInst.getProb(PATH, null);
+
+	EvalControl control = new EvalControl();
+	control.cancel();
+	assertTrue(control.isCancelled());
+	for (int i = 0; i < 2; i++) {
+	    checkAborted("cancelled before " + i, flatCInst, control,
+			 EvalControl.Stop.Cancelled, exp);
+	    assertEquals(0, control.getExplored());
+	}
+
+	control = new EvalControl();
+	control.setListener(new EvalControl.Listener() {
+		public void progress(EvalControl control) {
+		    if (control.getExplored() == 3) {
+			control.cancel();
+		    }
+		}
+	    }, 0);
+	checkAborted("cancelled by listener", flatCInst, control,
+		     EvalControl.Stop.Cancelled, exp);
+	assertEquals(3, control.getExplored());
+
+	// the evaluating thread waits in the listener for the cancellation
+	final CountDownLatch started = new CountDownLatch(1);
+	final EvalControl cancelled = new EvalControl();
+	cancelled.setListener(new EvalControl.Listener() {
+		public void progress(EvalControl control) {
+		    if (control.getExplored() != 2) {
+			return;
+		    }
+		    started.countDown();
+		    long deadline = System.currentTimeMillis() + 10000;
+		    while (!control.isCancelled()
+			   && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		    }
+		}
+	    }, 0);
+	Thread canceller = new Thread(new Runnable() {
+		public void run() {
+		    try {
+			started.await(10, TimeUnit.SECONDS);
+		    } catch (InterruptedException e) {
+			return;
+		    }
+		    cancelled.cancel();
+		}
+	    });
+	canceller.start();
+	checkAborted("cancelled by thread", flatCInst, cancelled,
+		     EvalControl.Stop.Cancelled, exp);
+	canceller.join();
+	assertEquals(2, cancelled.getExplored());
+    } // testCancel
+
+    /**
+     * With period <code>0</code>, the listener is notified
+     * at each expansion and when finished.
+     * The mass resolved increases to <code>1</code>
+     * and the bounds reported enclose the exact probability.
+     * With a period which overflows in nanoseconds,
+     * the listener is notified only when finished.
+     */
+    public void testListener() {
+	FlatCInstance flatCInst = TestModels.createLadder(RUNGS);
+	BigDecimal exp = flatCInst.getProb(PATH, null);
+
+	Recorder recorder = new Recorder();
+	EvalControl control = new EvalControl();
+	control.setListener(recorder, 0);
+	TestModels.assertProbEquals("period 0", exp,
+				    flatCInst.getProb(PATH, null, control));
+	assertEquals(control.getExplored() + 1, recorder.resolved.size());
+	BigDecimal last = BigDecimal.ZERO;
+	for (int i = 0; i < recorder.resolved.size(); i++) {
+	    BigDecimal resolved = recorder.resolved.get(i);
+	    assertTrue("report " + i + ": expected at least " + last +
+		       " but found " + resolved + ". ",
+		       resolved.compareTo(last) >= 0);
+	    last = resolved;
+	    TestModels.assertEncloses("report " + i, exp,
+				      recorder.bounds.get(i));
+	}
+	TestModels.assertProbEquals("final", BigDecimal.ONE, last);
+
+	for (long period : LARGE_LIMITS) {
+	    recorder = new Recorder();
+	    control = new EvalControl();
+	    control.setListener(recorder, period);
+	    flatCInst.getProb(PATH, null, control);
+	    assertEquals("period " + period, 1, recorder.resolved.size());
+	    TestModels.assertProbEquals("period " + period, BigDecimal.ONE,
+					recorder.resolved.get(0));
+	}
+    } // testListener
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // EvalControlTest
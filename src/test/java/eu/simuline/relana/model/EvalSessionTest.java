@@ -0,0 +1,196 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * EvalSessionTest.java
+ *
+ * Compares the probabilities of an {@link EvalSession}
+ * after changes of distributions
+ * with those of a model flattened afresh with the changed distributions,
+ * including outputs requested only after the changes.
+ *
+ *
+ * Created: Mon Oct 19 12:31:08 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({EvalSessionTest.TestAll.class})
+public class EvalSessionTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The names of the effects with distribution
+     * of {@link TestModels#createRandom(long)}.
+     */
+    private static final String[] BASE_NAMES = {
+	"b0", "b1", "b2", "b3", "b4", "b5", "m0", "m1", "m2"
+    };
+
+    /**
+     * The number of changes of distributions per model.
+     */
+    private static final int CHANGES = 6;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static EvalSessionTest TEST = new EvalSessionTest();
+
+    public static class TestAll {
+	@Test public void testSetDistr() {
+	    EvalSessionTest.TEST.testSetDistr();
+	}
+	@Test public void testSetDistrFails() {
+	    EvalSessionTest.TEST.testSetDistrFails();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the path of the effect with distribution
+     * of {@link TestModels#createRandom(long)} named <code>name</code>.
+     */
+    private static List<String> getBasePath(String name) {
+	if (name.startsWith("b")) {
+	    int ind = Integer.parseInt(name.substring(1));
+	    return Arrays.asList("c" + (ind % 3), name);
+	}
+	return Arrays.asList(name);
+    }
+
+    /**
+     * Asserts that the probabilities of the effects specified by
+     * <code>sPaths</code> within <code>session</code>
+     * coincide with those within <code>flatCInst</code>.
+     */
+    private static void assertSessionProbs(String msg,
+					   EvalSession session,
+					   FlatCInstance flatCInst,
+					   List<List<String>> sPaths) {
+	for (List<String> sPath : sPaths) {
+	    TestModels.assertProbEquals(msg + " " + sPath,
+					flatCInst.getProb(sPath),
+					session.getProb(sPath));
+	}
+    }
+
+    /**
+     * For each of the random models, a session for half of the effects
+     * given by formulae is created.
+     * Then the distributions of effects are changed one by one.
+     * After each change, the probabilities of the outputs
+     * coincide with those of a model created with the changed distributions,
+     * the outputs not reported as changed keep their probabilities
+     * and the other effects given by formulae are added as outputs
+     * after the third change.
+     */
+    public void testSetDistr() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	    List<List<String>> outputs = new ArrayList<List<String>>();
+	    List<List<String>> later   = new ArrayList<List<String>>();
+	    for (int i = 0; i < sPaths.size(); i++) {
+		(i % 2 == 0 ? outputs : later).add(sPaths.get(i));
+	    }
+	    EvalSession session = new EvalSession(flatCInst, outputs);
+	    assertSessionProbs("seed " + seed, session, flatCInst, outputs);
+
+	    Random rnd = new Random(seed);
+	    Map<String, ProbDistr> name2distr =
+		new HashMap<String, ProbDistr>();
+	    for (int step = 0; step < CHANGES; step++) {
+		String name = BASE_NAMES[rnd.nextInt(BASE_NAMES.length)];
+		List<String> ePath = getBasePath(name);
+		ProbDistr distr = TestModels
+		    .createDistr(rnd, flatCInst.getEffect(ePath).getType());
+		name2distr.put(name, distr);
+		String msg = "seed " + seed + " step " + step + " " + name;
+
+		Map<List<String>, BigDecimal> before = session.getProbs();
+		Set<List<String>> changed = session.setDistr(ePath, distr);
+		FlatCInstance fresh = TestModels.createRandom(seed, name2distr);
+		assertSessionProbs(msg, session, fresh, outputs);
+		for (Map.Entry<List<String>, BigDecimal> entry
+			 : before.entrySet()) {
+		    if (!changed.contains(entry.getKey())) {
+			TestModels.assertProbEquals
+			    (msg + " unchanged " + entry.getKey(),
+			     entry.getValue(),
+			     session.getProb(entry.getKey()));
+		    }
+		}
+
+		if (step == 2) {
+		    // outputs requested after changes
+		    assertSessionProbs(msg + " later", session, fresh, later);
+		    outputs.addAll(later);
+		    assertEquals(msg, outputs.size(),
+				 session.getProbs().size());
+		}
+	    }
+	    assertTrue("seed " + seed + ": expected computed probabilities. ",
+		       session.getComputed() > 0);
+	}
+    } // testSetDistr
+
+    /**
+     * Changing the distribution of an effect without distribution fails.
+     */
+    public void testSetDistrFails() {
+	FlatCInstance flatCInst = TestModels.createRandom(1);
+	List<String> sPath = TestModels.getFormulaPaths(flatCInst).get(0);
+	EvalSession session = new EvalSession(flatCInst, Arrays.asList(sPath));
+	try {
+	    session.setDistr(sPath, TestModels.createDistr(new Random(1),
+						flatCInst.getEffect(sPath)
+						.getType()));
+	    fail("expected IllegalArgumentException. ");
+	} catch (IllegalArgumentException e) {
+	    // expected.
+	}
+    } // testSetDistrFails
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // EvalSessionTest
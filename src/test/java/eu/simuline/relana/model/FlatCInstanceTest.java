@@ -0,0 +1,717 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Type;
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FlatCInstanceTest.java
+ *
+ * Compares the probabilities obtained by the forking expansion
+ * with those of the sequential one,
+ * with and without a memo table shared among the evaluations.
+ * Compares the probabilities of several effects evaluated at once
+ * with those evaluated one by one.
+ * Checks that the bounds obtained by a partial expansion
+ * enclose the probability.
+ * Evaluates a model with a deep expansion on a thread with a small stack.
+ * Checks that the inlined formulae have the values of the effects,
+ * share subformulae and are computed without modifying the effects
+ * and that cyclic dependencies are rejected.
+ * Compares the effects and probabilities of conditioned instances
+ * with those obtained by substituting in all effects.
+ *
+ *
+ * Created: Sun Oct 18 04:21:37 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({FlatCInstanceTest.TestAll.class})
+public class FlatCInstanceTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * The fork depths tested, including <code>0</code>
+     * which means sequential evaluation within the pool.
+     */
+    private static final int[] FORK_DEPTHS = {0, 1, 3, 16};
+
+    /**
+     * The least numbers of variables of forked residual formulae tested.
+     */
+    private static final int[] MIN_FORK_VARS = {0, 4};
+
+    /**
+     * The numbers of expansions allowed for bounds of probabilities.
+     */
+    private static final long[] MAX_EXPANSIONS = {0, 1, 2, 5, 20};
+
+    /**
+     * The threshold the probabilities are compared with.
+     */
+    private static final BigDecimal THRESHOLD = new BigDecimal("0.5");
+
+    /**
+     * The number of variables of the model with a deep expansion.
+     */
+    private static final int DEEP_VARS = 1000;
+
+    /**
+     * The size of the stack of the thread evaluating this model
+     * which is too small for an expansion recursing once per variable.
+     */
+    private static final long DEEP_STACK = 200 * 1024;
+
+    /**
+     * The number of random values of the effects with distribution
+     * the inlined formulae are evaluated for.
+     */
+    private static final int VALUES = 50;
+
+    /**
+     * The maximal number of successive conditioning steps.
+     */
+    private static final int STEPS = 16;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static FlatCInstanceTest TEST = new FlatCInstanceTest();
+
+    public static class TestAll {
+	@Test public void testForkProjects() throws Exception {
+	    FlatCInstanceTest.TEST.testForkProjects();
+	}
+	@Test public void testForkRandom() throws Exception {
+	    FlatCInstanceTest.TEST.testForkRandom();
+	}
+	@Test public void testProbsProjects() throws Exception {
+	    FlatCInstanceTest.TEST.testProbsProjects();
+	}
+	@Test public void testProbsRandom() {
+	    FlatCInstanceTest.TEST.testProbsRandom();
+	}
+	@Test public void testBoundsProjects() throws Exception {
+	    FlatCInstanceTest.TEST.testBoundsProjects();
+	}
+	@Test public void testBoundsRandom() {
+	    FlatCInstanceTest.TEST.testBoundsRandom();
+	}
+	@Test public void testDeep() throws Throwable {
+	    FlatCInstanceTest.TEST.testDeep();
+	}
+	@Test public void testInline() {
+	    FlatCInstanceTest.TEST.testInline();
+	}
+	@Test public void testInlineShared() {
+	    FlatCInstanceTest.TEST.testInlineShared();
+	}
+	@Test public void testInlineCyclic() {
+	    FlatCInstanceTest.TEST.testInlineCyclic();
+	}
+	@Test public void testCondition() {
+	    FlatCInstanceTest.TEST.testCondition();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Compares the probabilities of all effects given by formulae
+     * of <code>flatCInst</code> computed by forking in <code>pool</code>
+     * with those computed sequentially.
+     * Each combination of parameters is evaluated without memo table,
+     * with a memo table shared by all effects
+     * and with the sequential expansion filling the same memo table.
+     */
+    private static void checkFork(String name,
+				  FlatCInstance flatCInst,
+				  ForkJoinPool pool) {
+	List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	BigDecimal[] exp = new BigDecimal[sPaths.size()];
+	for (int i = 0; i < exp.length; i++) {
+	    exp[i] = flatCInst.getProb(sPaths.get(i));
+	}
+
+	ProbMemo shared = new ProbMemo();
+	for (int forkDepth : FORK_DEPTHS) {
+	    for (int minForkVars : MIN_FORK_VARS) {
+		ProbMemo memo = new ProbMemo();
+		for (int i = 0; i < exp.length; i++) {
+		    List<String> sPath = sPaths.get(i);
+		    String msg = name + " " + sPath + " depth " + forkDepth +
+			" min vars " + minForkVars;
+		    TestModels.assertProbEquals
+			(msg + " without memo", exp[i],
+			 flatCInst.getProb(sPath, null, pool,
+					   forkDepth, minForkVars));
+		    TestModels.assertProbEquals
+			(msg + " with memo", exp[i],
+			 flatCInst.getProb(sPath, memo, pool,
+					   forkDepth, minForkVars));
+		    TestModels.assertProbEquals
+			(msg + " with shared memo", exp[i],
+			 flatCInst.getProb(sPath, shared, pool,
+					   forkDepth, minForkVars));
+		    TestModels.assertProbEquals
+			(msg + " sequential with shared memo", exp[i],
+			 flatCInst.getProb(sPath, shared));
+		}
+	    }
+	}
+	assertTrue(name + ": expected hits of shared memo. ",
+		   exp.length == 0 || shared.getHits() > 0);
+    }
+
+    public void testForkProjects() throws Exception {
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    for (String project : TestModels.PROJECTS) {
+		checkFork(project, TestModels.load(project), pool);
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    } // testForkProjects
+
+    public void testForkRandom() {
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    for (long seed : TestModels.SEEDS) {
+		checkFork("seed " + seed, TestModels.createRandom(seed), pool);
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    } // testForkRandom
+
+    /**
+     * Compares the probabilities of all effects given by formulae
+     * of <code>flatCInst</code> computed at once
+     * by {@link FlatCInstance#getProbs(Collection, ProbMemo)}
+     * with those computed one by one.
+     * This is done without and with memo table,
+     * with a memo table filled by the evaluation of the single effects
+     * and for each {@link VarOrder}.
+     */
+    private static void checkProbs(String name, FlatCInstance flatCInst) {
+	List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	Map<List<String>, BigDecimal> exp =
+	    new HashMap<List<String>, BigDecimal>();
+	ProbMemo filled = new ProbMemo();
+	for (List<String> sPath : sPaths) {
+	    exp.put(sPath, flatCInst.getProb(sPath));
+	    flatCInst.getProb(sPath, filled);
+	}
+
+	List<FlatCInstance> insts = new ArrayList<FlatCInstance>();
+	List<String> instNames = new ArrayList<String>();
+	insts.add(flatCInst);
+	instNames.add(name);
+	for (VarOrder order : VarOrder.values()) {
+	    insts.add(flatCInst.reorder(order));
+	    instNames.add(name + " " + order);
+	}
+	for (int i = 0; i < insts.size(); i++) {
+	    ProbMemo[] memos = {null, new ProbMemo(), filled};
+	    for (ProbMemo memo : memos) {
+		String msg = instNames.get(i) + (memo == null ? " without"
+						 : " with") + " memo ";
+		Map<List<String>, BigDecimal> probs =
+		    insts.get(i).getProbs(sPaths, memo);
+		assertEquals(msg, exp.keySet(), probs.keySet());
+		for (List<String> sPath : sPaths) {
+		    TestModels.assertProbEquals(msg + sPath, exp.get(sPath),
+						probs.get(sPath));
+		}
+	    }
+	}
+
+	Map<VarOrder, Long> sizes = flatCInst.getExpansionSizes(sPaths);
+	assertEquals(name, VarOrder.values().length, sizes.size());
+    }
+
+    public void testProbsProjects() throws Exception {
+	for (String project : TestModels.PROJECTS) {
+	    checkProbs(project, TestModels.load(project));
+	}
+    } // testProbsProjects
+
+    public void testProbsRandom() {
+	for (long seed : TestModels.SEEDS) {
+	    checkProbs("seed " + seed, TestModels.createRandom(seed));
+	}
+    } // testProbsRandom
+
+    /**
+     * Checks {@link FlatCInstance#getProbBounds} 
+     * for all effects given by formulae of <code>flatCInst</code>: 
+     * With unlimited expansions and tolerance <code>0</code>, 
+     * the bounds coincide with the probability 
+     * computed by {@link FlatCInstance#getProb(List)}; 
+     * with limited expansions, a tolerance or a threshold, 
+     * they enclose it. 
+     * This is done without and with a memo table. 
+     */
+    private static void checkBounds(String name, FlatCInstance flatCInst) {
+	ProbMemo filled = new ProbMemo();
+	for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+	    BigDecimal exp = flatCInst.getProb(sPath, filled);
+	    ProbMemo[] memos = {null, filled};
+	    for (ProbMemo memo : memos) {
+		String msg = name + " " + sPath
+		    + (memo == null ? " without" : " with") + " memo";
+		ProbInterval bounds = flatCInst
+		    .getProbBounds(sPath, memo, BigDecimal.ZERO, null,
+				   Long.MAX_VALUE);
+		assertTrue(msg + " exact " + bounds, bounds.isExact());
+		TestModels.assertProbEquals(msg, exp, bounds.getLower());
+
+		for (long maxExp : MAX_EXPANSIONS) {
+		    bounds = flatCInst.getProbBounds(sPath, memo,
+						     BigDecimal.ZERO, null,
+						     maxExp);
+		    TestModels.assertEncloses(msg + " expansions " + maxExp,
+					      exp, bounds);
+		    assertTrue(msg + " expansions " + bounds,
+			       bounds.getExpansions() <= maxExp);
+		}
+
+		BigDecimal tol = new BigDecimal("0.05");
+		bounds = flatCInst.getProbBounds(sPath, memo, tol, null,
+						 Long.MAX_VALUE);
+		TestModels.assertEncloses(msg + " tolerance", exp, bounds);
+		assertTrue(msg + " width " + bounds,
+			   bounds.getWidth().compareTo(tol) <= 0);
+
+		bounds = flatCInst.getProbBounds(sPath, memo, BigDecimal.ZERO,
+						 THRESHOLD, Long.MAX_VALUE);
+		TestModels.assertEncloses(msg + " threshold", exp, bounds);
+		assertEquals(msg + " below " + bounds,
+			     exp.compareTo(THRESHOLD) < 0,
+			     bounds.isBelow(THRESHOLD));
+		assertEquals(msg + " at least " + bounds,
+			     exp.compareTo(THRESHOLD) >= 0,
+			     bounds.isAtLeast(THRESHOLD));
+	    }
+	}
+    }
+
+    public void testBoundsProjects() throws Exception {
+	for (String project : TestModels.PROJECTS) {
+	    checkBounds(project, TestModels.load(project));
+	}
+    } // testBoundsProjects
+
+    public void testBoundsRandom() {
+	for (long seed : TestModels.SEEDS) {
+	    checkBounds("seed " + seed, TestModels.createRandom(seed));
+	}
+    } // testBoundsRandom
+
+    /**
+     * Evaluates the intersection and the union
+     * of {@link #DEEP_VARS} variables, the expansions of which are as deep,
+     * by all evaluators on a thread with a stack of {@link #DEEP_STACK} bytes
+     * and compares with the probabilities computed in closed form.
+     */
+    private static void checkDeep(FlatCInstance flatCInst) {
+	List<String> pathD = Arrays.asList("d");
+	List<String> pathE = Arrays.asList("e");
+	BigDecimal expD = new BigDecimal("0.999").pow(DEEP_VARS);
+	BigDecimal expE = BigDecimal.ONE
+	    .subtract(new BigDecimal("0.001").pow(DEEP_VARS));
+
+	TestModels.assertProbEquals("getProb", expD, flatCInst.getProb(pathD));
+	TestModels.assertProbEquals("getProb with memo", expE,
+				    flatCInst.getProb(pathE, new ProbMemo()));
+	Map<List<String>, BigDecimal> probs =
+	    flatCInst.getProbs(Arrays.asList(pathD, pathE), new ProbMemo());
+	TestModels.assertProbEquals("getProbs", expD, probs.get(pathD));
+	TestModels.assertProbEquals("getProbs", expE, probs.get(pathE));
+	TestModels.assertProbEquals("getDistr", expD,
+				    flatCInst.getDistr(pathD, null)
+				    .getProbNonEmpty());
+	ProbEstimate est = flatCInst.getProb(pathD, null,
+					     Arithmetic.Primitive);
+	assertTrue("getProb primitive: expected " + expD + " found " + est,
+		   est.getValue().subtract(expD).abs().doubleValue()
+		   <= est.getAbsError());
+	TestModels.assertProbEquals("bdd", expD,
+				    new BddEvaluator(flatCInst).getProb(pathD));
+    }
+
+    public void testDeep() throws Throwable {
+	final FlatCInstance flatCInst = TestModels.createWide(DEEP_VARS);
+	final Throwable[] failure = new Throwable[1];
+	Thread thread = new Thread(null, new Runnable() {
+		public void run() {
+		    try {
+			checkDeep(flatCInst);
+		    } catch (Throwable e) {
+			failure[0] = e;
+		    }
+		}
+	    }, "deep", DEEP_STACK);
+	thread.start();
+	thread.join();
+	if (failure[0] != null) {
+	    throw failure[0];
+	}
+    } // testDeep
+
+    /**
+     * Asserts that the inlined formulae of the effects given by formulae
+     * refer to effects with distribution only
+     * and have the values of the formulae of the effects
+     * evaluated recursively
+     * for {@link #VALUES} random values of the effects with distribution.
+     */
+    private static void checkInline(String name,
+				    FlatCInstance flatCInst,
+				    Random rnd) {
+	List<SInstance> inputs = new ArrayList<SInstance>();
+	for (SInstance serv : flatCInst.getEffects().values()) {
+	    if (serv.getDistr() != null) {
+		inputs.add(serv);
+	    }
+	}
+	List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	for (List<String> sPath : sPaths) {
+	    SInstance serv = flatCInst.getEffect(sPath);
+	    Formula inlined = flatCInst.inline(serv);
+	    String msg = name + " " + sPath;
+	    for (SInstance var : inlined.getVars()) {
+		assertTrue(msg + ": expected variable with distribution " +
+			   "but found " + var + ". ",
+			   var.getDistr() != null);
+	    }
+	    // computed once and shared by reordered instances
+	    assertSame(msg, inlined, flatCInst.inline(serv));
+	    for (VarOrder order : VarOrder.values()) {
+		assertSame(msg + " " + order, inlined,
+			   flatCInst.reorder(order).inline(serv));
+	    }
+	}
+
+	Map<SInstance, Set<Deficiency>> values =
+	    new HashMap<SInstance, Set<Deficiency>>();
+	for (int i = 0; i < VALUES; i++) {
+	    for (SInstance input : inputs) {
+		List<Set<Deficiency>> ideals = input.getType().getIdeals();
+		values.put(input, ideals.get(rnd.nextInt(ideals.size())));
+	    }
+	    for (List<String> sPath : sPaths) {
+		SInstance serv = flatCInst.getEffect(sPath);
+		Set<Deficiency> exp =
+		    CompiledFormulaTest.eval(serv.getFormula(), values);
+		assertEquals(name + " " + sPath + " " + values, exp,
+			     CompiledFormulaTest.eval(flatCInst.inline(serv),
+						      values));
+	    }
+	}
+    }
+
+    /**
+     * For the random models, the inlined formulae
+     * have the values of the effects, refer to effects with distribution
+     * and are computed once.
+     * Neither creating the models
+     * nor evaluating their effects modifies the formulae of the effects.
+     */
+    public void testInline() {
+	for (long seed : TestModels.SEEDS) {
+	    Map<List<String>, SInstance> effects = TestModels
+		.createRandomEffects(seed, new HashMap<String, ProbDistr>());
+	    Map<List<String>, Formula> path2form =
+		new HashMap<List<String>, Formula>();
+	    for (Map.Entry<List<String>, SInstance> entry
+		     : effects.entrySet()) {
+		path2form.put(entry.getKey(), entry.getValue().getFormula());
+	    }
+	    FlatCInstance flatCInst = new FlatCInstance(effects);
+
+	    checkInline("seed " + seed, flatCInst, new Random(seed));
+	    flatCInst.getProbs(TestModels.getFormulaPaths(flatCInst),
+			       new ProbMemo());
+
+	    for (Map.Entry<List<String>, SInstance> entry
+		     : flatCInst.getEffects().entrySet()) {
+		assertSame("seed " + seed + " " + entry.getKey(),
+			   path2form.get(entry.getKey()),
+			   entry.getValue().getFormula());
+	    }
+	}
+    } // testInline
+
+    /**
+     * For effects <code>d = x &amp; y</code>, <code>e = d | z</code>,
+     * <code>f = e &amp; w</code> and <code>g = d | w</code>,
+     * the inlined formulae of <code>e</code> and <code>g</code>
+     * share the inlined formula of <code>d</code>
+     * and that of <code>f</code> shares the one of <code>e</code>.
+     * Since nested operations of the same kind are flattened,
+     * the operations alternate.
+     */
+    public void testInlineShared() {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	BigDecimal prob = new BigDecimal("0.5");
+	Formula varX = TestModels.createVar(effects, "x", prob);
+	Formula varY = TestModels.createVar(effects, "y", prob);
+	Formula varZ = TestModels.createVar(effects, "z", prob);
+	Formula varW = TestModels.createVar(effects, "w", prob);
+	SInstance servD = createEffect(effects, "d",
+				       Operation.BaseOps.Intersection,
+				       varX, varY);
+	Formula varD = Formula.Var.create(servD, "d");
+	SInstance servE = createEffect(effects, "e",
+				       Operation.BaseOps.Union,
+				       varD, varZ);
+	SInstance servF = createEffect(effects, "f",
+				       Operation.BaseOps.Intersection,
+				       Formula.Var.create(servE, "e"), varW);
+	SInstance servG = createEffect(effects, "g",
+				       Operation.BaseOps.Union,
+				       varD, varW);
+	FlatCInstance flatCInst = new FlatCInstance(effects);
+
+	Formula inlinedD = flatCInst.inline(servD);
+	assertSame(servD.getFormula(), inlinedD);
+	Formula inlinedE = flatCInst.inline(servE);
+	assertTrue(containsSame(inlinedE, inlinedD));
+	assertTrue(containsSame(flatCInst.inline(servG), inlinedD));
+	assertTrue(containsSame(flatCInst.inline(servF), inlinedE));
+	checkInline("shared", flatCInst, new Random(0));
+    } // testInlineShared
+
+    /**
+     * Adds a Boolean effect <code>name</code> without distribution
+     * given by applying <code>op</code> to <code>args</code>
+     * to <code>effects</code> and returns it.
+     */
+    private static SInstance createEffect(Map<List<String>, SInstance>
+					  effects,
+					  String name,
+					  Operation.BaseOps op,
+					  Formula... args) {
+	SInstance res = new SInstance(Type.BOOLEAN, null, name);
+	res.setFormula(TestModels.apply(op, args));
+	effects.put(Arrays.asList(name), res);
+	return res;
+    }
+
+    /**
+     * Returns whether the arguments of the composite formula
+     * <code>comp</code> contain <code>form</code> itself,
+     * not only an equal formula.
+     */
+    private static boolean containsSame(Formula comp, Formula form) {
+	for (Formula cand : ((Formula.Comp) comp).getArgs()) {
+	    if (cand == form) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Effects <code>d = e | x</code> and <code>e = d</code>
+     * depending on each other cyclically
+     * are rejected when creating the instance.
+     */
+    public void testInlineCyclic() {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Formula varX = TestModels.createVar(effects, "x",
+					    new BigDecimal("0.5"));
+	SInstance servD = new SInstance(Type.BOOLEAN, null, "d");
+	SInstance servE = new SInstance(Type.BOOLEAN, null, "e");
+	servD.setFormula(TestModels.apply(Operation.BaseOps.Union,
+					  Formula.Var.create(servE, "e"),
+					  varX));
+	servE.setFormula(Formula.Var.create(servD, "d"));
+	effects.put(Arrays.asList("d"), servD);
+	effects.put(Arrays.asList("e"), servE);
+	try {
+	    new FlatCInstance(effects);
+	    fail("expected IllegalArgumentException. ");
+	} catch (IllegalArgumentException e) {
+	    assertTrue(e.getMessage(),
+		       e.getMessage().startsWith("Found cyclic dependency"));
+	}
+    } // testInlineCyclic
+
+    /**
+     * Returns the effects arising from <code>effects</code>
+     * by substituting <code>serv</code> by <code>form</code>
+     * in each effect, as conditioning did before the effects
+     * were shared with the instance conditioned.
+     */
+    private static Map<List<String>, SInstance>
+	substituteAll(Map<List<String>, SInstance> effects,
+		      SInstance serv,
+		      Formula form) {
+	Map<List<String>, SInstance> res =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	for (Map.Entry<List<String>, SInstance> entry : effects.entrySet()) {
+	    res.put(entry.getKey(), entry.getValue().substitute(serv, form));
+	}
+	return res;
+    }
+
+    /**
+     * Asserts that the effects of <code>inst</code>
+     * have the names, types, distributions and formulae
+     * of <code>exp</code>
+     * and that the probabilities of the effects given by formulae
+     * coincide with those of an instance with effects <code>exp</code>.
+     */
+    private static void checkEffects(String msg,
+				     Map<List<String>, SInstance> exp,
+				     FlatCInstance inst) {
+	assertEquals(msg, exp.keySet(), inst.getEffects().keySet());
+	for (Map.Entry<List<String>, SInstance> entry : exp.entrySet()) {
+	    SInstance expServ = entry.getValue();
+	    SInstance actServ = inst.getEffect(entry.getKey());
+	    String pMsg = msg + " " + entry.getKey();
+	    assertSame(pMsg, actServ, inst.getEffects().get(entry.getKey()));
+	    assertEquals(pMsg, expServ.getType(), actServ.getType());
+	    assertSame(pMsg, expServ.getDistr(), actServ.getDistr());
+	    assertEquals(pMsg, expServ.getFormula(), actServ.getFormula());
+	}
+	FlatCInstance expInst = new FlatCInstance(exp);
+	for (List<String> sPath : TestModels.getFormulaPaths(expInst)) {
+	    TestModels.assertProbEquals(msg + " " + sPath,
+					expInst.getProb(sPath),
+					inst.getProb(sPath));
+	}
+    }
+
+    /**
+     * Conditions <code>flatCInst</code> successively
+     * on up to {@link #STEPS} variables, taking a random branch,
+     * and asserts for each step that both branches
+     * have the effects obtained by substituting in all effects,
+     * that they share the effects not referring to the variable
+     * with the instance conditioned
+     * and that the latter is not modified.
+     */
+    private static void checkCondition(String name,
+				       FlatCInstance flatCInst,
+				       Random rnd) {
+	FlatCInstance inst = flatCInst;
+	Map<List<String>, SInstance> exp = flatCInst.getEffects();
+	for (int step = 0; step < STEPS; step++) {
+	    List<Formula> vars = new ArrayList<Formula>();
+	    for (SInstance serv : exp.values()) {
+		if (serv.getFormula() == null) {
+		    continue;
+		}
+		for (SInstance var : serv.getFormula().getVars()) {
+		    if (var.getDistr() != null) {
+			vars.add(Formula.Var.create(var, var.getName()));
+		    }
+		}
+	    }
+	    SInstance var = inst.chooseVar(vars);
+	    if (var == null) {
+		return;
+	    }
+	    Deficiency def = FlatCInstance.minDef(var);
+	    Formula[] forms = {
+		FlatCInstance.addForm   (var, def),
+		FlatCInstance.removeForm(var, def)
+	    };
+	    int branch = rnd.nextInt(forms.length);
+	    FlatCInstance next = null;
+	    Map<List<String>, SInstance> nextExp = null;
+	    for (int i = 0; i < forms.length; i++) {
+		String msg = name + " step " + step + " " + var.getName() +
+		    (i == 0 ? " add " : " remove ") + def;
+		FlatCInstance cond = inst.substitute(var, forms[i]);
+		Map<List<String>, SInstance> condExp =
+		    substituteAll(exp, var, forms[i]);
+		checkEffects(msg, condExp, cond);
+		for (Map.Entry<List<String>, SInstance> entry
+			 : exp.entrySet()) {
+		    Formula form = entry.getValue().getFormula();
+		    if (form == null || !form.getVars().contains(var)) {
+			assertSame(msg + " shared " + entry.getKey(),
+				   inst.getEffect(entry.getKey()),
+				   cond.getEffect(entry.getKey()));
+		    }
+		}
+		if (i == branch) {
+		    next = cond;
+		    nextExp = condExp;
+		}
+	    }
+	    // conditioning does not modify the instance conditioned
+	    checkEffects(name + " step " + step + " parent", exp, inst);
+	    inst = next;
+	    exp = nextExp;
+	}
+    }
+
+    /**
+     * For the random models, successive conditioning steps
+     * yield the effects and probabilities
+     * obtained by substituting in all effects,
+     * share the effects not affected and leave their parents unchanged.
+     */
+    public void testCondition() {
+	for (long seed : TestModels.SEEDS) {
+	    checkCondition("seed " + seed, TestModels.createRandom(seed),
+			   new Random(seed));
+	}
+    } // testCondition
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // FlatCInstanceTest
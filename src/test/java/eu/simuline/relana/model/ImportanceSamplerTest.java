@@ -0,0 +1,136 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ImportanceSamplerTest.java
+ *
+ * Checks that the estimates by importance sampling for a fixed seed
+ * do not depend on the number of threads of the pool
+ * and that their confidence intervals contain the exact probabilities.
+ *
+ *
+ * Created: Sun Oct 18 05:09:44 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ImportanceSamplerTest.TestAll.class})
+public class ImportanceSamplerTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    private static final int REPLICATES = 8;
+    private static final int BATCH_SIZE = 256;
+    private static final long SEED = 20261018L;
+    private static final double CONFIDENCE = 0.999;
+    private static final double REL_ERROR = 0.05;
+    private static final int CE_ITERATIONS = 3;
+
+    /**
+     * The least probability of the effects estimated.
+     * Importance sampling is made for small probabilities,
+     * but the exact value is needed as a reference.
+     */
+    private static final BigDecimal MIN_PROB = new BigDecimal("0.001");
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static ImportanceSamplerTest TEST = new ImportanceSamplerTest();
+
+    public static class TestAll {
+	@Test public void testEstimate() {
+	    ImportanceSamplerTest.TEST.testEstimate();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * For each sequence, estimates each effect of <code>flatCInst</code>
+     * with probability at least {@link #MIN_PROB}
+     * using a single thread and using several threads.
+     * The estimates must coincide
+     * and their intervals must contain the exact probability.
+     * Sampling stops by the relative error only
+     * so that the estimates are reproducible.
+     */
+    private static void checkEstimate(String name,
+				      FlatCInstance flatCInst,
+				      ForkJoinPool single,
+				      ForkJoinPool multi) {
+	ImportanceSampler isSingle =
+	    new ImportanceSampler(flatCInst, single, REPLICATES, BATCH_SIZE);
+	ImportanceSampler isMulti =
+	    new ImportanceSampler(flatCInst, multi,  REPLICATES, BATCH_SIZE);
+	List<List<String>> sPaths =
+	    TestModels.getSamplePaths(flatCInst, MIN_PROB);
+	assertTrue(name + ": expected effects to estimate. ",
+		   !sPaths.isEmpty());
+	for (MonteCarlo.Sequence seq : MonteCarlo.Sequence.values()) {
+	    for (List<String> sPath : sPaths) {
+		String msg = name + " " + sPath + " " + seq;
+		SampleEstimate est1 =
+		    isSingle.estimate(sPath, seq,
+				      ImportanceSampler.DEFAULT_FAILURE_BIAS,
+				      CE_ITERATIONS, SEED,
+				      CONFIDENCE, REL_ERROR, Long.MAX_VALUE);
+		SampleEstimate estN =
+		    isMulti .estimate(sPath, seq,
+				      ImportanceSampler.DEFAULT_FAILURE_BIAS,
+				      CE_ITERATIONS, SEED,
+				      CONFIDENCE, REL_ERROR, Long.MAX_VALUE);
+		TestModels.assertSameEstimate(msg, est1, estN);
+		TestModels.assertContains(msg, flatCInst.getProb(sPath), est1);
+	    }
+	}
+    }
+
+    public void testEstimate() {
+	ForkJoinPool single = new ForkJoinPool(1);
+	ForkJoinPool multi  = new ForkJoinPool(4);
+	try {
+	    for (long seed : TestModels.SEEDS) {
+		checkEstimate("seed " + seed, TestModels.createRandom(seed),
+			      single, multi);
+	    }
+	} finally {
+	    single.shutdown();
+	    multi .shutdown();
+	}
+    } // testEstimate
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // ImportanceSamplerTest
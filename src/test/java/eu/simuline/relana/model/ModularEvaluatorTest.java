@@ -0,0 +1,227 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ModularEvaluatorTest.java
+ *
+ * Compares the probabilities obtained by modular decomposition
+ * with those of the Shannon expansion of {@link FlatCInstance},
+ * evaluating the modules sequentially and in a pool.
+ * Likewise compares the distributions
+ * with the {@link IdealDistr}s of {@link FlatCInstance},
+ * also if both share a memo table.
+ *
+ *
+ * Created: Sun Oct 18 05:26:13 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ModularEvaluatorTest.TestAll.class})
+public class ModularEvaluatorTest {
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static ModularEvaluatorTest TEST = new ModularEvaluatorTest();
+
+    public static class TestAll {
+	@Test public void testProbProjects() throws Exception {
+	    ModularEvaluatorTest.TEST.testProbProjects();
+	}
+	@Test public void testProbRandom() throws Exception {
+	    ModularEvaluatorTest.TEST.testProbRandom();
+	}
+	@Test public void testDistrRandom() {
+	    ModularEvaluatorTest.TEST.testDistrRandom();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Compares the probabilities of all effects given by formulae
+     * of <code>flatCInst</code> obtained by a {@link ModularEvaluator}
+     * without pool and with <code>pool</code>,
+     * each with and without memo table,
+     * with those obtained from <code>flatCInst</code> itself.
+     */
+    private static void checkProbs(String name,
+				   FlatCInstance flatCInst,
+				   ForkJoinPool pool) {
+	ModularEvaluator seqEval  = new ModularEvaluator(flatCInst);
+	ModularEvaluator poolEval = new ModularEvaluator(flatCInst, pool);
+	ProbMemo seqMemo  = new ProbMemo();
+	ProbMemo poolMemo = new ProbMemo();
+	for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+	    BigDecimal exp = flatCInst.getProb(sPath);
+	    String msg = name + " " + sPath;
+	    TestModels.assertProbEquals(msg + " sequential", exp,
+					seqEval .getProb(sPath, null));
+	    TestModels.assertProbEquals(msg + " sequential with memo", exp,
+					seqEval .getProb(sPath, seqMemo));
+	    TestModels.assertProbEquals(msg + " pool", exp,
+					poolEval.getProb(sPath, null));
+	    TestModels.assertProbEquals(msg + " pool with memo", exp,
+					poolEval.getProb(sPath, poolMemo));
+	}
+    }
+
+    public void testProbProjects() throws Exception {
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    for (String project : TestModels.PROJECTS) {
+		checkProbs(project, TestModels.load(project), pool);
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    } // testProbProjects
+
+    public void testProbRandom() {
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    for (long seed : TestModels.SEEDS) {
+		checkProbs("seed " + seed, TestModels.createRandom(seed), pool);
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    } // testProbRandom
+
+    /**
+     * Asserts that <code>act</code> as returned by
+     * {@link ModularEvaluator#getDistr(List, ProbMemo)}
+     * assigns the probabilities of <code>exp</code>
+     * to the ideals with positive probability
+     * and no others.
+     */
+    private static void
+	assertDistrEquals(String msg,
+			  IdealDistr exp,
+			  Map<Set<Deficiency>, BigDecimal> act) {
+	for (Map.Entry<Set<Deficiency>, BigDecimal> entry : act.entrySet()) {
+	    assertTrue(msg + ": expected an ideal but found " +
+		       entry.getKey() + ". ",
+		       exp.getIdeals().contains(entry.getKey()));
+	    assertTrue(msg + ": expected positive probability for " +
+		       entry.getKey() + ". ",
+		       entry.getValue().signum() > 0);
+	}
+	for (int ind = 0; ind < exp.getIdeals().size(); ind++) {
+	    Set<Deficiency> ideal = exp.getIdeals().get(ind);
+	    BigDecimal prob = act.get(ideal);
+	    TestModels.assertProbEquals(msg + " " + ideal, exp.getProb(ind),
+					prob == null ? BigDecimal.ZERO : prob);
+	}
+    }
+
+    /**
+     * Asserts that the probabilities of <code>distr</code> add up to one,
+     * that the probability of a non-empty value is <code>prob</code>
+     * and that the probability of each deficiency
+     * is that of the ideals containing it.
+     */
+    private static void checkDistr(String msg,
+				   IdealDistr distr,
+				   BigDecimal prob) {
+	assertEquals(msg, distr.getType().getIdeals(), distr.getIdeals());
+	assertTrue(msg, distr.getIdeals().get(0).isEmpty());
+	BigDecimal sum = BigDecimal.ZERO;
+	for (int ind = 0; ind < distr.getIdeals().size(); ind++) {
+	    Set<Deficiency> ideal = distr.getIdeals().get(ind);
+	    assertEquals(msg, ind, distr.getIndex(ideal));
+	    assertEquals(msg, distr.getProb(ind), distr.getProb(ideal));
+	    sum = sum.add(distr.getProb(ind));
+	}
+	TestModels.assertProbEquals(msg + " sum", BigDecimal.ONE, sum);
+	TestModels.assertProbEquals(msg + " non-empty", prob,
+				    distr.getProbNonEmpty());
+
+	for (Deficiency def : distr.getType().asSet()) {
+	    BigDecimal exp = BigDecimal.ZERO;
+	    for (int ind = 0; ind < distr.getIdeals().size(); ind++) {
+		if (distr.getIdeals().get(ind).contains(def)) {
+		    exp = exp.add(distr.getProb(ind));
+		}
+	    }
+	    TestModels.assertProbEquals(msg + " " + def, exp,
+					distr.getProb(def));
+	}
+    }
+
+    /**
+     * For the random models, the distributions of all effects
+     * given by formulae obtained by {@link FlatCInstance}
+     * and by a {@link ModularEvaluator} coincide,
+     * without memo table, with separate memo tables
+     * and with a memo table shared in either order.
+     */
+    public void testDistrRandom() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    ModularEvaluator modEval = new ModularEvaluator(flatCInst);
+	    ProbMemo flatMemo = new ProbMemo();
+	    ProbMemo modMemo  = new ProbMemo();
+	    ProbMemo sharedFlatFirst = new ProbMemo();
+	    ProbMemo sharedModFirst  = new ProbMemo();
+	    for (List<String> sPath : TestModels.getFormulaPaths(flatCInst)) {
+		String msg = "seed " + seed + " " + sPath;
+		IdealDistr exp = flatCInst.getDistr(sPath, null);
+		checkDistr(msg, exp, flatCInst.getProb(sPath));
+		TestModels.assertDistrEquals
+		    (msg + " memo", exp, flatCInst.getDistr(sPath, flatMemo));
+		assertDistrEquals(msg + " modular", exp,
+				  modEval.getDistr(sPath, null));
+		assertDistrEquals(msg + " modular memo", exp,
+				  modEval.getDistr(sPath, modMemo));
+
+		TestModels.assertDistrEquals
+		    (msg + " shared, flat first", exp,
+		     flatCInst.getDistr(sPath, sharedFlatFirst));
+		assertDistrEquals(msg + " shared, flat first", exp,
+				  modEval.getDistr(sPath, sharedFlatFirst));
+		assertDistrEquals(msg + " shared, modular first", exp,
+				  modEval.getDistr(sPath, sharedModFirst));
+		TestModels.assertDistrEquals
+		    (msg + " shared, modular first", exp,
+		     flatCInst.getDistr(sPath, sharedModFirst));
+	    }
+	}
+    } // testDistrRandom
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // ModularEvaluatorTest
@@ -0,0 +1,211 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.testhelpers.Actions;
+
+import eu.simuline.relana.expressions.Type;
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * MonteCarloTest.java
+ *
+ * Checks that the estimates for a fixed seed
+ * do not depend on the number of threads of the pool
+ * and that their confidence intervals contain the exact probabilities.
+ * Checks when an estimate is accurate enough to stop sampling,
+ * in particular for an effect which never occurs.
+ *
+ *
+ * Created: Sun Oct 18 04:47:05 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({MonteCarloTest.TestAll.class})
+public class MonteCarloTest {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    private static final int REPLICATES = 8;
+    private static final int BATCH_SIZE = 256;
+    private static final long SEED = 20261018L;
+    private static final double CONFIDENCE = 0.999;
+    private static final double REL_ERROR = 0.05;
+
+    /**
+     * The least probability of the effects estimated:
+     * the relative error is reached with moderately many samples.
+     */
+    private static final BigDecimal MIN_PROB = new BigDecimal("0.01");
+
+    /**
+     * The time budget in milliseconds for an effect which never occurs.
+     */
+    private static final long NEVER_MILLIS = 5000;
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static MonteCarloTest TEST = new MonteCarloTest();
+
+    public static class TestAll {
+	@Test public void testEstimate() {
+	    MonteCarloTest.TEST.testEstimate();
+	}
+	@Test public void testIsAccurate() {
+	    MonteCarloTest.TEST.testIsAccurate();
+	}
+	@Test public void testNeverOccurs() {
+	    MonteCarloTest.TEST.testNeverOccurs();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * For each sequence, estimates each effect of <code>flatCInst</code>
+     * with probability at least {@link #MIN_PROB}
+     * using a single thread and using several threads.
+     * The estimates must coincide
+     * and their intervals must contain the exact probability.
+     * Sampling stops by the relative error only
+     * so that the estimates are reproducible.
+     */
+    private static void checkEstimate(String name,
+				      FlatCInstance flatCInst,
+				      ForkJoinPool single,
+				      ForkJoinPool multi) {
+	MonteCarlo mcSingle =
+	    new MonteCarlo(flatCInst, single, REPLICATES, BATCH_SIZE);
+	MonteCarlo mcMulti =
+	    new MonteCarlo(flatCInst, multi,  REPLICATES, BATCH_SIZE);
+	List<List<String>> sPaths =
+	    TestModels.getSamplePaths(flatCInst, MIN_PROB);
+	assertTrue(name + ": expected effects to estimate. ",
+		   !sPaths.isEmpty());
+	for (MonteCarlo.Sequence seq : MonteCarlo.Sequence.values()) {
+	    for (List<String> sPath : sPaths) {
+		String msg = name + " " + sPath + " " + seq;
+		SampleEstimate est1 =
+		    mcSingle.estimate(sPath, seq, SEED,
+				      CONFIDENCE, REL_ERROR, Long.MAX_VALUE);
+		SampleEstimate estN =
+		    mcMulti .estimate(sPath, seq, SEED,
+				      CONFIDENCE, REL_ERROR, Long.MAX_VALUE);
+		TestModels.assertSameEstimate(msg, est1, estN);
+		TestModels.assertContains(msg, flatCInst.getProb(sPath), est1);
+	    }
+	}
+    }
+
+    public void testEstimate() {
+	ForkJoinPool single = new ForkJoinPool(1);
+	ForkJoinPool multi  = new ForkJoinPool(4);
+	try {
+	    for (long seed : TestModels.SEEDS) {
+		checkEstimate("seed " + seed, TestModels.createRandom(seed),
+			      single, multi);
+	    }
+	} finally {
+	    single.shutdown();
+	    multi .shutdown();
+	}
+    } // testEstimate
+
+    private static SampleEstimate createEstimate(double value,
+						 double stdError) {
+	// 3.29 is the quantile for CONFIDENCE
+	return new SampleEstimate(value, stdError, REPLICATES * BATCH_SIZE,
+				  CONFIDENCE, 3.29);
+    }
+
+    /**
+     * A vanishing standard error is accepted
+     * if and only if the estimate is <code>0</code> or <code>1</code>;
+     * otherwise the relative error decides.
+     */
+    public void testIsAccurate() {
+	assertTrue (MonteCarlo.isAccurate(createEstimate(0,   0), REL_ERROR));
+	assertTrue (MonteCarlo.isAccurate(createEstimate(1,   0), REL_ERROR));
+	assertTrue (MonteCarlo.isAccurate(createEstimate(0,   0), 0));
+	assertFalse(MonteCarlo.isAccurate(createEstimate(0.5, 0), REL_ERROR));
+	assertTrue (MonteCarlo.isAccurate(createEstimate(0.5, 1e-4),
+					  REL_ERROR));
+	assertFalse(MonteCarlo.isAccurate(createEstimate(0.5, 0.1),
+					  REL_ERROR));
+	assertFalse(MonteCarlo.isAccurate(createEstimate(0.5, 1e-4), 0));
+    } // testIsAccurate
+
+    /**
+     * An effect which never occurs is estimated as <code>0</code>
+     * after a single round for each sequence,
+     * although the relative error is infinite,
+     * instead of sampling until the time budget is exhausted.
+     */
+    public void testNeverOccurs() {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Formula var = TestModels.createVar(effects, "x", new BigDecimal("0.5"));
+	SInstance serv = new SInstance(Type.BOOLEAN, null, "d");
+	serv.setFormula(TestModels.apply
+			(Operation.BaseOps.Intersection, var,
+			 TestModels.apply(Operation.BaseOps.Complement, var)));
+	List<String> sPath = Arrays.asList("d");
+	effects.put(sPath, serv);
+	FlatCInstance flatCInst = new FlatCInstance(effects);
+
+	ForkJoinPool pool = new ForkJoinPool(1);
+	try {
+	    MonteCarlo mc =
+		new MonteCarlo(flatCInst, pool, REPLICATES, BATCH_SIZE);
+	    for (MonteCarlo.Sequence seq : MonteCarlo.Sequence.values()) {
+		SampleEstimate est =
+		    mc.estimate(sPath, seq, SEED,
+				CONFIDENCE, REL_ERROR, NEVER_MILLIS);
+		assertEquals(seq.toString(), 0, est.getValue(), 0);
+		assertEquals(seq.toString(), REPLICATES * BATCH_SIZE,
+			     est.getSamples());
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    } // testNeverOccurs
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // MonteCarloTest
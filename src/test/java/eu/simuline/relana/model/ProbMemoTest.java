@@ -0,0 +1,116 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ProbMemoTest.java
+ *
+ * Tests the canonical identifiers of residual formulae 
+ * on formulae sharing subformulae. 
+ *
+ *
+ * Created: Sun Oct 18 09:14:52 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ProbMemoTest.TestAll.class})
+public class ProbMemoTest {
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static ProbMemoTest TEST = new ProbMemoTest();
+
+    public static class TestAll {
+	@Test public void testSharedKey() {
+	    ProbMemoTest.TEST.testSharedKey();
+	}
+	@Test public void testSharedProb() {
+	    ProbMemoTest.TEST.testSharedProb();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    private static final List<String> PATH = Arrays.asList("d");
+
+    /**
+     * The key of a formula with <code>2<sup>200</sup></code> paths 
+     * is obtained by visiting each of its few nodes once. 
+     * Keys of equal formulae coincide, others differ. 
+     */
+    public void testSharedKey() {
+	Formula form200 = 
+	    TestModels.createLadder(200).getEffects().get(PATH).getFormula();
+	Formula form199 = 
+	    TestModels.createLadder(199).getEffects().get(PATH).getFormula();
+	ProbMemo memo = new ProbMemo();
+	Integer key = memo.getKey(form200);
+	assertEquals(key, memo.getKey(form200));
+	assertTrue(!key.equals(memo.getKey(form199)));
+
+	// variables of the same effect have the same identifier 
+	FlatCInstance flatCInst = TestModels.createRandom(1);
+	SInstance serv = flatCInst.getEffects().get(Arrays.asList("m0"));
+	assertEquals(memo.getKey(Formula.Var.create(serv, "m0")), 
+		     memo.getKey(Formula.Var.create(serv, "other")));
+    }
+
+    /**
+     * The probabilities obtained with a memo table 
+     * keyed by the shared subformulae 
+     * coincide with those obtained without. 
+     */
+    public void testSharedProb() {
+	for (int n = 1; n <= 8; n++) {
+	    FlatCInstance flatCInst = TestModels.createLadder(n);
+	    ProbMemo memo = new ProbMemo();
+	    TestModels.assertProbEquals("n = " + n, 
+					flatCInst.getProb(PATH), 
+					flatCInst.getProb(PATH, memo));
+	    TestModels.assertProbEquals("n = " + n + " again", 
+					flatCInst.getProb(PATH), 
+					flatCInst.getProb(PATH, memo));
+	    TestModels.assertProbEquals
+		("n = " + n + " modular", 
+		 flatCInst.getProb(PATH), 
+		 new ModularEvaluator(flatCInst).getProb(PATH, memo));
+	}
+	TestModels.assertProbEquals
+	    ("n = 40", 
+	     new BddEvaluator(TestModels.createLadder(40)).getProb(PATH), 
+	     TestModels.createLadder(40).getProb(PATH, new ProbMemo()));
+    }
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // ProbMemoTest
@@ -0,0 +1,412 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+import eu.simuline.relana.expressions.Type;
+
+import eu.simuline.relana.sys.Project;
+
+import eu.simuline.util.sgml.SGMLParser;
+
+import java.math.BigDecimal;
+
+import java.net.URL;
+
+import java.io.InputStreamReader;
+import java.io.BufferedReader;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Provides the models the evaluators are tested on:
+ * the models of the projects in the test resources
+ * and models created at random which need no library.
+ *
+ *
+ * Created: Sun Oct 18 03:12:40 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+final class TestModels {
+
+    /* -------------------------------------------------------------------- *
+     * constants.                                                           *
+     * -------------------------------------------------------------------- */
+
+    private static final String ROOT =
+    "file://" +
+	System.getProperty("tstModelDir") +
+	"eu/simuline/relana/";
+
+    /**
+     * The projects the evaluators are compared on.
+     */
+    static final String[] PROJECTS = {
+	"tinyPlane.rml", "proj.rml", "OrdMaps.rml", "scenarios.rml"
+    };
+
+    /**
+     * The seeds of the models created by {@link #createRandom(long)}.
+     */
+    static final long[] SEEDS = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    /* -------------------------------------------------------------------- *
+     * constructors.                                                        *
+     * -------------------------------------------------------------------- */
+
+    private TestModels() {
+	// no instances.
+    }
+
+    /* -------------------------------------------------------------------- *
+     * methods.                                                             *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the flattened instance of the base class
+     * of the project with the given file name as {@link
+     * eu.simuline.relana.sys.Relana#main(String[])} does.
+     */
+    static FlatCInstance load(String project) throws Exception {
+	URL proj = new URL(ROOT + project);
+	SGMLParser projectParser = new SGMLParser();
+	projectParser.parseXML(true);
+	Project desc = new Project();
+	projectParser.setContentHandler(desc);
+	projectParser.setExceptionHandler(desc);
+	projectParser.parse(new BufferedReader
+			    (new InputStreamReader(proj.openStream(),
+						   "UTF-8")));
+	CClass cClass = new CClassLoader(desc.getLibrary())
+	    .loadCClass(desc.getBaseClass());
+	return cClass.getInstance().flatten();
+    }
+
+    /**
+     * Returns the paths of the effects of <code>flatCInst</code>
+     * given by formulae.
+     */
+    static List<List<String>> getFormulaPaths(FlatCInstance flatCInst) {
+	List<List<String>> res = new ArrayList<List<String>>();
+	for (Map.Entry<List<String>, SInstance> entry
+		 : flatCInst.getEffects().entrySet()) {
+	    if (entry.getValue().getFormula() != null) {
+		res.add(entry.getKey());
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns the paths of the effects of <code>flatCInst</code>
+     * given by formulae the probability of which is at least
+     * <code>minProb</code>.
+     * For these, sampling until a relative error is reached terminates
+     * even without time budget, so that the estimates are reproducible.
+     */
+    static List<List<String>> getSamplePaths(FlatCInstance flatCInst,
+					     BigDecimal minProb) {
+	List<List<String>> res = new ArrayList<List<String>>();
+	for (List<String> sPath : getFormulaPaths(flatCInst)) {
+	    if (flatCInst.getProb(sPath).compareTo(minProb) >= 0) {
+		res.add(sPath);
+	    }
+	}
+	return res;
+    }
+
+    /**
+     * Returns a model with Boolean effects with distribution
+     * and effects with random formulae over these and over one another,
+     * including effects of a type with three deficiencies.
+     */
+    static FlatCInstance createRandom(long seed) {
+	return createRandom(seed, new HashMap<String, ProbDistr>());
+    }
+
+    /**
+     * Returns the model {@link #createRandom(long)} 
+     * except that the effects with distribution 
+     * named as the keys of <code>name2distr</code> 
+     * have the associated distributions. 
+     */
+    static FlatCInstance createRandom(long seed,
+				      Map<String, ProbDistr> name2distr) {
+	return new FlatCInstance(createRandomEffects(seed, name2distr));
+    }
+
+    /**
+     * Returns the effects of the model
+     * {@link #createRandom(long, Map)}.
+     */
+    static Map<List<String>, SInstance>
+	createRandomEffects(long seed, Map<String, ProbDistr> name2distr) {
+	Random rnd = new Random(seed);
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	List<SInstance> pool = new ArrayList<SInstance>();
+	for (int i = 0; i < 6; i++) {
+	    ProbDistr distr = createDistr(rnd, Type.BOOLEAN);
+	    if (name2distr.containsKey("b" + i)) {
+		distr = name2distr.get("b" + i);
+	    }
+	    SInstance serv = new SInstance(Type.BOOLEAN, distr, "b" + i);
+	    // common prefixes make the paths share components
+	    effects.put(Arrays.asList("c" + (i % 3), "b" + i), serv);
+	    pool.add(serv);
+	}
+	for (int i = 0; i < 5; i++) {
+	    SInstance serv = new SInstance(Type.BOOLEAN, null, "d" + i);
+	    serv.setFormula(createFormula(rnd, 3, pool));
+	    effects.put(Arrays.asList("d" + i), serv);
+	    pool.add(serv);
+	}
+
+	// a type with a minimal deficiency and two above
+	Type type = createChain();
+	List<Formula> vars = new ArrayList<Formula>();
+	for (int i = 0; i < 3; i++) {
+	    ProbDistr distr = createDistr(rnd, type);
+	    if (name2distr.containsKey("m" + i)) {
+		distr = name2distr.get("m" + i);
+	    }
+	    SInstance serv = new SInstance(type, distr, "m" + i);
+	    effects.put(Arrays.asList("m" + i), serv);
+	    vars.add(Formula.Var.create(serv, "m" + i));
+	}
+	Operation.BaseOps[] ops = {
+	    Operation.BaseOps.Union, Operation.BaseOps.Intersection
+	};
+	for (Operation.BaseOps op : ops) {
+	    SInstance serv = new SInstance(type, null, "o" + op);
+	    serv.setFormula(Formula.getFormula(Operation.getOperation(op)
+					       .getEval(type),
+					       new HashSet<Formula>(vars)));
+	    effects.put(Arrays.asList("o" + op), serv);
+	}
+	return effects;
+    }
+
+    /**
+     * Returns a model with an effect <code>d</code> given by 
+     * <code>d<sub>n</sub></code> where 
+     * <code>d<sub>i</sub> = (d<sub>i-1</sub> &amp; x<sub>i</sub>) 
+     * | (d<sub>i-1</sub> &amp; y<sub>i</sub>)</code> 
+     * for Boolean effects <code>d<sub>0</sub></code>, 
+     * <code>x<sub>i</sub></code> and <code>y<sub>i</sub></code>. 
+     * The formula is a DAG with <code>O(n)</code> nodes 
+     * whereas the tree it unfolds to has <code>O(2<sup>n</sup>)</code>. 
+     * In the order of the paths, 
+     * the variables are ordered so that the expansion is linear. 
+     */
+    static FlatCInstance createLadder(int n) {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Random rnd = new Random(n);
+	Formula form = createVar(effects, "d0", getProb(rnd));
+	for (int i = 1; i <= n; i++) {
+	    // names keep x_i and y_i adjacent in the order of the paths 
+	    String name = String.format("v%04d", i);
+	    Formula varX = createVar(effects, name + "x", getProb(rnd));
+	    Formula varY = createVar(effects, name + "y", getProb(rnd));
+	    form = apply(Operation.BaseOps.Union, 
+			 apply(Operation.BaseOps.Intersection, form, varX),
+			 apply(Operation.BaseOps.Intersection, form, varY));
+	}
+	SInstance serv = new SInstance(Type.BOOLEAN, null, "d");
+	serv.setFormula(form);
+	effects.put(Arrays.asList("d"), serv);
+	return new FlatCInstance(effects);
+    }
+
+    /**
+     * Returns a model with an effect <code>d</code> 
+     * given by the intersection of <code>n</code> Boolean effects 
+     * <code>x<sub>i</sub></code> 
+     * and an effect <code>e</code> given by the union of these. 
+     * Their expansion is <code>n</code> levels deep. 
+     */
+    static FlatCInstance createWide(int n) {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Formula[] vars = new Formula[n];
+	for (int i = 0; i < n; i++) {
+	    vars[i] = createVar(effects, "x" + i, new BigDecimal("0.999"));
+	}
+	SInstance serv = new SInstance(Type.BOOLEAN, null, "d");
+	serv.setFormula(apply(Operation.BaseOps.Intersection, vars));
+	effects.put(Arrays.asList("d"), serv);
+	serv = new SInstance(Type.BOOLEAN, null, "e");
+	serv.setFormula(apply(Operation.BaseOps.Union, vars));
+	effects.put(Arrays.asList("e"), serv);
+	return new FlatCInstance(effects);
+    }
+
+    /**
+     * Adds a Boolean effect <code>name</code> with probability 
+     * <code>prob</code> to <code>effects</code> 
+     * and returns a variable for it. 
+     */
+    static Formula createVar(Map<List<String>, SInstance> effects,
+			     String name,
+			     BigDecimal prob) {
+	Map<Deficiency, BigDecimal> def2prob =
+	    new HashMap<Deficiency, BigDecimal>();
+	def2prob.put(Deficiency.UNDET, prob);
+	SInstance serv = new SInstance(Type.BOOLEAN,
+				       new ProbDistr(Type.BOOLEAN, def2prob),
+				       name);
+	effects.put(Arrays.asList(name), serv);
+	return Formula.Var.create(serv, name);
+    }
+
+    /**
+     * Returns the Boolean formula applying <code>op</code> 
+     * to <code>args</code>. 
+     */
+    static Formula apply(Operation.BaseOps op, Formula... args) {
+	return Formula.getFormula(Operation.getOperation(op)
+				  .getEval(Type.BOOLEAN),
+				  new HashSet<Formula>(Arrays.asList(args)));
+    }
+
+    /**
+     * Returns a type with deficiencies <code>a</code>,
+     * <code>b</code> and <code>c</code>
+     * where <code>b</code> and <code>c</code> both imply <code>a</code>.
+     */
+    static Type createChain() {
+	Deficiency defA = new Deficiency("a");
+	Deficiency defB = new Deficiency("b");
+	Deficiency defC = new Deficiency("c");
+	Map<Deficiency, DeficiencyNode> def2ord =
+	    new HashMap<Deficiency, DeficiencyNode>();
+	DeficiencyNode nodeA = new DeficiencyNode(defA);
+	def2ord.put(defA, nodeA);
+	for (Deficiency def : Arrays.asList(defB, defC)) {
+	    DeficiencyNode node = new DeficiencyNode(def);
+	    node .addSuccessor  (nodeA);
+	    nodeA.addPredecessor(node);
+	    def2ord.put(def, node);
+	}
+	return Type.create(def2ord);
+    }
+
+    /**
+     * Asserts that <code>act</code> assigns the same probabilities
+     * to the same ideals as <code>exp</code>.
+     */
+    static void assertDistrEquals(String msg,
+				  IdealDistr exp,
+				  IdealDistr act) {
+	assertEquals(msg, exp.getIdeals(), act.getIdeals());
+	for (int ind = 0; ind < exp.getIdeals().size(); ind++) {
+	    assertProbEquals(msg + " " + exp.getIdeals().get(ind),
+			     exp.getProb(ind), act.getProb(ind));
+	}
+    }
+
+    /**
+     * Asserts that <code>bounds</code> enclose <code>exp</code>.
+     */
+    static void assertEncloses(String msg,
+			       BigDecimal exp,
+			       ProbInterval bounds) {
+	assertTrue(msg + ": expected " + exp + " within " + bounds + ". ",
+		   bounds.getLower().compareTo(exp) <= 0
+		   && exp.compareTo(bounds.getUpper()) <= 0);
+    }
+
+    /**
+     * Asserts that <code>act</code> is numerically equal to <code>exp</code>
+     * regardless of the scale.
+     */
+    static void assertProbEquals(String msg, BigDecimal exp, BigDecimal act) {
+	assertTrue(msg + ": expected " + exp + " but found " + act + ". ",
+		   exp.compareTo(act) == 0);
+    }
+
+    /**
+     * Asserts that <code>act</code> is the same estimate as <code>exp</code>
+     * obtained from the same samples.
+     */
+    static void assertSameEstimate(String msg,
+				   SampleEstimate exp,
+				   SampleEstimate act) {
+	assertEquals(msg + " samples", exp.getSamples(), act.getSamples());
+	assertEquals(msg + " value", exp.getValue(), act.getValue(), 0.0);
+	assertEquals(msg + " standard error",
+		     exp.getStdError(), act.getStdError(), 0.0);
+    }
+
+    /**
+     * Asserts that the confidence interval of <code>est</code>
+     * contains <code>exp</code>.
+     */
+    static void assertContains(String msg,
+			       BigDecimal exp,
+			       SampleEstimate est) {
+	double prob = exp.doubleValue();
+	assertTrue(msg + ": expected " + prob + " within " + est + ". ",
+		   est.getLower() <= prob && prob <= est.getUpper());
+    }
+
+    private static BigDecimal getProb(Random rnd) {
+	return new BigDecimal(1 + rnd.nextInt(9)).movePointLeft(1);
+    }
+
+    /**
+     * Returns a distribution for <code>type</code> 
+     * with random probabilities of the deficiencies. 
+     */
+    static ProbDistr createDistr(Random rnd, Type type) {
+	Map<Deficiency, BigDecimal> def2prob =
+	    new HashMap<Deficiency, BigDecimal>();
+	for (Deficiency def : type.asSet()) {
+	    def2prob.put(def, getProb(rnd));
+	}
+	return new ProbDistr(type, def2prob);
+    }
+
+    private static Formula createFormula(Random rnd,
+					 int depth,
+					 List<SInstance> pool) {
+	if (depth == 0 || rnd.nextInt(4) == 0) {
+	    SInstance var = pool.get(rnd.nextInt(pool.size()));
+	    return Formula.Var.create(var, var.getName());
+	}
+	Set<Formula> args = new HashSet<Formula>();
+	Operation.BaseOps op;
+	switch (rnd.nextInt(3)) {
+	case 0:
+	    op = Operation.BaseOps.Complement;
+	    args.add(createFormula(rnd, depth - 1, pool));
+	    break;
+	case 1:
+	    op = Operation.BaseOps.Intersection;
+	    args.add(createFormula(rnd, depth - 1, pool));
+	    args.add(createFormula(rnd, depth - 1, pool));
+	    break;
+	default:
+	    op = Operation.BaseOps.Union;
+	    args.add(createFormula(rnd, depth - 1, pool));
+	    args.add(createFormula(rnd, depth - 1, pool));
+	    break;
+	}
+	return Formula.getFormula(Operation.getOperation(op)
+				  .getEval(Type.BOOLEAN), args);
+    }
+
+} // TestModels
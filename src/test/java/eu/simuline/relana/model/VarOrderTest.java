@@ -0,0 +1,252 @@
+package eu.simuline.relana.model;
+
+import eu.simuline.relana.expressions.Type;
+import eu.simuline.relana.expressions.Formula;
+import eu.simuline.relana.expressions.Operation;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import java.math.BigDecimal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * VarOrderTest.java
+ *
+ * Checks that the probabilities and distributions of the effects
+ * do not depend on the {@link VarOrder},
+ * that the ranks of the static strategies are injective
+ * and that they order the variables as documented.
+ *
+ *
+ * Created: Mon Oct 19 17:31:04 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({VarOrderTest.TestAll.class})
+public class VarOrderTest {
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static VarOrderTest TEST = new VarOrderTest();
+
+    public static class TestAll {
+	@Test public void testSameProbs() {
+	    VarOrderTest.TEST.testSameProbs();
+	}
+	@Test public void testRanks() {
+	    VarOrderTest.TEST.testRanks();
+	}
+	@Test public void testFanOut() {
+	    VarOrderTest.TEST.testFanOut();
+	}
+	@Test public void testExpansionSizes() {
+	    VarOrderTest.TEST.testExpansionSizes();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Returns the paths of the effects of <code>flatCInst</code>
+     * sorted by {@link FlatCInstance#PATH_CMP}.
+     */
+    private static List<List<String>> getPaths(FlatCInstance flatCInst) {
+	List<List<String>> res =
+	    new ArrayList<List<String>>(flatCInst.getEffects().keySet());
+	Collections.sort(res, FlatCInstance.PATH_CMP);
+	return res;
+    }
+
+    /**
+     * Asserts that the probabilities and distributions
+     * of all effects given by formulae
+     * are the same for each {@link VarOrder},
+     * whether obtained by {@link FlatCInstance#reorder(VarOrder)}
+     * or by creating a <code>FlatCInstance</code>
+     * with the order given, without and with memo table.
+     */
+    private static void checkSameProbs(String name, FlatCInstance flatCInst) {
+	List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	for (VarOrder order : VarOrder.values()) {
+	    FlatCInstance[] insts = {
+		flatCInst.reorder(order),
+		new FlatCInstance(flatCInst.getEffects(), order)
+	    };
+	    for (FlatCInstance inst : insts) {
+		ProbMemo memo = new ProbMemo();
+		for (List<String> sPath : sPaths) {
+		    String msg = name + " " + order + " " + sPath;
+		    BigDecimal exp = flatCInst.getProb(sPath);
+		    TestModels.assertProbEquals(msg, exp,
+						inst.getProb(sPath));
+		    TestModels.assertProbEquals(msg + " memo", exp,
+						inst.getProb(sPath, memo));
+		    TestModels.assertDistrEquals
+			(msg, flatCInst.getDistr(sPath, null),
+			 inst.getDistr(sPath, null));
+		}
+	    }
+	}
+    }
+
+    /**
+     * For the random models and a ladder,
+     * the probabilities and distributions do not depend on the order.
+     */
+    public void testSameProbs() {
+	for (long seed : TestModels.SEEDS) {
+	    checkSameProbs("seed " + seed, TestModels.createRandom(seed));
+	}
+	checkSameProbs("ladder", TestModels.createLadder(6));
+    } // testSameProbs
+
+    /**
+     * For the random models and each order,
+     * the ranks are the numbers from <code>0</code>
+     * for the origins of all effects.
+     * For {@link VarOrder#Component}, they follow the order of the paths.
+     */
+    public void testRanks() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    List<List<String>> paths = getPaths(flatCInst);
+	    Set<Integer> expRanks = new HashSet<Integer>();
+	    for (int i = 0; i < paths.size(); i++) {
+		expRanks.add(i);
+	    }
+	    for (VarOrder order : VarOrder.values()) {
+		Map<SInstance, Integer> ranks =
+		    order.getRanks(flatCInst, paths);
+		String msg = "seed " + seed + " " + order;
+		assertEquals(msg, paths.size(), ranks.size());
+		assertEquals(msg, expRanks,
+			     new HashSet<Integer>(ranks.values()));
+	    }
+
+	    Map<SInstance, Integer> ranks =
+		VarOrder.Component.getRanks(flatCInst, paths);
+	    for (int i = 0; i < paths.size(); i++) {
+		assertEquals("seed " + seed + " " + paths.get(i), i,
+			     (int) ranks.get(flatCInst.getEffect(paths.get(i))
+					     .getOrigin()));
+	    }
+	}
+    } // testRanks
+
+    /**
+     * For effects <code>d0 = b2</code>, <code>d1 = b1 | b2</code>
+     * and <code>d2 = b0 &amp; b1 &amp; b2</code>,
+     * {@link VarOrder#FanOut} ranks <code>b2</code> first
+     * and <code>b0</code> last,
+     * reversing the order of {@link VarOrder#Component}.
+     * {@link VarOrder#MostFrequent} is the only dynamic strategy
+     * and scores the variables by their occurrences.
+     */
+    public void testFanOut() {
+	Map<List<String>, SInstance> effects =
+	    new TreeMap<List<String>, SInstance>(FlatCInstance.PATH_CMP);
+	Formula[] vars = new Formula[3];
+	for (int i = 0; i < vars.length; i++) {
+	    vars[i] = TestModels.createVar(effects, "b" + i,
+					   new BigDecimal("0.5"));
+	}
+	Formula[] forms = {
+	    vars[2],
+	    TestModels.apply(Operation.BaseOps.Union, vars[1], vars[2]),
+	    TestModels.apply(Operation.BaseOps.Intersection, vars)
+	};
+	for (int i = 0; i < forms.length; i++) {
+	    SInstance serv = new SInstance(Type.BOOLEAN, null, "d" + i);
+	    serv.setFormula(forms[i]);
+	    effects.put(Arrays.asList("d" + i), serv);
+	}
+	FlatCInstance flatCInst = new FlatCInstance(effects);
+	List<List<String>> paths = getPaths(flatCInst);
+
+	Map<SInstance, Integer> comp =
+	    VarOrder.Component.getRanks(flatCInst, paths);
+	Map<SInstance, Integer> fanOut =
+	    VarOrder.FanOut.getRanks(flatCInst, paths);
+	SInstance[] bases = new SInstance[vars.length];
+	for (int i = 0; i < bases.length; i++) {
+	    bases[i] = flatCInst.getEffect(Arrays.asList("b" + i))
+		.getOrigin();
+	}
+	assertTrue(comp.get(bases[0]) < comp.get(bases[1]));
+	assertTrue(comp.get(bases[1]) < comp.get(bases[2]));
+	assertEquals(0, (int) fanOut.get(bases[2]));
+	assertEquals(1, (int) fanOut.get(bases[1]));
+	assertEquals(2, (int) fanOut.get(bases[0]));
+
+	for (VarOrder order : VarOrder.values()) {
+	    assertEquals(order.toString(), order == VarOrder.MostFrequent,
+			 order.isDynamic());
+	}
+	Map<SInstance, Integer> scores = new HashMap<SInstance, Integer>();
+	VarOrder.MostFrequent.addScores(forms[2], scores);
+	VarOrder.MostFrequent.addScores(forms[1], scores);
+	assertEquals(2, VarOrder.getScore(scores, bases[2]));
+	assertEquals(2, VarOrder.getScore(scores, bases[1]));
+	assertEquals(1, VarOrder.getScore(scores, bases[0]));
+	// static strategies do not score
+	scores.clear();
+	VarOrder.FanOut.addScores(forms[2], scores);
+	assertTrue(scores.isEmpty());
+    } // testFanOut
+
+    /**
+     * The expansion sizes are those counted by a memo table
+     * when computing the probabilities with each order.
+     */
+    public void testExpansionSizes() {
+	for (long seed : TestModels.SEEDS) {
+	    FlatCInstance flatCInst = TestModels.createRandom(seed);
+	    List<List<String>> sPaths = TestModels.getFormulaPaths(flatCInst);
+	    Map<VarOrder, Long> sizes = flatCInst.getExpansionSizes(sPaths);
+	    assertEquals(VarOrder.values().length, sizes.size());
+	    for (VarOrder order : VarOrder.values()) {
+		ProbMemo memo = new ProbMemo();
+		flatCInst.reorder(order).getProbs(sPaths, memo);
+		assertEquals("seed " + seed + " " + order,
+			     memo.getExpansions(), (long) sizes.get(order));
+	    }
+	}
+    } // testExpansionSizes
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // VarOrderTest
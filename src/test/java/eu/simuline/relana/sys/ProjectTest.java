@@ -0,0 +1,143 @@
+package eu.simuline.relana.sys;
+
+import eu.simuline.relana.model.InstanceLocator;
+import eu.simuline.relana.model.Scenario;
+
+import eu.simuline.testhelpers.Actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.math.BigDecimal;
+
+import java.util.Map;
+
+/**
+ * ProjectTest.java
+ *
+ *
+ * Created: Sun Oct 18 03:40:12 2026
+ *
+ * @author <a href="mailto:ernst@local">Ernst Reissner</a>
+ * @version 1.0
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ProjectTest.TestAll.class})
+public class ProjectTest {
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    static ProjectTest TEST = new ProjectTest();
+
+    public static class TestAll {
+	@Test public void testScenario() throws Exception {
+	    ProjectTest.TEST.testScenario();
+	}
+	@Test public void testScenarioInvalid() throws Exception {
+	    ProjectTest.TEST.testScenarioInvalid();
+	}
+	@Test public void testProbInvalid() throws Exception {
+	    ProjectTest.TEST.testProbInvalid();
+	}
+    } // class TestAll
+
+    /* -------------------------------------------------------------------- *
+     * methods for tests.                                                   *
+     * -------------------------------------------------------------------- */
+
+    private static AttributesImpl getAtts(String... namesValues) {
+	AttributesImpl res = new AttributesImpl();
+	for (int i = 0; i < namesValues.length; i += 2) {
+	    res.addAttribute("", namesValues[i], namesValues[i], 
+			     "CDATA", namesValues[i + 1]);
+	}
+	return res;
+    }
+
+    private static void start(Project project, 
+			      String qName, 
+			      String... namesValues) throws SAXException {
+	project.startElement("", qName, qName, getAtts(namesValues));
+    }
+
+    private static void assertRejected(Project project, 
+				       String qName, 
+				       String... namesValues) {
+	try {
+	    start(project, qName, namesValues);
+	    fail("expected SAXException. ");
+	} catch (SAXException e) {
+	    // expected. 
+	}
+    }
+
+    public void testScenario() throws Exception {
+	Project project = new Project();
+	start(project, "Scenario", "name", "worn");
+	start(project, "Prob", 
+	      "effect", "pumpA", "deficiency", "UNDET", "value", "0.3");
+	project.endElement("", "Prob", "Prob");
+	project.endElement("", "Scenario", "Scenario");
+
+	assertEquals(1, project.getScenarios().size());
+	Scenario scenario = project.getScenarios().get(0);
+	assertEquals("worn", scenario.getName());
+	Map<String, BigDecimal> def2prob = scenario.getOverrides()
+	    .get(InstanceLocator.getLocator("pumpA"));
+	assertEquals(new BigDecimal("0.3"), def2prob.get("UNDET"));
+    }
+
+    public void testScenarioInvalid() throws Exception {
+	// scenario without name 
+	assertRejected(new Project(), "Scenario");
+
+	// nested scenario 
+	Project project = new Project();
+	start(project, "Scenario", "name", "outer");
+	assertRejected(project, "Scenario", "name", "inner");
+    }
+
+    public void testProbInvalid() throws Exception {
+	// probability outside scenario 
+	assertRejected(new Project(), "Prob", 
+		       "effect", "pumpA", "deficiency", "UNDET", 
+		       "value", "0.3");
+
+	String[][] invalid = {
+	    {"deficiency", "UNDET", "value", "0.3"}, 
+	    {"effect", "pumpA", "value", "0.3"}, 
+	    {"effect", "pumpA", "deficiency", "UNDET"}, 
+	    {"effect", "pumpA", "deficiency", "UNDET", "value", "high"}, 
+	    {"effect", "pumpA", "deficiency", "UNDET", "value", "1.5"}
+	};
+	for (String[] namesValues : invalid) {
+	    Project project = new Project();
+	    start(project, "Scenario", "name", "worn");
+	    assertRejected(project, "Prob", namesValues);
+	}
+    }
+
+    /* -------------------------------------------------------------------- *
+     * framework.                                                           *
+     * -------------------------------------------------------------------- */
+
+    /**
+     * Runs the test case.
+     *
+     * Uncomment either the textual UI, Swing UI, or AWT UI.
+     */
+    public static void main(String args[]) {
+	Actions.runFromMain();
+    }
+
+} // ProjectTest
@@ -60,6 +60,9 @@ public class RelanaTest {
 	@Test public void testOrdMaps() throws Exception {
 	    RelanaTest.TEST.testOrdMaps();
 	}
+	@Test public void testScenarios() throws Exception {
+	    RelanaTest.TEST.testScenarios();
+	}
     } // class TestAll
 
     /* -------------------------------------------------------------------- *
@@ -89,6 +92,10 @@ public class RelanaTest {
 	    Relana.main(new String[] {ROOT + "OrdMaps.rml"});
 	}
 
+	public void testScenarios() throws Exception {
+	    Relana.main(new String[] {ROOT + "scenarios.rml"});
+	}
+
     /* -------------------------------------------------------------------- *
      * framework.                                                           *
      * -------------------------------------------------------------------- */